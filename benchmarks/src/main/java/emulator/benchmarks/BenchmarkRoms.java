@@ -0,0 +1,39 @@
+package emulator.benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * ROM images the benchmarks run against.
+ */
+final class BenchmarkRoms {
+    // relative to the benchmarks directory, override with -Dgb.rom=<path> in the forked JVMs
+    private static final String DEFAULT_CPU_INSTRS_PATH = "../src/test/java/emulator/application/tests/cpu_instrs.gb";
+
+    private BenchmarkRoms() {
+    }
+
+    static byte[] cpuInstrs() {
+        Path romFile = Path.of(System.getProperty("gb.rom", DEFAULT_CPU_INSTRS_PATH));
+        try {
+            return Files.readAllBytes(romFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't read " + romFile.toAbsolutePath() + ", pass -jvmArgsAppend -Dgb.rom=<path to cpu_instrs.gb>", e);
+        }
+    }
+
+    /**
+     * 128KiB MBC1 ROM where every byte holds the number of its bank
+     */
+    static byte[] bankNumberedMbc1() {
+        byte[] romBytes = new byte[0x20000];
+        for (int i = 0; i < romBytes.length; i++) {
+            romBytes[i] = (byte) (i / 0x4000);
+        }
+        romBytes[0x0147] = 0x01; // MBC1
+        romBytes[0x0148] = 0x02; // 8 banks
+        return romBytes;
+    }
+}
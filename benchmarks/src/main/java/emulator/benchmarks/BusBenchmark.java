@@ -0,0 +1,50 @@
+package emulator.benchmarks;
+
+import emulator.bus.GameboyBus;
+import emulator.bus.device.cartridge.Cartridge;
+import emulator.interrupts.InterruptController;
+import emulator.interrupts.Timer;
+import emulator.scheduler.Scheduler;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single byte reads through the bus, per memory region.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BusBenchmark {
+    private static final int READS = 256;
+
+    // first address of the region, reads walk the following 256 bytes
+    @Param({"0x0100", "0x4000", "0xC000", "0xFF00", "0xFF80"})
+    private String region;
+
+    private GameboyBus bus;
+    private int baseAddress;
+
+    @Setup
+    public void setUp() {
+        InterruptController interruptController = new InterruptController();
+        Cartridge cartridge = Cartridge.createCartridge(BenchmarkRoms.bankNumberedMbc1());
+        bus = new GameboyBus(cartridge, interruptController, new Timer(interruptController, new Scheduler()), data -> {});
+        baseAddress = Integer.decode(region);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(READS)
+    public int readByteAt() {
+        int sum = 0;
+        // HRAM ends at 0xFFFE, the region is shorter there
+        int end = Math.min(baseAddress + READS, 0xFFFF);
+        for (int address = baseAddress; address < end; address++) {
+            sum += bus.readByteAt(address);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,60 @@
+package emulator.benchmarks;
+
+import emulator.bus.device.cartridge.MBC1Cartridge;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads straight from an MBC1 cartridge, with and without bank switches in between.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CartridgeBenchmark {
+    private static final int READS = 256;
+
+    private MBC1Cartridge cartridge;
+
+    @Setup
+    public void setUp() {
+        cartridge = new MBC1Cartridge(BenchmarkRoms.bankNumberedMbc1());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(READS)
+    public int readFixedBank() {
+        int sum = 0;
+        for (int address = 0x0100; address < 0x0100 + READS; address++) {
+            sum += cartridge.readByteAt(address);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(READS)
+    public int readSwitchableBank() {
+        int sum = 0;
+        for (int address = 0x4000; address < 0x4000 + READS; address++) {
+            sum += cartridge.readByteAt(address);
+        }
+        return sum;
+    }
+
+    /**
+     * Switches bank before every read, as code copying between banks does.
+     */
+    @Benchmark
+    @OperationsPerInvocation(READS)
+    public int readAcrossBankSwitches() {
+        int sum = 0;
+        for (int i = 0; i < READS; i++) {
+            cartridge.writeByteAt(0x2000, (byte) (1 + (i & 0b111)));
+            sum += cartridge.readByteAt(0x4000 + i);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,60 @@
+package emulator.benchmarks;
+
+import emulator.Gameboy;
+import emulator.cpu.DecoderType;
+import emulator.cpu.IInstructionDecoder;
+import emulator.cpu.InstructionDecoder;
+import emulator.cpu.InstructionFetcher;
+import emulator.cpu.TableInstructionDecoder;
+import emulator.cpu.register.RegisterFile;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes a mix of common opcodes with each decoder. Immediates are read from zeroed work RAM and HL points there
+ *   too, so decoders that execute part of the instruction while decoding stay out of ROM.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DecoderBenchmark {
+    // NOP, LD B,n, LD A,n, LD B,C, LD A,(HL), LD (HL),A, INC B, DEC C, ADD A,B, ADD A,A, XOR A, CP n,
+    //   INC HL, LD BC,nn, LD (HL+),A, LD A,(HL+)
+    private static final byte[] OPCODES = {
+            0x00, 0x06, 0x3E, 0x41, 0x7E, 0x77, 0x04, 0x0D, (byte) 0x80, (byte) 0x87, (byte) 0xAF, (byte) 0xFE,
+            0x23, 0x01, 0x22, 0x2A,
+    };
+    private static final int SCRATCH_ADDRESS = 0xC000;
+
+    @Param
+    private DecoderType decoderType;
+
+    private RegisterFile registerFile;
+    private IInstructionDecoder decoder;
+
+    @Setup
+    public void setUp() {
+        Gameboy gameboy = new Gameboy.BusBuilder().cartridge(BenchmarkRoms.bankNumberedMbc1()).buildBus().buildCpu().build();
+        registerFile = gameboy.getRegisters().getRegisterFile();
+        InstructionFetcher fetcher = new InstructionFetcher(gameboy.getRegisters(), gameboy.getBus());
+        decoder = switch (decoderType) {
+            case IF_CHAIN -> new InstructionDecoder(fetcher, gameboy.getRegisters(), gameboy.getBus(), gameboy.getInterruptController());
+            case TABLE -> new TableInstructionDecoder(fetcher, gameboy.getRegisters(), gameboy.getBus(), gameboy.getInterruptController());
+        };
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(16)
+    public void decode(Blackhole blackhole) {
+        for (byte opcode : OPCODES) {
+            registerFile.setPC(SCRATCH_ADDRESS);
+            registerFile.setHL(SCRATCH_ADDRESS);
+            blackhole.consume(decoder.decode(opcode));
+        }
+    }
+}
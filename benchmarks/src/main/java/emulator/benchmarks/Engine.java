@@ -0,0 +1,28 @@
+package emulator.benchmarks;
+
+import emulator.Gameboy;
+import emulator.cpu.DecoderType;
+
+/**
+ * Execution engine variants the whole system benchmarks compare. Add new engines here so they show up as
+ *   another value of {@link SystemBenchmark}'s engine parameter.
+ */
+public enum Engine {
+    // interpreter with the mask comparison decoder
+    IF_CHAIN,
+    // interpreter with the precomputed handler tables
+    TABLE,
+    // TABLE plus fused instruction sequences
+    SUPERINSTRUCTIONS,
+    // hot ROM code translated into JVM bytecode
+    DYNAMIC_RECOMPILER;
+
+    Gameboy.CpuBuilder configure(Gameboy.CpuBuilder cpuBuilder) {
+        return switch (this) {
+            case IF_CHAIN -> cpuBuilder.decoderType(DecoderType.IF_CHAIN).superinstructions(false);
+            case TABLE -> cpuBuilder.decoderType(DecoderType.TABLE).superinstructions(false);
+            case SUPERINSTRUCTIONS -> cpuBuilder.decoderType(DecoderType.TABLE).superinstructions(true);
+            case DYNAMIC_RECOMPILER -> cpuBuilder.decoderType(DecoderType.TABLE).superinstructions(false).dynamicRecompiler();
+        };
+    }
+}
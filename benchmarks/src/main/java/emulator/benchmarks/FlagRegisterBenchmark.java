@@ -0,0 +1,57 @@
+package emulator.benchmarks;
+
+import emulator.cpu.Alu;
+import emulator.cpu.Operator;
+import emulator.cpu.register.FlagRegister;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flag updates of an ALU heavy instruction stream, eager against lazy.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FlagRegisterBenchmark {
+    private static final int UPDATES = 256;
+
+    @Param({"true", "false"})
+    private boolean lazy;
+
+    // ALU instructions per flag read, as a conditional jump closing a loop does
+    @Param({"1", "8"})
+    private int updatesPerRead;
+
+    private FlagRegister flags;
+    private char[] addTable;
+    private char[] incrementTable;
+
+    @Setup
+    public void setUp() {
+        flags = new FlagRegister((byte) 0);
+        flags.setLazy(lazy);
+        addTable = Alu.table(Operator.ADD);
+        incrementTable = Alu.incrementTable();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(UPDATES)
+    public int update() {
+        int reads = 0;
+        for (int i = 0; i < UPDATES; i++) {
+            if ((i & 1) == 0) {
+                flags.deferFlags(addTable, Alu.index(i & 0xFF, 0x3C, 0, 0));
+            } else {
+                flags.deferZNH(incrementTable, i & 0xFF);
+            }
+            if (i % updatesPerRead == 0) {
+                reads += flags.getValue();
+            }
+        }
+        return reads;
+    }
+}
@@ -0,0 +1,56 @@
+package emulator.benchmarks;
+
+import emulator.Gameboy;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs cpu_instrs.gb from power on for a fixed number of instructions on every engine variant.
+ * Each invocation gets a fresh machine so all of them execute the same instructions, the setup isn't measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SystemBenchmark {
+    @Param
+    private Engine engine;
+
+    @Param({"true", "false"})
+    private boolean lazyFlags;
+
+    @Param({"true", "false"})
+    private boolean idleLoopDetection;
+
+    @Param({"1000000"})
+    private int instructions;
+
+    private byte[] romBytes;
+    private Gameboy gameboy;
+
+    @Setup(Level.Trial)
+    public void loadRom() {
+        romBytes = BenchmarkRoms.cpuInstrs();
+    }
+
+    @Setup(Level.Invocation)
+    public void powerOn() {
+        Gameboy.CpuBuilder cpuBuilder = new Gameboy.BusBuilder().cartridge(romBytes).serialHandler(data -> {}).buildBus()
+                .lazyFlags(lazyFlags).idleLoopDetection(idleLoopDetection);
+        gameboy = engine.configure(cpuBuilder).buildCpu().build();
+    }
+
+    @TearDown(Level.Invocation)
+    public void powerOff() {
+        gameboy.close();
+    }
+
+    @Benchmark
+    public int runInstructions() {
+        gameboy.runCpuFor(instructions);
+        return gameboy.getRegisters().getRegisterFile().getPC();
+    }
+}
@@ -0,0 +1,66 @@
+package emulator.benchmarks;
+
+import emulator.interrupts.InterruptController;
+import emulator.interrupts.Timer;
+import emulator.scheduler.Scheduler;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The timer the way the emulator drives it: the scheduler advances by the step sizes instructions take and fires
+ *   the overflow events, and reads of DIV and TIMA catch the timer up. For each TAC setting.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TimerBenchmark {
+    private static final int STEPS = 256;
+
+    // stopped, then enabled at 4096, 262144, 65536 and 16384 Hz
+    @Param({"0x00", "0x04", "0x05", "0x06", "0x07"})
+    private String tac;
+
+    private Scheduler scheduler;
+    private Timer timer;
+
+    @Setup
+    public void setUp() {
+        scheduler = new Scheduler();
+        timer = new Timer(new InterruptController(), scheduler);
+        // overflows every 16 ticks, so the enabled timers fire overflow events within a few invocations
+        timer.setTMA((byte) 0xF0);
+        timer.setTAC(Integer.decode(tac).byteValue());
+    }
+
+    /**
+     * Code that never looks at the timer, it only costs the overflow events.
+     */
+    @Benchmark
+    @OperationsPerInvocation(STEPS)
+    public long advance() {
+        for (int i = 0; i < STEPS; i++) {
+            scheduler.advance(4 + ((i & 0b11) << 2));
+        }
+        return scheduler.getNow();
+    }
+
+    /**
+     * A game polling DIV and TIMA every few instructions, each read syncing the timer.
+     */
+    @Benchmark
+    @OperationsPerInvocation(STEPS)
+    public int advanceAndPoll() {
+        int sum = 0;
+        for (int i = 0; i < STEPS; i++) {
+            scheduler.advance(4 + ((i & 0b11) << 2));
+            if ((i & 0b11) == 0) {
+                sum += timer.getDIV() + timer.getTIMA();
+            }
+        }
+        return sum;
+    }
+}
@@ -4,28 +4,58 @@ import emulator.bus.GameboyBus;
 import emulator.bus.device.cartridge.Cartridge;
 import emulator.cpu.CPU;
 import emulator.cpu.GameboyRegisters;
+import emulator.cpu.IdleLoopDetector;
+import emulator.cpu.DecoderType;
+import emulator.cpu.IInstructionDecoder;
 import emulator.cpu.InstructionDecoder;
 import emulator.cpu.InstructionFetcher;
+import emulator.cpu.ProfilingCPU;
+import emulator.cpu.TracingCPU;
+import emulator.cpu.SuperinstructionDecoder;
+import emulator.cpu.TableInstructionDecoder;
+import emulator.cpu.debug.IProfiler;
+import emulator.cpu.debug.ITraceSink;
+import emulator.cpu.jit.BlockCompiler;
+import emulator.cpu.jit.TieredExecutor;
 import emulator.interrupts.InterruptController;
 import emulator.interrupts.Timer;
+import emulator.run.IStopCondition;
+import emulator.run.RunResult;
+import emulator.run.StopReason;
+import emulator.scheduler.EventType;
+import emulator.scheduler.Scheduler;
 import emulator.bus.ISerialHandler;
 import emulator.bus.PrinterSerialHandler;
 
-public class Gameboy {
-    
+public class Gameboy implements AutoCloseable {
+    public static final int CLOCK_CYCLES_PER_FRAME = 70224;
+    // how often the stop conditions of a run are checked, in clock cycles
+    public static final int CHECK_INTERVAL = 4096;
+    private static final IStopCondition[] NO_CONDITIONS = new IStopCondition[0];
+
     private final Cartridge rom;
     private final InterruptController interruptController;
+    private final Scheduler scheduler;
     private final Timer timer;
     private final ISerialHandler serialHandler;
     private final GameboyBus bus;
     private final GameboyRegisters registers;
     private final InstructionFetcher instructionFetcher;
-    private final InstructionDecoder instructionDecoder;
+    private final IInstructionDecoder instructionDecoder;
     private final CPU cpu;
+    private final IdleLoopDetector idleLoopDetector;
+    private final TieredExecutor tieredExecutor;
+
+    // state of the run started by runClockCycles
+    private IStopCondition[] stopConditions = NO_CONDITIONS;
+    private StopReason stopReason;
+    private IStopCondition metCondition;
+    private boolean stopRequested;
 
     public Gameboy(GameboyBuilder builder) {
         this.rom = builder.rom;
         this.interruptController = builder.interruptController;
+        this.scheduler = builder.scheduler;
         this.timer = builder.timer;
         this.serialHandler = builder.serialHandler;
         this.bus = builder.bus;
@@ -33,32 +63,207 @@ public class Gameboy {
         this.instructionFetcher = builder.instructionFetcher;
         this.instructionDecoder = builder.instructionDecoder;
         this.cpu = builder.cpu;
+        this.idleLoopDetector = builder.idleLoopDetector;
+        this.tieredExecutor = builder.tieredExecutor;
     }
 
     public Gameboy(byte[] romBytes) {
         this.rom = Cartridge.createCartridge(romBytes);
         this.interruptController = new InterruptController();
-        this.timer = new Timer(interruptController);
+        this.scheduler = new Scheduler();
+        this.timer = new Timer(interruptController, scheduler);
         this.serialHandler = new PrinterSerialHandler();
+        this.rom.setMasterClock(scheduler::getNow);
         this.bus = new GameboyBus(rom, interruptController, timer, serialHandler);
         this.registers = new GameboyRegisters(bus);
+        this.registers.getRegisterFile().getF().setLazy(true);
         this.instructionFetcher = new InstructionFetcher(registers, bus);
-        this.instructionDecoder = new InstructionDecoder(instructionFetcher, registers, bus, interruptController);
-        this.cpu = new CPU(bus, registers, interruptController, instructionDecoder, instructionFetcher);
+        this.instructionDecoder = new TableInstructionDecoder(instructionFetcher, registers, bus, interruptController);
+        this.cpu = new CPU(bus, registers, interruptController, instructionDecoder, instructionFetcher,
+                new SuperinstructionDecoder(instructionFetcher, registers, bus, scheduler));
+        this.idleLoopDetector = new IdleLoopDetector(registers, bus, interruptController, timer, scheduler, rom);
+        this.tieredExecutor = null;
+    }
+
+    /**
+     * Runs until the clock has advanced by at least the given number of clock cycles (T-cycles), or until one of the
+     *   conditions is met. Either way it stops on the first instruction boundary at or after that point.
+     */
+    public RunResult runClockCycles(long clockCycles, IStopCondition... conditions) {
+        long start = scheduler.getNow();
+        stopConditions = conditions;
+        stopReason = null;
+        metCondition = null;
+
+        checkStopConditions();
+        if (stopReason == null && clockCycles <= 0) {
+            stopReason = StopReason.BUDGET_EXHAUSTED;
+        }
+        if (stopReason == null) {
+            boolean everyInstruction = false;
+            for (IStopCondition condition : conditions) {
+                everyInstruction |= condition.needsEveryInstruction();
+            }
+            // set here rather than in the constructors, which must not hand out this
+            scheduler.setHandler(EventType.RUN_LIMIT, this::onRunLimit);
+            scheduler.setHandler(EventType.RUN_CHECK, this::onRunCheck);
+            scheduler.schedule(EventType.RUN_LIMIT, start + clockCycles);
+            if (conditions.length > 0) {
+                scheduler.schedule(EventType.RUN_CHECK, start + CHECK_INTERVAL);
+            }
+            while (stopReason == null) {
+                runCpuFor(everyInstruction ? 1 : Integer.MAX_VALUE);
+                if (everyInstruction) {
+                    checkStopConditions();
+                }
+            }
+            scheduler.cancel(EventType.RUN_LIMIT);
+            scheduler.cancel(EventType.RUN_CHECK);
+        }
+
+        stopConditions = NO_CONDITIONS;
+        return new RunResult(stopReason, metCondition, scheduler.getNow() - start);
+    }
+
+    /**
+     * Same as {@link #runClockCycles(long, IStopCondition...)}, with the budget in machine cycles (M-cycles).
+     */
+    public RunResult runMachineCycles(long machineCycles, IStopCondition... conditions) {
+        return runClockCycles(machineCycles * 4, conditions);
+    }
+
+    private void onRunLimit() {
+        checkStopConditions();
+        if (stopReason == null) {
+            stopReason = StopReason.BUDGET_EXHAUSTED;
+            requestStop();
+        }
+    }
+
+    private void onRunCheck() {
+        checkStopConditions();
+        if (stopReason == null) {
+            scheduler.schedule(EventType.RUN_CHECK, scheduler.getNow() + CHECK_INTERVAL);
+        }
+    }
+
+    private void checkStopConditions() {
+        for (IStopCondition condition : stopConditions) {
+            if (condition.isMet(this)) {
+                stopReason = StopReason.CONDITION_MET;
+                metCondition = condition;
+                requestStop();
+                return;
+            }
+        }
+    }
+
+    private void requestStop() {
+        stopRequested = true;
+        if (tieredExecutor != null) {
+            tieredExecutor.requestStop();
+        }
     }
 
     public void runCpuFor(int maxCycles) {
+        if (tieredExecutor != null) {
+            tieredExecutor.run(maxCycles);
+            return;
+        }
         int currCycle = 0;
-        while(currCycle++ < maxCycles) {
-            int numCycles = cpu.executeNext();
-            numCycles += cpu.checkInterrupts();
-            timer.addCycles(numCycles*4);
+        stopRequested = false;
+        while(currCycle < maxCycles && !stopRequested) {
+            int haltSteps = cpu.skippableHaltSteps(maxCycles - currCycle, scheduler);
+            if (haltSteps > 0) {
+                scheduler.advance(haltSteps * 4);
+                currCycle += haltSteps;
+                continue;
+            }
+            if (idleLoopDetector != null) {
+                int idleSteps = idleLoopDetector.fastForward(maxCycles - currCycle);
+                if (idleSteps > 0) {
+                    currCycle += idleSteps;
+                    continue;
+                }
+            }
+            int pc = registers.getRegisterFile().getPC();
+            int numCycles = cpu.executeNext(maxCycles - currCycle);
+            int numInstructions = cpu.getRetiredInstructionCount();
+            currCycle += numInstructions;
+            int interruptCycles = cpu.checkInterrupts();
+            scheduler.advance((numCycles + interruptCycles)*4);
+            if (idleLoopDetector != null) {
+                idleLoopDetector.afterStep(pc, numInstructions, numCycles, interruptCycles != 0);
+            }
+        }
+    }
+
+    public GameboyRegisters getRegisters() {
+        return registers;
+    }
+
+    public CPU getCpu() {
+        return cpu;
+    }
+
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    public GameboyBus getBus() {
+        return bus;
+    }
+
+    /**
+     * @return the cartridge, null if this Gameboy was built around an existing bus
+     */
+    public Cartridge getCartridge() {
+        return rom;
+    }
+
+    public Timer getTimer() {
+        return timer;
+    }
+
+    public InterruptController getInterruptController() {
+        return interruptController;
+    }
+
+    /**
+     * @return number of whole frames since power on, going by the clock
+     */
+    public long getFrameCount() {
+        return scheduler.getNow() / CLOCK_CYCLES_PER_FRAME;
+    }
+
+    /**
+     * @return the idle loop detector, or null if it is turned off
+     */
+    public IdleLoopDetector getIdleLoopDetector() {
+        return idleLoopDetector;
+    }
+
+    /**
+     * @return the dynamic recompiler, or null if this Gameboy only interprets
+     */
+    public TieredExecutor getTieredExecutor() {
+        return tieredExecutor;
+    }
+
+    /**
+     * Gives back anything shared with other instances, such as a shared ROM image.
+     */
+    @Override
+    public void close() {
+        if (rom != null) {
+            rom.close();
         }
     }
 
     public static class BusBuilder {
       private Cartridge rom;
       private InterruptController interruptController;
+      private Scheduler scheduler;
       private Timer timer;
       private ISerialHandler serialHandler;
       private GameboyBus bus;
@@ -79,11 +284,31 @@ public class Gameboy {
           return this;
       }
 
+      /**
+       * Runs the ROM from the JVM wide {@link emulator.bus.device.cartridge.RomRepository}, held until
+       *   {@link Gameboy#close()}.
+       */
+      public BusBuilder sharedCartridge(byte[] romBytes) {
+          if (this.rom != null) {
+              throw new IllegalStateException("Cartridge is already set");
+          }
+          this.rom = Cartridge.createSharedCartridge(romBytes);
+          return this;
+      }
+
       public BusBuilder interruptController(InterruptController interruptController) {
           this.interruptController = interruptController;
           return this;
       }
 
+      public BusBuilder scheduler(Scheduler scheduler) {
+          this.scheduler = scheduler;
+          return this;
+      }
+
+      /**
+       * The timer has to be created with the same scheduler as the one given to {@link #scheduler(Scheduler)}.
+       */
       public BusBuilder timer(Timer timer) {
           this.timer = timer;
           return this;
@@ -101,12 +326,16 @@ public class Gameboy {
         if (this.interruptController == null) {
           this.interruptController = new InterruptController();
         }
+        if (this.scheduler == null) {
+          this.scheduler = new Scheduler();
+        }
         if (this.timer == null) {
-          this.timer = new Timer(this.interruptController);
+          this.timer = new Timer(this.interruptController, this.scheduler);
         }
         if (this.serialHandler == null) {
             this.serialHandler = new PrinterSerialHandler();
         }
+        this.rom.setMasterClock(this.scheduler::getNow);
         this.bus = new GameboyBus(this.rom, this.interruptController, this.timer, this.serialHandler);
         return new CpuBuilder(this);
       }
@@ -115,24 +344,38 @@ public class Gameboy {
     public static class CpuBuilder {
       private Cartridge rom;
       private InterruptController interruptController;
+      private Scheduler scheduler;
       private Timer timer;
       private ISerialHandler serialHandler;
       private GameboyBus bus;
       private GameboyRegisters registers;
       private InstructionFetcher instructionFetcher;
-      private InstructionDecoder instructionDecoder;
+      private IInstructionDecoder instructionDecoder;
+      private DecoderType decoderType = DecoderType.TABLE;
+      private boolean lazyFlags = true;
+      private boolean superinstructions = true;
+      private boolean idleLoopDetection = true;
+      private boolean dynamicRecompiler;
+      private int hotThreshold = TieredExecutor.DEFAULT_HOT_THRESHOLD;
+      private int maxCachedBlocks = TieredExecutor.DEFAULT_MAX_CACHED_BLOCKS;
+      private IProfiler profiler;
+      private ITraceSink tracer;
       private CPU cpu;
+      private IdleLoopDetector idleLoopDetector;
+      private TieredExecutor tieredExecutor;
 
       public CpuBuilder(BusBuilder busBuilder) {
           this.rom = busBuilder.rom;
           this.interruptController = busBuilder.interruptController;
+          this.scheduler = busBuilder.scheduler;
           this.timer = busBuilder.timer;
           this.serialHandler = busBuilder.serialHandler;
           this.bus = busBuilder.bus;
       }
 
       // short circuit, skipping the bus builder
-      public CpuBuilder(Timer timer, GameboyBus bus) {
+      public CpuBuilder(Scheduler scheduler, Timer timer, GameboyBus bus) {
+          this.scheduler = scheduler;
           this.timer = timer;
           this.bus = bus;
       }
@@ -147,23 +390,109 @@ public class Gameboy {
           return this;
       }
 
-      public CpuBuilder instructionDecoder(InstructionDecoder instructionDecoder) {
+      public CpuBuilder instructionDecoder(IInstructionDecoder instructionDecoder) {
           this.instructionDecoder = instructionDecoder;
           return this;
       }
 
+      public CpuBuilder decoderType(DecoderType decoderType) {
+          this.decoderType = decoderType;
+          return this;
+      }
+
+      public CpuBuilder lazyFlags(boolean lazyFlags) {
+          this.lazyFlags = lazyFlags;
+          return this;
+      }
+
+      public CpuBuilder superinstructions(boolean superinstructions) {
+          this.superinstructions = superinstructions;
+          return this;
+      }
+
+      public CpuBuilder idleLoopDetection(boolean idleLoopDetection) {
+          this.idleLoopDetection = idleLoopDetection;
+          return this;
+      }
+
+      /**
+       * Translates hot ROM code into JVM bytecode. Needs the TABLE decoder and a cartridge from the bus builder.
+       */
+      public CpuBuilder dynamicRecompiler() {
+          return dynamicRecompiler(TieredExecutor.DEFAULT_HOT_THRESHOLD, TieredExecutor.DEFAULT_MAX_CACHED_BLOCKS);
+      }
+
+      public CpuBuilder dynamicRecompiler(int hotThreshold, int maxCachedBlocks) {
+          this.dynamicRecompiler = true;
+          this.hotThreshold = hotThreshold;
+          this.maxCachedBlocks = maxCachedBlocks;
+          return this;
+      }
+
+      /**
+       * Reports every instruction executed to the profiler. Superinstructions are turned off while profiling, and so
+       *   is idle loop detection if the profiler needs every instruction, since they would hide the instructions
+       *   they skip. The dynamic recompiler can't be used with it.
+       */
+      public CpuBuilder profiler(IProfiler profiler) {
+          this.profiler = profiler;
+          return this;
+      }
+
+      /**
+       * Hands the state before every instruction executed to the tracer, which stays open until the caller closes it.
+       *   Superinstructions and idle loop detection are turned off while tracing, and it can't be combined with a
+       *   profiler or the dynamic recompiler.
+       */
+      public CpuBuilder tracer(ITraceSink tracer) {
+          this.tracer = tracer;
+          return this;
+      }
+
       public GameboyBuilder buildCpu() {
         if (this.registers == null) {
           this.registers = new GameboyRegisters(this.bus);
         }
+        this.registers.getRegisterFile().getF().setLazy(this.lazyFlags);
         if (this.instructionFetcher == null) {
           this.instructionFetcher = new InstructionFetcher(this.registers, this.bus);
         }
         if (this.instructionDecoder == null) {
-          this.instructionDecoder = new InstructionDecoder(this.instructionFetcher, this.registers, this.bus, this.interruptController);
+          this.instructionDecoder = switch (this.decoderType) {
+            case IF_CHAIN -> new InstructionDecoder(this.instructionFetcher, this.registers, this.bus, this.interruptController);
+            case TABLE -> new TableInstructionDecoder(this.instructionFetcher, this.registers, this.bus, this.interruptController);
+          };
         }
         
-        this.cpu = new CPU(this.bus, this.registers, this.interruptController, this.instructionDecoder, this.instructionFetcher);
+        if ((this.profiler != null || this.tracer != null) && this.dynamicRecompiler) {
+          throw new IllegalStateException("Profiler and tracer can't be used with the dynamic recompiler");
+        }
+        if (this.profiler != null && this.tracer != null) {
+          throw new IllegalStateException("Profiler and tracer can't be used together");
+        }
+        if (this.tracer != null) {
+          this.cpu = new TracingCPU(this.bus, this.registers, this.interruptController, this.instructionDecoder, this.instructionFetcher, this.scheduler, this.rom, this.tracer);
+        } else if (this.profiler != null) {
+          this.cpu = new ProfilingCPU(this.bus, this.registers, this.interruptController, this.instructionDecoder, this.instructionFetcher, this.profiler);
+          this.profiler.attach(this.scheduler, this.rom);
+        } else {
+          SuperinstructionDecoder superinstructionDecoder = null;
+          if (this.superinstructions) {
+            superinstructionDecoder = new SuperinstructionDecoder(this.instructionFetcher, this.registers, this.bus, this.scheduler);
+          }
+          this.cpu = new CPU(this.bus, this.registers, this.interruptController, this.instructionDecoder, this.instructionFetcher, superinstructionDecoder);
+        }
+        if (this.idleLoopDetection && this.tracer == null && (this.profiler == null || !this.profiler.needsEveryInstruction())) {
+          this.idleLoopDetector = new IdleLoopDetector(this.registers, this.bus, this.interruptController, this.timer, this.scheduler, this.rom);
+        }
+        if (this.dynamicRecompiler) {
+          if (!(this.instructionDecoder instanceof TableInstructionDecoder tableDecoder) || this.rom == null) {
+            throw new IllegalStateException("Dynamic recompiler needs the TABLE decoder and a cartridge");
+          }
+          this.tieredExecutor = new TieredExecutor(this.cpu, this.registers.getRegisterFile(), this.bus, this.interruptController, this.scheduler,
+                  this.rom, new BlockCompiler(tableDecoder, this.rom), this.idleLoopDetector, this.hotThreshold, this.maxCachedBlocks);
+          this.rom.addBankSwitchListener(this.tieredExecutor);
+        }
         return new GameboyBuilder(this);
       }
     }
@@ -171,17 +500,21 @@ public class Gameboy {
     public static class GameboyBuilder {
         private Cartridge rom;
         private InterruptController interruptController;
+        private Scheduler scheduler;
         private Timer timer;
         private ISerialHandler serialHandler;
         private GameboyBus bus;
         private GameboyRegisters registers;
         private InstructionFetcher instructionFetcher;
-        private InstructionDecoder instructionDecoder;
+        private IInstructionDecoder instructionDecoder;
         private CPU cpu;
+        private IdleLoopDetector idleLoopDetector;
+        private TieredExecutor tieredExecutor;
 
         public GameboyBuilder(CpuBuilder cpuBuilder) {
           this.rom = cpuBuilder.rom;
           this.interruptController = cpuBuilder.interruptController;
+          this.scheduler = cpuBuilder.scheduler;
           this.timer = cpuBuilder.timer;
           this.serialHandler = cpuBuilder.serialHandler;
           this.bus = cpuBuilder.bus;
@@ -189,10 +522,13 @@ public class Gameboy {
           this.instructionFetcher = cpuBuilder.instructionFetcher;
           this.instructionDecoder = cpuBuilder.instructionDecoder;
           this.cpu = cpuBuilder.cpu;
+          this.idleLoopDetector = cpuBuilder.idleLoopDetector;
+          this.tieredExecutor = cpuBuilder.tieredExecutor;
         }
 
         // short circuit, skipping steps 1 + 2
-        public GameboyBuilder(Timer timer, CPU cpu) {
+        public GameboyBuilder(Scheduler scheduler, Timer timer, CPU cpu) {
+            this.scheduler = scheduler;
             this.timer = timer;
             this.cpu = cpu;
         }
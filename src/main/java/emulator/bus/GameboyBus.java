@@ -3,10 +3,15 @@ package emulator.bus;
 import emulator.bus.device.HRAM;
 import emulator.bus.device.WRAM;
 import emulator.bus.device.IBusDevice;
+import emulator.bus.device.cartridge.Cartridge;
+import emulator.bus.device.cartridge.IBankSwitchListener;
 import emulator.interrupts.InterruptController;
 import emulator.interrupts.Timer;
 
 public class GameboyBus implements IBus {
+    private static final int PAGE_COUNT = 256;
+    private static final int PAGE_SIZE = 256;
+
     // 0000	- 3FFF emulator.ROM bank 0
     // 4000 - 7FFF emulator.ROM bank 1 (switchable)
     // C000 - CFFF work ram
@@ -15,148 +20,336 @@ public class GameboyBus implements IBus {
     private final WRAM wram1;
     private final WRAM wram2;
     private final HRAM hram;
-    private final InterruptController interruptController;
-    private final Timer timer;
-    private final ISerialHandler serialHandler;
+    private final SerialPort serialPort;
+    private final IoRegisters ioRegisters = new IoRegisters();
+
+    // page table keyed by the high address byte. A page either points straight at backing memory (array + offset of
+    //   the page's first byte), or has a null array and goes through its handler instead.
+    private final byte[][] readPages = new byte[PAGE_COUNT][];
+    private final int[] readOffsets = new int[PAGE_COUNT];
+    private final byte[][] writePages = new byte[PAGE_COUNT][];
+    private final int[] writeOffsets = new int[PAGE_COUNT];
+    private final IBusDevice[] pageHandlers = new IBusDevice[PAGE_COUNT];
 
-    private byte serialData;
+    // running totals, compared before and after a stretch of code to tell whether it wrote memory or polled I/O
+    private long writeCount;
+    private long ioReadCount;
 
     public GameboyBus(IBusDevice cartridge, InterruptController interruptController, Timer timer, ISerialHandler serialHandler) {
         this.cartridge = cartridge;
-        this.interruptController = interruptController;
-        this.timer = timer;
         this.wram1 = new WRAM();
         this.wram2 = new WRAM();
         this.hram = new HRAM();
-        this.serialHandler = serialHandler;
-    }
+        this.serialPort = new SerialPort(serialHandler);
 
-    public byte readByteAt(int addr) {
-        if (addr < 0x8000) {
-            // Cartridge ROM
-            return cartridge.readByteAt(addr);
-        }
-        if (addr >= 0xA000 && addr < 0xC000) {
-            // Cartridge RAM
-            return cartridge.readByteAt(addr);
+        serialPort.registerIoRegisters(ioRegisters);
+        timer.registerIoRegisters(ioRegisters);
+        interruptController.registerIoRegisters(ioRegisters);
+        registerPpuStub();
+
+        mapHandler(0x00, 0x100, new UnmappedPage());
+        // writes to ROM are MBC register writes, so they always go to the cartridge
+        mapHandler(0x00, 0x80, cartridge);
+        if (cartridge instanceof Cartridge mbc) {
+            mapReadOnly(0x00, 0x40, mbc.getRomMemory(), mbc.getFixedRomBankOffset());
+            mapReadOnly(0x40, 0x40, mbc.getRomMemory(), mbc.getActiveRomBankOffset());
         }
-        if (addr >= 0xC000 && addr < 0xD000) {
-            return wram1.readByteAt(addr - 0xC000);
+        mapHandler(0x80, 0x20, new PpuStubPage());
+        // cartridge RAM
+        mapHandler(0xA0, 0x20, cartridge);
+        if (cartridge instanceof Cartridge mbc) {
+            mbc.addBankSwitchListener(new IBankSwitchListener() {
+                @Override
+                public void onRomBankSwitched(int bank) {
+                    mapReadOnly(0x40, 0x40, mbc.getRomMemory(), mbc.getActiveRomBankOffset());
+                }
+
+                @Override
+                public void onFixedRomBankSwitched(int bank) {
+                    mapReadOnly(0x00, 0x40, mbc.getRomMemory(), mbc.getFixedRomBankOffset());
+                }
+
+                @Override
+                public void onRamMappingChanged() {
+                    mapCartridgeRam(mbc);
+                }
+            });
+            mapCartridgeRam(mbc);
         }
-        if (addr >= 0xD000 && addr < 0xE000) {
-            return wram2.readByteAt(addr - 0xD000);
+        mapMemory(0xC0, 0x10, wram1.getMemory(), 0);
+        mapMemory(0xD0, 0x10, wram2.getMemory(), 0);
+        mapHandler(0xFF, 0x01, new HighPage());
+    }
+
+    public byte readByteAt(int addr) {
+        int page = addr >>> 8;
+        byte[] memory = readPages[page];
+        if (memory != null) {
+            return memory[readOffsets[page] + (addr & 0xFF)];
         }
-        if (Integer.compareUnsigned(addr, 0x8000) >= 0 && Integer.compareUnsigned(addr, 0xA000) < 0) {
-            // PPU
-            return 0;
+        return pageHandlers[page].readByteAt(addr);
+    }
+
+    public void writeByteAt(int addr, byte value) {
+        writeCount++;
+        int page = addr >>> 8;
+        byte[] memory = writePages[page];
+        if (memory != null) {
+            memory[writeOffsets[page] + (addr & 0xFF)] = value;
+            return;
         }
-        if (addr >= 0xFF40 && addr <= 0xFF45 || addr >= 0xFF47 && addr <= 0xFF4B) {
-            // PPU
-            if (addr == 0xFF44)
-                return (byte) 0x90; // STUB
-            return 0;
+        pageHandlers[page].writeByteAt(addr, value);
+    }
+
+    @Override
+    public int readWord(int addr) {
+        int page = addr >>> 8;
+        byte[] memory = readPages[page];
+        if (memory != null && (addr & 0xFF) != 0xFF) {
+            // both bytes on the same page
+            int index = readOffsets[page] + (addr & 0xFF);
+            return (memory[index] & 0xFF) | (memory[index + 1] & 0xFF) << 8;
         }
-        if (addr >= 0xFF80 && addr <= 0xFFEF) {
-            return hram.readByteAt(addr - 0xFF80);
+        return IBus.super.readWord(addr);
+    }
+
+    @Override
+    public void writeWord(int addr, int value) {
+        int page = addr >>> 8;
+        byte[] memory = writePages[page];
+        if (memory != null && (addr & 0xFF) != 0xFF) {
+            writeCount += 2;
+            int index = writeOffsets[page] + (addr & 0xFF);
+            memory[index] = (byte) value;
+            memory[index + 1] = (byte) (value >>> 8);
+            return;
         }
-        if (addr == 0xFF4D) {
-            return (byte) 0xFF;
+        IBus.super.writeWord(addr, value);
+    }
+
+    @Override
+    public void pushWord(int addr, int value) {
+        int page = addr >>> 8;
+        byte[] memory = writePages[page];
+        if (memory != null && (addr & 0xFF) != 0xFF) {
+            // plain memory, the write order can't be observed
+            writeCount += 2;
+            int index = writeOffsets[page] + (addr & 0xFF);
+            memory[index + 1] = (byte) (value >>> 8);
+            memory[index] = (byte) value;
+            return;
         }
-        if (addr == 0xFF0F) {
-            return interruptController.getInterruptFlag();
+        IBus.super.pushWord(addr, value);
+    }
+
+    /**
+     * Copies whole pages at a time out of mapped memory, going byte by byte only through handler pages. Wraps around from 0xFFFF to 0x0000.
+     */
+    @Override
+    public void readBlock(int addr, byte[] dest, int off, int len) {
+        while (len > 0) {
+            int page = addr >>> 8;
+            int chunk = Math.min(len, PAGE_SIZE - (addr & 0xFF));
+            byte[] memory = readPages[page];
+            if (memory != null) {
+                System.arraycopy(memory, readOffsets[page] + (addr & 0xFF), dest, off, chunk);
+            } else {
+                for (int i = 0; i < chunk; i++) {
+                    dest[off + i] = readByteAt(addr + i);
+                }
+            }
+            addr = (addr + chunk) & 0xFFFF;
+            off += chunk;
+            len -= chunk;
         }
-        if (addr == 0xFF05) {
-            // TIMA
-            return timer.getTIMA();
+    }
+
+    @Override
+    public void writeBlock(int addr, byte[] src, int off, int len) {
+        while (len > 0) {
+            int page = addr >>> 8;
+            int chunk = Math.min(len, PAGE_SIZE - (addr & 0xFF));
+            byte[] memory = writePages[page];
+            if (memory != null) {
+                writeCount += chunk;
+                System.arraycopy(src, off, memory, writeOffsets[page] + (addr & 0xFF), chunk);
+            } else {
+                for (int i = 0; i < chunk; i++) {
+                    writeByteAt(addr + i, src[off + i]);
+                }
+            }
+            addr = (addr + chunk) & 0xFFFF;
+            off += chunk;
+            len -= chunk;
         }
-        if (addr == 0xFF06) {
-            // TMA
-            return timer.getTMA();
+    }
+
+    /**
+     * Maps pages straight onto readable and writable memory, the first page starting at the given offset into the
+     *   array. Also how banked memory is switched: mapping the new bank over the same pages.
+     */
+    public final void mapMemory(int firstPage, int pageCount, byte[] memory, int offset) {
+        mapReadOnly(firstPage, pageCount, memory, offset);
+        for (int i = 0; i < pageCount; i++) {
+            writePages[firstPage + i] = memory;
+            writeOffsets[firstPage + i] = offset + i * PAGE_SIZE;
         }
-        if (addr == 0xFF07) {
-            // TAC
-            return timer.getTAC();
+    }
+
+    /**
+     * Maps pages straight onto memory for reads only, writes still go to the pages' handler.
+     */
+    public final void mapReadOnly(int firstPage, int pageCount, byte[] memory, int offset) {
+        for (int i = 0; i < pageCount; i++) {
+            readPages[firstPage + i] = memory;
+            readOffsets[firstPage + i] = offset + i * PAGE_SIZE;
         }
-        throw new IndexOutOfBoundsException("address " + String.format("0x%02X%n", addr) + "cannot be read from");
     }
-    public void writeByteAt(int addr, byte value) {
-        if (addr < 0x8000) {
-            // Cartridge ROM
-//            throw new IllegalArgumentException("Cannot write to ROM at address " + String.format("0x%02X%n", addr) + " with value " + String.format("0x%02X%n", value));
-            cartridge.writeByteAt(addr, value);
+
+    /**
+     * Maps enabled cartridge RAM for reads, writes always go to the cartridge so battery backed RAM sees them.
+     */
+    private void mapCartridgeRam(Cartridge mbc) {
+        mapHandler(0xA0, 0x20, mbc);
+        if (!mbc.isRamEnabled()) {
             return;
         }
-        if (addr >= 0xA000 && addr < 0xC000) {
-            // Cartridge RAM
-            cartridge.writeByteAt(addr, value);
+        byte[] ram = mbc.getRamMemory();
+        for (int i = 0; i < 0x20; i++) {
+            // RAM smaller than 8 KiB repeats
+            mapReadOnly(0xA0 + i, 1, ram, (mbc.getActiveRamBankOffset() + i * PAGE_SIZE) % ram.length);
         }
-        if (addr >= 0xC000 && addr < 0xD000) {
-            wram1.writeByteAt(addr - 0xC000, value);
-            return;
+    }
+
+    /**
+     * Sends every read and write on the given pages to a handler, which gets the full address.
+     */
+    public final void mapHandler(int firstPage, int pageCount, IBusDevice handler) {
+        for (int i = 0; i < pageCount; i++) {
+            readPages[firstPage + i] = null;
+            writePages[firstPage + i] = null;
+            pageHandlers[firstPage + i] = handler;
         }
-        if (addr >= 0xD000 && addr < 0xE000) {
-            wram2.writeByteAt(addr - 0xD000, value);
-            return;
+    }
+
+    /**
+     * @return number of writes so far, to any address
+     */
+    public long getWriteCount() {
+        return writeCount;
+    }
+
+    /**
+     * @return number of reads from I/O registers (0xFF00-0xFF7F) so far
+     */
+    public long getIoReadCount() {
+        return ioReadCount;
+    }
+
+    /**
+     * @return the last few thousand characters sent over serial
+     */
+    public String getSerialOutput() {
+        return serialPort.getOutput();
+    }
+
+    /**
+     * @return number of bytes sent over serial so far
+     */
+    public long getSerialByteCount() {
+        return serialPort.getByteCount();
+    }
+
+    /**
+     * @param bank 0 for 0xC000-0xCFFF, 1 for 0xD000-0xDFFF
+     * @return the backing array of the work RAM bank
+     */
+    public byte[] getWorkRamMemory(int bank) {
+        return bank == 0 ? wram1.getMemory() : wram2.getMemory();
+    }
+
+    public byte[] getHighRamMemory() {
+        return hram.getMemory();
+    }
+
+    /**
+     * @return the I/O register registry, for plugging in further devices
+     */
+    public IoRegisters getIoRegisters() {
+        return ioRegisters;
+    }
+
+    private void registerPpuStub() {
+        // until there is a PPU, LCD registers read as 0 and LY sits at the start of VBlank
+        for (int addr = 0xFF40; addr <= 0xFF4B; addr++) {
+            if (addr != 0xFF46) {
+                ioRegisters.registerReadOnly(addr, () -> 0);
+            }
         }
-        if (Integer.compareUnsigned(addr, 0x8000) >= 0 && Integer.compareUnsigned(addr, 0xA000) < 0) {
-            // PPU
-            return;
+        ioRegisters.registerReadOnly(0xFF44, () -> (byte) 0x90);
+    }
+
+    private byte readHighPage(int addr) {
+        if (addr >= 0xFF80 && addr <= 0xFFEF) {
+            return hram.readByteAt(addr - 0xFF80);
         }
-        if (addr >= 0xFF40 && addr <= 0xFF45 || addr >= 0xFF47 && addr <= 0xFF4B) {
-            // PPU
-            return;
+        if (addr < 0xFF80) {
+            ioReadCount++;
         }
+        return ioRegisters.read(addr);
+    }
+
+    private void writeHighPage(int addr, byte value) {
         if (addr >= 0xFF80 && addr <= 0xFFEF) {
             hram.writeByteAt(addr - 0xFF80, value);
             return;
         }
-        if (addr >= 0xFF00) {
-            handleIOWrite(addr, value);
-            return;
+        ioRegisters.write(addr, value);
+    }
+
+    private static IndexOutOfBoundsException unmapped(int addr, String access) {
+        return new IndexOutOfBoundsException(String.format("address 0x%04X cannot be %s", addr, access));
+    }
+
+    /**
+     * 0xFF00-0xFFFF: I/O registers, HRAM and IE share a page, so HRAM is picked out and the rest goes to the
+     *   {@link IoRegisters}.
+     */
+    private class HighPage implements IBusDevice {
+        @Override
+        public byte readByteAt(int addr) {
+            return readHighPage(addr);
         }
 
-        throw new IndexOutOfBoundsException("address " + String.format("0x%02X%n", addr) + "cannot be written to");
+        @Override
+        public void writeByteAt(int addr, byte value) {
+            writeHighPage(addr, value);
+        }
     }
 
-    private void handleIOWrite(int addr, byte value) {
-        if (addr == 0xFF01) {
-            // serial data
-            serialData = value;
-//            System.out.println("Writing SERIAL data... " + String.format("0x%02X", addr) + " with value " + String.format("0x%02X", value));
-        } else if (addr == 0xFF02) {
-            // serial control
-            if ((value & 0x80) == 0x80) {
-                char dataToWrite = (char) (serialData & 0xFF);
-                serialHandler.writeSerial(dataToWrite);
-            }
-//            System.out.println("Writing SERIAL control... " + String.format("0x%02X", addr) + " with value " + String.format("0x%02X", value));
-        } else if (addr == 0xFF04) {
-//            System.out.println("Writing to special DIV address " + String.format("0x%02X", addr) + " with value " + String.format("0x%02X", value));
-        } else if (addr == 0xFF05) {
-//            System.out.println("Writing to TIMER TIMA address " + String.format("0x%02X", addr) + " with value " + String.format("0x%02X", value));
-            timer.setTIMA(value);
-        } else if (addr == 0xFF06) {
-//            System.out.println("Writing to TIMER TMA address " + String.format("0x%02X", addr) + " with value " + String.format("0x%02X", value));
-            timer.setTMA(value);
-        } else if (addr == 0xFF07) {
-//            System.out.println("Writing to TIMER TAC " + String.format("0x%02X", addr) + " with value " + String.format("0x%02X", value));
-            timer.setTAC(value);
-        } else if (addr >= 0xFF10 && addr <= 0xFF14) {
-//            System.out.println("Writing to special SOUND address " + String.format("0x%02X", addr) + " with value " + String.format("0x%02X", value));
-        } else if (addr >= 0xFF16 && addr <= 0xFF1E) {
-//            System.out.println("Writing to special SOUND address " + String.format("0x%02X", addr) + " with value " + String.format("0x%02X", value));
-        } else if (addr >= 0xFF20 && addr <= 0xFF26) {
-//            System.out.println("Writing to special SOUND address " + String.format("0x%02X", addr) + " with value " + String.format("0x%02X", value));
-        } else if (addr >= 0xFF30 && addr <= 0xFF3F) {
-//            System.out.println("Writing to special SOUND address " + String.format("0x%02X", addr) + " with value " + String.format("0x%02X", value));
-        } else if (addr == 0xFF0F) {
-//            System.out.println("Writing to special Interrupt Flag address " + String.format("0x%02X", addr) + " with value " + String.format("0x%02X", value));
-            interruptController.setInterruptFlag(value);
-        } else if (addr == 0xFFFF) {
-//            System.out.println("Writing to special Interrupt Enable address " + String.format("0x%02X", addr) + " with value " + String.format("0x%02X", value));
-            interruptController.setInterruptEnable(value);
-        } else {
-            throw new IndexOutOfBoundsException("address " + String.format("0x%02X%n", addr) + "cannot be written to");
+    /**
+     * 0x8000-0x9FFF: VRAM, stubbed until there is a PPU.
+     */
+    private static class PpuStubPage implements IBusDevice {
+        @Override
+        public byte readByteAt(int addr) {
+            return 0;
+        }
+
+        @Override
+        public void writeByteAt(int addr, byte value) {
+        }
+    }
+
+    private static class UnmappedPage implements IBusDevice {
+        @Override
+        public byte readByteAt(int addr) {
+            throw unmapped(addr, "read from");
+        }
+
+        @Override
+        public void writeByteAt(int addr, byte value) {
+            throw unmapped(addr, "written to");
         }
     }
 }
@@ -3,4 +3,48 @@ package emulator.bus;
 public interface IBus {
     byte readByteAt(int addr);
     void writeByteAt(int addr, byte value);
+
+    /**
+     * Reads a little endian word, low byte first. The second byte wraps around from 0xFFFF to 0x0000.
+     */
+    default int readWord(int addr) {
+        int lowerByte = readByteAt(addr) & 0xFF;
+        return lowerByte | (readByteAt((addr + 1) & 0xFFFF) & 0xFF) << 8;
+    }
+
+    /**
+     * Writes a little endian word, low byte first. The second byte wraps around from 0xFFFF to 0x0000.
+     */
+    default void writeWord(int addr, int value) {
+        writeByteAt(addr, (byte) value);
+        writeByteAt((addr + 1) & 0xFFFF, (byte) (value >>> 8));
+    }
+
+    /**
+     * Writes a stack push of the word to addr and addr + 1 in hardware order, high byte first. The order only shows
+     *   when a push lands on a register, IE at 0xFFFF during interrupt dispatch for one.
+     */
+    default void pushWord(int addr, int value) {
+        writeByteAt((addr + 1) & 0xFFFF, (byte) (value >>> 8));
+        writeByteAt(addr, (byte) value);
+    }
+
+    /**
+     * Copies len bytes starting at addr into dest, as if read one at a time. Wraps around from 0xFFFF to 0x0000.
+     */
+    default void readBlock(int addr, byte[] dest, int off, int len) {
+        for (int i = 0; i < len; i++) {
+            dest[off + i] = readByteAt((addr + i) & 0xFFFF);
+        }
+    }
+
+    /**
+     * Copies len bytes from src to memory starting at addr, as if written one at a time. Wraps around from 0xFFFF
+     *   to 0x0000.
+     */
+    default void writeBlock(int addr, byte[] src, int off, int len) {
+        for (int i = 0; i < len; i++) {
+            writeByteAt((addr + i) & 0xFFFF, src[off + i]);
+        }
+    }
 }
@@ -0,0 +1,8 @@
+package emulator.bus;
+
+/**
+ * Reads an I/O register registered in {@link IoRegisters}.
+ */
+public interface IIoReader {
+    byte read();
+}
@@ -0,0 +1,8 @@
+package emulator.bus;
+
+/**
+ * Writes an I/O register registered in {@link IoRegisters}.
+ */
+public interface IIoWriter {
+    void write(byte value);
+}
@@ -0,0 +1,48 @@
+package emulator.bus;
+
+import java.util.Arrays;
+
+/**
+ * Handlers for the registers on the 0xFF00-0xFFFF page, indexed by the low address byte. Devices register their own
+ *   registers into it, a register nobody claims reads as open bus and ignores writes.
+ */
+public class IoRegisters {
+    public static final byte OPEN_BUS = (byte) 0xFF;
+    private static final IIoReader OPEN_BUS_READER = () -> OPEN_BUS;
+    private static final IIoWriter IGNORED_WRITER = value -> {};
+
+    private final IIoReader[] readers = new IIoReader[256];
+    private final IIoWriter[] writers = new IIoWriter[256];
+
+    public IoRegisters() {
+        Arrays.fill(readers, OPEN_BUS_READER);
+        Arrays.fill(writers, IGNORED_WRITER);
+    }
+
+    /**
+     * Claims the register at the given address, replacing whatever was registered there before.
+     */
+    public void register(int address, IIoReader reader, IIoWriter writer) {
+        if (address < 0xFF00 || address > 0xFFFF) {
+            throw new IllegalArgumentException(String.format("0x%04X is not an I/O register address", address));
+        }
+        readers[address & 0xFF] = reader;
+        writers[address & 0xFF] = writer;
+    }
+
+    public void registerReadOnly(int address, IIoReader reader) {
+        register(address, reader, IGNORED_WRITER);
+    }
+
+    public void registerWriteOnly(int address, IIoWriter writer) {
+        register(address, OPEN_BUS_READER, writer);
+    }
+
+    public byte read(int address) {
+        return readers[address & 0xFF].read();
+    }
+
+    public void write(int address, byte value) {
+        writers[address & 0xFF].write(value);
+    }
+}
@@ -0,0 +1,54 @@
+package emulator.bus;
+
+/**
+ * Serial data (SB, 0xFF01) and control (SC, 0xFF02). Starting a transfer hands the data byte to the
+ *   {@link ISerialHandler}, nothing is ever received.
+ */
+public class SerialPort {
+    private static final int OUTPUT_LIMIT = 4096;
+
+    private final ISerialHandler serialHandler;
+    private byte data;
+    // tail of everything sent, for stop conditions
+    private final StringBuilder output = new StringBuilder();
+    private long byteCount;
+
+    public SerialPort(ISerialHandler serialHandler) {
+        this.serialHandler = serialHandler;
+    }
+
+    public void registerIoRegisters(IoRegisters ioRegisters) {
+        ioRegisters.register(0xFF01, () -> data, value -> data = value);
+        ioRegisters.registerWriteOnly(0xFF02, this::writeControl);
+    }
+
+    private void writeControl(byte value) {
+        if ((value & 0x80) == 0x80) {
+            char dataToWrite = (char) (data & 0xFF);
+            serialHandler.writeSerial(dataToWrite);
+            recordOutput(dataToWrite);
+        }
+    }
+
+    private void recordOutput(char sent) {
+        byteCount++;
+        output.append(sent);
+        if (output.length() > OUTPUT_LIMIT) {
+            output.delete(0, OUTPUT_LIMIT / 2);
+        }
+    }
+
+    /**
+     * @return the last few thousand characters sent
+     */
+    public String getOutput() {
+        return output.toString();
+    }
+
+    /**
+     * @return number of bytes sent so far
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+}
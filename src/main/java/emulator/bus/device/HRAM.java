@@ -13,4 +13,11 @@ public class HRAM implements IBusDevice {
     public void writeByteAt(int addr, byte a) {
         ram[addr] = a;
     }
+
+    /**
+     * @return the backing array, so the bus can map it straight into its page table
+     */
+    public byte[] getMemory() {
+        return ram;
+    }
 }
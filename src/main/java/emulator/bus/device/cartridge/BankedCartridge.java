@@ -0,0 +1,78 @@
+package emulator.bus.device.cartridge;
+
+/**
+ * Banking shared by the MBCs. Subclasses only decode their register writes into bank numbers and hand them to
+ *   {@link #mapBanks(int, int)}, which turns them into the base offsets that reads go through.
+ */
+public abstract class BankedCartridge extends Cartridge {
+
+    protected BankedCartridge(byte[] romBytes, CartridgeType expectedType, String className) {
+        this.cartridgeType = parseCartridgeType(romBytes);
+        if (cartridgeType != expectedType) {
+            throw new IllegalArgumentException("Mismatch between " + className + " constructor and underlying cartridge type in ROM");
+        }
+
+        int numExtraRomBanks = parseRomSize(romBytes);
+        rom = romOfSize(romBytes, numExtraRomBanks);
+        romBankCount = numExtraRomBanks + 1;
+        lowerBankBits = 1;
+        selectRomBank(1);
+
+        if (parseHasRam(romBytes)) {
+            int ramSize = parseRamSize(romBytes);
+            if (ramSize > 0) {
+                ram = new CartridgeRam(ramSize);
+            }
+        }
+        hasBattery = parseHasBattery(romBytes);
+    }
+
+    public byte readByteAt(int addr) {
+        if (addr < 0x4000) {
+            return rom[fixedRomBankOffset + addr];
+        } else if (addr < 0x8000) {
+            return rom[activeRomBankOffset + addr - 0x4000];
+        } else if (addr >= 0xA000 && addr < 0xC000) {
+            return readRam(addr);
+        } else {
+            throw new IndexOutOfBoundsException("Cartridge read address " + String.format("0x%02X", addr) + " exceeds memory");
+        }
+    }
+
+    public void writeByteAt(int addr, byte value) {
+        if (addr < 0x8000) {
+            writeRegister(addr, value & 0xFF);
+        } else if (addr >= 0xA000 && addr < 0xC000) {
+            writeRam(addr, value);
+        }
+    }
+
+    /**
+     * Handles a write to the MBC registers at 0x0000-0x7FFF.
+     */
+    protected abstract void writeRegister(int addr, int value);
+
+    /**
+     * Switches to the given banks, wrapping them around the cartridge's ROM and RAM sizes. Listeners only hear about
+     *   banks that actually changed.
+     */
+    protected void mapBanks(int romBank, int ramBank) {
+        int bank = romBank & (romBankCount - 1);
+        if (bank != getActiveRomBank()) {
+            selectRomBank(bank);
+            notifyRomBankSwitched();
+        }
+        selectRamBank(ramBank);
+    }
+
+    /**
+     * Switches the bank at 0x0000-0x3FFF, wrapping it around the cartridge's ROM size.
+     */
+    protected void mapFixedRomBank(int romBank) {
+        int bank = romBank & (romBankCount - 1);
+        if (bank != getFixedRomBank()) {
+            selectFixedRomBank(bank);
+            notifyFixedRomBankSwitched();
+        }
+    }
+}
@@ -2,14 +2,73 @@ package emulator.bus.device.cartridge;
 
 import emulator.bus.device.IBusDevice;
 
-public abstract class Cartridge implements IBusDevice {
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+
+public abstract class Cartridge implements IBusDevice, AutoCloseable {
+    public static final int ROM_BANK_SIZE = 0x4000;
+    public static final int RAM_BANK_SIZE = 0x2000;
+
     protected CartridgeType cartridgeType;
-    protected ROMBank bank0;
-    protected ROMBank[] indexableRomBanks;
+    // the whole ROM in one array, never copied per bank. Bank n starts at n * ROM_BANK_SIZE.
+    protected byte[] rom;
+    // set when rom is shared through a RomRepository
+    protected RomImage romImage;
+    // start of the bank mapped into 0x0000-0x3FFF, only MBC1 in advanced banking mode moves it off bank 0
+    protected int fixedRomBankOffset;
+    // start of the bank mapped into 0x4000-0x7FFF
+    protected int activeRomBankOffset = ROM_BANK_SIZE;
     protected int currentActiveRomBank;
+    protected int romBankCount;
+    // null if the cartridge has no RAM
+    protected CartridgeRam ram;
+    protected boolean hasBattery;
+    protected boolean ramEnabled;
+    // start of the RAM bank mapped into 0xA000-0xBFFF
+    protected int activeRamBankOffset;
     protected int lowerBankBits;
     protected int higherBankBits;
+    protected final List<IBankSwitchListener> bankSwitchListeners = new ArrayList<>();
+
+    /**
+     * Reads a ROM file into a single array that the cartridge then uses as is.
+     */
+    public static Cartridge loadCartridge(Path romFile) throws IOException {
+        return createCartridge(Files.readAllBytes(romFile));
+    }
+
+    /**
+     * Creates a cartridge running the {@link RomRepository#getShared() shared} copy of the ROM, so instances of the
+     *   same game only hold their own MBC state. The reference is given back by {@link #close()}.
+     */
+    public static Cartridge createSharedCartridge(byte[] romBytes) {
+        return createCartridge(RomRepository.getShared().acquire(romBytes));
+    }
 
+    /**
+     * Creates a cartridge running the given image, taking over the reference to it.
+     */
+    public static Cartridge createCartridge(RomImage romImage) {
+        Cartridge cartridge;
+        try {
+            cartridge = createCartridge(romImage.getBytes());
+        } catch (RuntimeException e) {
+            romImage.release();
+            throw e;
+        }
+        cartridge.romImage = romImage;
+        return cartridge;
+    }
+
+    /**
+     * The cartridge keeps using romBytes instead of copying it, so it must not be changed afterwards.
+     */
     public static Cartridge createCartridge(byte[] romBytes) {
         CartridgeType cartridgeType = parseCartridgeType(romBytes);
         switch (cartridgeType) {
@@ -19,6 +78,15 @@ public abstract class Cartridge implements IBusDevice {
             case MBC1 -> {
                 return new MBC1Cartridge(romBytes);
             }
+            case MBC2 -> {
+                return new MBC2Cartridge(romBytes);
+            }
+            case MBC3 -> {
+                return new MBC3Cartridge(romBytes);
+            }
+            case MBC5 -> {
+                return new MBC5Cartridge(romBytes);
+            }
             default ->
                     throw new IllegalArgumentException("Cartridge does not yet support cartridge type: " + cartridgeType);
         }
@@ -47,6 +115,68 @@ public abstract class Cartridge implements IBusDevice {
         throw new IllegalArgumentException("Invalid rom size code at 0x148: " + romSizeCode);
     }
 
+    /**
+     * @return romBytes itself, or a zero padded copy if the file is shorter than its header says
+     */
+    protected static byte[] romOfSize(byte[] romBytes, int numExtraRomBanks) {
+        int size = (numExtraRomBanks + 1) * ROM_BANK_SIZE;
+        return romBytes.length >= size ? romBytes : Arrays.copyOf(romBytes, size);
+    }
+
+    /**
+     * Like {@link #romOfSize(byte[], int)} with the size from the header, so a {@link RomRepository} can pad a short
+     *   ROM once for every cartridge sharing it. Headers without a valid size are left for the constructor to reject.
+     */
+    static byte[] romOfHeaderSize(byte[] romBytes) {
+        if (romBytes.length <= 0x0148 || romBytes[0x0148] < 0x00 || romBytes[0x0148] > 0x08) {
+            return romBytes;
+        }
+        // 32KB << code, in 16KB banks
+        return romOfSize(romBytes, (2 << romBytes[0x0148]) - 1);
+    }
+
+    /**
+     * 00h - None
+     * 01h - 2 KBytes (unofficial)
+     * 02h - 8 Kbytes (1 bank)
+     * 03h - 32 KBytes (4 banks of 8KBytes each)
+     * 04h - 128 KBytes (16 banks of 8KBytes each)
+     * 05h - 64 KBytes (8 banks of 8KBytes each)
+     *
+     * @return size of the cartridge RAM in bytes
+     */
+    protected static int parseRamSize(byte[] romBytes) {
+        return switch (romBytes[0x0149]) {
+            case 0x00 -> 0;
+            case 0x01 -> 0x800;
+            case 0x02 -> 0x2000;
+            case 0x03 -> 0x8000;
+            case 0x04 -> 0x20000;
+            case 0x05 -> 0x10000;
+            default -> throw new IllegalArgumentException("Invalid ram size code at 0x149: " + romBytes[0x0149]);
+        };
+    }
+
+    /**
+     * @return true for the cartridge types listed with RAM below. MBC2 has its RAM built in and is not one of them.
+     */
+    protected static boolean parseHasRam(byte[] romBytes) {
+        return switch (romBytes[0x0147]) {
+            case 0x02, 0x03, 0x08, 0x09, 0x0C, 0x0D, 0x10, 0x12, 0x13, 0x1A, 0x1B, 0x1D, 0x1E, 0x22, (byte) 0xFF -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * @return true for the cartridge types listed with BATTERY below
+     */
+    protected static boolean parseHasBattery(byte[] romBytes) {
+        return switch (romBytes[0x0147]) {
+            case 0x03, 0x06, 0x09, 0x0D, 0x0F, 0x10, 0x13, 0x1B, 0x1E, 0x22, (byte) 0xFF -> true;
+            default -> false;
+        };
+    }
+
     /**
      *  00h  ROM ONLY
      *  01h  MBC1
@@ -85,25 +215,22 @@ public abstract class Cartridge implements IBusDevice {
             case 0x01, 0x02, 0x03 ->
                 // MBC1
                 CartridgeType.MBC1;
+            case 0x05, 0x06 ->
+                // MBC2
+                CartridgeType.MBC2;
+            case 0x0F, 0x10, 0x11, 0x12, 0x13 ->
+                // MBC3
+                CartridgeType.MBC3;
+            case 0x19, 0x1A, 0x1B, 0x1C, 0x1D, 0x1E ->
+                // MBC5, with or without rumble
+                CartridgeType.MBC5;
             // TODO: not yet implemented
-//            case 0x05, 0x06 ->
-//                // MBC2
-//                CartridgeType.MBC2;
 //            case 0x08, 0x09 ->
 //                // ROM + RAM
 //                CartridgeType.ROM_RAM;
 //            case 0x0B, 0x0C, 0x0D ->
 //                // MMM01
 //                CartridgeType.MMM01;
-//            case 0x0F, 0x10, 0x11, 0x12, 0x13 ->
-//                // MBC3
-//                CartridgeType.MBC3;
-//            case 0x19, 0x1A, 0x1B ->
-//                // MBC5
-//                CartridgeType.MBC5;
-//            case 0x1C, 0x1D, 0x1E ->
-//                // MBC5 + RUMBLE
-//                CartridgeType.MBC5_RUMBLE;
 //            case 0x20 ->
 //                // MBC6
 //                CartridgeType.MBC6;
@@ -126,6 +253,188 @@ public abstract class Cartridge implements IBusDevice {
         };
     }
 
+    /**
+     * @return number of the ROM bank currently mapped into 0x4000-0x7FFF
+     */
+    public int getActiveRomBank() {
+        return currentActiveRomBank + 1;
+    }
+
+    /**
+     * @return number of the ROM bank mapped at the given address, 0 outside of cartridge ROM
+     */
+    public int bankAt(int addr) {
+        if (addr < ROM_BANK_SIZE) {
+            return getFixedRomBank();
+        }
+        return addr < 2 * ROM_BANK_SIZE ? getActiveRomBank() : 0;
+    }
+
+    /**
+     * @return number of the ROM bank currently mapped into 0x0000-0x3FFF
+     */
+    public int getFixedRomBank() {
+        return fixedRomBankOffset / ROM_BANK_SIZE;
+    }
+
+    /**
+     * @return offset into {@link #getRomMemory()} of the ROM bank currently mapped at 0x0000-0x3FFF
+     */
+    public int getFixedRomBankOffset() {
+        return fixedRomBankOffset;
+    }
+
+    /**
+     * @return the whole ROM, bank 0 starts at offset 0
+     */
+    public byte[] getRomMemory() {
+        return rom;
+    }
+
+    /**
+     * @return offset into {@link #getRomMemory()} of the ROM bank currently mapped at 0x4000-0x7FFF
+     */
+    public int getActiveRomBankOffset() {
+        return activeRomBankOffset;
+    }
+
+    /**
+     * @return the cartridge RAM, null if there is none
+     */
+    public byte[] getRamMemory() {
+        return ram != null ? ram.getMemory() : null;
+    }
+
+    /**
+     * @return number of writes to cartridge RAM so far, 0 without RAM
+     */
+    public long getRamWriteCount() {
+        return ram != null ? ram.getWriteCount() : 0;
+    }
+
+    /**
+     * @return true if RAM is enabled, so 0xA000-0xBFFF reads and writes it
+     */
+    public boolean isRamEnabled() {
+        return ram != null && ramEnabled;
+    }
+
+    /**
+     * @return offset into {@link #getRamMemory()} of the RAM bank currently mapped at 0xA000-0xBFFF
+     */
+    public int getActiveRamBankOffset() {
+        return activeRamBankOffset;
+    }
+
+    /**
+     * Gives the cartridge the emulated master clock, as a count of clock cycles, for hardware that keeps time.
+     */
+    public void setMasterClock(LongSupplier clockCycles) {
+    }
+
+    /**
+     * Hands the MBC registers to the consumer, for state hashing. They hold more than the mapped banks do, e.g. the
+     *   bits a bank number wrapped away.
+     */
+    public void reportMbcState(LongConsumer state) {
+        state.accept((long) higherBankBits << 32 | lowerBankBits);
+    }
+
+    /**
+     * Keeps battery backed RAM in the given save file, loading whatever it already holds.
+     */
+    public void attachSaveFile(Path saveFile) throws IOException {
+        if (ram == null || !hasBattery) {
+            throw new IllegalStateException("Cartridge has no battery backed RAM");
+        }
+        ram.attachSaveFile(saveFile);
+    }
+
+    protected byte readRam(int addr) {
+        if (!isRamEnabled()) {
+            return (byte) 0xFF;
+        }
+        return ram.read((activeRamBankOffset + addr - 0xA000) % ram.size());
+    }
+
+    protected void writeRam(int addr, byte value) {
+        if (isRamEnabled()) {
+            ram.write((activeRamBankOffset + addr - 0xA000) % ram.size(), value);
+        }
+    }
+
+    protected void setRamEnabled(boolean enabled) {
+        if (enabled == ramEnabled) {
+            return;
+        }
+        ramEnabled = enabled;
+        if (ram == null) {
+            return;
+        }
+        if (!enabled) {
+            // games disable RAM once they are done saving
+            ram.requestFlush();
+        }
+        notifyRamMappingChanged();
+    }
+
+    protected void selectRamBank(int bank) {
+        if (ram == null) {
+            return;
+        }
+        int offset = (bank * RAM_BANK_SIZE) % ram.size();
+        if (offset != activeRamBankOffset) {
+            activeRamBankOffset = offset;
+            notifyRamMappingChanged();
+        }
+    }
+
+    protected void selectRomBank(int bank) {
+        currentActiveRomBank = bank - 1;
+        activeRomBankOffset = bank * ROM_BANK_SIZE;
+    }
+
+    protected void selectFixedRomBank(int bank) {
+        fixedRomBankOffset = bank * ROM_BANK_SIZE;
+    }
+
+    public void addBankSwitchListener(IBankSwitchListener bankSwitchListener) {
+        bankSwitchListeners.add(bankSwitchListener);
+    }
+
+    protected void notifyRomBankSwitched() {
+        for (IBankSwitchListener bankSwitchListener : bankSwitchListeners) {
+            bankSwitchListener.onRomBankSwitched(getActiveRomBank());
+        }
+    }
+
+    protected void notifyFixedRomBankSwitched() {
+        for (IBankSwitchListener bankSwitchListener : bankSwitchListeners) {
+            bankSwitchListener.onFixedRomBankSwitched(getFixedRomBank());
+        }
+    }
+
+    protected void notifyRamMappingChanged() {
+        for (IBankSwitchListener bankSwitchListener : bankSwitchListeners) {
+            bankSwitchListener.onRamMappingChanged();
+        }
+    }
+
+    /**
+     * Flushes the save file and gives back the shared ROM image, if there are any. The cartridge must not be used
+     *   afterwards.
+     */
+    @Override
+    public void close() {
+        if (ram != null) {
+            ram.close();
+        }
+        if (romImage != null) {
+            romImage.release();
+            romImage = null;
+        }
+    }
+
     public abstract byte readByteAt(int addr);
 
     public abstract void writeByteAt(int addr, byte value);
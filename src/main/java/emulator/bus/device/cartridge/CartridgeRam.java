@@ -0,0 +1,160 @@
+package emulator.bus.device.cartridge;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * RAM on the cartridge. Battery backed RAM can be tied to a memory mapped save file: writes only mark their 256 byte
+ *   page dirty, and dirty pages are copied into the file in batches from a background thread.
+ */
+public class CartridgeRam implements AutoCloseable {
+    public static final int PAGE_SIZE = 256;
+    private static final long FLUSH_INTERVAL_MILLIS = 1000;
+    // one thread flushes the save files of every cartridge in the JVM
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cartridge-ram-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // run on JVM exit, so a session that is never closed still keeps its saves
+    private static final Set<Runnable> FLUSH_ON_EXIT = ConcurrentHashMap.newKeySet();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> FLUSH_ON_EXIT.forEach(Runnable::run)));
+    }
+
+    private final byte[] memory;
+    private final AtomicIntegerArray dirtyPages;
+    private FileChannel saveChannel;
+    private MappedByteBuffer saveBuffer;
+    private ScheduledFuture<?> periodicFlush;
+    private Runnable exitFlush;
+    private long writeCount;
+
+    public CartridgeRam(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Cartridge RAM size must be positive, not " + size);
+        }
+        this.memory = new byte[size];
+        this.dirtyPages = new AtomicIntegerArray((size + PAGE_SIZE - 1) / PAGE_SIZE);
+    }
+
+    /**
+     * @return the backing array, for mapping reads straight into the bus. Writes have to go through
+     *   {@link #write(int, byte)} so they reach the save file.
+     */
+    public byte[] getMemory() {
+        return memory;
+    }
+
+    public int size() {
+        return memory.length;
+    }
+
+    public byte read(int index) {
+        return memory[index];
+    }
+
+    public void write(int index, byte value) {
+        memory[index] = value;
+        writeCount++;
+        if (saveBuffer != null) {
+            dirtyPages.set(index / PAGE_SIZE, 1);
+        }
+    }
+
+    /**
+     * @return number of writes so far, to tell cheaply whether the RAM has changed
+     */
+    public long getWriteCount() {
+        return writeCount;
+    }
+
+    /**
+     * Loads the RAM from the save file, creating it if needed, and keeps the file up to date from then on.
+     */
+    public synchronized void attachSaveFile(Path saveFile) throws IOException {
+        if (saveBuffer != null) {
+            throw new IllegalStateException("Cartridge RAM already has a save file");
+        }
+        saveChannel = FileChannel.open(saveFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long existingSize = saveChannel.size();
+        saveBuffer = saveChannel.map(FileChannel.MapMode.READ_WRITE, 0, memory.length);
+        saveBuffer.get(0, memory, 0, (int) Math.min(existingSize, memory.length));
+        exitFlush = this::flush;
+        flushOnExit(exitFlush);
+        periodicFlush = FLUSHER.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs the given flush when the JVM exits, along with those of every RAM with a save file. For save file
+     *   contents kept outside the RAM.
+     */
+    static void flushOnExit(Runnable flush) {
+        FLUSH_ON_EXIT.add(flush);
+    }
+
+    static void cancelFlushOnExit(Runnable flush) {
+        FLUSH_ON_EXIT.remove(flush);
+    }
+
+    /**
+     * Has the background thread flush soon, without waiting for it.
+     */
+    public void requestFlush() {
+        if (saveBuffer != null) {
+            FLUSHER.execute(this::flush);
+        }
+    }
+
+    /**
+     * Copies every dirty page into the save file and forces it to disk.
+     */
+    public synchronized void flush() {
+        if (saveBuffer == null) {
+            return;
+        }
+        boolean wrote = false;
+        for (int page = 0; page < dirtyPages.length(); page++) {
+            // cleared before copying, so a write racing the copy marks the page again
+            if (dirtyPages.getAndSet(page, 0) == 1) {
+                int start = page * PAGE_SIZE;
+                saveBuffer.put(start, memory, start, Math.min(PAGE_SIZE, memory.length - start));
+                wrote = true;
+            }
+        }
+        if (wrote) {
+            saveBuffer.force();
+        }
+    }
+
+    /**
+     * Flushes and closes the save file, if there is one.
+     */
+    @Override
+    public synchronized void close() {
+        if (saveBuffer == null) {
+            return;
+        }
+        periodicFlush.cancel(false);
+        flush();
+        cancelFlushOnExit(exitFlush);
+        saveBuffer = null;
+        try {
+            saveChannel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
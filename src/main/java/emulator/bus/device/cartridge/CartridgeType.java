@@ -8,5 +8,5 @@ package emulator.bus.device.cartridge;
  *
  */
 public enum CartridgeType {
-    NONE, MBC1
+    NONE, MBC1, MBC2, MBC3, MBC5
 }
@@ -0,0 +1,20 @@
+package emulator.bus.device.cartridge;
+
+/**
+ * Notified whenever an MBC maps a different ROM bank into 0x4000-0x7FFF.
+ */
+public interface IBankSwitchListener {
+    void onRomBankSwitched(int bank);
+
+    /**
+     * Called when an MBC maps a different ROM bank into 0x0000-0x3FFF, which only MBC1 in advanced banking mode does.
+     */
+    default void onFixedRomBankSwitched(int bank) {
+    }
+
+    /**
+     * Called when cartridge RAM is enabled, disabled or banked differently into 0xA000-0xBFFF.
+     */
+    default void onRamMappingChanged() {
+    }
+}
@@ -0,0 +1,40 @@
+package emulator.bus.device.cartridge;
+
+import java.util.Arrays;
+
+/**
+ * Up to 16 ROM banks, and 512 half bytes of RAM built into the MBC. RAM repeats across 0xA000-0xBFFF and its upper
+ *   four bits always read as 1.
+ */
+public class MBC2Cartridge extends BankedCartridge {
+    private static final int RAM_SIZE = 0x200;
+
+    public MBC2Cartridge(byte[] romBytes) {
+        super(romBytes, CartridgeType.MBC2, "MBC2Cartridge");
+        ram = new CartridgeRam(RAM_SIZE);
+        Arrays.fill(ram.getMemory(), (byte) 0xF0);
+    }
+
+    @Override
+    protected void writeRegister(int addr, int value) {
+        if (addr >= 0x4000) {
+            return;
+        }
+        // address bit 8 picks the register
+        if ((addr & 0x100) == 0) {
+            setRamEnabled((value & 0x0F) == 0x0A);
+        } else {
+            lowerBankBits = value & 0x0F;
+            if (lowerBankBits == 0) {
+                lowerBankBits = 1;
+            }
+        }
+        mapBanks(lowerBankBits, 0);
+    }
+
+    @Override
+    protected void writeRam(int addr, byte value) {
+        // kept with the upper bits set, so reads straight from the array are right too
+        super.writeRam(addr, (byte) (value | 0xF0));
+    }
+}
@@ -0,0 +1,182 @@
+package emulator.bus.device.cartridge;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Up to 128 ROM banks and 4 RAM banks (8 on MBC30). Instead of a RAM bank, one of the real time clock registers
+ *   (0x08-0x0C) can be mapped into 0xA000-0xBFFF.
+ */
+public class MBC3Cartridge extends BankedCartridge {
+    // null unless the cartridge is MBC3+TIMER
+    private final RealTimeClock rtc;
+    private boolean wallClock;
+    private int ramBankBits;
+    // RTC register mapped into 0xA000-0xBFFF instead of RAM, -1 if none
+    private int rtcRegister = -1;
+    // the clock latches on a 0x00 then 0x01 write
+    private int lastLatchWrite = -1;
+    private Path saveFile;
+    private Runnable clockFlush;
+
+    public MBC3Cartridge(byte[] romBytes) {
+        super(romBytes, CartridgeType.MBC3, "MBC3Cartridge");
+        boolean hasTimer = romBytes[0x0147] == 0x0F || romBytes[0x0147] == 0x10;
+        rtc = hasTimer ? new RealTimeClock() : null;
+    }
+
+    @Override
+    protected void writeRegister(int addr, int value) {
+        if (addr < 0x2000) {
+            // ram and timer enable
+            setRamEnabled((value & 0x0F) == 0x0A);
+        } else if (addr < 0x4000) {
+            // 7 bit ROM bank number
+            lowerBankBits = value & 0x7F;
+            if (lowerBankBits == 0) {
+                lowerBankBits = 1;
+            }
+        } else if (addr < 0x6000) {
+            // ram bank number or RTC register select
+            int selectedRtcRegister = rtcRegister;
+            if (value <= 0x07) {
+                ramBankBits = value;
+                selectedRtcRegister = -1;
+            } else if (rtc != null && value >= RealTimeClock.SECONDS && value <= RealTimeClock.DAYS_HIGH) {
+                selectedRtcRegister = value;
+            }
+            if (selectedRtcRegister != rtcRegister) {
+                rtcRegister = selectedRtcRegister;
+                notifyRamMappingChanged();
+            }
+        } else {
+            // latch clock data
+            if (rtc != null && lastLatchWrite == 0x00 && value == 0x01) {
+                rtc.latch();
+            }
+            lastLatchWrite = value;
+            return;
+        }
+        mapBanks(lowerBankBits, ramBankBits);
+    }
+
+    /**
+     * @return false while an RTC register is mapped over the RAM
+     */
+    @Override
+    public boolean isRamEnabled() {
+        return super.isRamEnabled() && rtcRegister < 0;
+    }
+
+    @Override
+    protected byte readRam(int addr) {
+        if (rtcRegister >= 0) {
+            return ramEnabled ? rtc.readRegister(rtcRegister) : (byte) 0xFF;
+        }
+        return super.readRam(addr);
+    }
+
+    @Override
+    protected void writeRam(int addr, byte value) {
+        if (rtcRegister < 0) {
+            super.writeRam(addr, value);
+        } else if (ramEnabled) {
+            rtc.writeRegister(rtcRegister, value);
+        }
+    }
+
+    /**
+     * @return the real time clock, null if the cartridge has none
+     */
+    public RealTimeClock getRealTimeClock() {
+        return rtc;
+    }
+
+    /**
+     * Runs the clock on the master clock, unless {@link #useWallClock()} was called.
+     */
+    @Override
+    public void setMasterClock(LongSupplier clockCycles) {
+        if (rtc != null && !wallClock) {
+            rtc.setTimeSource(clockCycles);
+        }
+    }
+
+    /**
+     * Runs the clock on wall clock time from now on, and has it catch up on time spent switched off when a save file
+     *   is attached. Meant for interactive play, runs are no longer reproducible.
+     */
+    public void useWallClock() {
+        if (rtc != null) {
+            wallClock = true;
+            rtc.setTimeSource(RealTimeClock.wallClock());
+        }
+    }
+
+    @Override
+    public void reportMbcState(LongConsumer state) {
+        super.reportMbcState(state);
+        state.accept((long) ramBankBits << 32 | (rtcRegister & 0xFF) << 16 | lastLatchWrite & 0xFFFF);
+        if (rtc != null) {
+            rtc.reportState(state);
+        }
+    }
+
+    /**
+     * Besides the RAM, the save file holds the clock state right after it. The clock state is written on close and
+     *   when the JVM exits.
+     */
+    @Override
+    public void attachSaveFile(Path saveFile) throws IOException {
+        if (rtc == null) {
+            super.attachSaveFile(saveFile);
+            return;
+        }
+        if (ram != null) {
+            super.attachSaveFile(saveFile);
+        }
+        try (FileChannel channel = FileChannel.open(saveFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer state = ByteBuffer.allocate(RealTimeClock.STATE_SIZE);
+            if (channel.read(state, rtcStateOffset()) == RealTimeClock.STATE_SIZE) {
+                rtc.readState(state.flip(), wallClock);
+            }
+        }
+        this.saveFile = saveFile;
+        clockFlush = this::writeClockState;
+        CartridgeRam.flushOnExit(clockFlush);
+    }
+
+    @Override
+    public void close() {
+        if (saveFile != null) {
+            CartridgeRam.cancelFlushOnExit(clockFlush);
+            writeClockState();
+            saveFile = null;
+        }
+        super.close();
+    }
+
+    private synchronized void writeClockState() {
+        if (saveFile == null) {
+            return;
+        }
+        ByteBuffer state = ByteBuffer.allocate(RealTimeClock.STATE_SIZE);
+        rtc.writeState(state);
+        try (FileChannel channel = FileChannel.open(saveFile, StandardOpenOption.WRITE)) {
+            channel.write(state.flip(), rtcStateOffset());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private long rtcStateOffset() {
+        return ram != null ? ram.size() : 0;
+    }
+}
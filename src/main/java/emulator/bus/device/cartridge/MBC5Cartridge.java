@@ -0,0 +1,43 @@
+package emulator.bus.device.cartridge;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Up to 512 ROM banks and 16 RAM banks. Unlike the older MBCs, ROM bank 0 can be mapped into 0x4000-0x7FFF too.
+ */
+public class MBC5Cartridge extends BankedCartridge {
+    // on rumble cartridges bit 3 of the RAM bank register drives the motor instead
+    private final int ramBankMask;
+    private int ramBankBits;
+
+    public MBC5Cartridge(byte[] romBytes) {
+        super(romBytes, CartridgeType.MBC5, "MBC5Cartridge");
+        boolean hasRumble = romBytes[0x0147] >= 0x1C && romBytes[0x0147] <= 0x1E;
+        ramBankMask = hasRumble ? 0x07 : 0x0F;
+    }
+
+    @Override
+    protected void writeRegister(int addr, int value) {
+        if (addr < 0x2000) {
+            // ram enable
+            setRamEnabled((value & 0x0F) == 0x0A);
+        } else if (addr < 0x3000) {
+            // low 8 bits of the ROM bank number
+            lowerBankBits = value;
+        } else if (addr < 0x4000) {
+            // 9th bit of the ROM bank number
+            higherBankBits = value & 0b1;
+        } else if (addr < 0x6000) {
+            ramBankBits = value & ramBankMask;
+        } else {
+            return;
+        }
+        mapBanks(lowerBankBits | (higherBankBits << 8), ramBankBits);
+    }
+
+    @Override
+    public void reportMbcState(LongConsumer state) {
+        super.reportMbcState(state);
+        state.accept(ramBankBits);
+    }
+}
@@ -0,0 +1,182 @@
+package emulator.bus.device.cartridge;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * MBC3 real time clock. Nothing ticks: the clock keeps its time in clock cycles as of some reading of its time
+ *   source, and works the seconds, minutes, hours and days out from that whenever they are latched or written.
+ * The time source is the emulated master clock by default, so runs stay deterministic however fast they go, or the
+ *   wall clock for interactive play.
+ */
+public class RealTimeClock {
+    public static final long CLOCK_CYCLES_PER_SECOND = 4_194_304;
+    // size of the clock state stored after the RAM in a save file, in the layout other emulators use
+    public static final int STATE_SIZE = 48;
+    private static final long SECONDS_PER_DAY = 86_400;
+    private static final long DAY_COUNTER_WRAP = 512;
+
+    public static final int SECONDS = 0x08;
+    public static final int MINUTES = 0x09;
+    public static final int HOURS = 0x0A;
+    public static final int DAYS_LOW = 0x0B;
+    // bit 0: day counter bit 8, bit 6: halt, bit 7: day counter carry
+    public static final int DAYS_HIGH = 0x0C;
+
+    private LongSupplier timeSource = () -> 0;
+    // time source reading the counter was last brought up to
+    private long baseTime;
+    // clock time in clock cycles since day 0, 0:00:00, as of baseTime
+    private long counter;
+    private boolean halted;
+    private boolean dayCarry;
+    private final byte[] latched = new byte[5];
+
+    /**
+     * @return a time source counting clock cycles of wall clock time
+     */
+    public static LongSupplier wallClock() {
+        long start = System.nanoTime();
+        return () -> (long) ((System.nanoTime() - start) * (CLOCK_CYCLES_PER_SECOND / 1e9));
+    }
+
+    /**
+     * Switches to a time source counting clock cycles, keeping the current time.
+     */
+    public void setTimeSource(LongSupplier timeSource) {
+        sync();
+        this.timeSource = timeSource;
+        this.baseTime = timeSource.getAsLong();
+    }
+
+    private void sync() {
+        long now = timeSource.getAsLong();
+        if (!halted) {
+            counter += now - baseTime;
+        }
+        baseTime = now;
+        long wrap = DAY_COUNTER_WRAP * SECONDS_PER_DAY * CLOCK_CYCLES_PER_SECOND;
+        if (counter >= wrap) {
+            counter %= wrap;
+            dayCarry = true;
+        }
+    }
+
+    /**
+     * Copies the current time into the registers the game reads.
+     */
+    public void latch() {
+        for (int register = SECONDS; register <= DAYS_HIGH; register++) {
+            latched[register - SECONDS] = currentRegister(register);
+        }
+    }
+
+    /**
+     * @return the register as of the last latch
+     */
+    public byte readRegister(int register) {
+        return latched[register - SECONDS];
+    }
+
+    private byte currentRegister(int register) {
+        sync();
+        long seconds = counter / CLOCK_CYCLES_PER_SECOND;
+        long days = seconds / SECONDS_PER_DAY;
+        return (byte) switch (register) {
+            case SECONDS -> seconds % 60;
+            case MINUTES -> seconds / 60 % 60;
+            case HOURS -> seconds / 3600 % 24;
+            case DAYS_LOW -> days & 0xFF;
+            case DAYS_HIGH -> (days >> 8 & 1) | (halted ? 0x40 : 0) | (dayCarry ? 0x80 : 0);
+            default -> throw new IllegalArgumentException("Not an RTC register: " + register);
+        };
+    }
+
+    /**
+     * Sets one counter. Writing the seconds also restarts the current second.
+     */
+    public void writeRegister(int register, byte value) {
+        sync();
+        long seconds = counter / CLOCK_CYCLES_PER_SECOND;
+        long subSecond = counter % CLOCK_CYCLES_PER_SECOND;
+        long second = seconds % 60;
+        long minute = seconds / 60 % 60;
+        long hour = seconds / 3600 % 24;
+        long day = seconds / SECONDS_PER_DAY;
+        int bits = value & 0xFF;
+        switch (register) {
+            case SECONDS -> {
+                second = bits % 60;
+                subSecond = 0;
+            }
+            case MINUTES -> minute = bits % 60;
+            case HOURS -> hour = bits % 24;
+            case DAYS_LOW -> day = (day & 0x100) | bits;
+            case DAYS_HIGH -> {
+                day = (day & 0xFF) | (bits & 1) << 8;
+                halted = (bits & 0x40) != 0;
+                dayCarry = (bits & 0x80) != 0;
+            }
+            default -> throw new IllegalArgumentException("Not an RTC register: " + register);
+        }
+        counter = (((day * 24 + hour) * 60 + minute) * 60 + second) * CLOCK_CYCLES_PER_SECOND + subSecond;
+    }
+
+    /**
+     * Hands the counter, the halt and day carry flags and the latched registers to the consumer, for state hashing.
+     */
+    public void reportState(LongConsumer state) {
+        sync();
+        state.accept(counter);
+        long latchedRegisters = (halted ? 1 : 0) | (dayCarry ? 2 : 0);
+        for (byte register : latched) {
+            latchedRegisters = latchedRegisters << 8 | register & 0xFF;
+        }
+        state.accept(latchedRegisters);
+    }
+
+    /**
+     * Stores the current and latched registers plus a unix timestamp, {@link #STATE_SIZE} bytes.
+     */
+    public void writeState(ByteBuffer buffer) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        for (int register = SECONDS; register <= DAYS_HIGH; register++) {
+            buffer.putInt(currentRegister(register) & 0xFF);
+        }
+        for (byte register : latched) {
+            buffer.putInt(register & 0xFF);
+        }
+        buffer.putLong(System.currentTimeMillis() / 1000);
+    }
+
+    /**
+     * Restores what {@link #writeState(ByteBuffer)} stored. With catchUp the clock also moves on by the wall clock
+     *   time that has passed since, unless it was halted.
+     */
+    public void readState(ByteBuffer buffer, boolean catchUp) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int[] current = new int[5];
+        for (int i = 0; i < current.length; i++) {
+            current[i] = buffer.getInt();
+        }
+        for (int i = 0; i < latched.length; i++) {
+            latched[i] = (byte) buffer.getInt();
+        }
+        long savedAt = buffer.getLong();
+
+        baseTime = timeSource.getAsLong();
+        counter = 0;
+        halted = false;
+        dayCarry = false;
+        for (int register = SECONDS; register <= DAYS_HIGH; register++) {
+            writeRegister(register, (byte) current[register - SECONDS]);
+        }
+        long elapsedSeconds = System.currentTimeMillis() / 1000 - savedAt;
+        if (catchUp && !halted && elapsedSeconds > 0) {
+            counter += elapsedSeconds * CLOCK_CYCLES_PER_SECOND;
+            sync();
+        }
+    }
+}
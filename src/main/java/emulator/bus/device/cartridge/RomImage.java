@@ -0,0 +1,34 @@
+package emulator.bus.device.cartridge;
+
+/**
+ * A ROM handed out by a {@link RomRepository}, shared by every cartridge running it. Nothing may write to its bytes.
+ */
+public class RomImage {
+    private final RomRepository repository;
+    private final String key;
+    private final byte[] bytes;
+
+    RomImage(RomRepository repository, String key, byte[] bytes) {
+        this.repository = repository;
+        this.key = key;
+        this.bytes = bytes;
+    }
+
+    /**
+     * @return SHA-1 of the ROM followed by its header checksum (0x014D), both in hex
+     */
+    public String getKey() {
+        return key;
+    }
+
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Gives back one reference taken with {@link RomRepository#acquire(byte[])}.
+     */
+    public void release() {
+        repository.release(this);
+    }
+}
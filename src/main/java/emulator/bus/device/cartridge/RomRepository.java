@@ -0,0 +1,79 @@
+package emulator.bus.device.cartridge;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * Keeps one copy of each ROM for every cartridge in the JVM that runs it. Images are keyed by content and reference
+ *   counted, the last release drops an image from the repository.
+ */
+public class RomRepository {
+    private static final RomRepository SHARED = new RomRepository();
+
+    private final Map<String, RomImage> images = new HashMap<>();
+    private final Map<RomImage, Integer> referenceCounts = new HashMap<>();
+
+    /**
+     * @return the repository for the whole JVM
+     */
+    public static RomRepository getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Takes a reference to the image with the same content as romBytes, adding romBytes as a new image if there is
+     *   none yet. romBytes must not be changed afterwards. A ROM shorter than its header says is zero padded here,
+     *   once, so every cartridge running it gets the same array.
+     */
+    public synchronized RomImage acquire(byte[] romBytes) {
+        String key = keyOf(romBytes);
+        RomImage image = images.get(key);
+        if (image == null) {
+            image = new RomImage(this, key, Cartridge.romOfHeaderSize(romBytes));
+            images.put(key, image);
+        }
+        referenceCounts.merge(image, 1, Integer::sum);
+        return image;
+    }
+
+    synchronized void release(RomImage image) {
+        Integer count = referenceCounts.get(image);
+        if (count == null) {
+            throw new IllegalStateException("ROM image " + image.getKey() + " is not held");
+        }
+        if (count == 1) {
+            referenceCounts.remove(image);
+            images.remove(image.getKey());
+        } else {
+            referenceCounts.put(image, count - 1);
+        }
+    }
+
+    /**
+     * @return number of distinct ROMs currently held
+     */
+    public synchronized int getImageCount() {
+        return images.size();
+    }
+
+    /**
+     * @return number of unreleased references to the image, 0 once it has been dropped
+     */
+    public synchronized int getReferenceCount(RomImage image) {
+        return referenceCounts.getOrDefault(image, 0);
+    }
+
+    private static String keyOf(byte[] romBytes) {
+        byte[] sha1;
+        try {
+            sha1 = MessageDigest.getInstance("SHA-1").digest(romBytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+        int headerChecksum = romBytes.length > 0x014D ? romBytes[0x014D] & 0xFF : 0;
+        return HexFormat.of().formatHex(sha1) + String.format("-%02x", headerChecksum);
+    }
+}
@@ -0,0 +1,207 @@
+package emulator.cpu;
+
+import static emulator.cpu.register.FlagRegister.*;
+
+/**
+ * Precomputed 8-bit arithmetic.
+ * Every lookup returns the result and the flags it produces together, packed as (flags << 8) | result,
+ *   where flags is laid out the same way as the F register. Callers store the result and the flags
+ *   without evaluating any of the operator specific flag rules themselves.
+ *
+ * ALU tables are indexed by (carry << 16) | (A << 8) | operand. ADD and ADC share a table (ADD always
+ *   reads the carry-less half), as do SUB, SBC and CP.
+ */
+public final class Alu {
+    public static final int RLC = 0;
+    public static final int RRC = 1;
+    public static final int RL = 2;
+    public static final int RR = 3;
+    public static final int SLA = 4;
+    public static final int SRA = 5;
+    public static final int SWAP = 6;
+    public static final int SRL = 7;
+
+    private static final char[] ADC_TABLE = new char[2 << 16];
+    private static final char[] SBC_TABLE = new char[2 << 16];
+    private static final char[] AND_TABLE = new char[1 << 16];
+    private static final char[] XOR_TABLE = new char[1 << 16];
+    private static final char[] OR_TABLE = new char[1 << 16];
+    // indexed by value
+    private static final char[] INC_TABLE = new char[256];
+    private static final char[] DEC_TABLE = new char[256];
+    // indexed by (N,H,C flags << 8) | A
+    private static final char[] DAA_TABLE = new char[8 << 8];
+    // indexed by (op << 9) | (carry << 8) | value, op being one of RLC..SRL
+    private static final char[] SHIFT_TABLE = new char[8 << 9];
+
+    private static final char[][] TABLES = new char[Operator.values().length][];
+    private static final int[] CARRY_MASKS = new int[Operator.values().length];
+
+    static {
+        for (int carry = 0; carry <= 1; carry++) {
+            for (int a = 0; a < 256; a++) {
+                for (int b = 0; b < 256; b++) {
+                    int index = carry << 16 | a << 8 | b;
+
+                    int sum = a + b + carry;
+                    ADC_TABLE[index] = pack(sum,
+                            flag(N_FLAG, false) | flag(H_FLAG, (a & 0xF) + (b & 0xF) + carry > 0xF) | flag(C_FLAG, sum > 0xFF));
+
+                    int difference = a - b - carry;
+                    SBC_TABLE[index] = pack(difference,
+                            flag(N_FLAG, true) | flag(H_FLAG, (a & 0xF) - (b & 0xF) - carry < 0) | flag(C_FLAG, difference < 0));
+
+                    if (carry == 0) {
+                        AND_TABLE[index] = pack(a & b, flag(H_FLAG, true));
+                        XOR_TABLE[index] = pack(a ^ b, 0);
+                        OR_TABLE[index] = pack(a | b, 0);
+                    }
+                }
+            }
+        }
+
+        for (int value = 0; value < 256; value++) {
+            INC_TABLE[value] = pack(value + 1, flag(H_FLAG, (value & 0xF) == 0xF));
+            DEC_TABLE[value] = pack(value - 1, flag(N_FLAG, true) | flag(H_FLAG, (value & 0xF) == 0));
+
+            for (int nhc = 0; nhc < 8; nhc++) {
+                boolean n = (nhc & 0b100) != 0;
+                boolean h = (nhc & 0b010) != 0;
+                boolean c = (nhc & 0b001) != 0;
+                int correction = 0;
+                if (h || (!n && (value & 0x0F) > 9)) {
+                    correction = 0x06;
+                }
+                if (c || (!n && value > 0x99)) {
+                    correction |= 0x60;
+                    c = true;
+                }
+                DAA_TABLE[nhc << 8 | value] = pack(value + (n ? -correction : correction), flag(N_FLAG, n) | flag(C_FLAG, c));
+            }
+
+            for (int carry = 0; carry <= 1; carry++) {
+                int msb = value >>> 7;
+                int lsb = value & 0x01;
+                SHIFT_TABLE[RLC << 9 | carry << 8 | value] = pack(value << 1 | msb, flag(C_FLAG, msb == 1));
+                SHIFT_TABLE[RRC << 9 | carry << 8 | value] = pack(value >>> 1 | lsb << 7, flag(C_FLAG, lsb == 1));
+                SHIFT_TABLE[RL << 9 | carry << 8 | value] = pack(value << 1 | carry, flag(C_FLAG, msb == 1));
+                SHIFT_TABLE[RR << 9 | carry << 8 | value] = pack(value >>> 1 | carry << 7, flag(C_FLAG, lsb == 1));
+                SHIFT_TABLE[SLA << 9 | carry << 8 | value] = pack(value << 1, flag(C_FLAG, msb == 1));
+                SHIFT_TABLE[SRA << 9 | carry << 8 | value] = pack(value >>> 1 | value & 0x80, flag(C_FLAG, lsb == 1));
+                SHIFT_TABLE[SWAP << 9 | carry << 8 | value] = pack(value << 4 | value >>> 4, 0);
+                SHIFT_TABLE[SRL << 9 | carry << 8 | value] = pack(value >>> 1, flag(C_FLAG, lsb == 1));
+            }
+        }
+
+        register(Operator.ADD, ADC_TABLE, 0);
+        register(Operator.ADC, ADC_TABLE, 1);
+        register(Operator.SUB, SBC_TABLE, 0);
+        register(Operator.SBC, SBC_TABLE, 1);
+        register(Operator.CP, SBC_TABLE, 0);
+        register(Operator.AND, AND_TABLE, 0);
+        register(Operator.XOR, XOR_TABLE, 0);
+        register(Operator.OR, OR_TABLE, 0);
+    }
+
+    private Alu() {
+    }
+
+    private static void register(Operator operator, char[] table, int carryMask) {
+        TABLES[operator.ordinal()] = table;
+        CARRY_MASKS[operator.ordinal()] = carryMask;
+    }
+
+    private static int flag(int mask, boolean set) {
+        return set ? mask : 0;
+    }
+
+    private static char pack(int result, int flags) {
+        result &= 0xFF;
+        if (result == 0) {
+            flags |= Z_FLAG;
+        }
+        return (char) (flags << 8 | result);
+    }
+
+    public static int result(int packed) {
+        return packed & 0xFF;
+    }
+
+    public static int flags(int packed) {
+        return packed >>> 8;
+    }
+
+    /**
+     * @return the lookup table backing the operator, for callers that resolve it once up front.
+     *   Index it with {@link #index(int, int, int, int)}.
+     */
+    public static char[] table(Operator operator) {
+        return TABLES[operator.ordinal()];
+    }
+
+    /**
+     * @return 1 if the operator consumes the carry flag, 0 otherwise
+     */
+    public static int carryMask(Operator operator) {
+        return CARRY_MASKS[operator.ordinal()];
+    }
+
+    public static int index(int a, int operand, int carry, int carryMask) {
+        return (carry & carryMask) << 16 | a << 8 | operand;
+    }
+
+    /**
+     * @param a unsigned value of the accumulator
+     * @param operand unsigned operand
+     * @param carry current carry flag, 0 or 1
+     * @return packed result and flags of A operator operand
+     */
+    public static int apply(Operator operator, int a, int operand, int carry) {
+        int ordinal = operator.ordinal();
+        return TABLES[ordinal][(carry & CARRY_MASKS[ordinal]) << 16 | a << 8 | operand];
+    }
+
+    /**
+     * @return the INC table, indexed by the value being incremented
+     */
+    public static char[] incrementTable() {
+        return INC_TABLE;
+    }
+
+    /**
+     * @return the DEC table, indexed by the value being decremented
+     */
+    public static char[] decrementTable() {
+        return DEC_TABLE;
+    }
+
+    /**
+     * @return packed result and Z/N/H flags of INC, C is left clear for the caller to carry over
+     */
+    public static int increment(int value) {
+        return INC_TABLE[value];
+    }
+
+    /**
+     * @return packed result and Z/N/H flags of DEC, C is left clear for the caller to carry over
+     */
+    public static int decrement(int value) {
+        return DEC_TABLE[value];
+    }
+
+    /**
+     * @param flags current value of the F register
+     * @return packed result and flags of DAA
+     */
+    public static int daa(int a, int flags) {
+        return DAA_TABLE[(flags & (N_FLAG | H_FLAG | C_FLAG)) << 4 | a];
+    }
+
+    /**
+     * @param op one of RLC, RRC, RL, RR, SLA, SRA, SWAP, SRL, in CB opcode order
+     * @return packed result and flags of the rotate/shift. The accumulator forms (RLCA etc.) clear Z themselves.
+     */
+    public static int shift(int op, int value, int carry) {
+        return SHIFT_TABLE[op << 9 | carry << 8 | value];
+    }
+}
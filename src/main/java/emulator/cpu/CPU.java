@@ -1,25 +1,38 @@
 package emulator.cpu;
 
+import static emulator.cpu.instruction.InstructionUtils.pushToStack;
+
 import emulator.bus.IBus;
 import emulator.interrupts.InterruptController;
+import emulator.scheduler.Scheduler;
 import emulator.cpu.instruction.Instruction;
+import emulator.cpu.instruction.Superinstruction;
 import emulator.cpu.register.*;
 
 public class CPU {
     // Order of registers; B,C,D,E,H,L,(HL),A
     private IBus bus;
     private InterruptController interruptController;
-    private InstructionDecoder instructionDecoder;
+    private IInstructionDecoder instructionDecoder;
     private InstructionFetcher instructionFetcher;
     private GameboyRegisters registers;
+    private RegisterFile registerFile;
+    private SuperinstructionDecoder superinstructionDecoder;
+    private int retiredInstructionCount;
+
 
+    public CPU(IBus bus, GameboyRegisters registers, InterruptController interruptController, IInstructionDecoder instructionDecoder, InstructionFetcher instructionFetcher) {
+        this(bus, registers, interruptController, instructionDecoder, instructionFetcher, null);
+    }
 
-    public CPU(IBus bus, GameboyRegisters registers, InterruptController interruptController, InstructionDecoder instructionDecoder, InstructionFetcher instructionFetcher) {
+    public CPU(IBus bus, GameboyRegisters registers, InterruptController interruptController, IInstructionDecoder instructionDecoder, InstructionFetcher instructionFetcher, SuperinstructionDecoder superinstructionDecoder) {
+        this.superinstructionDecoder = superinstructionDecoder;
         this.bus = bus;
         this.interruptController = interruptController;
         this.instructionDecoder = instructionDecoder;
         this.instructionFetcher = instructionFetcher;
         this.registers = registers;
+        this.registerFile = registers.getRegisterFile();
         
         // initial values after boot
         initMemory();
@@ -61,15 +74,31 @@ public class CPU {
     }
 
     public int executeNext() {
+        return executeNext(1);
+    }
+
+    /**
+     * Executes the next instruction, or the next fused sequence if it takes no more than budget instructions.
+     * {@link #getRetiredInstructionCount()} tells how many instructions that was.
+     */
+    public int executeNext(int budget) {
+        retiredInstructionCount = 1;
         if (interruptController.isHalted()) {
-            if (!interruptController.getInterruptMasterEnable() && (interruptController.getInterruptFlag() & interruptController.getInterruptEnable()) != 0) {
+            if (!interruptController.getInterruptMasterEnable() && interruptController.getPendingInterrupts() != 0) {
                 interruptController.setHalted(false);
             } else {
                 return 1;
             }
         }
 
-//        InstructionLogger.logInstruction(A, F, B, C, D, E, H, L, SP, PC, bus);
+        if (superinstructionDecoder != null && budget > 1) {
+            Superinstruction fused = superinstructionDecoder.decode(registerFile.getPC(), budget);
+            if (fused != null) {
+                retiredInstructionCount = fused.getInstructionCount();
+                return fused.execute((byte) 0);
+            }
+        }
+
         // fetch
         byte nextInstruction = instructionFetcher.fetchNextByte();
 
@@ -79,6 +108,36 @@ public class CPU {
         return decodedInstruction.execute(nextInstruction);
     }
 
+    /**
+     * @return number of instructions the last call to executeNext retired, 1 unless a superinstruction ran
+     */
+    public int getRetiredInstructionCount() {
+        return retiredInstructionCount;
+    }
+
+    /**
+     * While halted with no enabled interrupt flagged, every step is the same 1 cycle no-op that only advances
+     *   the clock, and only a scheduled event can flag an interrupt.
+     * Those steps can be skipped in one go with a single scheduler.advance(steps * 4).
+     *
+     * @return number of identical halted steps ahead, including the one in which the next event runs, at most budget
+     */
+    public int skippableHaltSteps(int budget, Scheduler scheduler) {
+        if (!interruptController.isHalted() || interruptController.getPendingInterrupts() != 0) {
+            return 0;
+        }
+        long steps = Math.min(budget, Integer.MAX_VALUE / 4);
+        long untilEvent = scheduler.cyclesUntilNextEvent();
+        if (untilEvent != Long.MAX_VALUE) {
+            steps = Math.min(steps, (untilEvent + 3) / 4);
+        }
+        return (int) Math.max(steps, 0);
+    }
+
+    public SuperinstructionDecoder getSuperinstructionDecoder() {
+        return superinstructionDecoder;
+    }
+
     public int checkInterrupts() {
         if (interruptController.interruptReady()) {
             int jumpAddress = interruptController.getHighestPriorityInterruptAddress();
@@ -88,15 +147,10 @@ public class CPU {
             interruptController.setInterruptMasterEnable(false);
 
             //  The PC (program counter) is pushed onto the stack.
-            byte lowerPC = registers.getPC().getLowerRegister().getValue();
-            byte higherPC = registers.getPC().getHigherRegister().getValue();
-            registers.getSP().setValue(registers.getSP().getValue() - 1);
-            bus.writeByteAt(registers.getSP().getValue(), higherPC);
-            registers.getSP().setValue(registers.getSP().getValue() - 1);
-            bus.writeByteAt(registers.getSP().getValue(), lowerPC);
+            pushToStack(registerFile.getPC(), registerFile, bus);
 
             //  Jump to the starting address of the interrupt.
-            registers.getPC().setValue(jumpAddress);
+            registerFile.setPC(jumpAddress);
 
             interruptController.setHalted(false);
 
@@ -0,0 +1,10 @@
+package emulator.cpu;
+
+/**
+ * Selects which instruction dispatch engine a CPU is built with.
+ *   IF_CHAIN walks the mask comparisons in {@link InstructionDecoder} on every fetch.
+ *   TABLE looks the opcode up in the precomputed handler tables of {@link TableInstructionDecoder}.
+ */
+public enum DecoderType {
+    IF_CHAIN, TABLE
+}
@@ -4,9 +4,16 @@ import emulator.bus.IBus;
 import emulator.cpu.register.DoubleRegister;
 import emulator.cpu.register.FlagRegister;
 import emulator.cpu.register.Register;
+import emulator.cpu.register.RegisterFile;
 import emulator.cpu.register.RegisterMemoryAddress;
 
+/**
+ * Object view over the {@link RegisterFile}.
+ * Every Register/DoubleRegister handed out here reads and writes the same primitive storage,
+ *   so code working with register objects and code indexing the register file stay in sync.
+ */
 public class GameboyRegisters {
+    private final RegisterFile registerFile;
     private DoubleRegister PC;
     private Register A;
     private Register H;
@@ -25,26 +32,38 @@ public class GameboyRegisters {
     private RegisterMemoryAddress HLMemoryPointer;
 
     public GameboyRegisters(IBus bus) {
-        this.PC = new DoubleRegister(new Register((byte) 0x00), new Register((byte) 0x00));
+        this.registerFile = new RegisterFile(new FlagRegister((byte) 0xb0));
+        this.PC = registerFile.programCounterView();
         this.PC.setValue(0x0100);
-        this.A = new Register((byte) 0x01);
-        this.F = new FlagRegister((byte) 0xb0);
-        this.B = new Register((byte) 0x00);
-        this.C = new Register((byte) 0x13);
-        this.D = new Register((byte) 0x00);
-        this.E = new Register((byte) 0xD8);
-        this.H = new Register((byte) 0x01);
-        this.L = new Register((byte) 0x4D);
+        this.A = registerFile.registerView(RegisterFile.A);
+        this.F = registerFile.getF();
+        this.B = registerFile.registerView(RegisterFile.B);
+        this.C = registerFile.registerView(RegisterFile.C);
+        this.D = registerFile.registerView(RegisterFile.D);
+        this.E = registerFile.registerView(RegisterFile.E);
+        this.H = registerFile.registerView(RegisterFile.H);
+        this.L = registerFile.registerView(RegisterFile.L);
+        this.A.setValue((byte) 0x01);
+        this.B.setValue((byte) 0x00);
+        this.C.setValue((byte) 0x13);
+        this.D.setValue((byte) 0x00);
+        this.E.setValue((byte) 0xD8);
+        this.H.setValue((byte) 0x01);
+        this.L.setValue((byte) 0x4D);
         this.HL = new DoubleRegister(H, L);
         this.DE = new DoubleRegister(D, E);
         this.BC = new DoubleRegister(B, C);
         this.AF = new DoubleRegister(A, F);
-        this.SP = new DoubleRegister(new Register((byte) 0x00), new Register((byte) 0x00));
+        this.SP = registerFile.stackPointerView();
         this.SP.setValue(0xFFFE);
 
         this.HLMemoryPointer = new RegisterMemoryAddress(HL, bus);
     }
 
+    public RegisterFile getRegisterFile() {
+        return registerFile;
+    }
+
     public DoubleRegister getPC() {
         return PC;
     }
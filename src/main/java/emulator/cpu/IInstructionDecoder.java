@@ -0,0 +1,7 @@
+package emulator.cpu;
+
+import emulator.cpu.instruction.Instruction;
+
+public interface IInstructionDecoder {
+    Instruction decode(byte nextInstruction);
+}
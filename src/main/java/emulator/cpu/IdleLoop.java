@@ -0,0 +1,70 @@
+package emulator.cpu;
+
+/**
+ * A polling loop found by the {@link IdleLoopDetector}, with how much emulated time was skipped in it.
+ */
+public class IdleLoop {
+    private final int bank;
+    private final int address;
+    private int instructionsPerIteration;
+    private int cyclesPerIteration;
+    private long skippedInstructions;
+    private long skippedCycles;
+
+    public IdleLoop(int bank, int address) {
+        this.bank = bank;
+        this.address = address;
+    }
+
+    void recordIteration(int instructions, int cycles) {
+        this.instructionsPerIteration = instructions;
+        this.cyclesPerIteration = cycles;
+    }
+
+    void recordSkip(long instructions, long cycles) {
+        this.skippedInstructions += instructions;
+        this.skippedCycles += cycles;
+    }
+
+    /**
+     * @return ROM bank the loop runs from, 0 unless it is in the switchable 0x4000-0x7FFF region
+     */
+    public int getBank() {
+        return bank;
+    }
+
+    /**
+     * @return address of the loop head, the target of its backward jump
+     */
+    public int getAddress() {
+        return address;
+    }
+
+    public int getInstructionsPerIteration() {
+        return instructionsPerIteration;
+    }
+
+    /**
+     * @return machine cycles one iteration takes
+     */
+    public int getCyclesPerIteration() {
+        return cyclesPerIteration;
+    }
+
+    public long getSkippedInstructions() {
+        return skippedInstructions;
+    }
+
+    /**
+     * @return machine cycles skipped instead of emulated
+     */
+    public long getSkippedCycles() {
+        return skippedCycles;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%02X:%04X %d instructions / %d cycles per iteration, skipped %d instructions / %d cycles",
+                bank, address, instructionsPerIteration, cyclesPerIteration, skippedInstructions, skippedCycles);
+    }
+}
@@ -0,0 +1,183 @@
+package emulator.cpu;
+
+import emulator.bus.GameboyBus;
+import emulator.bus.device.cartridge.Cartridge;
+import emulator.cpu.register.RegisterFile;
+import emulator.interrupts.InterruptController;
+import emulator.interrupts.Timer;
+import emulator.scheduler.Scheduler;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds busy-wait loops (JR -2, polling TIMA, LY or an HRAM flag set by an interrupt handler) as they run,
+ *   and skips emulated time through them in bulk.
+ *
+ * Every short backward jump starts a measurement at the jump target. If the code comes back to that target
+ *   with every register, the flags and IME exactly as they were, without writing to memory and without taking
+ *   an interrupt, then the next iteration would do exactly the same thing. That keeps being true until
+ *   something outside the CPU changes what the loop reads: TIMA changes on every timer tick, and everything
+ *   else (IF, or memory written by an interrupt handler) can only change with a scheduled event. So whole
+ *   iterations are skipped up to the next tick if the loop read any I/O register, or up to the next event if it
+ *   did not, and stepping resumes just before it.
+ */
+public class IdleLoopDetector {
+    // how far back a jump may go to count as a loop
+    private static final int MAX_LOOP_BYTES = 32;
+    // give up measuring an iteration after this many instructions
+    private static final int MAX_ITERATION_INSTRUCTIONS = 64;
+
+    private final RegisterFile registerFile;
+    private final GameboyBus bus;
+    private final InterruptController interruptController;
+    private final Timer timer;
+    private final Scheduler scheduler;
+    private final Cartridge cartridge;
+
+    private final Map<Integer, IdleLoop> loops = new LinkedHashMap<>();
+
+    // iteration being measured
+    private boolean measuring;
+    private int head;
+    private int af, bc, de, hl, sp;
+    private boolean ime;
+    private byte tima;
+    private byte div;
+    private long writeCountAtHead;
+    private long ioReadCountAtHead;
+    private int iterationInstructions;
+    private int iterationCycles;
+
+    // last measured iteration, if it repeats exactly
+    private IdleLoop idleLoop;
+    private boolean pollsIo;
+    private int idleInstructions;
+    private int idleCycles;
+
+    public IdleLoopDetector(GameboyRegisters registers, GameboyBus bus, InterruptController interruptController, Timer timer,
+                            Scheduler scheduler, Cartridge cartridge) {
+        this.registerFile = registers.getRegisterFile();
+        this.bus = bus;
+        this.interruptController = interruptController;
+        this.timer = timer;
+        this.scheduler = scheduler;
+        this.cartridge = cartridge;
+    }
+
+    /**
+     * To be called after every step, once interrupts have been checked and the timer advanced.
+     *
+     * @param pcBefore PC before the step
+     * @param instructions instructions the step retired
+     * @param cycles machine cycles the step took, not counting interrupt dispatch
+     * @param interruptTaken whether an interrupt was serviced after the step
+     */
+    public void afterStep(int pcBefore, int instructions, int cycles, boolean interruptTaken) {
+        if (interruptTaken) {
+            measuring = false;
+            return;
+        }
+        int pc = registerFile.getPC();
+        if (measuring) {
+            iterationInstructions += instructions;
+            iterationCycles += cycles;
+            if (pc == head) {
+                finishIteration();
+            } else if (iterationInstructions > MAX_ITERATION_INSTRUCTIONS) {
+                measuring = false;
+            }
+        } else if (pc <= pcBefore && pcBefore - pc <= MAX_LOOP_BYTES) {
+            startIteration(pc);
+        }
+    }
+
+    /**
+     * To be called before every step. If the last iteration of a loop turned out to be idle, skips as many
+     *   further iterations as can pass before the next event, advancing the clock accordingly.
+     *
+     * @param budget most instructions that may be skipped
+     * @return number of instructions skipped, 0 to go on stepping normally
+     */
+    public int fastForward(int budget) {
+        IdleLoop loop = idleLoop;
+        if (loop == null) {
+            return 0;
+        }
+        // an interrupt flagged by the last step is serviced after the next one, whatever is scheduled
+        if (registerFile.getPC() != head || interruptController.isHalted() || interruptController.interruptReady()) {
+            idleLoop = null;
+            return 0;
+        }
+
+        long iterations = budget / idleInstructions;
+        long untilEvent = scheduler.cyclesUntilNextEvent();
+        if (pollsIo) {
+            untilEvent = Math.min(untilEvent, Math.min(timer.cyclesUntilTick(), timer.cyclesUntilDivChange()));
+        }
+        if (untilEvent != Long.MAX_VALUE) {
+            // stop short of the event, the iteration it lands in is stepped normally
+            iterations = Math.min(iterations, (untilEvent - 1L) / (idleCycles * 4L));
+        }
+        iterations = Math.min(iterations, Integer.MAX_VALUE / 4 / idleCycles);
+        if (iterations <= 0) {
+            idleLoop = null;
+            return 0;
+        }
+
+        // the CPU is back at the loop head in the same state, so the loop stays idle for the next call
+        scheduler.advance((int) (iterations * idleCycles * 4));
+        loop.recordSkip(iterations * idleInstructions, iterations * idleCycles);
+        return (int) (iterations * idleInstructions);
+    }
+
+    private void startIteration(int pc) {
+        measuring = true;
+        head = pc;
+        af = registerFile.getAF();
+        bc = registerFile.get16(RegisterFile.BC);
+        de = registerFile.get16(RegisterFile.DE);
+        hl = registerFile.getHL();
+        sp = registerFile.getSP();
+        ime = interruptController.getInterruptMasterEnable();
+        tima = timer.getTIMA();
+        div = timer.getDIV();
+        writeCountAtHead = bus.getWriteCount();
+        ioReadCountAtHead = bus.getIoReadCount();
+        iterationInstructions = 0;
+        iterationCycles = 0;
+    }
+
+    private void finishIteration() {
+        boolean readIo = bus.getIoReadCount() != ioReadCountAtHead;
+        // a tick after the loop read I/O would show up in the next iteration, not in this one
+        boolean repeats = bus.getWriteCount() == writeCountAtHead
+                && (!readIo || tima == timer.getTIMA() && div == timer.getDIV())
+                && !interruptController.isHalted()
+                && ime == interruptController.getInterruptMasterEnable()
+                && af == registerFile.getAF()
+                && bc == registerFile.get16(RegisterFile.BC)
+                && de == registerFile.get16(RegisterFile.DE)
+                && hl == registerFile.getHL()
+                && sp == registerFile.getSP();
+        if (repeats) {
+            int bank = cartridge != null ? cartridge.bankAt(head) : 0;
+            idleLoop = loops.computeIfAbsent(bank << 16 | head, key -> new IdleLoop(bank, head));
+            idleLoop.recordIteration(iterationInstructions, iterationCycles);
+            pollsIo = readIo;
+            idleInstructions = iterationInstructions;
+            idleCycles = iterationCycles;
+        }
+        // measure the next iteration from here
+        startIteration(head);
+    }
+
+    /**
+     * @return every idle loop detected so far, in the order they were found
+     */
+    public List<IdleLoop> getIdleLoops() {
+        return new ArrayList<>(loops.values());
+    }
+}
@@ -9,7 +9,7 @@ import emulator.cpu.register.InstructionTarget8Bit;
 import emulator.cpu.register.Register;
 import emulator.interrupts.InterruptController;
 
-public class InstructionDecoder {
+public class InstructionDecoder implements IInstructionDecoder {
 
     private GameboyRegisters registers;
     private GameboyBus bus;
@@ -24,6 +24,7 @@ public class InstructionDecoder {
         this.interruptController = interruptController;
     }
     
+    @Override
     public Instruction decode(byte nextInstruction) {
         if (nextInstruction == (byte) 0x00) {
             // NOP
@@ -1,20 +1,28 @@
 package emulator.cpu;
 
 import emulator.bus.IBus;
+import emulator.cpu.register.RegisterFile;
 
 public class InstructionFetcher {
 
-    private GameboyRegisters registers;
+    private RegisterFile registerFile;
     private IBus bus;
 
     public InstructionFetcher(GameboyRegisters registers, IBus bus) {
-        this.registers = registers;
+        this.registerFile = registers.getRegisterFile();
         this.bus = bus;
     }
 
     public byte fetchNextByte() {
-        byte nextByte = bus.readByteAt(registers.getPC().getValue());
-        registers.getPC().setValue(registers.getPC().getValue() + 1);
-        return nextByte;
+        return bus.readByteAt(registerFile.getAndIncrementPC());
+    }
+
+    /**
+     * Fetches a little endian 16-bit immediate.
+     */
+    public int fetchNextWord() {
+        int pc = registerFile.getPC();
+        registerFile.setPC(pc + 2);
+        return bus.readWord(pc);
     }
 }
@@ -0,0 +1,73 @@
+package emulator.cpu;
+
+import emulator.bus.IBus;
+import emulator.cpu.debug.IProfiler;
+import emulator.cpu.register.RegisterFile;
+import emulator.interrupts.InterruptController;
+import emulator.scheduler.Scheduler;
+
+/**
+ * {@link CPU} that reports every instruction it executes, and every interrupt it services, to an {@link IProfiler}.
+ * Profiling lives in this subclass rather than behind a flag in CPU, so a Gameboy built without a profiler runs
+ *   exactly the code it did before.
+ * Instructions run one at a time, never fused into superinstructions, so each is counted on its own.
+ */
+public class ProfilingCPU extends CPU {
+    private final IBus bus;
+    private final RegisterFile registerFile;
+    private final InterruptController interruptController;
+    private final IProfiler profiler;
+
+    public ProfilingCPU(IBus bus, GameboyRegisters registers, InterruptController interruptController, IInstructionDecoder instructionDecoder, InstructionFetcher instructionFetcher, IProfiler profiler) {
+        super(bus, registers, interruptController, instructionDecoder, instructionFetcher);
+        this.bus = bus;
+        this.registerFile = registers.getRegisterFile();
+        this.interruptController = interruptController;
+        this.profiler = profiler;
+    }
+
+    @Override
+    public int executeNext(int budget) {
+        if (interruptController.isHalted()
+                && (interruptController.getInterruptMasterEnable() || interruptController.getPendingInterrupts() == 0)) {
+            int cycles = super.executeNext(1);
+            profiler.recordHalted(cycles);
+            return cycles;
+        }
+
+        int pc = registerFile.getPC();
+        int opcode = bus.readByteAt(pc) & 0xFF;
+        if (opcode == 0xCB) {
+            opcode = 0x100 | bus.readByteAt((pc + 1) & 0xFFFF) & 0xFF;
+        }
+        int cycles = super.executeNext(1);
+        profiler.recordInstruction(pc, opcode, cycles, registerFile.getPC(), registerFile.getSP());
+        return cycles;
+    }
+
+    /**
+     * Halted steps skipped in bulk never reach {@link #executeNext(int)}, so they're reported here instead.
+     */
+    @Override
+    public int skippableHaltSteps(int budget, Scheduler scheduler) {
+        int steps = super.skippableHaltSteps(budget, scheduler);
+        if (steps > 0) {
+            // each one a 1 cycle no-op
+            profiler.recordHalted(steps);
+        }
+        return steps;
+    }
+
+    @Override
+    public int checkInterrupts() {
+        int cycles = super.checkInterrupts();
+        if (cycles != 0) {
+            profiler.recordInterrupt(registerFile.getPC(), registerFile.getSP());
+        }
+        return cycles;
+    }
+
+    public IProfiler getProfiler() {
+        return profiler;
+    }
+}
@@ -0,0 +1,192 @@
+package emulator.cpu;
+
+import static emulator.cpu.instruction.Superinstruction.ANY;
+
+import emulator.bus.IBus;
+import emulator.cpu.instruction.Superinstruction;
+import emulator.cpu.register.FlagRegister;
+import emulator.cpu.register.RegisterFile;
+import emulator.scheduler.Scheduler;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pre-decoder that recognizes common idioms at the current PC and runs them as one {@link Superinstruction}:
+ *   copy loop bodies (LD A, (HL+) / LD (DE), A / INC DE or DEC BC), the loop counter test
+ *   (DEC BC / LD A, B / OR C / JR NZ), compare and branch (CP n / JR NZ) and I/O polling (LDH A, (n) / AND n / JR Z).
+ *
+ * A fused sequence only retires interrupts and timer once at its end, so it is only used when that is
+ *   indistinguishable from stepping: no scheduled event falls inside it, and it does not write
+ *   to I/O registers or to its own code.
+ */
+public class SuperinstructionDecoder {
+    private final InstructionFetcher instructionFetcher;
+    private final RegisterFile registerFile;
+    private final FlagRegister F;
+    private final IBus bus;
+    private final Scheduler scheduler;
+
+    private final List<Superinstruction> superinstructions = new ArrayList<>();
+    // candidates by first opcode
+    private final Superinstruction[][] byOpcode = new Superinstruction[256][];
+
+    public SuperinstructionDecoder(InstructionFetcher instructionFetcher, GameboyRegisters registers, IBus bus,
+                                   Scheduler scheduler) {
+        this.instructionFetcher = instructionFetcher;
+        this.registerFile = registers.getRegisterFile();
+        this.F = registerFile.getF();
+        this.bus = bus;
+        this.scheduler = scheduler;
+
+        register(copy("LD A, (HL+) / LD (DE), A / INC DE", 0x13, 1));
+        register(copy("LD A, (HL+) / LD (DE), A / DEC BC", 0x0B, -1));
+        register(new Superinstruction("DEC BC / LD A, B / OR C / JR NZ", new int[]{0x0B, 0x78, 0xB1, 0x20, ANY}, 4, 7,
+                pc -> true,
+                instruction -> {
+                    skip(4);
+                    byte offset = instructionFetcher.fetchNextByte();
+                    registerFile.set16(RegisterFile.BC, registerFile.get16(RegisterFile.BC) - 1);
+                    int b = registerFile.get8(RegisterFile.B);
+                    int c = registerFile.get8(RegisterFile.C);
+                    registerFile.setA(b | c);
+                    F.deferFlags(Alu.table(Operator.OR), Alu.index(b, c, 0, 0));
+                    return 4 + jumpRelativeIf((b | c) != 0, offset);
+                }));
+        register(new Superinstruction("CP n / JR NZ", new int[]{0xFE, ANY, 0x20, ANY}, 2, 5,
+                pc -> true,
+                instruction -> {
+                    skip(1);
+                    int operand = instructionFetcher.fetchNextByte() & 0xFF;
+                    skip(1);
+                    byte offset = instructionFetcher.fetchNextByte();
+                    int a = registerFile.getA();
+                    F.deferFlags(Alu.table(Operator.CP), Alu.index(a, operand, 0, 0));
+                    return 2 + jumpRelativeIf(a != operand, offset);
+                }));
+        register(new Superinstruction("LDH A, (n) / AND n / JR Z", new int[]{0xF0, ANY, 0xE6, ANY, 0x28, ANY}, 3, 8,
+                pc -> true,
+                instruction -> {
+                    skip(1);
+                    int address = 0xFF00 | (instructionFetcher.fetchNextByte() & 0xFF);
+                    skip(1);
+                    int mask = instructionFetcher.fetchNextByte() & 0xFF;
+                    skip(1);
+                    byte offset = instructionFetcher.fetchNextByte();
+                    int value = bus.readByteAt(address) & 0xFF;
+                    registerFile.setA(value & mask);
+                    F.deferFlags(Alu.table(Operator.AND), Alu.index(value, mask, 0, 0));
+                    return 5 + jumpRelativeIf((value & mask) == 0, offset);
+                }));
+    }
+
+    private Superinstruction copy(String name, int thirdOpcode, int step) {
+        int pair = thirdOpcode == 0x13 ? RegisterFile.DE : RegisterFile.BC;
+        return new Superinstruction(name, new int[]{0x2A, 0x12, thirdOpcode}, 3, 6,
+                // the store must not reach I/O, the cartridge or the sequence itself
+                pc -> {
+                    int de = registerFile.get16(RegisterFile.DE);
+                    return de >= 0x8000 && de < 0xFF00 && ((de - pc) & 0xFFFF) >= 3;
+                },
+                instruction -> {
+                    skip(3);
+                    int a = bus.readByteAt(registerFile.getAndIncrementHL()) & 0xFF;
+                    registerFile.setA(a);
+                    bus.writeByteAt(registerFile.get16(RegisterFile.DE), (byte) a);
+                    registerFile.set16(pair, registerFile.get16(pair) + step);
+                    return 6;
+                });
+    }
+
+    private void register(Superinstruction superinstruction) {
+        superinstructions.add(superinstruction);
+        int opcode = superinstruction.getPattern()[0];
+        Superinstruction[] candidates = byOpcode[opcode];
+        if (candidates == null) {
+            byOpcode[opcode] = new Superinstruction[]{superinstruction};
+        } else {
+            Superinstruction[] extended = new Superinstruction[candidates.length + 1];
+            System.arraycopy(candidates, 0, extended, 0, candidates.length);
+            extended[candidates.length] = superinstruction;
+            byOpcode[opcode] = extended;
+        }
+    }
+
+    /**
+     * @param pc address of the next instruction
+     * @param budget most instructions allowed to retire
+     * @return the fused handler for the sequence at pc, or null if the CPU should step normally
+     */
+    public Superinstruction decode(int pc, int budget) {
+        Superinstruction[] candidates = byOpcode[bus.readByteAt(pc) & 0xFF];
+        if (candidates == null) {
+            return null;
+        }
+        for (Superinstruction candidate : candidates) {
+            if (candidate.getInstructionCount() <= budget
+                    && matches(candidate.getPattern(), pc)
+                    && finishesBeforeNextEvent(candidate.getMaxCycles())
+                    && candidate.canFuse(pc)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private boolean matches(int[] pattern, int pc) {
+        if (!readable(pc, pattern.length)) {
+            return false;
+        }
+        for (int i = 1; i < pattern.length; i++) {
+            if (pattern[i] != ANY && (bus.readByteAt(pc + i) & 0xFF) != pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Code only ever runs from ROM, WRAM or HRAM, the whole pattern has to fit in one of them.
+     */
+    private static boolean readable(int pc, int length) {
+        int end = pc + length - 1;
+        return end < 0x8000 || (pc >= 0xC000 && end < 0xE000) || (pc >= 0xFF80 && end <= 0xFFEF);
+    }
+
+    /**
+     * An event inside the sequence would only be noticed after it: an interrupt it flags would be serviced late,
+     *   a run it ends would stop late. So the sequence has to finish before the next scheduled event.
+     */
+    private boolean finishesBeforeNextEvent(int maxCycles) {
+        return maxCycles * 4 <= scheduler.cyclesUntilNextEvent();
+    }
+
+    private void skip(int bytes) {
+        registerFile.setPC(registerFile.getPC() + bytes);
+    }
+
+    private int jumpRelativeIf(boolean condition, byte offset) {
+        if (condition) {
+            registerFile.setPC(registerFile.getPC() + offset);
+            return 3;
+        }
+        return 2;
+    }
+
+    public List<Superinstruction> getSuperinstructions() {
+        return superinstructions;
+    }
+
+    /**
+     * @return how often each fused handler fired, by name
+     */
+    public Map<String, Long> getStatistics() {
+        Map<String, Long> statistics = new LinkedHashMap<>();
+        for (Superinstruction superinstruction : superinstructions) {
+            statistics.put(superinstruction.getName(), superinstruction.getFireCount());
+        }
+        return statistics;
+    }
+}
@@ -0,0 +1,574 @@
+package emulator.cpu;
+
+import static emulator.cpu.instruction.InstructionUtils.*;
+
+import emulator.bus.GameboyBus;
+import emulator.cpu.instruction.*;
+import emulator.cpu.register.FlagRegister;
+import emulator.cpu.register.RegisterFile;
+import emulator.interrupts.InterruptController;
+
+/**
+ * Table driven alternative to {@link InstructionDecoder}.
+ * Every opcode (and every 0xCB prefixed opcode) gets a handler built once up front, with its operand
+ *   register indexes and cycle cost already resolved. Decoding is then a single array lookup and executing
+ *   an instruction does not allocate. Handlers work directly on the primitive {@link RegisterFile}.
+ */
+public class TableInstructionDecoder implements IInstructionDecoder {
+
+    private final RegisterFile registerFile;
+    private final FlagRegister F;
+    private final GameboyBus bus;
+    private final InterruptController interruptController;
+    private final InstructionFetcher instructionFetcher;
+
+    private final Instruction[] baseTable = new Instruction[256];
+    private final Instruction[] cbTable = new Instruction[256];
+
+    public TableInstructionDecoder(InstructionFetcher instructionFetcher, GameboyRegisters registers, GameboyBus bus, InterruptController interruptController) {
+        this.instructionFetcher = instructionFetcher;
+        this.registerFile = registers.getRegisterFile();
+        this.F = registerFile.getF();
+        this.bus = bus;
+        this.interruptController = interruptController;
+
+        buildBaseTable();
+        buildCbTable();
+    }
+
+    @Override
+    public Instruction decode(byte nextInstruction) {
+        return baseTable[nextInstruction & 0xFF];
+    }
+
+    /**
+     * @return handler for the 0xCB prefixed opcode, its cycle cost already includes the prefix
+     */
+    public Instruction decodePrefixed(byte nextInstruction) {
+        return cbTable[nextInstruction & 0xFF];
+    }
+
+    private void buildBaseTable() {
+        for (int opcode = 0; opcode < 256; opcode++) {
+            baseTable[opcode] = invalid(opcode);
+        }
+
+        baseTable[0x00] = new NOPInstruction();
+        baseTable[0x10] = new STOPInstruction(instructionFetcher);
+        baseTable[0x76] = new HALTInstruction(interruptController);
+        baseTable[0xFB] = new EIInstruction(interruptController);
+        baseTable[0xF3] = new DIInstruction(interruptController);
+
+        for (int xxx = 0; xxx < 8; xxx++) {
+            baseTable[0b00_000_110 | xxx << 3] = loadImmediate(xxx);
+            baseTable[0b00_000_100 | xxx << 3] = increment(xxx);
+            baseTable[0b00_000_101 | xxx << 3] = decrement(xxx);
+            Operator operator = getAluOperatorFor((byte) xxx);
+            for (int yyy = 0; yyy < 8; yyy++) {
+                int opcode = 0b01_000_000 | xxx << 3 | yyy;
+                if (opcode != 0x76) {
+                    baseTable[opcode] = load(xxx, yyy);
+                }
+                baseTable[0b10_000_000 | xxx << 3 | yyy] = alu(operator, yyy);
+            }
+            baseTable[0b11_000_110 | xxx << 3] = aluImmediate(operator);
+            baseTable[0b11_000_111 | xxx << 3] = restart(xxx << 3);
+        }
+
+        for (int xx = 0; xx < 4; xx++) {
+            baseTable[0b00_00_0001 | xx << 4] = loadImmediate16(xx);
+            baseTable[0b00_00_0011 | xx << 4] = increment16(xx);
+            baseTable[0b00_00_1011 | xx << 4] = decrement16(xx);
+            baseTable[0b00_00_1001 | xx << 4] = addHL(xx);
+            baseTable[0b11_00_0001 | xx << 4] = pop(xx);
+            baseTable[0b11_00_0101 | xx << 4] = push(xx);
+            baseTable[0b00_00_0010 | xx << 4] = storeIndirect(xx);
+            baseTable[0b00_00_1010 | xx << 4] = loadIndirect(xx);
+            baseTable[0b110_00_000 | xx << 3] = returnConditional(xx);
+            baseTable[0b110_00_010 | xx << 3] = jumpConditional(xx);
+            baseTable[0b110_00_100 | xx << 3] = callConditional(xx);
+            baseTable[0b001_00_000 | xx << 3] = jumpRelativeConditional(xx);
+        }
+
+        baseTable[0xCB] = instruction -> {
+            // 16 bit opcode....
+            byte nextInstruction = instructionFetcher.fetchNextByte();
+            return cbTable[nextInstruction & 0xFF].execute(nextInstruction);
+        };
+        baseTable[0x18] = instruction -> {
+            // JR n
+            byte addrOffset = instructionFetcher.fetchNextByte();
+            registerFile.setPC(registerFile.getPC() + addrOffset);
+            return 3;
+        };
+        baseTable[0xC3] = instruction -> {
+            // JP nn
+            registerFile.setPC(fetchAddress());
+            return 4;
+        };
+        baseTable[0xE9] = instruction -> {
+            // JP HL
+            registerFile.setPC(registerFile.getHL());
+            return 1;
+        };
+        baseTable[0xE0] = instruction -> {
+            // LD (n), A
+            bus.writeByteAt(0xFF00 | (instructionFetcher.fetchNextByte() & 0xFF), (byte) registerFile.getA());
+            return 3;
+        };
+        baseTable[0xF0] = instruction -> {
+            // LD A, (n)
+            registerFile.setA(bus.readByteAt(0xFF00 | (instructionFetcher.fetchNextByte() & 0xFF)));
+            return 3;
+        };
+        baseTable[0xFA] = instruction -> {
+            // LD A, (nn)
+            registerFile.setA(bus.readByteAt(fetchAddress()));
+            return 4;
+        };
+        baseTable[0xEA] = instruction -> {
+            // LD (nn), A
+            bus.writeByteAt(fetchAddress(), (byte) registerFile.getA());
+            return 4;
+        };
+        baseTable[0xF2] = instruction -> {
+            // LD A, (C)
+            registerFile.setA(bus.readByteAt(0xFF00 | registerFile.get8(RegisterFile.C)));
+            return 2;
+        };
+        baseTable[0xE2] = instruction -> {
+            // LD (C), A
+            bus.writeByteAt(0xFF00 | registerFile.get8(RegisterFile.C), (byte) registerFile.getA());
+            return 2;
+        };
+        baseTable[0x08] = instruction -> {
+            // LD (nn), SP
+            int targetAddr = fetchAddress();
+            int sp = registerFile.getSP();
+            bus.writeWord(targetAddr, sp);
+            return 5;
+        };
+        baseTable[0xF9] = instruction -> {
+            // LD SP, HL
+            registerFile.setSP(registerFile.getHL());
+            return 2;
+        };
+        baseTable[0xE8] = instruction -> {
+            // ADD SP, s8
+            byte value = instructionFetcher.fetchNextByte();
+            int orig = registerFile.getSP();
+            registerFile.setSP(value + orig);
+
+            F.setZ(false);
+            F.setN(false);
+            F.setH((byte) orig, value, Operator.ADD);
+            F.setC((byte) orig, value, Operator.ADD);
+            return 4;
+        };
+        baseTable[0xF8] = instruction -> {
+            // LD HL, SP+s8
+            byte value = instructionFetcher.fetchNextByte();
+            int orig = registerFile.getSP();
+            registerFile.setHL(value + orig);
+
+            F.setZ(false);
+            F.setN(false);
+            F.setH(((orig & 0xF) + (value & 0xF)) & 0x10);
+            F.setC(((orig & 0xFF) + (value & 0xFF)) & 0x100);
+            return 3;
+        };
+        baseTable[0xCD] = instruction -> {
+            // CALL nn
+            int targetAddr = fetchAddress();
+            pushToStack(registerFile.getPC(), registerFile, bus);
+            registerFile.setPC(targetAddr);
+            return 6;
+        };
+        baseTable[0xC9] = instruction -> {
+            // RET
+            registerFile.setPC(popFromStack(registerFile, bus));
+            return 4;
+        };
+        baseTable[0xD9] = instruction -> {
+            // RETI
+            registerFile.setPC(popFromStack(registerFile, bus));
+            interruptController.setInterruptMasterEnable(true);
+            return 4;
+        };
+        baseTable[0x2F] = instruction -> {
+            // CPL
+            registerFile.setA(~registerFile.getA());
+            F.setN(true);
+            F.setH(true);
+            return 1;
+        };
+        baseTable[0x3F] = instruction -> {
+            // CCF
+            F.setN(false);
+            F.setH(false);
+            F.setC(!F.getC());
+            return 1;
+        };
+        baseTable[0x37] = instruction -> {
+            // SCF
+            F.setN(false);
+            F.setH(false);
+            F.setC(true);
+            return 1;
+        };
+        baseTable[0x07] = instruction -> {
+            // RLCA
+            rotateAccumulator(Alu.RLC);
+            return 1;
+        };
+        baseTable[0x0F] = instruction -> {
+            // RRCA
+            rotateAccumulator(Alu.RRC);
+            return 1;
+        };
+        baseTable[0x17] = instruction -> {
+            // RLA
+            rotateAccumulator(Alu.RL);
+            return 1;
+        };
+        baseTable[0x1F] = instruction -> {
+            // RRA
+            rotateAccumulator(Alu.RR);
+            return 1;
+        };
+        baseTable[0x27] = instruction -> {
+            // DAA
+            int packed = Alu.daa(registerFile.getA(), F.getValue() & 0xFF);
+            registerFile.setA(Alu.result(packed));
+            F.setValue((byte) Alu.flags(packed));
+            return 1;
+        };
+    }
+
+    private void buildCbTable() {
+        for (int xxx = 0; xxx < 8; xxx++) {
+            int index = xxx;
+            int cost = 2 + accessCost(index);
+
+            for (int op = Alu.RLC; op <= Alu.SRL; op++) {
+                // RLC/RRC/RL/RR/SLA/SRA/SWAP/SRL r
+                int shiftOp = op;
+                cbTable[op << 3 | xxx] = instruction -> {
+                    int packed = Alu.shift(shiftOp, read8(index), F.getC() ? 1 : 0);
+                    write8(index, Alu.result(packed));
+                    F.setValue((byte) Alu.flags(packed));
+                    return cost;
+                };
+            }
+
+            for (int iii = 0; iii < 8; iii++) {
+                int targetBit = 0x01 << iii;
+                cbTable[0b01_000_000 | iii << 3 | xxx] = instruction -> {
+                    // BIT i, r
+                    F.setZ((read8(index) & targetBit) == 0);
+                    F.setN(false);
+                    F.setH(true);
+                    return cost;
+                };
+                cbTable[0b10_000_000 | iii << 3 | xxx] = instruction -> {
+                    // RES i, r
+                    write8(index, read8(index) & ~targetBit);
+                    return cost;
+                };
+                cbTable[0b11_000_000 | iii << 3 | xxx] = instruction -> {
+                    // SET i, r
+                    write8(index, read8(index) | targetBit);
+                    return cost;
+                };
+            }
+        }
+    }
+
+    private int read8(int index) {
+        if (index == RegisterFile.HL_INDIRECT) {
+            return bus.readByteAt(registerFile.getHL()) & 0xFF;
+        }
+        return registerFile.get8(index);
+    }
+
+    private void write8(int index, int value) {
+        if (index == RegisterFile.HL_INDIRECT) {
+            bus.writeByteAt(registerFile.getHL(), (byte) value);
+        } else {
+            registerFile.set8(index, value);
+        }
+    }
+
+    private static int accessCost(int index) {
+        return index == RegisterFile.HL_INDIRECT ? 1 : 0;
+    }
+
+    private int fetchAddress() {
+        return instructionFetcher.fetchNextWord();
+    }
+
+    private boolean condition(int cc) {
+        return switch (cc) {
+            case 0b00 -> !F.getZ(); // NZ
+            case 0b01 -> F.getZ();  // Z
+            case 0b10 -> !F.getC(); // NC
+            default -> F.getC();    // C
+        };
+    }
+
+    private void rotateAccumulator(int op) {
+        // RLCA/RRCA/RLA/RRA always clear Z, unlike their CB counterparts
+        int packed = Alu.shift(op, registerFile.getA(), F.getC() ? 1 : 0);
+        registerFile.setA(Alu.result(packed));
+        F.setValue((byte) (Alu.flags(packed) & ~FlagRegister.Z_FLAG));
+    }
+
+    private Instruction invalid(int opcode) {
+        return instruction -> {
+            throw new IndexOutOfBoundsException("Received invalid instruction: " + String.format("0x%02X", opcode));
+        };
+    }
+
+    private Instruction loadImmediate(int index) {
+        // LD r1, n --- LD (HL), n
+        int cost = accessCost(index) + 2;
+        return instruction -> {
+            write8(index, instructionFetcher.fetchNextByte());
+            return cost;
+        };
+    }
+
+    private Instruction load(int target, int source) {
+        // LD r1, r2
+        int cost = 1 + accessCost(target) + accessCost(source);
+        if (target != RegisterFile.HL_INDIRECT && source != RegisterFile.HL_INDIRECT) {
+            return instruction -> {
+                registerFile.set8(target, registerFile.get8(source));
+                return cost;
+            };
+        }
+        return instruction -> {
+            write8(target, read8(source));
+            return cost;
+        };
+    }
+
+    private Instruction increment(int index) {
+        // INC r1
+        int cost = accessCost(index) * 2 + 1;
+        char[] table = Alu.incrementTable();
+        return instruction -> {
+            int value = read8(index);
+            write8(index, value + 1);
+            F.deferZNH(table, value);
+            return cost;
+        };
+    }
+
+    private Instruction decrement(int index) {
+        // DEC r1
+        int cost = accessCost(index) * 2 + 1;
+        char[] table = Alu.decrementTable();
+        return instruction -> {
+            int value = read8(index);
+            write8(index, value - 1);
+            F.deferZNH(table, value);
+            return cost;
+        };
+    }
+
+    private Instruction alu(Operator operator, int source) {
+        // ADD/SUB/etc A, r
+        int cost = 1 + accessCost(source);
+        char[] table = Alu.table(operator);
+        int carryMask = Alu.carryMask(operator);
+        return instruction -> {
+            applyAlu(operator, table, carryMask, read8(source));
+            return cost;
+        };
+    }
+
+    private Instruction aluImmediate(Operator operator) {
+        // ADD/SUB/etc. A, d8
+        char[] table = Alu.table(operator);
+        int carryMask = Alu.carryMask(operator);
+        return instruction -> {
+            applyAlu(operator, table, carryMask, instructionFetcher.fetchNextByte() & 0xFF);
+            return 2;
+        };
+    }
+
+    private void applyAlu(Operator operator, char[] table, int carryMask, int operand) {
+        // the result is plain arithmetic, the table is only consulted once the flags are read
+        int a = registerFile.getA();
+        int carry = carryMask != 0 && F.getC() ? 1 : 0;
+        switch (operator) {
+            case ADD, ADC -> registerFile.setA(a + operand + carry);
+            case SUB, SBC -> registerFile.setA(a - operand - carry);
+            case AND -> registerFile.setA(a & operand);
+            case XOR -> registerFile.setA(a ^ operand);
+            case OR -> registerFile.setA(a | operand);
+            case CP -> { }
+        }
+        F.deferFlags(table, Alu.index(a, operand, carry, carryMask));
+    }
+
+    private Instruction restart(int address) {
+        // RST i
+        return instruction -> {
+            pushToStack(registerFile.getPC(), registerFile, bus);
+            registerFile.setPC(address);
+            return 4;
+        };
+    }
+
+    private Instruction loadImmediate16(int pair) {
+        // LD rr, nn
+        return instruction -> {
+            registerFile.set16(pair, fetchAddress());
+            return 3;
+        };
+    }
+
+    private Instruction increment16(int pair) {
+        // INC rr
+        return instruction -> {
+            registerFile.set16(pair, registerFile.get16(pair) + 1);
+            return 2;
+        };
+    }
+
+    private Instruction decrement16(int pair) {
+        // DEC rr
+        return instruction -> {
+            registerFile.set16(pair, registerFile.get16(pair) - 1);
+            return 2;
+        };
+    }
+
+    private Instruction addHL(int pair) {
+        // ADD HL, rr
+        return instruction -> {
+            int orig = registerFile.getHL();
+            int toAdd = registerFile.get16(pair);
+            registerFile.setHL(orig + toAdd);
+
+            F.setN(false);
+            F.setH(((orig & 0x0FFF) + (toAdd & 0x0FFF)) & 0x1000);
+            F.setC(orig + toAdd > 0xFFFF);
+            return 2;
+        };
+    }
+
+    private Instruction pop(int xx) {
+        // POP BC|DE|HL|AF
+        if (xx == 0b11) {
+            return instruction -> {
+                registerFile.setAF(popFromStack(registerFile, bus));
+                return 3;
+            };
+        }
+        return instruction -> {
+            registerFile.set16(xx, popFromStack(registerFile, bus));
+            return 3;
+        };
+    }
+
+    private Instruction push(int xx) {
+        // PUSH BC|DE|HL|AF
+        if (xx == 0b11) {
+            return instruction -> {
+                pushToStack(registerFile.getAF(), registerFile, bus);
+                return 4;
+            };
+        }
+        return instruction -> {
+            pushToStack(registerFile.get16(xx), registerFile, bus);
+            return 4;
+        };
+    }
+
+    private Instruction storeIndirect(int xx) {
+        // LD (BC), A --- LD (DE), A --- LD (HL++), A --- LD (HL--), A
+        return switch (xx) {
+            case 0b10 -> instruction -> {
+                bus.writeByteAt(registerFile.getAndIncrementHL(), (byte) registerFile.getA());
+                return 2;
+            };
+            case 0b11 -> instruction -> {
+                bus.writeByteAt(registerFile.getAndDecrementHL(), (byte) registerFile.getA());
+                return 2;
+            };
+            default -> instruction -> {
+                bus.writeByteAt(registerFile.get16(xx), (byte) registerFile.getA());
+                return 2;
+            };
+        };
+    }
+
+    private Instruction loadIndirect(int xx) {
+        // LD A, (BC) --- LD A, (DE) --- LD A, (HL++) --- LD A, (HL--)
+        return switch (xx) {
+            case 0b10 -> instruction -> {
+                registerFile.setA(bus.readByteAt(registerFile.getAndIncrementHL()));
+                return 2;
+            };
+            case 0b11 -> instruction -> {
+                registerFile.setA(bus.readByteAt(registerFile.getAndDecrementHL()));
+                return 2;
+            };
+            default -> instruction -> {
+                registerFile.setA(bus.readByteAt(registerFile.get16(xx)));
+                return 2;
+            };
+        };
+    }
+
+    private Instruction returnConditional(int cc) {
+        // RET cond
+        return instruction -> {
+            if (condition(cc)) {
+                registerFile.setPC(popFromStack(registerFile, bus));
+                return 5;
+            }
+            return 2;
+        };
+    }
+
+    private Instruction jumpConditional(int cc) {
+        // JP cond, nn
+        return instruction -> {
+            int targetAddr = fetchAddress();
+            if (condition(cc)) {
+                registerFile.setPC(targetAddr);
+                return 4;
+            }
+            return 3;
+        };
+    }
+
+    private Instruction callConditional(int cc) {
+        // CALL cond, nn
+        return instruction -> {
+            int targetAddr = fetchAddress();
+            if (condition(cc)) {
+                pushToStack(registerFile.getPC(), registerFile, bus);
+                registerFile.setPC(targetAddr);
+                return 6;
+            }
+            return 3;
+        };
+    }
+
+    private Instruction jumpRelativeConditional(int cc) {
+        // JR cond, n
+        return instruction -> {
+            byte addr = instructionFetcher.fetchNextByte();
+            if (condition(cc)) {
+                registerFile.setPC(registerFile.getPC() + addr);
+                return 3;
+            }
+            return 2;
+        };
+    }
+}
@@ -0,0 +1,54 @@
+package emulator.cpu;
+
+import emulator.bus.IBus;
+import emulator.bus.device.cartridge.Cartridge;
+import emulator.cpu.debug.ITraceSink;
+import emulator.cpu.debug.TraceRecord;
+import emulator.cpu.register.RegisterFile;
+import emulator.interrupts.InterruptController;
+import emulator.scheduler.Scheduler;
+
+/**
+ * {@link CPU} that hands its state before every instruction to an {@link ITraceSink}, such as an
+ *   {@link emulator.cpu.debug.InstructionTracer}.
+ * Like {@link ProfilingCPU}, instructions run one at a time and a Gameboy built without a tracer never runs this code.
+ */
+public class TracingCPU extends CPU {
+    private final IBus bus;
+    private final RegisterFile registerFile;
+    private final InterruptController interruptController;
+    private final Scheduler scheduler;
+    private final Cartridge cartridge;
+    private final ITraceSink tracer;
+
+    public TracingCPU(IBus bus, GameboyRegisters registers, InterruptController interruptController, IInstructionDecoder instructionDecoder, InstructionFetcher instructionFetcher, Scheduler scheduler, Cartridge cartridge, ITraceSink tracer) {
+        super(bus, registers, interruptController, instructionDecoder, instructionFetcher);
+        this.bus = bus;
+        this.registerFile = registers.getRegisterFile();
+        this.interruptController = interruptController;
+        this.scheduler = scheduler;
+        this.cartridge = cartridge;
+        this.tracer = tracer;
+    }
+
+    @Override
+    public int executeNext(int budget) {
+        if (interruptController.isHalted()
+                && (interruptController.getInterruptMasterEnable() || interruptController.getPendingInterrupts() == 0)) {
+            // a halted step runs no instruction
+            return super.executeNext(1);
+        }
+
+        int pc = registerFile.getPC();
+        int bank = cartridge != null ? cartridge.bankAt(pc) : 0;
+        int memory = TraceRecord.readMemory(bus, pc);
+        tracer.record(scheduler.getNow(), pc, bank, memory, registerFile.getAF(), registerFile.get16(RegisterFile.BC),
+                registerFile.get16(RegisterFile.DE), registerFile.getHL(), registerFile.getSP(),
+                interruptController.getInterruptMasterEnable() ? TraceRecord.FLAG_IME : 0);
+        return super.executeNext(1);
+    }
+
+    public ITraceSink getTracer() {
+        return tracer;
+    }
+}
@@ -0,0 +1,196 @@
+package emulator.cpu.debug;
+
+import emulator.bus.device.cartridge.Cartridge;
+import emulator.scheduler.EventType;
+import emulator.scheduler.Scheduler;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Samples the guest call stack every so many clock cycles, for flame graphs of where a game spends its time.
+ * The stack is tracked from CALL, RST, RET, RETI and interrupt entry, sampling is a scheduler event, so between
+ *   calls the only cost per instruction is looking at its opcode. Idle loops can still be skipped, their time is
+ *   charged to the stack they spin in.
+ * Samples are aggregated per distinct stack in a tree, and written out in the collapsed stack format read by
+ *   flamegraph.pl, speedscope and similar tools, with frames named from an RGBDS .sym file if one is given.
+ */
+public class CallStackProfiler implements IProfiler {
+    public static final int DEFAULT_SAMPLE_INTERVAL = 4096;
+    private static final long INTERRUPT_FRAME = 1L << 40;
+    private static final String TOP_LEVEL = "[top level]";
+
+    private final int sampleInterval;
+    private final SymbolTable symbols;
+    private Scheduler scheduler;
+    private Cartridge cartridge;
+    private long nextSample;
+
+    private final ShadowCallStack callStack = new ShadowCallStack();
+
+    // tree of sampled stacks, node 0 is the empty stack
+    private final Map<Long, Integer> children = new HashMap<>();
+    private int[] parents = new int[64];
+    private long[] frames = new long[64];
+    private long[] samples = new long[64];
+    private int nodeCount = 1;
+    private long sampleCount;
+
+    public CallStackProfiler() {
+        this(DEFAULT_SAMPLE_INTERVAL, null);
+    }
+
+    /**
+     * @param sampleInterval clock cycles between samples
+     * @param symbols names for the frames, may be null
+     */
+    public CallStackProfiler(int sampleInterval, SymbolTable symbols) {
+        if (sampleInterval <= 0) {
+            throw new IllegalArgumentException("Sample interval has to be positive");
+        }
+        this.sampleInterval = sampleInterval;
+        this.symbols = symbols;
+    }
+
+    @Override
+    public void attach(Scheduler scheduler, Cartridge cartridge) {
+        this.scheduler = scheduler;
+        this.cartridge = cartridge;
+        nextSample = scheduler.getNow() + sampleInterval;
+        scheduler.setHandler(EventType.PROFILER_SAMPLE, this::onSampleDue);
+        scheduler.schedule(EventType.PROFILER_SAMPLE, nextSample);
+    }
+
+    @Override
+    public void recordInstruction(int pc, int opcode, int machineCycles, int nextPc, int sp) {
+        if (ShadowCallStack.isCall(opcode, pc, nextPc)) {
+            callStack.push(key(bankOf(nextPc), nextPc), sp, 0);
+        } else if (ShadowCallStack.isReturn(opcode)) {
+            while (callStack.topReturned(sp)) {
+                callStack.pop();
+            }
+        }
+    }
+
+    @Override
+    public void recordInterrupt(int vector, int sp) {
+        callStack.push(INTERRUPT_FRAME | vector, sp, 0);
+    }
+
+    @Override
+    public boolean needsEveryInstruction() {
+        return false;
+    }
+
+    private void onSampleDue() {
+        // the clock can jump past several sample points at once, the current stack stands for all of them
+        long now = scheduler.getNow();
+        long due = (now - nextSample) / sampleInterval + 1;
+        nextSample += due * sampleInterval;
+        scheduler.schedule(EventType.PROFILER_SAMPLE, nextSample);
+        sample(due);
+    }
+
+    /**
+     * Adds the current stack to the profile.
+     *
+     * @param weight number of samples it stands for
+     */
+    public void sample(long weight) {
+        int node = 0;
+        for (int i = 0; i < callStack.getDepth(); i++) {
+            node = child(node, callStack.keyAt(i));
+        }
+        samples[node] += weight;
+        sampleCount += weight;
+    }
+
+    private int child(int parent, long frame) {
+        Integer node = children.get((long) parent << 42 | frame);
+        if (node != null) {
+            return node;
+        }
+        if (nodeCount == parents.length) {
+            parents = Arrays.copyOf(parents, nodeCount * 2);
+            frames = Arrays.copyOf(frames, nodeCount * 2);
+            samples = Arrays.copyOf(samples, nodeCount * 2);
+        }
+        parents[nodeCount] = parent;
+        frames[nodeCount] = frame;
+        children.put((long) parent << 42 | frame, nodeCount);
+        return nodeCount++;
+    }
+
+    private int bankOf(int address) {
+        return cartridge != null ? cartridge.bankAt(address) : 0;
+    }
+
+    private static long key(int bank, int address) {
+        return (long) bank << 16 | address;
+    }
+
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * @return depth of the guest call stack right now
+     */
+    public int getDepth() {
+        return callStack.getDepth();
+    }
+
+    /**
+     * Writes one line per sampled stack: its frames from the outermost, separated by ';', then the sample count.
+     */
+    public void writeCollapsed(Writer writer) {
+        PrintWriter out = new PrintWriter(writer);
+        String[] names = new String[nodeCount];
+        names[0] = TOP_LEVEL;
+        // parents are always created before their children
+        for (int node = 1; node < nodeCount; node++) {
+            String frame = frameName(frames[node]);
+            names[node] = parents[node] == 0 ? frame : names[parents[node]] + ";" + frame;
+        }
+        for (int node = 0; node < nodeCount; node++) {
+            if (samples[node] != 0) {
+                out.println(names[node] + " " + samples[node]);
+            }
+        }
+        out.flush();
+    }
+
+    public void writeCollapsed(Path file) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file)) {
+            writeCollapsed(writer);
+        }
+    }
+
+    private String frameName(long frame) {
+        int bank = (int) (frame >>> 16) & 0xFFFF;
+        int address = (int) frame & 0xFFFF;
+        String name = symbols != null ? symbols.nameOf(bank, address) : null;
+        if ((frame & INTERRUPT_FRAME) != 0) {
+            // the vectors are too small for a label to cover anything but the vector itself
+            return name != null && !name.contains("+") ? name : interruptName(address);
+        }
+        return name != null ? name : String.format("%02X:%04X", bank, address);
+    }
+
+    private static String interruptName(int vector) {
+        return switch (vector) {
+            case 0x40 -> "[VBlank interrupt]";
+            case 0x48 -> "[STAT interrupt]";
+            case 0x50 -> "[Timer interrupt]";
+            case 0x58 -> "[Serial interrupt]";
+            case 0x60 -> "[Joypad interrupt]";
+            default -> String.format("[interrupt %04X]", vector);
+        };
+    }
+}
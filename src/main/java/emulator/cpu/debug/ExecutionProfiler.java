@@ -0,0 +1,370 @@
+package emulator.cpu.debug;
+
+import emulator.bus.device.cartridge.Cartridge;
+import emulator.scheduler.Scheduler;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Counts what the CPU executes, fed one instruction at a time by {@link emulator.cpu.ProfilingCPU}: executions and
+ *   machine cycles per opcode and per (bank, PC), plus the backward jumps and calls needed to rank hot loops and
+ *   hot subroutines.
+ * Everything is kept in primitive arrays sized up front or grown per bank, so recording an instruction does not
+ *   allocate.
+ */
+public class ExecutionProfiler implements IProfiler {
+    private Cartridge cartridge;
+
+    // 0x00-0xFF for base opcodes, 0x100-0x1FF for 0xCB prefixed ones
+    private final long[] opcodeCounts = new long[512];
+    private final long[] opcodeCycles = new long[512];
+    // indexed by PC, whole address space for bank 0, cartridge ROM only for the others
+    private long[][] addressCounts = new long[1][];
+    private long[][] addressCycles = new long[1][];
+    private final LongTable loopIterations = new LongTable();
+    private final LongTable subroutineCalls = new LongTable();
+    private final LongTable subroutineCycles = new LongTable();
+
+    // to charge subroutines for the cycles of everything they call
+    private final ShadowCallStack callStack = new ShadowCallStack();
+
+    private long instructions;
+    private long cycles;
+    private long haltedCycles;
+
+    public ExecutionProfiler() {
+        reset();
+    }
+
+    /**
+     * Takes the cartridge to tell which ROM bank code runs from.
+     */
+    @Override
+    public void attach(Scheduler scheduler, Cartridge cartridge) {
+        this.cartridge = cartridge;
+    }
+
+    public final void reset() {
+        Arrays.fill(opcodeCounts, 0);
+        Arrays.fill(opcodeCycles, 0);
+        addressCounts = new long[][]{new long[0x10000]};
+        addressCycles = new long[][]{new long[0x10000]};
+        loopIterations.clear();
+        subroutineCalls.clear();
+        subroutineCycles.clear();
+        callStack.clear();
+        instructions = 0;
+        cycles = 0;
+        haltedCycles = 0;
+    }
+
+    @Override
+    public void recordInstruction(int pc, int opcode, int machineCycles, int nextPc, int sp) {
+        int bank = bankOf(pc);
+        instructions++;
+        cycles += machineCycles;
+        opcodeCounts[opcode]++;
+        opcodeCycles[opcode] += machineCycles;
+        counts(bank)[pc]++;
+        addressCycles[bank][pc] += machineCycles;
+
+        switch (opcode) {
+            case 0x18, 0x20, 0x28, 0x30, 0x38, 0xC3, 0xC2, 0xCA, 0xD2, 0xDA -> {
+                if (nextPc <= pc) {
+                    loopIterations.add(key(bank, nextPc) << 16 | pc, 1);
+                }
+            }
+            default -> {
+                if (ShadowCallStack.isCall(opcode, pc, nextPc)) {
+                    long subroutine = key(bankOf(nextPc), nextPc);
+                    subroutineCalls.add(subroutine, 1);
+                    callStack.push(subroutine, sp, cycles);
+                } else if (ShadowCallStack.isReturn(opcode)) {
+                    while (callStack.topReturned(sp)) {
+                        subroutineCycles.add(callStack.topKey(), cycles - callStack.topStartCycles());
+                        callStack.pop();
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void recordHalted(int machineCycles) {
+        haltedCycles += machineCycles;
+    }
+
+    private int bankOf(int pc) {
+        return cartridge != null ? cartridge.bankAt(pc) : 0;
+    }
+
+    private static long key(int bank, int address) {
+        return (long) bank << 16 | address;
+    }
+
+    private long[] counts(int bank) {
+        if (bank >= addressCounts.length) {
+            addressCounts = Arrays.copyOf(addressCounts, bank + 1);
+            addressCycles = Arrays.copyOf(addressCycles, bank + 1);
+        }
+        if (addressCounts[bank] == null) {
+            addressCounts[bank] = new long[2 * Cartridge.ROM_BANK_SIZE];
+            addressCycles[bank] = new long[2 * Cartridge.ROM_BANK_SIZE];
+        }
+        return addressCounts[bank];
+    }
+
+    public long getInstructionCount() {
+        return instructions;
+    }
+
+    /**
+     * @return machine cycles spent executing instructions
+     */
+    public long getCycles() {
+        return cycles;
+    }
+
+    public long getHaltedCycles() {
+        return haltedCycles;
+    }
+
+    public long getOpcodeCount(int opcode) {
+        return opcodeCounts[opcode];
+    }
+
+    public long getPrefixedOpcodeCount(int opcode) {
+        return opcodeCounts[0x100 | opcode];
+    }
+
+    public long getExecutionCount(int bank, int pc) {
+        long[] counts = bank < addressCounts.length ? addressCounts[bank] : null;
+        return counts != null ? counts[pc] : 0;
+    }
+
+    public long getCycles(int bank, int pc) {
+        long[] cycles = bank < addressCycles.length ? addressCycles[bank] : null;
+        return cycles != null ? cycles[pc] : 0;
+    }
+
+    /**
+     * @return opcodes by cycles spent in them, highest first. Prefixed opcodes are reported as 0xCBxx.
+     */
+    public List<HotSpot> getHotOpcodes(int limit) {
+        List<HotSpot> hotSpots = new ArrayList<>();
+        for (int opcode = 0; opcode < opcodeCounts.length; opcode++) {
+            if (opcodeCounts[opcode] != 0) {
+                int code = opcode < 0x100 ? opcode : 0xCB00 | opcode & 0xFF;
+                hotSpots.add(new HotSpot(0, code, code, opcodeCounts[opcode], opcodeCycles[opcode]));
+            }
+        }
+        return rank(hotSpots, limit);
+    }
+
+    /**
+     * @return addresses by cycles spent executing the instruction there, highest first
+     */
+    public List<HotSpot> getHotAddresses(int limit) {
+        List<HotSpot> hotSpots = new ArrayList<>();
+        for (int bank = 0; bank < addressCounts.length; bank++) {
+            long[] counts = addressCounts[bank];
+            if (counts == null) {
+                continue;
+            }
+            for (int pc = 0; pc < counts.length; pc++) {
+                if (counts[pc] != 0) {
+                    hotSpots.add(new HotSpot(bank, pc, pc, counts[pc], addressCycles[bank][pc]));
+                }
+            }
+        }
+        return rank(hotSpots, limit);
+    }
+
+    /**
+     * A loop is a taken backward jump. Its cycles are those spent anywhere between its head and that jump.
+     *
+     * @return loops by cycles spent in them, highest first
+     */
+    public List<HotSpot> getHotLoops(int limit) {
+        List<HotSpot> hotSpots = new ArrayList<>();
+        for (int slot = 0; slot < loopIterations.capacity(); slot++) {
+            if (!loopIterations.isUsed(slot)) {
+                continue;
+            }
+            long loop = loopIterations.keyAt(slot);
+            int bank = (int) (loop >>> 32);
+            int head = (int) (loop >>> 16) & 0xFFFF;
+            int jump = (int) loop & 0xFFFF;
+            long loopCycles = 0;
+            for (int pc = head; pc <= jump; pc++) {
+                loopCycles += getCycles(bank, pc);
+            }
+            hotSpots.add(new HotSpot(bank, head, jump, loopIterations.valueAt(slot), loopCycles));
+        }
+        return rank(hotSpots, limit);
+    }
+
+    /**
+     * Subroutines are entered by CALL or RST and left by the RET that pops their return address. Cycles include
+     *   everything they call, but not interrupt handlers that run meanwhile, and only calls that returned.
+     *
+     * @return subroutines by cycles spent in them, highest first
+     */
+    public List<HotSpot> getHotSubroutines(int limit) {
+        List<HotSpot> hotSpots = new ArrayList<>();
+        for (int slot = 0; slot < subroutineCalls.capacity(); slot++) {
+            if (!subroutineCalls.isUsed(slot)) {
+                continue;
+            }
+            long subroutine = subroutineCalls.keyAt(slot);
+            int bank = (int) (subroutine >>> 16);
+            int entry = (int) subroutine & 0xFFFF;
+            hotSpots.add(new HotSpot(bank, entry, entry, subroutineCalls.valueAt(slot), subroutineCycles.get(subroutine)));
+        }
+        return rank(hotSpots, limit);
+    }
+
+    private static List<HotSpot> rank(List<HotSpot> hotSpots, int limit) {
+        hotSpots.sort(Comparator.comparingLong(HotSpot::getCycles).reversed()
+                .thenComparing(Comparator.comparingLong(HotSpot::getCount).reversed()));
+        return hotSpots.size() > limit ? new ArrayList<>(hotSpots.subList(0, limit)) : hotSpots;
+    }
+
+    /**
+     * Prints the top entries of every ranking.
+     */
+    public void writeReport(PrintStream out, int limit) {
+        out.printf("%d instructions, %d machine cycles, %d more halted%n", instructions, cycles, haltedCycles);
+        out.println("Hot opcodes");
+        for (HotSpot hotSpot : getHotOpcodes(limit)) {
+            out.printf("  %-9s %12d %14d %6.2f%%%n", hotSpot.getStart() > 0xFF ? String.format("%04X", hotSpot.getStart())
+                    : String.format("%02X", hotSpot.getStart()), hotSpot.getCount(), hotSpot.getCycles(), percent(hotSpot));
+        }
+        out.println("Hot addresses");
+        for (HotSpot hotSpot : getHotAddresses(limit)) {
+            out.printf("  %02X:%04X   %12d %14d %6.2f%%%n", hotSpot.getBank(), hotSpot.getStart(), hotSpot.getCount(),
+                    hotSpot.getCycles(), percent(hotSpot));
+        }
+        out.println("Hot loops (iterations)");
+        for (HotSpot hotSpot : getHotLoops(limit)) {
+            out.printf("  %02X:%04X-%04X %12d %14d %6.2f%%%n", hotSpot.getBank(), hotSpot.getStart(), hotSpot.getEnd(),
+                    hotSpot.getCount(), hotSpot.getCycles(), percent(hotSpot));
+        }
+        out.println("Hot subroutines (calls)");
+        for (HotSpot hotSpot : getHotSubroutines(limit)) {
+            out.printf("  %02X:%04X   %12d %14d %6.2f%%%n", hotSpot.getBank(), hotSpot.getStart(), hotSpot.getCount(),
+                    hotSpot.getCycles(), percent(hotSpot));
+        }
+    }
+
+    private double percent(HotSpot hotSpot) {
+        return cycles == 0 ? 0 : hotSpot.getCycles() * 100.0 / cycles;
+    }
+
+    /**
+     * Writes every ranked entry as CSV, one row per opcode, address, loop or subroutine.
+     */
+    public void exportCsv(Path file) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            out.println("kind,bank,start,end,count,cycles");
+            exportRows(out, "opcode", getHotOpcodes(Integer.MAX_VALUE));
+            exportRows(out, "address", getHotAddresses(Integer.MAX_VALUE));
+            exportRows(out, "loop", getHotLoops(Integer.MAX_VALUE));
+            exportRows(out, "subroutine", getHotSubroutines(Integer.MAX_VALUE));
+        }
+    }
+
+    private static void exportRows(PrintWriter out, String kind, List<HotSpot> hotSpots) {
+        for (HotSpot hotSpot : hotSpots) {
+            out.printf("%s,%d,%04X,%04X,%d,%d%n", kind, hotSpot.getBank(), hotSpot.getStart(), hotSpot.getEnd(),
+                    hotSpot.getCount(), hotSpot.getCycles());
+        }
+    }
+
+    /**
+     * Open addressing map from long keys to long sums, so counting does not box.
+     */
+    private static class LongTable {
+        private static final long EMPTY = -1;
+        private long[] keys;
+        private long[] values;
+        private int size;
+
+        LongTable() {
+            clear();
+        }
+
+        void clear() {
+            keys = new long[64];
+            values = new long[64];
+            Arrays.fill(keys, EMPTY);
+            size = 0;
+        }
+
+        void add(long key, long amount) {
+            int slot = slotOf(key);
+            if (keys[slot] == EMPTY) {
+                if ((size + 1) * 2 > keys.length) {
+                    grow();
+                    slot = slotOf(key);
+                }
+                keys[slot] = key;
+                size++;
+            }
+            values[slot] += amount;
+        }
+
+        long get(long key) {
+            int slot = slotOf(key);
+            return keys[slot] == EMPTY ? 0 : values[slot];
+        }
+
+        int capacity() {
+            return keys.length;
+        }
+
+        boolean isUsed(int slot) {
+            return keys[slot] != EMPTY;
+        }
+
+        long keyAt(int slot) {
+            return keys[slot];
+        }
+
+        long valueAt(int slot) {
+            return values[slot];
+        }
+
+        private int slotOf(long key) {
+            int mask = keys.length - 1;
+            int slot = (int) (key * 0x9E3779B97F4A7C15L >>> 32) & mask;
+            while (keys[slot] != EMPTY && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            long[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new long[oldKeys.length * 2];
+            Arrays.fill(keys, EMPTY);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    int slot = slotOf(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package emulator.cpu.debug;
+
+/**
+ * One ranked entry of an {@link ExecutionProfiler} report: an address, a loop or a subroutine.
+ */
+public class HotSpot {
+    private final int bank;
+    private final int start;
+    private final int end;
+    private final long count;
+    private final long cycles;
+
+    public HotSpot(int bank, int start, int end, long count, long cycles) {
+        this.bank = bank;
+        this.start = start;
+        this.end = end;
+        this.count = count;
+        this.cycles = cycles;
+    }
+
+    /**
+     * @return ROM bank the code runs from, 0 unless it is in the switchable 0x4000-0x7FFF region
+     */
+    public int getBank() {
+        return bank;
+    }
+
+    /**
+     * @return the address, the loop head or the subroutine entry point
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * @return the same as {@link #getStart()}, except for loops where it is the address of the backward jump
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    /**
+     * @return executions, loop iterations or calls
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return machine cycles spent, including everything called from a subroutine
+     */
+    public long getCycles() {
+        return cycles;
+    }
+
+    @Override
+    public String toString() {
+        String location = String.format("%02X:%04X", bank, start);
+        if (end != start) {
+            location += String.format("-%04X", end);
+        }
+        return location + " x" + count + ", " + cycles + " cycles";
+    }
+}
@@ -0,0 +1,49 @@
+package emulator.cpu.debug;
+
+import emulator.bus.device.cartridge.Cartridge;
+import emulator.scheduler.Scheduler;
+
+/**
+ * Receives what a {@link emulator.cpu.ProfilingCPU} executes, one instruction at a time.
+ */
+public interface IProfiler {
+
+    /**
+     * Called once the Gameboy it profiles is built.
+     *
+     * @param cartridge may be null
+     */
+    default void attach(Scheduler scheduler, Cartridge cartridge) {
+    }
+
+    /**
+     * @param pc address the instruction was fetched from
+     * @param opcode its opcode, 0x100 | the second byte for 0xCB prefixed ones
+     * @param machineCycles cycles it took
+     * @param nextPc PC after it ran
+     * @param sp SP after it ran
+     */
+    void recordInstruction(int pc, int opcode, int machineCycles, int nextPc, int sp);
+
+    /**
+     * Records cycles spent halted, which belong to no instruction.
+     */
+    default void recordHalted(int machineCycles) {
+    }
+
+    /**
+     * Records an interrupt being serviced, after its return address was pushed.
+     *
+     * @param vector address of the handler
+     * @param sp SP after the push
+     */
+    default void recordInterrupt(int vector, int sp) {
+    }
+
+    /**
+     * @return whether every instruction has to be seen, which rules out skipping idle loops
+     */
+    default boolean needsEveryInstruction() {
+        return true;
+    }
+}
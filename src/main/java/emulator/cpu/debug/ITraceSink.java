@@ -0,0 +1,15 @@
+package emulator.cpu.debug;
+
+/**
+ * Receives the CPU state right before every instruction from a {@link emulator.cpu.TracingCPU}.
+ */
+public interface ITraceSink {
+
+    /**
+     * @param cycle clock cycles since power on
+     * @param bank ROM bank the instruction runs from, 0 unless it is in the switchable 0x4000-0x7FFF region
+     * @param memory the 4 bytes at PC, the one at PC in the low byte
+     * @param flags {@link TraceRecord#FLAG_IME}
+     */
+    void record(long cycle, int pc, int bank, int memory, int af, int bc, int de, int hl, int sp, int flags);
+}
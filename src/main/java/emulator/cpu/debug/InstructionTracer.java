@@ -0,0 +1,202 @@
+package emulator.cpu.debug;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Full instruction trace of a run, fed by {@link emulator.cpu.TracingCPU}.
+ * Each instruction is a fixed size {@link TraceRecord} written into a preallocated off-heap ring buffer. A
+ *   background thread drains the ring into a memory mapped file, so the emulator thread never formats text or
+ *   makes a system call. When the ring is full the emulator waits for the drain instead of dropping records.
+ * The file grows in large mapped chunks and is only trimmed on close, so a trace that was never closed ends in
+ *   unwritten records. Its header still counts just the records that reached it.
+ * Render a trace with {@link TraceRenderer}.
+ */
+public class InstructionTracer implements ITraceSink, AutoCloseable {
+    /*
+     * File layout, little endian:
+     *   0  long  MAGIC
+     *   8  int   VERSION
+     *  12  int   record size
+     *  16  long  record count, kept up to date by the drain
+     *  24  8 reserved bytes
+     *  32  records
+     */
+    static final long MAGIC = 0x3145434152544247L; // "GBTRACE1"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    private static final int RECORD_COUNT_OFFSET = 16;
+    // records
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    private static final long MAP_CHUNK_SIZE = 64L << 20;
+    private static final long IDLE_PARK_NANOS = 1_000_000;
+
+    private final ByteBuffer ring;
+    private final int capacity;
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong drained = new AtomicLong();
+    // emulator thread side
+    private long written;
+    private long drainedSeen;
+
+    // drain thread side
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private MappedByteBuffer mapped;
+    private long mappedStart;
+    private final Thread drainThread;
+    private volatile boolean closing;
+    private volatile Throwable failure;
+    private boolean closed;
+
+    public InstructionTracer(Path file) throws IOException {
+        this(file, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity ring size in records, a power of two
+     */
+    public InstructionTracer(Path file, int capacity) throws IOException {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity has to be a power of two");
+        }
+        this.capacity = capacity;
+        this.ring = ByteBuffer.allocateDirect(capacity * TraceRecord.SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        writeHeader(0);
+        this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        this.drainThread = new Thread(this::drain, "instruction-trace-drain");
+        this.drainThread.setDaemon(true);
+        this.drainThread.start();
+    }
+
+    /**
+     * Only to be called from the emulator thread.
+     */
+    @Override
+    public void record(long cycle, int pc, int bank, int memory, int af, int bc, int de, int hl, int sp, int flags) {
+        if (written - drainedSeen == capacity) {
+            waitForSpace();
+        }
+        int offset = (int) (written & (capacity - 1)) * TraceRecord.SIZE;
+        TraceRecord.write(ring, offset, cycle, pc, bank, memory, af, bc, de, hl, sp, flags);
+        published.lazySet(++written);
+    }
+
+    private void waitForSpace() {
+        drainedSeen = drained.get();
+        while (written - drainedSeen == capacity) {
+            if (failure != null) {
+                throw failed();
+            }
+            LockSupport.unpark(drainThread);
+            Thread.onSpinWait();
+            drainedSeen = drained.get();
+        }
+    }
+
+    /**
+     * @return number of instructions recorded so far
+     */
+    public long getRecordCount() {
+        return written;
+    }
+
+    private void drain() {
+        long done = 0;
+        try {
+            while (true) {
+                long available = published.get() - done;
+                if (available == 0) {
+                    if (closing && published.get() == done) {
+                        return;
+                    }
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    continue;
+                }
+                // up to the end of the ring, the rest goes in the next round
+                int index = (int) (done & (capacity - 1));
+                int count = (int) Math.min(available, capacity - index);
+                long position = HEADER_SIZE + done * TraceRecord.SIZE;
+                int length = count * TraceRecord.SIZE;
+                if (mapped == null || position + length > mappedStart + mapped.capacity()) {
+                    remap(position, length);
+                }
+                mapped.put((int) (position - mappedStart), ring, index * TraceRecord.SIZE, length);
+                done += count;
+                // a plain store into the mapped header, it reaches the file even if close is never called
+                header.putLong(RECORD_COUNT_OFFSET, done);
+                drained.lazySet(done);
+            }
+        } catch (Throwable e) {
+            // the emulator thread sees this next time it waits for the drain, instead of waiting forever
+            failure = e;
+        }
+    }
+
+    private RuntimeException failed() {
+        if (failure instanceof IOException e) {
+            return new UncheckedIOException("Instruction trace can't be written", e);
+        }
+        return new IllegalStateException("Instruction trace can't be written", failure);
+    }
+
+    private void remap(long position, int length) throws IOException {
+        if (mapped != null) {
+            mapped.force();
+        }
+        mappedStart = position;
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.max(MAP_CHUNK_SIZE, length));
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private void writeHeader(long recordCount) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putLong(MAGIC).putInt(VERSION).putInt(TraceRecord.SIZE).putLong(recordCount).flip();
+        channel.write(buffer, 0);
+    }
+
+    /**
+     * Waits for every record to reach the file, then trims the file to the records written.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        closing = true;
+        LockSupport.unpark(drainThread);
+        try {
+            drainThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (mapped != null) {
+                mapped.force();
+                mapped = null;
+            }
+            // short of written if the drain failed
+            long recordCount = drained.get();
+            writeHeader(recordCount);
+            channel.truncate(HEADER_SIZE + recordCount * TraceRecord.SIZE);
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Instruction trace can't be written", e);
+        }
+        if (failure != null) {
+            throw failed();
+        }
+    }
+}
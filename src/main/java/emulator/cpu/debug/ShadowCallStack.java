@@ -0,0 +1,81 @@
+package emulator.cpu.debug;
+
+/**
+ * The guest's call stack as seen from CALL, RST, RET and interrupts, each frame keyed by whatever the profiler
+ *   wants (usually bank and entry address) and stamped with a cycle count.
+ * A frame is closed as soon as its return address is no longer on the stack, which also copes with code that
+ *   drops return addresses or returns through a JP.
+ */
+class ShadowCallStack {
+    static final int MAX_DEPTH = 256;
+
+    private final long[] keys = new long[MAX_DEPTH];
+    private final int[] stackPointers = new int[MAX_DEPTH];
+    private final long[] startCycles = new long[MAX_DEPTH];
+    private int depth;
+
+    /**
+     * @return whether the instruction transferred control into a subroutine
+     */
+    static boolean isCall(int opcode, int pc, int nextPc) {
+        return switch (opcode) {
+            // a conditional call that is not taken just moves on to the next instruction
+            case 0xCD, 0xC4, 0xCC, 0xD4, 0xDC -> nextPc != ((pc + 3) & 0xFFFF);
+            case 0xC7, 0xCF, 0xD7, 0xDF, 0xE7, 0xEF, 0xF7, 0xFF -> true;
+            default -> false;
+        };
+    }
+
+    static boolean isReturn(int opcode) {
+        return switch (opcode) {
+            case 0xC9, 0xD9, 0xC0, 0xC8, 0xD0, 0xD8 -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Frames deeper than {@link #MAX_DEPTH} are not tracked, their callers still close normally.
+     *
+     * @param sp SP pointing at the pushed return address
+     */
+    void push(long key, int sp, long cycles) {
+        if (depth == MAX_DEPTH) {
+            return;
+        }
+        keys[depth] = key;
+        stackPointers[depth] = sp;
+        startCycles[depth] = cycles;
+        depth++;
+    }
+
+    /**
+     * @return whether the top frame's return address has been popped off the stack at SP
+     */
+    boolean topReturned(int sp) {
+        return depth > 0 && stackPointers[depth - 1] + 2 <= sp;
+    }
+
+    void pop() {
+        depth--;
+    }
+
+    int getDepth() {
+        return depth;
+    }
+
+    long keyAt(int index) {
+        return keys[index];
+    }
+
+    long topKey() {
+        return keys[depth - 1];
+    }
+
+    long topStartCycles() {
+        return startCycles[depth - 1];
+    }
+
+    void clear() {
+        depth = 0;
+    }
+}
@@ -1,12 +0,0 @@
-package emulator.cpu.debug;
-
-import java.util.logging.Formatter;
-import java.util.logging.LogRecord;
-
-public class SimpleLogFormatter extends Formatter {
-
-    @Override
-    public String format(LogRecord record) {
-        return record.getMessage() + "\n";
-    }
-}
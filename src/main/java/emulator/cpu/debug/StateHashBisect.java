@@ -0,0 +1,82 @@
+package emulator.cpu.debug;
+
+import emulator.Gameboy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Offline tool finding where two {@link StateHashLog}s of the same ROM part ways, then running the ROM again with
+ *   this build and tracing only the instructions of that window.
+ * Tracing the same window with the other build and comparing the two with a {@link TraceComparator} (rendered with
+ *   {@link TraceRenderer}) gives the first instruction that differs.
+ * <p>
+ * Usage: StateHashBisect rom.gb a.hashes b.hashes window.trace
+ */
+public class StateHashBisect {
+    private StateHashBisect() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            System.err.println("Usage: StateHashBisect rom.gb a.hashes b.hashes window.trace");
+            System.exit(2);
+        }
+        StateHashLog a = StateHashLog.read(Path.of(args[1]));
+        StateHashLog b = StateHashLog.read(Path.of(args[2]));
+        int divergence = a.firstDivergence(b);
+        if (divergence < 0) {
+            System.out.println("No divergence in the first " + Math.min(a.size(), b.size()) + " entries");
+            return;
+        }
+        long from = windowStart(a, divergence);
+        long to = Math.max(a.getCycle(divergence), b.getCycle(divergence));
+        System.out.println("Entry " + divergence + " differs, tracing clock cycles " + from + " to " + to);
+        long records = traceWindow(Files.readAllBytes(Path.of(args[0])), from, to, Path.of(args[3]));
+        System.out.println(records + " instructions written to " + args[3]);
+    }
+
+    /**
+     * @return clock cycle of the last entry both logs agree on, where the window to trace starts
+     */
+    public static long windowStart(StateHashLog log, int divergence) {
+        return divergence == 0 ? 0 : log.getCycle(divergence - 1);
+    }
+
+    /**
+     * Runs the ROM from power on until the clock reaches the end of the window, tracing the instructions that start
+     *   inside it.
+     *
+     * @return number of instructions traced
+     */
+    public static long traceWindow(byte[] romBytes, long from, long to, Path trace) throws IOException {
+        try (InstructionTracer tracer = new InstructionTracer(trace);
+             Gameboy gameboy = new Gameboy.BusBuilder().cartridge(romBytes).buildBus().tracer(new TraceWindow(tracer, from, to)).buildCpu().build()) {
+            gameboy.runClockCycles(to);
+            return tracer.getRecordCount();
+        }
+    }
+
+    /**
+     * Passes on only the instructions starting in [from, to).
+     */
+    private static class TraceWindow implements ITraceSink {
+        private final ITraceSink target;
+        private final long from;
+        private final long to;
+
+        TraceWindow(ITraceSink target, long from, long to) {
+            this.target = target;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public void record(long cycle, int pc, int bank, int memory, int af, int bc, int de, int hl, int sp, int flags) {
+            if (cycle >= from && cycle < to) {
+                target.record(cycle, pc, bank, memory, af, bc, de, hl, sp, flags);
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package emulator.cpu.debug;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The entries a {@link StateHasher} wrote: clock cycle and state hash, one pair per interval.
+ */
+public class StateHashLog {
+    /*
+     * File layout, big endian:
+     *   0  long MAGIC
+     *   8  int  interval
+     *  12  entries of long clock cycle, long hash
+     */
+    static final long MAGIC = 0x4742484153483031L; // "GBHASH01"
+
+    private final int interval;
+    private final long[] cycles;
+    private final long[] hashes;
+
+    private StateHashLog(int interval, long[] cycles, long[] hashes) {
+        this.interval = interval;
+        this.cycles = cycles;
+        this.hashes = hashes;
+    }
+
+    public static StateHashLog read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readLong() != MAGIC) {
+                throw new IOException(file + " is not a state hash log");
+            }
+            int interval = in.readInt();
+            long entries = (Files.size(file) - 12) / 16;
+            long[] cycles = new long[(int) entries];
+            long[] hashes = new long[(int) entries];
+            try {
+                for (int i = 0; i < entries; i++) {
+                    cycles[i] = in.readLong();
+                    hashes[i] = in.readLong();
+                }
+            } catch (EOFException e) {
+                throw new IOException(file + " ends in the middle of an entry", e);
+            }
+            return new StateHashLog(interval, cycles, hashes);
+        }
+    }
+
+    /**
+     * @return index of the first entry that differs between the logs, -1 if all the entries they both have match
+     */
+    public int firstDivergence(StateHashLog other) {
+        if (interval != other.interval) {
+            throw new IllegalArgumentException("Logs were written with different intervals, " + interval + " and " + other.interval);
+        }
+        int entries = Math.min(size(), other.size());
+        for (int i = 0; i < entries; i++) {
+            if (cycles[i] != other.cycles[i] || hashes[i] != other.hashes[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public int size() {
+        return cycles.length;
+    }
+
+    /**
+     * @return clock cycle the entry was taken at, the first instruction boundary at or after its deadline
+     */
+    public long getCycle(int index) {
+        return cycles[index];
+    }
+
+    public long getHash(int index) {
+        return hashes[index];
+    }
+
+    @Override
+    public String toString() {
+        return size() + " entries every " + interval + " clock cycles";
+    }
+}
@@ -0,0 +1,209 @@
+package emulator.cpu.debug;
+
+import emulator.Gameboy;
+import emulator.bus.GameboyBus;
+import emulator.bus.device.IBusDevice;
+import emulator.bus.device.cartridge.Cartridge;
+import emulator.cpu.register.RegisterFile;
+import emulator.interrupts.InterruptController;
+import emulator.interrupts.Timer;
+import emulator.scheduler.EventType;
+import emulator.scheduler.Scheduler;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes a 64-bit hash of the whole machine state every so many clock cycles to a {@link StateHashLog}, so that two
+ *   builds running the same ROM can be compared cheaply and the first window where they differ found.
+ * The hash covers the registers, WRAM, HRAM, cartridge RAM, banking, the MBC registers including any RTC, the timer
+ *   and the interrupt state. It is kept up to date incrementally: WRAM writes are routed through this class to mark
+ *   their 256 byte page dirty, so only pages written since the last entry are hashed again, and cartridge RAM is
+ *   only hashed again after writes.
+ * Entries are taken by a scheduler event, so they land on the same instruction boundary whether or not idle loops
+ *   are skipped or instructions fused.
+ */
+public class StateHasher implements AutoCloseable {
+    public static final int DEFAULT_INTERVAL = Gameboy.CLOCK_CYCLES_PER_FRAME;
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final int WRAM_PAGES = 0x20;
+    private static final int PAGE_SIZE = 0x100;
+
+    private final int interval;
+    private final DataOutputStream out;
+    private long entryCount;
+    private long nextEntry;
+
+    private Scheduler scheduler;
+    private RegisterFile registerFile;
+    private Timer timer;
+    private InterruptController interruptController;
+    private Cartridge cartridge;
+    private byte[][] workRam;
+    private byte[] highRam;
+
+    private final long[] pageHashes = new long[WRAM_PAGES];
+    // one bit per WRAM page
+    private int dirtyPages = -1;
+    private long cartridgeRamHash;
+    private long cartridgeRamWriteCount = -1;
+    // running hash while the cartridge reports its MBC registers
+    private long mbcHash;
+
+    public StateHasher(Path file) throws IOException {
+        this(file, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * @param interval clock cycles between entries
+     */
+    public StateHasher(Path file, int interval) throws IOException {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Interval has to be positive");
+        }
+        this.interval = interval;
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+        out.writeLong(StateHashLog.MAGIC);
+        out.writeInt(interval);
+    }
+
+    /**
+     * Starts hashing the Gameboy, with its first entry one interval from now.
+     */
+    public void attach(Gameboy gameboy) {
+        GameboyBus bus = gameboy.getBus();
+        this.scheduler = gameboy.getScheduler();
+        this.registerFile = gameboy.getRegisters().getRegisterFile();
+        this.timer = gameboy.getTimer();
+        this.interruptController = gameboy.getInterruptController();
+        this.cartridge = gameboy.getCartridge();
+        this.workRam = new byte[][]{bus.getWorkRamMemory(0), bus.getWorkRamMemory(1)};
+        this.highRam = bus.getHighRamMemory();
+
+        // reads stay mapped straight onto WRAM, writes come through here
+        bus.mapHandler(0xC0, WRAM_PAGES, new WorkRamWrites());
+        bus.mapReadOnly(0xC0, WRAM_PAGES / 2, workRam[0], 0);
+        bus.mapReadOnly(0xD0, WRAM_PAGES / 2, workRam[1], 0);
+        dirtyPages = -1;
+
+        nextEntry = scheduler.getNow() + interval;
+        scheduler.setHandler(EventType.STATE_HASH, this::onEntryDue);
+        scheduler.schedule(EventType.STATE_HASH, nextEntry);
+    }
+
+    private void onEntryDue() {
+        long now = scheduler.getNow();
+        try {
+            out.writeLong(now);
+            out.writeLong(hash());
+        } catch (IOException e) {
+            throw new UncheckedIOException("State hash log can't be written", e);
+        }
+        entryCount++;
+        while (nextEntry <= now) {
+            nextEntry += interval;
+        }
+        scheduler.schedule(EventType.STATE_HASH, nextEntry);
+    }
+
+    /**
+     * @return hash of the machine state right now
+     */
+    public long hash() {
+        long hash = mix(0, (long) registerFile.getAF() << 48 | (long) registerFile.get16(RegisterFile.BC) << 32
+                | (long) registerFile.get16(RegisterFile.DE) << 16 | registerFile.getHL());
+        hash = mix(hash, (long) registerFile.getSP() << 16 | registerFile.getPC());
+
+        for (int page = 0; page < WRAM_PAGES; page++) {
+            if ((dirtyPages & 1 << page) != 0) {
+                pageHashes[page] = hashBytes(workRam[page >> 4], (page & 0xF) * PAGE_SIZE, PAGE_SIZE);
+            }
+            hash = mix(hash, pageHashes[page]);
+        }
+        dirtyPages = 0;
+        hash = mix(hash, hashBytes(highRam, 0, highRam.length));
+
+        if (cartridge != null) {
+            byte[] cartridgeRam = cartridge.getRamMemory();
+            if (cartridgeRam != null && cartridge.getRamWriteCount() != cartridgeRamWriteCount) {
+                cartridgeRamWriteCount = cartridge.getRamWriteCount();
+                cartridgeRamHash = hashBytes(cartridgeRam, 0, cartridgeRam.length);
+            }
+            hash = mix(hash, cartridgeRamHash);
+            hash = mix(hash, (long) cartridge.getActiveRomBank() << 32 | (long) cartridge.getActiveRamBankOffset() << 1
+                    | (cartridge.isRamEnabled() ? 1 : 0));
+            hash = mix(hash, cartridge.getFixedRomBank());
+            mbcHash = hash;
+            cartridge.reportMbcState(value -> mbcHash = mix(mbcHash, value));
+            hash = mbcHash;
+        }
+
+        hash = mix(hash, (timer.getDIV() & 0xFF) << 24 | (timer.getTIMA() & 0xFF) << 16 | (timer.getTMA() & 0xFF) << 8
+                | timer.getTAC() & 0xFF);
+        // the low bits of the divider, which decide when DIV and TIMA tick next
+        hash = mix(hash, timer.cyclesUntilDivChange());
+        hash = mix(hash, (interruptController.getInterruptFlag() & 0xFF) << 8 | interruptController.getInterruptEnable() & 0xFF
+                | (interruptController.getInterruptMasterEnable() ? 1 << 16 : 0) | (interruptController.isHalted() ? 1 << 17 : 0));
+        return hash;
+    }
+
+    private static long hashBytes(byte[] bytes, int offset, int length) {
+        long hash = length;
+        int i = 0;
+        for (; i + 8 <= length; i += 8) {
+            hash = mix(hash, (long) LONGS.get(bytes, offset + i));
+        }
+        long tail = 0;
+        for (; i < length; i++) {
+            tail = tail << 8 | bytes[offset + i] & 0xFF;
+        }
+        return mix(hash, tail);
+    }
+
+    private static long mix(long hash, long value) {
+        hash = (hash ^ value) * 0x9E3779B97F4A7C15L;
+        return hash ^ hash >>> 29;
+    }
+
+    /**
+     * @return number of entries written so far
+     */
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.cancel(EventType.STATE_HASH);
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("State hash log can't be written", e);
+        }
+    }
+
+    /**
+     * 0xC000-0xDFFF while hashing, only sees writes.
+     */
+    private class WorkRamWrites implements IBusDevice {
+        @Override
+        public byte readByteAt(int addr) {
+            return workRam[(addr >> 12) & 1][addr & 0xFFF];
+        }
+
+        @Override
+        public void writeByteAt(int addr, byte value) {
+            workRam[(addr >> 12) & 1][addr & 0xFFF] = value;
+            dirtyPages |= 1 << ((addr >> 8) & 0x1F);
+        }
+    }
+}
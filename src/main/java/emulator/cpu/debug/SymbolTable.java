@@ -0,0 +1,55 @@
+package emulator.cpu.debug;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Labels from an RGBDS .sym file, lines of the form "BB:AAAA Label" with ';' starting a comment.
+ */
+public class SymbolTable {
+    private final TreeMap<Integer, String> symbols = new TreeMap<>();
+
+    public static SymbolTable load(Path file) throws IOException {
+        return parse(Files.readAllLines(file));
+    }
+
+    public static SymbolTable parse(List<String> lines) {
+        SymbolTable table = new SymbolTable();
+        for (String line : lines) {
+            int comment = line.indexOf(';');
+            String[] fields = (comment >= 0 ? line.substring(0, comment) : line).trim().split("\\s+");
+            if (fields.length < 2 || fields[0].length() != 7 || fields[0].charAt(2) != ':') {
+                continue;
+            }
+            try {
+                int bank = Integer.parseInt(fields[0].substring(0, 2), 16);
+                int address = Integer.parseInt(fields[0].substring(3), 16);
+                table.symbols.putIfAbsent(bank << 16 | address, fields[1]);
+            } catch (NumberFormatException e) {
+                // not a symbol line
+            }
+        }
+        return table;
+    }
+
+    /**
+     * @return the label at the address, or the closest one before it in the same bank plus the offset from it,
+     *   null if there is none
+     */
+    public String nameOf(int bank, int address) {
+        Map.Entry<Integer, String> entry = symbols.floorEntry(bank << 16 | address);
+        if (entry == null || entry.getKey() >>> 16 != bank) {
+            return null;
+        }
+        int offset = address - (entry.getKey() & 0xFFFF);
+        return offset == 0 ? entry.getValue() : entry.getValue() + String.format("+0x%X", offset);
+    }
+
+    public int size() {
+        return symbols.size();
+    }
+}
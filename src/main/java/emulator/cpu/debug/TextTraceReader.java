@@ -0,0 +1,195 @@
+package emulator.cpu.debug;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams a text trace in the Gameboy Doctor or the old InstructionLogger format (see {@link TraceFormat}) one line
+ *   at a time, parsing straight from the read buffer so that multi-gigabyte logs cost no String per line.
+ * Lines without PCMEM bytes are accepted too, their memory is not compared.
+ */
+public class TextTraceReader implements AutoCloseable {
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int MAX_LINE = 256;
+    private static final byte[] LABEL_A = {'A', ':'};
+    private static final byte[] LABEL_F = {'F', ':'};
+    private static final byte[] LABEL_B = {'B', ':'};
+    private static final byte[] LABEL_C = {'C', ':'};
+    private static final byte[] LABEL_D = {'D', ':'};
+    private static final byte[] LABEL_E = {'E', ':'};
+    private static final byte[] LABEL_H = {'H', ':'};
+    private static final byte[] LABEL_L = {'L', ':'};
+    private static final byte[] LABEL_SP = {'S', 'P', ':'};
+    private static final byte[] LABEL_PC = {'P', 'C', ':'};
+    private static final byte[] LABEL_PCMEM = {'P', 'C', 'M', 'E', 'M', ':'};
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final byte[] line = new byte[MAX_LINE];
+    private int lineLength;
+    private int cursor;
+    private long lineNumber;
+    private boolean hasMemory;
+
+    public TextTraceReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        buffer.limit(0);
+    }
+
+    /**
+     * Parses the next line into the given record, its cycle is set to -1.
+     *
+     * @return false at the end of the trace
+     */
+    public boolean next(TraceRecord record) throws IOException {
+        do {
+            if (!readLine()) {
+                return false;
+            }
+        } while (lineLength == 0);
+
+        cursor = 0;
+        int a = field(LABEL_A);
+        int f = field(LABEL_F);
+        int b = field(LABEL_B);
+        int c = field(LABEL_C);
+        int d = field(LABEL_D);
+        int e = field(LABEL_E);
+        int h = field(LABEL_H);
+        int l = field(LABEL_L);
+        int sp = field(LABEL_SP);
+        int bank = 0;
+        int pc = field(LABEL_PC);
+        if (cursor < lineLength && line[cursor] == ':') {
+            // bank:address
+            bank = pc;
+            cursor++;
+            pc = hex();
+        }
+        int memory = 0;
+        hasMemory = find(LABEL_PCMEM) || findOpeningParenthesis();
+        if (hasMemory) {
+            for (int i = 0; i < 4; i++) {
+                if (i > 0) {
+                    cursor++; // ',' or ' '
+                }
+                memory |= hex() << (i * 8);
+            }
+        }
+        record.set(-1, pc, bank, memory, a << 8 | f, b << 8 | c, d << 8 | e, h << 8 | l, sp, 0);
+        return true;
+    }
+
+    /**
+     * @return 1 based number of the line last read
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return whether the line last read had the bytes at PC
+     */
+    public boolean hasMemory() {
+        return hasMemory;
+    }
+
+    private int field(byte[] label) throws IOException {
+        if (!find(label)) {
+            throw new IOException("Line " + lineNumber + " of the trace has no " + new String(label));
+        }
+        return hex();
+    }
+
+    /**
+     * Moves the cursor past the next occurrence of the label that starts a word.
+     */
+    private boolean find(byte[] label) {
+        for (int start = cursor; start + label.length <= lineLength; start++) {
+            if (start > 0 && line[start - 1] != ' ') {
+                continue;
+            }
+            int i = 0;
+            while (i < label.length && line[start + i] == label[i]) {
+                i++;
+            }
+            if (i == label.length) {
+                cursor = start + label.length;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean findOpeningParenthesis() {
+        for (int i = cursor; i < lineLength; i++) {
+            if (line[i] == '(') {
+                cursor = i + 1;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int hex() throws IOException {
+        while (cursor < lineLength && line[cursor] == ' ') {
+            cursor++;
+        }
+        int value = 0;
+        int digits = 0;
+        while (cursor < lineLength) {
+            int digit = Character.digit(line[cursor], 16);
+            if (digit < 0) {
+                break;
+            }
+            value = value << 4 | digit;
+            digits++;
+            cursor++;
+        }
+        if (digits == 0) {
+            throw new IOException("Line " + lineNumber + " of the trace has a field without a hex value");
+        }
+        return value;
+    }
+
+    private boolean readLine() throws IOException {
+        lineLength = 0;
+        boolean readAny = false;
+        while (true) {
+            if (!buffer.hasRemaining()) {
+                buffer.clear();
+                int read = channel.read(buffer);
+                buffer.flip();
+                if (read <= 0) {
+                    if (readAny) {
+                        lineNumber++;
+                        return true;
+                    }
+                    return false;
+                }
+            }
+            byte next = buffer.get();
+            readAny = true;
+            if (next == '\n') {
+                lineNumber++;
+                return true;
+            }
+            if (next == '\r') {
+                continue;
+            }
+            if (lineLength == MAX_LINE) {
+                throw new EOFException("Line " + (lineNumber + 1) + " of the trace is too long");
+            }
+            line[lineLength++] = next;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
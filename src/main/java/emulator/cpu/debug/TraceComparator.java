@@ -0,0 +1,189 @@
+package emulator.cpu.debug;
+
+import emulator.Gameboy;
+import emulator.bus.IBus;
+import emulator.cpu.register.RegisterFile;
+import emulator.interrupts.InterruptController;
+import emulator.run.IStopCondition;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a Gameboy in lockstep with a reference text trace, such as a Gameboy Doctor log or one from another
+ *   emulator, and stops right before the first instruction whose state differs.
+ * <p>
+ * Works as a stop condition looked at after every instruction, so the Gameboy needs no special build:
+ * <pre>
+ * try (TraceComparator comparator = new TraceComparator(reference)) {
+ *     Gameboy gameboy = new Gameboy.BusBuilder().cartridge(romBytes).buildBus().buildCpu().build();
+ *     System.out.println(comparator.run(gameboy));
+ * }
+ * </pre>
+ */
+public class TraceComparator implements IStopCondition, AutoCloseable {
+    private static final int CONTEXT_LINES = 8;
+    // clock cycles per run, the comparison itself decides when to stop
+    private static final long RUN_CHUNK = 1L << 32;
+
+    private final TextTraceReader reader;
+    private final TraceRecord expected = new TraceRecord();
+    private final TraceRecord actual = new TraceRecord();
+    // last instructions that matched, a ring indexed by instruction number
+    private final TraceRecord[] context = new TraceRecord[CONTEXT_LINES];
+    private int contextCount;
+    private long compared;
+    private List<String> mismatchedFields = List.of();
+    private boolean stopped;
+    private long checkedCycle = -1;
+
+    public TraceComparator(Path reference) throws IOException {
+        this.reader = new TextTraceReader(reference);
+        for (int i = 0; i < CONTEXT_LINES; i++) {
+            context[i] = new TraceRecord();
+        }
+    }
+
+    /**
+     * Compares the state the next instruction will run in against the next line of the reference.
+     *
+     * @return true once that state differs or the reference has ended
+     */
+    @Override
+    public boolean isMet(Gameboy gameboy) {
+        if (stopped) {
+            return true;
+        }
+        // every instruction advances the clock, so a call at the same cycle is the same boundary asked twice
+        long cycle = gameboy.getScheduler().getNow();
+        if (cycle == checkedCycle) {
+            return false;
+        }
+        checkedCycle = cycle;
+        InterruptController interruptController = gameboy.getInterruptController();
+        if (interruptController.isHalted()
+                && (interruptController.getInterruptMasterEnable() || interruptController.getPendingInterrupts() == 0)) {
+            // a halted step runs no instruction, so it has no line in the reference
+            return false;
+        }
+        try {
+            if (!reader.next(expected)) {
+                stopped = true;
+                return true;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        RegisterFile registerFile = gameboy.getRegisters().getRegisterFile();
+        int pc = registerFile.getPC();
+        int bank = gameboy.getCartridge() != null ? gameboy.getCartridge().bankAt(pc) : 0;
+        int memory = TraceRecord.readMemory(gameboy.getBus(), pc);
+        int af = registerFile.getAF();
+        int bc = registerFile.get16(RegisterFile.BC);
+        int de = registerFile.get16(RegisterFile.DE);
+        int hl = registerFile.getHL();
+        int sp = registerFile.getSP();
+        int flags = interruptController.getInterruptMasterEnable() ? TraceRecord.FLAG_IME : 0;
+        actual.set(cycle, pc, bank, memory, af, bc, de, hl, sp, flags);
+        if (af != expected.getAF() || bc != expected.getBC() || de != expected.getDE() || hl != expected.getHL()
+                || sp != expected.getSP() || pc != expected.getPC() || reader.hasMemory() && memory != expected.getPackedMemory()) {
+            mismatchedFields = mismatchedFields();
+            stopped = true;
+            return true;
+        }
+        context[(int) (compared % CONTEXT_LINES)].set(cycle, pc, bank, memory, af, bc, de, hl, sp, flags);
+        contextCount = Math.min(contextCount + 1, CONTEXT_LINES);
+        compared++;
+        return false;
+    }
+
+    @Override
+    public boolean needsEveryInstruction() {
+        return true;
+    }
+
+    /**
+     * Runs until the first mismatch or the end of the reference. The Gameboy is left right before the mismatching
+     *   instruction.
+     */
+    public TraceComparison run(Gameboy gameboy) {
+        while (!stopped) {
+            gameboy.runClockCycles(RUN_CHUNK, this);
+        }
+        if (mismatchedFields.isEmpty()) {
+            return new TraceComparison(compared, mismatchedFields, "All " + compared + " instructions of the reference match");
+        }
+        return new TraceComparison(compared, mismatchedFields, report(gameboy.getBus()));
+    }
+
+    private List<String> mismatchedFields() {
+        List<String> fields = new ArrayList<>();
+        String[] names = {"A", "F", "B", "C", "D", "E", "H", "L"};
+        int[] actualPairs = {actual.getAF(), actual.getBC(), actual.getDE(), actual.getHL()};
+        int[] expectedPairs = {expected.getAF(), expected.getBC(), expected.getDE(), expected.getHL()};
+        for (int i = 0; i < 8; i++) {
+            int shift = i % 2 == 0 ? 8 : 0;
+            if ((actualPairs[i / 2] >> shift & 0xFF) != (expectedPairs[i / 2] >> shift & 0xFF)) {
+                fields.add(names[i]);
+            }
+        }
+        if (actual.getSP() != expected.getSP()) {
+            fields.add("SP");
+        }
+        if (actual.getPC() != expected.getPC()) {
+            fields.add("PC");
+        }
+        for (int i = 0; i < 4 && reader.hasMemory(); i++) {
+            if (actual.getMemory(i) != expected.getMemory(i)) {
+                fields.add("PCMEM");
+                break;
+            }
+        }
+        return fields;
+    }
+
+    private String report(IBus bus) {
+        StringBuilder out = new StringBuilder();
+        out.append("Mismatch on instruction ").append(compared + 1).append(" (line ").append(reader.getLineNumber())
+                .append(" of the reference) at clock cycle ").append(actual.getCycle()).append(", differs in ")
+                .append(String.join(", ", mismatchedFields)).append('\n');
+        out.append("Preceding instructions:\n");
+        for (int i = 0; i < contextCount; i++) {
+            TraceRecord record = context[(int) ((compared - contextCount + i) % CONTEXT_LINES)];
+            record.appendDoctorLine(out.append("  "));
+            out.append('\n');
+        }
+        expected.appendDoctorLine(out.append("Reference: "));
+        actual.appendDoctorLine(out.append("\nEmulator:  "));
+        out.append('\n');
+        appendMemory(out, bus, "Memory around PC", actual.getPC() - 8);
+        appendMemory(out, bus, "Memory at SP", actual.getSP());
+        return out.toString();
+    }
+
+    private static void appendMemory(StringBuilder out, IBus bus, String title, int start) {
+        out.append(title).append(String.format(" (%04X):", start & 0xFFFF));
+        for (int i = 0; i < 16; i++) {
+            int address = (start + i) & 0xFFFF;
+            try {
+                out.append(String.format(" %02X", bus.readByteAt(address) & 0xFF));
+            } catch (IndexOutOfBoundsException e) {
+                out.append(" ??");
+            }
+        }
+        out.append('\n');
+    }
+
+    @Override
+    public String toString() {
+        return "state differs from the reference trace";
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
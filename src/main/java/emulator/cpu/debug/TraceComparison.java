@@ -0,0 +1,52 @@
+package emulator.cpu.debug;
+
+import java.util.List;
+
+/**
+ * Outcome of a {@link TraceComparator} run.
+ */
+public class TraceComparison {
+    private final long comparedInstructions;
+    private final List<String> mismatchedFields;
+    private final String report;
+
+    TraceComparison(long comparedInstructions, List<String> mismatchedFields, String report) {
+        this.comparedInstructions = comparedInstructions;
+        this.mismatchedFields = mismatchedFields;
+        this.report = report;
+    }
+
+    /**
+     * @return whether every instruction compared matched the reference
+     */
+    public boolean matches() {
+        return mismatchedFields.isEmpty();
+    }
+
+    /**
+     * @return number of instructions that matched the reference
+     */
+    public long getComparedInstructions() {
+        return comparedInstructions;
+    }
+
+    /**
+     * @return names of what differed on the first mismatching instruction, like "A" or "PCMEM", empty if none did
+     */
+    public List<String> getMismatchedFields() {
+        return mismatchedFields;
+    }
+
+    /**
+     * @return human readable description of the divergence, with the reference and emulator lines, the lines
+     *   before them and the memory around PC and SP
+     */
+    public String getReport() {
+        return report;
+    }
+
+    @Override
+    public String toString() {
+        return report;
+    }
+}
@@ -0,0 +1,11 @@
+package emulator.cpu.debug;
+
+/**
+ * Text formats a trace can be rendered to, one line per instruction.
+ */
+public enum TraceFormat {
+    // what Gameboy Doctor compares against
+    GAMEBOY_DOCTOR,
+    // what the old InstructionLogger wrote to inst-out.log
+    INSTRUCTION_LOGGER,
+}
@@ -0,0 +1,75 @@
+package emulator.cpu.debug;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams the records of a trace written by an {@link InstructionTracer}, in order.
+ */
+public class TraceReader implements AutoCloseable {
+    private static final int BUFFER_RECORDS = 4096;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_RECORDS * TraceRecord.SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final long recordCount;
+    private long readCount;
+
+    public TraceReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        ByteBuffer header = ByteBuffer.allocate(InstructionTracer.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(header);
+        header.flip();
+        if (header.getLong() != InstructionTracer.MAGIC || header.getInt() != InstructionTracer.VERSION
+                || header.getInt() != TraceRecord.SIZE) {
+            channel.close();
+            throw new IOException(file + " is not an instruction trace");
+        }
+        // the records that made it to the file, a trace that was never closed is longer than that
+        long fileRecords = (channel.size() - InstructionTracer.HEADER_SIZE) / TraceRecord.SIZE;
+        this.recordCount = Math.min(header.getLong(), fileRecords);
+        buffer.limit(0);
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Reads the next record into the given one.
+     *
+     * @return false at the end of the trace
+     */
+    public boolean next(TraceRecord record) throws IOException {
+        if (readCount == recordCount) {
+            return false;
+        }
+        if (!buffer.hasRemaining()) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), (recordCount - readCount) * TraceRecord.SIZE));
+            readFully(buffer);
+            buffer.flip();
+        }
+        record.read(buffer, buffer.position());
+        buffer.position(buffer.position() + TraceRecord.SIZE);
+        readCount++;
+        return true;
+    }
+
+    private void readFully(ByteBuffer target) throws IOException {
+        while (target.hasRemaining()) {
+            if (channel.read(target) < 0) {
+                throw new EOFException("Instruction trace ends early");
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
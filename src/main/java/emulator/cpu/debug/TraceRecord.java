@@ -0,0 +1,198 @@
+package emulator.cpu.debug;
+
+import emulator.bus.IBus;
+
+import java.nio.ByteBuffer;
+
+/**
+ * CPU state right before one instruction: a record of an {@link InstructionTracer} trace or a line of a text trace.
+ * Reused from record to record, so reading a trace does not allocate per instruction.
+ */
+public class TraceRecord {
+    /*
+     * Binary layout, little endian:
+     *   0  long  clock cycle
+     *   8  short PC
+     *  10  short ROM bank
+     *  12  4 bytes at PC
+     *  16  short AF, BC, DE, HL, SP
+     *  26  byte  flags, bit 0 IME
+     *  27  5 reserved bytes
+     */
+    public static final int SIZE = 32;
+    public static final int FLAG_IME = 0b1;
+
+    private long cycle;
+    private int pc;
+    private int bank;
+    private int memory;
+    private int af;
+    private int bc;
+    private int de;
+    private int hl;
+    private int sp;
+    private int flags;
+
+    /**
+     * @return the 4 bytes at PC, the one at PC in the low byte
+     */
+    public static int readMemory(IBus bus, int pc) {
+        return peek(bus, pc) | peek(bus, pc + 1) << 8 | peek(bus, pc + 2) << 16 | peek(bus, pc + 3) << 24;
+    }
+
+    private static int peek(IBus bus, int address) {
+        try {
+            return bus.readByteAt(address & 0xFFFF) & 0xFF;
+        } catch (IndexOutOfBoundsException e) {
+            // operand bytes past the end of a mapped region
+            return 0xFF;
+        }
+    }
+
+    static void write(ByteBuffer buffer, int offset, long cycle, int pc, int bank, int memory,
+                      int af, int bc, int de, int hl, int sp, int flags) {
+        buffer.putLong(offset, cycle);
+        buffer.putShort(offset + 8, (short) pc);
+        buffer.putShort(offset + 10, (short) bank);
+        buffer.putInt(offset + 12, memory);
+        buffer.putShort(offset + 16, (short) af);
+        buffer.putShort(offset + 18, (short) bc);
+        buffer.putShort(offset + 20, (short) de);
+        buffer.putShort(offset + 22, (short) hl);
+        buffer.putShort(offset + 24, (short) sp);
+        buffer.put(offset + 26, (byte) flags);
+    }
+
+    void read(ByteBuffer buffer, int offset) {
+        cycle = buffer.getLong(offset);
+        pc = buffer.getShort(offset + 8) & 0xFFFF;
+        bank = buffer.getShort(offset + 10) & 0xFFFF;
+        memory = buffer.getInt(offset + 12);
+        af = buffer.getShort(offset + 16) & 0xFFFF;
+        bc = buffer.getShort(offset + 18) & 0xFFFF;
+        de = buffer.getShort(offset + 20) & 0xFFFF;
+        hl = buffer.getShort(offset + 22) & 0xFFFF;
+        sp = buffer.getShort(offset + 24) & 0xFFFF;
+        flags = buffer.get(offset + 26) & 0xFF;
+    }
+
+    void set(long cycle, int pc, int bank, int memory, int af, int bc, int de, int hl, int sp, int flags) {
+        this.cycle = cycle;
+        this.pc = pc;
+        this.bank = bank;
+        this.memory = memory;
+        this.af = af;
+        this.bc = bc;
+        this.de = de;
+        this.hl = hl;
+        this.sp = sp;
+        this.flags = flags;
+    }
+
+    /**
+     * @return clock cycles since power on when the instruction started, -1 if the trace doesn't say
+     */
+    public long getCycle() {
+        return cycle;
+    }
+
+    public int getPC() {
+        return pc;
+    }
+
+    /**
+     * @return ROM bank the instruction runs from, 0 unless it is in the switchable 0x4000-0x7FFF region
+     */
+    public int getBank() {
+        return bank;
+    }
+
+    /**
+     * @return byte at PC + index, index 0 to 3
+     */
+    public int getMemory(int index) {
+        return memory >>> (index * 8) & 0xFF;
+    }
+
+    int getPackedMemory() {
+        return memory;
+    }
+
+    public int getAF() {
+        return af;
+    }
+
+    public int getBC() {
+        return bc;
+    }
+
+    public int getDE() {
+        return de;
+    }
+
+    public int getHL() {
+        return hl;
+    }
+
+    public int getSP() {
+        return sp;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    /**
+     * Appends the line Gameboy Doctor expects, like "A:01 F:B0 B:00 C:13 D:00 E:D8 H:01 L:4D SP:FFFE PC:0100
+     *   PCMEM:00,C3,13,02".
+     */
+    public void appendDoctorLine(StringBuilder out) {
+        appendByte(out.append("A:"), af >> 8);
+        appendByte(out.append(" F:"), af);
+        appendByte(out.append(" B:"), bc >> 8);
+        appendByte(out.append(" C:"), bc);
+        appendByte(out.append(" D:"), de >> 8);
+        appendByte(out.append(" E:"), de);
+        appendByte(out.append(" H:"), hl >> 8);
+        appendByte(out.append(" L:"), hl);
+        appendWord(out.append(" SP:"), sp);
+        appendWord(out.append(" PC:"), pc);
+        out.append(" PCMEM:");
+        for (int i = 0; i < 4; i++) {
+            appendByte(i == 0 ? out : out.append(','), getMemory(i));
+        }
+    }
+
+    /**
+     * Appends the line the old InstructionLogger wrote, like "A: 01 F: B0 B: 00 C: 13 D: 00 E: D8 H: 01 L: 4D
+     *   SP: FFFE PC: 00:0100 (00 C3 13 02)".
+     */
+    public void appendLoggerLine(StringBuilder out) {
+        appendByte(out.append("A: "), af >> 8);
+        appendByte(out.append(" F: "), af);
+        appendByte(out.append(" B: "), bc >> 8);
+        appendByte(out.append(" C: "), bc);
+        appendByte(out.append(" D: "), de >> 8);
+        appendByte(out.append(" E: "), de);
+        appendByte(out.append(" H: "), hl >> 8);
+        appendByte(out.append(" L: "), hl);
+        appendWord(out.append(" SP: "), sp);
+        appendByte(out.append(" PC: "), bank);
+        appendWord(out.append(':'), pc);
+        out.append(" (");
+        for (int i = 0; i < 4; i++) {
+            appendByte(i == 0 ? out : out.append(' '), getMemory(i));
+        }
+        out.append(')');
+    }
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private static StringBuilder appendByte(StringBuilder out, int value) {
+        return out.append(HEX[value >> 4 & 0xF]).append(HEX[value & 0xF]);
+    }
+
+    private static void appendWord(StringBuilder out, int value) {
+        appendByte(appendByte(out, value >> 8), value);
+    }
+}
@@ -0,0 +1,58 @@
+package emulator.cpu.debug;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Offline tool turning a binary trace from an {@link InstructionTracer} into text.
+ * <p>
+ * Usage: TraceRenderer trace.bin [output.txt] [GAMEBOY_DOCTOR|INSTRUCTION_LOGGER], writing to standard output
+ *   without an output file.
+ */
+public class TraceRenderer {
+    private TraceRenderer() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 3) {
+            System.err.println("Usage: TraceRenderer trace.bin [output.txt] [GAMEBOY_DOCTOR|INSTRUCTION_LOGGER]");
+            System.exit(2);
+        }
+        TraceFormat format = TraceFormat.GAMEBOY_DOCTOR;
+        Path output = null;
+        for (int i = 1; i < args.length; i++) {
+            try {
+                format = TraceFormat.valueOf(args[i]);
+            } catch (IllegalArgumentException e) {
+                output = Path.of(args[i]);
+            }
+        }
+        try (Writer out = output != null ? Files.newBufferedWriter(output)
+                : new BufferedWriter(new OutputStreamWriter(System.out))) {
+            render(Path.of(args[0]), out, format);
+        }
+    }
+
+    /**
+     * Writes one line per record of the trace.
+     */
+    public static void render(Path trace, Writer out, TraceFormat format) throws IOException {
+        TraceRecord record = new TraceRecord();
+        StringBuilder line = new StringBuilder(96);
+        try (TraceReader reader = new TraceReader(trace)) {
+            while (reader.next(record)) {
+                line.setLength(0);
+                switch (format) {
+                    case GAMEBOY_DOCTOR -> record.appendDoctorLine(line);
+                    case INSTRUCTION_LOGGER -> record.appendLoggerLine(line);
+                }
+                out.append(line).append('\n');
+            }
+        }
+        out.flush();
+    }
+}
@@ -2,9 +2,11 @@ package emulator.cpu.instruction;
 
 import emulator.cpu.Operator;
 import emulator.bus.GameboyBus;
+import emulator.bus.IBus;
 import emulator.cpu.GameboyRegisters;
 import emulator.cpu.register.DoubleRegister;
 import emulator.cpu.register.InstructionTarget8Bit;
+import emulator.cpu.register.RegisterFile;
 
 public class InstructionUtils {
 
@@ -45,19 +47,22 @@ public class InstructionUtils {
     }
 
     public static void pushToStack(int value, GameboyRegisters registers, GameboyBus bus) {
-        registers.getSP().setValue(registers.getSP().getValue() - 1);
-        bus.writeByteAt(registers.getSP().getValue(), (byte) ((value >> 8) & 0xFF));
-        registers.getSP().setValue(registers.getSP().getValue() - 1);
-        bus.writeByteAt(registers.getSP().getValue(), (byte) (value & 0xFF));
+        pushToStack(value, registers.getRegisterFile(), bus);
     }
 
     public static int popFromStack(GameboyRegisters registers, GameboyBus bus) {
-        byte lowerByte = bus.readByteAt(registers.getSP().getValue());
-        registers.getSP().setValue(registers.getSP().getValue() + 1);
-        byte higherByte = bus.readByteAt(registers.getSP().getValue());
-        registers.getSP().setValue(registers.getSP().getValue() + 1);
+        return popFromStack(registers.getRegisterFile(), bus);
+    }
+
+    public static void pushToStack(int value, RegisterFile registerFile, IBus bus) {
+        registerFile.setSP(registerFile.getSP() - 2);
+        bus.pushWord(registerFile.getSP(), value & 0xFFFF);
+    }
 
-        return (lowerByte & 0xFF) | ((higherByte & 0xFF) << 8);
+    public static int popFromStack(RegisterFile registerFile, IBus bus) {
+        int value = bus.readWord(registerFile.getSP());
+        registerFile.setSP(registerFile.getSP() + 2);
+        return value;
     }
 
     public static Operator getAluOperatorFor(byte opxxx) {
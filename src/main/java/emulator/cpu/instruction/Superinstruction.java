@@ -0,0 +1,70 @@
+package emulator.cpu.instruction;
+
+import java.util.function.IntPredicate;
+
+/**
+ * A short, common sequence of instructions executed by a single fused handler.
+ * The fused handler must leave registers, flags and memory exactly as the individual instructions would,
+ *   and return the sum of their cycles.
+ */
+public class Superinstruction implements Instruction {
+    // matches any byte, used for operands
+    public static final int ANY = -1;
+
+    private final String name;
+    private final int[] pattern;
+    private final int instructionCount;
+    private final int maxCycles;
+    private final IntPredicate guard;
+    private final Instruction body;
+    private long fireCount;
+
+    /**
+     * @param pattern opcode and operand bytes of the sequence, {@link #ANY} for operand bytes
+     * @param instructionCount number of instructions the sequence is made of
+     * @param maxCycles most machine cycles the sequence can take
+     * @param guard given the PC of the sequence, whether fusing is safe right now
+     * @param body executes the whole sequence with PC on its first byte
+     */
+    public Superinstruction(String name, int[] pattern, int instructionCount, int maxCycles, IntPredicate guard, Instruction body) {
+        this.name = name;
+        this.pattern = pattern;
+        this.instructionCount = instructionCount;
+        this.maxCycles = maxCycles;
+        this.guard = guard;
+        this.body = body;
+    }
+
+    @Override
+    public int execute(byte instruction) {
+        fireCount++;
+        return body.execute(instruction);
+    }
+
+    public boolean canFuse(int pc) {
+        return guard.test(pc);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int[] getPattern() {
+        return pattern;
+    }
+
+    public int getInstructionCount() {
+        return instructionCount;
+    }
+
+    public int getMaxCycles() {
+        return maxCycles;
+    }
+
+    /**
+     * @return how many times the fused handler ran instead of the individual instructions
+     */
+    public long getFireCount() {
+        return fireCount;
+    }
+}
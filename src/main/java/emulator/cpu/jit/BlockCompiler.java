@@ -0,0 +1,202 @@
+package emulator.cpu.jit;
+
+import emulator.bus.device.cartridge.Cartridge;
+import emulator.cpu.Alu;
+import emulator.cpu.Operator;
+import emulator.cpu.TableInstructionDecoder;
+import emulator.cpu.instruction.Instruction;
+import emulator.cpu.instruction.InstructionUtils;
+import emulator.cpu.register.RegisterFile;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Translates a straight-line run of cartridge ROM code into a hidden class implementing {@link ICompiledBlock}.
+ *
+ * The generated run method is the block's instructions as plain bytecode, see {@link BlockEmitter}: registers are
+ *   JVM locals, memory accesses call the bus through the executor, ALU flags are deferred to the {@link Alu} tables
+ *   like the interpreter does, and the cycles are summed at compile time. Opcode fetch, decode and operand fetch all
+ *   happen once here. Only a few rare instructions (DI, EI, HALT, STOP, RETI, ADD SP, LD HL, SP+s8) still call their
+ *   {@link TableInstructionDecoder} handler.
+ *
+ * A block ends after the first instruction that changes control flow (jumps, calls, returns, RST, HALT, STOP, EI),
+ *   before any invalid opcode, at the end of its 16KiB ROM region, or after {@link #MAX_BLOCK_INSTRUCTIONS}.
+ */
+public class BlockCompiler {
+    public static final int MAX_BLOCK_INSTRUCTIONS = 32;
+
+    private static final String CLASS_NAME = "emulator/cpu/jit/CompiledBlock";
+    private static final String INSTRUCTION_DESC = Type.getDescriptor(Instruction.class);
+    private static final String OPERATOR_TYPE = Type.getInternalName(Operator.class);
+    private static final String ALU_TYPE = Type.getInternalName(Alu.class);
+    private static final String RUN_DESC = Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(TieredExecutor.class), Type.getType(RegisterFile.class));
+
+    // instruction length in bytes, by opcode
+    private static final int[] LENGTHS = new int[256];
+    private static final boolean[] ENDS_BLOCK = new boolean[256];
+    private static final boolean[] INVALID = new boolean[256];
+
+    static {
+        for (int opcode = 0; opcode < 256; opcode++) {
+            LENGTHS[opcode] = 1;
+        }
+        for (int xxx = 0; xxx < 8; xxx++) {
+            LENGTHS[0b00_000_110 | xxx << 3] = 2; // LD r, d8
+            LENGTHS[0b11_000_110 | xxx << 3] = 2; // ALU A, d8
+            ENDS_BLOCK[0b11_000_111 | xxx << 3] = true; // RST
+        }
+        for (int opcode : new int[]{0x10, 0x18, 0x20, 0x28, 0x30, 0x38, 0xCB, 0xE0, 0xF0, 0xE8, 0xF8}) {
+            LENGTHS[opcode] = 2;
+        }
+        for (int opcode : new int[]{0x01, 0x11, 0x21, 0x31, 0x08, 0xEA, 0xFA,
+                0xC3, 0xC2, 0xCA, 0xD2, 0xDA, 0xCD, 0xC4, 0xCC, 0xD4, 0xDC}) {
+            LENGTHS[opcode] = 3;
+        }
+        // EI too, since an interrupt may be serviced right after it
+        for (int opcode : new int[]{0x10, 0x76, 0x18, 0x20, 0x28, 0x30, 0x38, 0xC3, 0xC2, 0xCA, 0xD2, 0xDA, 0xE9,
+                0xCD, 0xC4, 0xCC, 0xD4, 0xDC, 0xC9, 0xC0, 0xC8, 0xD0, 0xD8, 0xD9, 0xFB}) {
+            ENDS_BLOCK[opcode] = true;
+        }
+        for (int opcode : new int[]{0xD3, 0xDB, 0xDD, 0xE3, 0xE4, 0xEB, 0xEC, 0xED, 0xF4, 0xFC, 0xFD}) {
+            INVALID[opcode] = true;
+        }
+    }
+
+    private final TableInstructionDecoder decoder;
+    private final Cartridge cartridge;
+    private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    public BlockCompiler(TableInstructionDecoder decoder, Cartridge cartridge) {
+        this.decoder = decoder;
+        this.cartridge = cartridge;
+    }
+
+    /**
+     * @param start address of the block's first instruction, below 0x8000
+     * @return the translated block, or null if there is nothing at start that can be translated
+     */
+    public ICompiledBlock compile(int start) {
+        int regionEnd = start < 0x4000 ? 0x4000 : 0x8000;
+        List<int[]> instructions = new ArrayList<>();
+
+        int pc = start;
+        while (instructions.size() < MAX_BLOCK_INSTRUCTIONS) {
+            int opcode = cartridge.readByteAt(pc) & 0xFF;
+            if (INVALID[opcode] || pc + LENGTHS[opcode] > regionEnd) {
+                break;
+            }
+            int[] bytes = new int[LENGTHS[opcode]];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = cartridge.readByteAt(pc + i) & 0xFF;
+            }
+            instructions.add(bytes);
+            pc += bytes.length;
+            if (ENDS_BLOCK[opcode]) {
+                break;
+            }
+        }
+
+        if (instructions.isEmpty()) {
+            return null;
+        }
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        cw.visit(V21, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, CLASS_NAME, null, "java/lang/Object",
+                new String[]{Type.getInternalName(ICompiledBlock.class)});
+
+        BlockEmitter emitter = new BlockEmitter(cw.visitMethod(ACC_PUBLIC, "run", RUN_DESC, null, null), CLASS_NAME, decoder);
+        emitter.begin();
+        pc = start;
+        for (int i = 0; i < instructions.size(); i++) {
+            int[] bytes = instructions.get(i);
+            emitter.instruction(pc, bytes, i == instructions.size() - 1);
+            pc += bytes.length;
+        }
+        emitter.end();
+
+        List<Instruction> handlers = emitter.getHandlers();
+        generateTables(cw);
+        generateConstructor(cw, handlers.size());
+        generateConstant(cw, "getInstructionCount", instructions.size());
+        generateConstant(cw, "getMaxCycles", emitter.getMaxCycles());
+        cw.visitEnd();
+        return define(cw.toByteArray(), handlers.toArray(new Instruction[0]));
+    }
+
+    /**
+     * The ALU tables, in static final fields so the JVM treats them as constants.
+     */
+    private static void generateTables(ClassWriter cw) {
+        MethodVisitor clinit = cw.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
+        clinit.visitCode();
+        Set<String> declared = new HashSet<>();
+        Operator[] operators = Operator.values();
+        for (int operation = 0; operation < BlockEmitter.ALU_TABLES.length; operation++) {
+            String field = BlockEmitter.ALU_TABLES[operation];
+            if (declared.add(field)) {
+                cw.visitField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, field, "[C", null, null).visitEnd();
+                clinit.visitFieldInsn(GETSTATIC, OPERATOR_TYPE, InstructionUtils.getAluOperatorFor((byte) operation).name(), "L" + OPERATOR_TYPE + ";");
+                clinit.visitMethodInsn(INVOKESTATIC, ALU_TYPE, "table", "(L" + OPERATOR_TYPE + ";)[C", false);
+                clinit.visitFieldInsn(PUTSTATIC, CLASS_NAME, field, "[C");
+            }
+        }
+        for (String field : new String[]{BlockEmitter.INC_TABLE, BlockEmitter.DEC_TABLE}) {
+            cw.visitField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, field, "[C", null, null).visitEnd();
+            clinit.visitMethodInsn(INVOKESTATIC, ALU_TYPE, field.equals(BlockEmitter.INC_TABLE) ? "incrementTable" : "decrementTable", "()[C", false);
+            clinit.visitFieldInsn(PUTSTATIC, CLASS_NAME, field, "[C");
+        }
+        clinit.visitInsn(RETURN);
+        clinit.visitMaxs(0, 0);
+        clinit.visitEnd();
+    }
+
+    /**
+     * Copies the handlers of untranslated instructions into fields, so every call site gets its own type profile.
+     */
+    private static void generateConstructor(ClassWriter cw, int handlerCount) {
+        for (int i = 0; i < handlerCount; i++) {
+            cw.visitField(ACC_PRIVATE | ACC_FINAL, "handler" + i, INSTRUCTION_DESC, null, null).visitEnd();
+        }
+        MethodVisitor init = cw.visitMethod(ACC_PUBLIC, "<init>", "([" + INSTRUCTION_DESC + ")V", null, null);
+        init.visitCode();
+        init.visitVarInsn(ALOAD, 0);
+        init.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        for (int i = 0; i < handlerCount; i++) {
+            init.visitVarInsn(ALOAD, 0);
+            init.visitVarInsn(ALOAD, 1);
+            init.visitLdcInsn(i);
+            init.visitInsn(AALOAD);
+            init.visitFieldInsn(PUTFIELD, CLASS_NAME, "handler" + i, INSTRUCTION_DESC);
+        }
+        init.visitInsn(RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+    }
+
+    private static void generateConstant(ClassWriter cw, String getter, int value) {
+        MethodVisitor method = cw.visitMethod(ACC_PUBLIC, getter, "()I", null, null);
+        method.visitCode();
+        method.visitLdcInsn(value);
+        method.visitInsn(IRETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+    }
+
+    private ICompiledBlock define(byte[] classBytes, Instruction[] handlers) {
+        try {
+            // not STRONG, so evicted blocks can be unloaded
+            Class<?> blockClass = lookup.defineHiddenClass(classBytes, true).lookupClass();
+            return (ICompiledBlock) blockClass.getConstructor(Instruction[].class).newInstance((Object) handlers);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not define translated block", e);
+        }
+    }
+}
@@ -0,0 +1,834 @@
+package emulator.cpu.jit;
+
+import emulator.cpu.Alu;
+import emulator.cpu.TableInstructionDecoder;
+import emulator.cpu.instruction.Instruction;
+import emulator.cpu.register.FlagRegister;
+import emulator.cpu.register.RegisterFile;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntSupplier;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Writes the run method of a {@link BlockCompiler} block, one Game Boy instruction at a time.
+ *
+ * The registers live in JVM locals for the whole block. They are loaded from the {@link RegisterFile} on entry and
+ *   stored back on exit, and around the few rare instructions that still run through their
+ *   {@link TableInstructionDecoder} handler. Memory goes through {@link TieredExecutor#read(int, int)} and
+ *   {@link TieredExecutor#write(int, int, int)}, which catch the clock up first where the address depends on it.
+ *
+ * Cycles are constants added up at compile time, only a conditional branch at the end of the block picks between
+ *   two totals. Every exit hands PC, the cycle total and the instruction count to {@link TieredExecutor#exitBlock(int, int)}.
+ */
+class BlockEmitter {
+    // locals of the generated run method
+    private static final int EXECUTOR = 1;
+    private static final int REGISTER_FILE = 2;
+    private static final int FLAGS = 3;
+    // B, C, D, E, H, L, A at REGISTERS + their RegisterFile index, slot 6 unused like (HL) in the RegisterFile
+    private static final int REGISTERS = 4;
+    private static final int SP = 12;
+    private static final int TEMP = 13;
+    private static final int TEMP2 = 14;
+    private static final int CARRY = 15;
+    private static final int PAIR_TEMP = 16;
+    private static final int LEAVE = 17;
+    private static final int EXIT_PC = 18;
+    private static final int EXIT_CYCLES = 19;
+    private static final int EXIT_COUNT = 20;
+
+    // bits of the dirty masks, one per RegisterFile index plus SP
+    private static final int SP_DIRTY = 1 << 8;
+
+    private static final String EXECUTOR_TYPE = Type.getInternalName(TieredExecutor.class);
+    private static final String REGISTER_FILE_TYPE = Type.getInternalName(RegisterFile.class);
+    private static final String FLAGS_TYPE = Type.getInternalName(FlagRegister.class);
+    private static final String ALU_TYPE = Type.getInternalName(Alu.class);
+    private static final String INSTRUCTION_TYPE = Type.getInternalName(Instruction.class);
+    private static final String INSTRUCTION_DESC = Type.getDescriptor(Instruction.class);
+
+    // ALU tables the generated class holds in static fields, by ALU operation in opcode order
+    static final String[] ALU_TABLES = {"ADC_TABLE", "ADC_TABLE", "SBC_TABLE", "SBC_TABLE", "AND_TABLE", "XOR_TABLE", "OR_TABLE", "SBC_TABLE"};
+    static final String INC_TABLE = "INC_TABLE";
+    static final String DEC_TABLE = "DEC_TABLE";
+    private static final int ADD = 0, ADC = 1, SUB = 2, SBC = 3, AND = 4, XOR = 5, OR = 6;
+
+    private final MethodVisitor mv;
+    private final String className;
+    private final TableInstructionDecoder decoder;
+    private final Label exit = new Label();
+    private final List<Instruction> handlers = new ArrayList<>();
+
+    // machine cycles before the instruction being emitted
+    private int elapsed;
+    private int instructionCount;
+    // registers written since they were last stored back, and everything any exit has to store back
+    private int dirty;
+    private int exitDirty;
+    private boolean wroteMemory;
+    private boolean endsBlock;
+
+    BlockEmitter(MethodVisitor mv, String className, TableInstructionDecoder decoder) {
+        this.mv = mv;
+        this.className = className;
+        this.decoder = decoder;
+    }
+
+    void begin() {
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, REGISTER_FILE);
+        mv.visitMethodInsn(INVOKEVIRTUAL, REGISTER_FILE_TYPE, "getF", "()" + Type.getDescriptor(FlagRegister.class), false);
+        mv.visitVarInsn(ASTORE, FLAGS);
+        loadRegisters();
+        for (int local = TEMP; local <= EXIT_COUNT; local++) {
+            push(0);
+            mv.visitVarInsn(ISTORE, local);
+        }
+    }
+
+    /**
+     * @param pc address of the instruction
+     * @param bytes the opcode and its operand bytes, unsigned
+     * @param last true for the last instruction of the block
+     */
+    void instruction(int pc, int[] bytes, boolean last) {
+        int opcode = bytes[0];
+        int next = pc + bytes.length;
+        wroteMemory = false;
+        endsBlock = false;
+        int cycles = opcode == 0xCB ? prefixed(bytes[1]) : base(opcode, pc, next, bytes);
+        if (endsBlock) {
+            // control flow has set up its own exits
+        } else if (last) {
+            exitTo(next, cycles);
+        } else if (wroteMemory) {
+            // a write with side effects ends the block right after its instruction
+            Label stay = new Label();
+            mv.visitVarInsn(ILOAD, LEAVE);
+            mv.visitJumpInsn(IFEQ, stay);
+            exitTo(next, cycles);
+            mv.visitLabel(stay);
+        }
+        elapsed += cycles;
+        instructionCount++;
+    }
+
+    void end() {
+        mv.visitLabel(exit);
+        storeRegisters(exitDirty);
+        mv.visitVarInsn(ALOAD, REGISTER_FILE);
+        mv.visitVarInsn(ILOAD, EXIT_PC);
+        mv.visitMethodInsn(INVOKEVIRTUAL, REGISTER_FILE_TYPE, "setPC", "(I)V", false);
+        mv.visitVarInsn(ALOAD, EXECUTOR);
+        mv.visitVarInsn(ILOAD, EXIT_CYCLES);
+        mv.visitVarInsn(ILOAD, EXIT_COUNT);
+        mv.visitMethodInsn(INVOKEVIRTUAL, EXECUTOR_TYPE, "exitBlock", "(II)V", false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * @return most machine cycles the block can take
+     */
+    int getMaxCycles() {
+        return elapsed;
+    }
+
+    /**
+     * @return handlers of the instructions that were not translated, the generated class keeps them in fields
+     *   handler0, handler1, ...
+     */
+    List<Instruction> getHandlers() {
+        return handlers;
+    }
+
+    /**
+     * @return machine cycles of the instruction, the most it can take for a conditional one
+     */
+    private int base(int opcode, int pc, int next, int[] bytes) {
+        int xxx = opcode >>> 3 & 0b111;
+        int yyy = opcode & 0b111;
+        int xx = opcode >>> 4 & 0b11;
+        int immediate8 = bytes.length > 1 ? bytes[1] : 0;
+        int immediate16 = bytes.length > 2 ? bytes[1] | bytes[2] << 8 : 0;
+
+        switch (opcode) {
+            case 0x00: // NOP
+                return 1;
+            case 0x01, 0x11, 0x21, 0x31: // LD rr, nn
+                push(immediate16);
+                storePair(xx);
+                return 3;
+            case 0x02, 0x12: // LD (BC), A --- LD (DE), A
+                write(() -> loadPair(xx), () -> loadRegister(RegisterFile.A));
+                return 2;
+            case 0x22, 0x32: // LD (HL+), A --- LD (HL-), A
+                write(() -> loadPair(RegisterFile.HL), () -> loadRegister(RegisterFile.A));
+                stepHL(opcode == 0x22 ? 1 : -1);
+                return 2;
+            case 0x0A, 0x1A: // LD A, (BC) --- LD A, (DE)
+                read(() -> loadPair(xx));
+                storeRegister(RegisterFile.A);
+                return 2;
+            case 0x2A, 0x3A: // LD A, (HL+) --- LD A, (HL-)
+                read(() -> loadPair(RegisterFile.HL));
+                storeRegister(RegisterFile.A);
+                stepHL(opcode == 0x2A ? 1 : -1);
+                return 2;
+            case 0x03, 0x13, 0x23, 0x33, 0x0B, 0x1B, 0x2B, 0x3B: // INC rr --- DEC rr
+                loadPair(xx);
+                push(1);
+                mv.visitInsn((opcode & 0x08) == 0 ? IADD : ISUB);
+                storePair(xx);
+                return 2;
+            case 0x07, 0x0F, 0x17, 0x1F: // RLCA, RRCA, RLA, RRA
+                // always clear Z, unlike their CB counterparts
+                push(xxx);
+                loadRegister(RegisterFile.A);
+                getC();
+                mv.visitMethodInsn(INVOKESTATIC, ALU_TYPE, "shift", "(III)I", false);
+                mv.visitVarInsn(ISTORE, TEMP);
+                mv.visitVarInsn(ILOAD, TEMP);
+                storeRegister(RegisterFile.A);
+                setFlags(() -> {
+                    mv.visitVarInsn(ILOAD, TEMP);
+                    push(8);
+                    mv.visitInsn(IUSHR);
+                    push(~FlagRegister.Z_FLAG);
+                    mv.visitInsn(IAND);
+                });
+                return 1;
+            case 0x08: // LD (nn), SP
+                write(() -> push(immediate16), () -> mv.visitVarInsn(ILOAD, SP));
+                write(() -> push((immediate16 + 1) & 0xFFFF), () -> {
+                    mv.visitVarInsn(ILOAD, SP);
+                    push(8);
+                    mv.visitInsn(IUSHR);
+                });
+                return 5;
+            case 0x09, 0x19, 0x29, 0x39: // ADD HL, rr
+                loadPair(RegisterFile.HL);
+                mv.visitVarInsn(ISTORE, TEMP);
+                loadPair(xx);
+                mv.visitVarInsn(ISTORE, TEMP2);
+                mv.visitVarInsn(ILOAD, TEMP);
+                mv.visitVarInsn(ILOAD, TEMP2);
+                mv.visitInsn(IADD);
+                storePair(RegisterFile.HL);
+                setFlag("setN", false);
+                flags();
+                mv.visitVarInsn(ILOAD, TEMP);
+                push(0x0FFF);
+                mv.visitInsn(IAND);
+                mv.visitVarInsn(ILOAD, TEMP2);
+                push(0x0FFF);
+                mv.visitInsn(IAND);
+                mv.visitInsn(IADD);
+                push(0x1000);
+                mv.visitInsn(IAND);
+                mv.visitMethodInsn(INVOKEVIRTUAL, FLAGS_TYPE, "setH", "(I)V", false);
+                flags();
+                mv.visitVarInsn(ILOAD, TEMP);
+                mv.visitVarInsn(ILOAD, TEMP2);
+                mv.visitInsn(IADD);
+                push(16);
+                mv.visitInsn(IUSHR);
+                mv.visitMethodInsn(INVOKEVIRTUAL, FLAGS_TYPE, "setC", "(I)V", false);
+                return 2;
+            case 0x18: // JR n
+                return jump((next + (byte) immediate8) & 0xFFFF, 3);
+            case 0x20, 0x28, 0x30, 0x38: // JR cc, n
+                return branch(xxx & 0b11, () -> {
+                    push((next + (byte) immediate8) & 0xFFFF);
+                    return 3;
+                }, next, 2);
+            case 0x27: // DAA
+                loadRegister(RegisterFile.A);
+                flags();
+                mv.visitMethodInsn(INVOKEVIRTUAL, FLAGS_TYPE, "getValue", "()B", false);
+                push(0xFF);
+                mv.visitInsn(IAND);
+                mv.visitMethodInsn(INVOKESTATIC, ALU_TYPE, "daa", "(II)I", false);
+                mv.visitVarInsn(ISTORE, TEMP);
+                mv.visitVarInsn(ILOAD, TEMP);
+                storeRegister(RegisterFile.A);
+                setFlags(() -> {
+                    mv.visitVarInsn(ILOAD, TEMP);
+                    push(8);
+                    mv.visitInsn(IUSHR);
+                });
+                return 1;
+            case 0x2F: // CPL
+                loadRegister(RegisterFile.A);
+                push(-1);
+                mv.visitInsn(IXOR);
+                storeRegister(RegisterFile.A);
+                setFlag("setN", true);
+                setFlag("setH", true);
+                return 1;
+            case 0x37: // SCF
+                setFlag("setN", false);
+                setFlag("setH", false);
+                setFlag("setC", true);
+                return 1;
+            case 0x3F: // CCF
+                setFlag("setN", false);
+                setFlag("setH", false);
+                flags();
+                getC();
+                push(1);
+                mv.visitInsn(IXOR);
+                mv.visitMethodInsn(INVOKEVIRTUAL, FLAGS_TYPE, "setC", "(Z)V", false);
+                return 1;
+            case 0xC0, 0xC8, 0xD0, 0xD8: // RET cc
+                return branch(xxx & 0b11, () -> {
+                    pop();
+                    mv.visitVarInsn(ILOAD, TEMP);
+                    return 5;
+                }, next, 2);
+            case 0xC9: // RET
+                pop();
+                mv.visitVarInsn(ILOAD, TEMP);
+                return jump(4);
+            case 0xC1, 0xD1, 0xE1, 0xF1: // POP rr
+                pop();
+                if (xx == 0b11) {
+                    mv.visitVarInsn(ILOAD, TEMP);
+                    push(8);
+                    mv.visitInsn(IUSHR);
+                    storeRegister(RegisterFile.A);
+                    setFlags(() -> mv.visitVarInsn(ILOAD, TEMP));
+                } else {
+                    mv.visitVarInsn(ILOAD, TEMP);
+                    storePair(xx);
+                }
+                return 3;
+            case 0xC5, 0xD5, 0xE5, 0xF5: // PUSH rr
+                if (xx == 0b11) {
+                    loadRegister(RegisterFile.A);
+                    push(8);
+                    mv.visitInsn(ISHL);
+                    flags();
+                    mv.visitMethodInsn(INVOKEVIRTUAL, FLAGS_TYPE, "getValue", "()B", false);
+                    push(0xFF);
+                    mv.visitInsn(IAND);
+                    mv.visitInsn(IOR);
+                } else {
+                    loadPair(xx);
+                }
+                pushToStack();
+                return 4;
+            case 0xC2, 0xCA, 0xD2, 0xDA: // JP cc, nn
+                return branch(xxx & 0b11, () -> {
+                    push(immediate16);
+                    return 4;
+                }, next, 3);
+            case 0xC3: // JP nn
+                return jump(immediate16, 4);
+            case 0xE9: // JP HL
+                loadPair(RegisterFile.HL);
+                return jump(1);
+            case 0xC4, 0xCC, 0xD4, 0xDC: // CALL cc, nn
+                return branch(xxx & 0b11, () -> {
+                    push(next);
+                    pushToStack();
+                    push(immediate16);
+                    return 6;
+                }, next, 3);
+            case 0xCD: // CALL nn
+                push(next);
+                pushToStack();
+                return jump(immediate16, 6);
+            case 0xE0: // LD (n), A
+                write(() -> push(0xFF00 | immediate8), () -> loadRegister(RegisterFile.A));
+                return 3;
+            case 0xF0: // LD A, (n)
+                read(() -> push(0xFF00 | immediate8));
+                storeRegister(RegisterFile.A);
+                return 3;
+            case 0xE2: // LD (C), A
+                write(this::highPageAtC, () -> loadRegister(RegisterFile.A));
+                return 2;
+            case 0xF2: // LD A, (C)
+                read(this::highPageAtC);
+                storeRegister(RegisterFile.A);
+                return 2;
+            case 0xEA: // LD (nn), A
+                write(() -> push(immediate16), () -> loadRegister(RegisterFile.A));
+                return 4;
+            case 0xFA: // LD A, (nn)
+                read(() -> push(immediate16));
+                storeRegister(RegisterFile.A);
+                return 4;
+            case 0xF9: // LD SP, HL
+                loadPair(RegisterFile.HL);
+                storePair(RegisterFile.SP);
+                return 2;
+            case 0xF3, 0xE8, 0xF8: // DI --- ADD SP, s8 --- LD HL, SP+s8
+                callHandler(opcode, pc);
+                mv.visitInsn(POP);
+                return opcode == 0xF3 ? 1 : opcode == 0xE8 ? 4 : 3;
+            case 0x10, 0x76, 0xD9, 0xFB: // STOP --- HALT --- RETI --- EI
+                // they all end the block, and leave PC where the handler put it
+                callHandler(opcode, pc);
+                mv.visitVarInsn(ISTORE, TEMP);
+                mv.visitVarInsn(ALOAD, REGISTER_FILE);
+                mv.visitMethodInsn(INVOKEVIRTUAL, REGISTER_FILE_TYPE, "getPC", "()I", false);
+                mv.visitVarInsn(ISTORE, EXIT_PC);
+                push(elapsed);
+                mv.visitVarInsn(ILOAD, TEMP);
+                mv.visitInsn(IADD);
+                mv.visitVarInsn(ISTORE, EXIT_CYCLES);
+                goToExit();
+                endsBlock = true;
+                return opcode == 0xD9 ? 4 : 1;
+            default:
+                break;
+        }
+
+        switch (opcode >>> 6) {
+            case 0b00:
+                if (yyy == 0b110) {
+                    // LD r, n --- LD (HL), n
+                    store(xxx, () -> push(immediate8));
+                    return 2 + accessCost(xxx);
+                }
+                // INC r --- DEC r
+                load(xxx);
+                mv.visitVarInsn(ISTORE, TEMP);
+                store(xxx, () -> {
+                    mv.visitVarInsn(ILOAD, TEMP);
+                    push(1);
+                    mv.visitInsn(yyy == 0b100 ? IADD : ISUB);
+                });
+                flags();
+                mv.visitFieldInsn(GETSTATIC, className, yyy == 0b100 ? INC_TABLE : DEC_TABLE, "[C");
+                mv.visitVarInsn(ILOAD, TEMP);
+                mv.visitMethodInsn(INVOKEVIRTUAL, FLAGS_TYPE, "deferZNH", "([CI)V", false);
+                return 1 + 2 * accessCost(xxx);
+            case 0b01:
+                // LD r1, r2
+                store(xxx, () -> load(yyy));
+                return 1 + accessCost(xxx) + accessCost(yyy);
+            case 0b10:
+                // ADD/SUB/etc. A, r
+                alu(xxx, () -> load(yyy));
+                return 1 + accessCost(yyy);
+            default:
+                if (yyy == 0b110) {
+                    // ADD/SUB/etc. A, d8
+                    alu(xxx, () -> push(immediate8));
+                    return 2;
+                }
+                // RST i, the only opcodes left
+                push(next);
+                pushToStack();
+                return jump(xxx << 3, 4);
+        }
+    }
+
+    /**
+     * @return machine cycles of the 0xCB prefixed instruction, prefix included
+     */
+    private int prefixed(int opcode) {
+        int index = opcode & 0b111;
+        int iii = opcode >>> 3 & 0b111;
+        int targetBit = 1 << iii;
+        switch (opcode >>> 6) {
+            case 0b00 -> {
+                // RLC/RRC/RL/RR/SLA/SRA/SWAP/SRL r
+                push(iii);
+                load(index);
+                getC();
+                mv.visitMethodInsn(INVOKESTATIC, ALU_TYPE, "shift", "(III)I", false);
+                mv.visitVarInsn(ISTORE, TEMP);
+                store(index, () -> mv.visitVarInsn(ILOAD, TEMP));
+                setFlags(() -> {
+                    mv.visitVarInsn(ILOAD, TEMP);
+                    push(8);
+                    mv.visitInsn(IUSHR);
+                });
+            }
+            case 0b01 -> {
+                // BIT i, r: Z when the bit is clear, so the bit flipped is what goes into setZ
+                flags();
+                load(index);
+                push(targetBit);
+                mv.visitInsn(IAND);
+                push(targetBit);
+                mv.visitInsn(IXOR);
+                mv.visitMethodInsn(INVOKEVIRTUAL, FLAGS_TYPE, "setZ", "(I)V", false);
+                setFlag("setN", false);
+                setFlag("setH", true);
+            }
+            case 0b10 -> store(index, () -> {
+                // RES i, r
+                load(index);
+                push(~targetBit);
+                mv.visitInsn(IAND);
+            });
+            default -> store(index, () -> {
+                // SET i, r
+                load(index);
+                push(targetBit);
+                mv.visitInsn(IOR);
+            });
+        }
+        return 2 + accessCost(index);
+    }
+
+    private static int accessCost(int index) {
+        return index == RegisterFile.HL_INDIRECT ? 1 : 0;
+    }
+
+    private void alu(int operation, Runnable operand) {
+        operand.run();
+        mv.visitVarInsn(ISTORE, TEMP2);
+        loadRegister(RegisterFile.A);
+        mv.visitVarInsn(ISTORE, TEMP);
+        boolean withCarry = operation == ADC || operation == SBC;
+        if (withCarry) {
+            getC();
+            mv.visitVarInsn(ISTORE, CARRY);
+        }
+        int resultOperation = switch (operation) {
+            case ADD, ADC -> IADD;
+            case SUB, SBC -> ISUB;
+            case AND -> IAND;
+            case XOR -> IXOR;
+            case OR -> IOR;
+            default -> NOP; // CP only sets the flags
+        };
+        if (resultOperation != NOP) {
+            mv.visitVarInsn(ILOAD, TEMP);
+            mv.visitVarInsn(ILOAD, TEMP2);
+            mv.visitInsn(resultOperation);
+            if (withCarry) {
+                mv.visitVarInsn(ILOAD, CARRY);
+                mv.visitInsn(resultOperation);
+            }
+            storeRegister(RegisterFile.A);
+        }
+
+        // the flags stay a table lookup for the FlagRegister to resolve once they are read
+        flags();
+        mv.visitFieldInsn(GETSTATIC, className, ALU_TABLES[operation], "[C");
+        mv.visitVarInsn(ILOAD, TEMP);
+        push(8);
+        mv.visitInsn(ISHL);
+        mv.visitVarInsn(ILOAD, TEMP2);
+        mv.visitInsn(IOR);
+        if (withCarry) {
+            mv.visitVarInsn(ILOAD, CARRY);
+            push(16);
+            mv.visitInsn(ISHL);
+            mv.visitInsn(IOR);
+        }
+        mv.visitMethodInsn(INVOKEVIRTUAL, FLAGS_TYPE, "deferFlags", "([CI)V", false);
+    }
+
+    /**
+     * Ends the block on a conditional instruction. The taken path pushes the target PC and returns its cycles.
+     *
+     * @return the most cycles either path takes
+     */
+    private int branch(int cc, IntSupplier taken, int next, int notTakenCycles) {
+        Label notTaken = new Label();
+        flags();
+        mv.visitMethodInsn(INVOKEVIRTUAL, FLAGS_TYPE, cc < 0b10 ? "getZ" : "getC", "()Z", false);
+        // NZ and NC are taken on a clear flag
+        mv.visitJumpInsn((cc & 1) == 0 ? IFNE : IFEQ, notTaken);
+        int takenCycles = taken.getAsInt();
+        mv.visitVarInsn(ISTORE, EXIT_PC);
+        exitWithCycles(takenCycles);
+        mv.visitLabel(notTaken);
+        exitTo(next, notTakenCycles);
+        endsBlock = true;
+        return Math.max(takenCycles, notTakenCycles);
+    }
+
+    /**
+     * Ends the block on a jump to a known address.
+     */
+    private int jump(int pc, int cycles) {
+        push(pc);
+        return jump(cycles);
+    }
+
+    /**
+     * Ends the block on a jump to the address on the stack.
+     */
+    private int jump(int cycles) {
+        mv.visitVarInsn(ISTORE, EXIT_PC);
+        exitWithCycles(cycles);
+        endsBlock = true;
+        return cycles;
+    }
+
+    /**
+     * Leaves the block after the instruction being emitted, continuing at pc.
+     */
+    private void exitTo(int pc, int cycles) {
+        push(pc);
+        mv.visitVarInsn(ISTORE, EXIT_PC);
+        exitWithCycles(cycles);
+    }
+
+    private void exitWithCycles(int cycles) {
+        push(elapsed + cycles);
+        mv.visitVarInsn(ISTORE, EXIT_CYCLES);
+        goToExit();
+    }
+
+    private void goToExit() {
+        push(instructionCount + 1);
+        mv.visitVarInsn(ISTORE, EXIT_COUNT);
+        exitDirty |= dirty;
+        mv.visitJumpInsn(GOTO, exit);
+    }
+
+    /**
+     * Runs an instruction through its interpreter handler, leaving its cycles on the stack.
+     */
+    private void callHandler(int opcode, int pc) {
+        // the handler may touch the bus directly, so the clock has to be current
+        mv.visitVarInsn(ALOAD, EXECUTOR);
+        push(elapsed);
+        mv.visitMethodInsn(INVOKEVIRTUAL, EXECUTOR_TYPE, "catchUp", "(I)V", false);
+        storeRegisters(dirty);
+        dirty = 0;
+        // operands are fetched through PC, as in the interpreter
+        mv.visitVarInsn(ALOAD, REGISTER_FILE);
+        push(pc + 1);
+        mv.visitMethodInsn(INVOKEVIRTUAL, REGISTER_FILE_TYPE, "setPC", "(I)V", false);
+
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, className, "handler" + handlers.size(), INSTRUCTION_DESC);
+        handlers.add(decoder.decode((byte) opcode));
+        push((byte) opcode);
+        mv.visitMethodInsn(INVOKEINTERFACE, INSTRUCTION_TYPE, "execute", "(B)I", true);
+        loadRegisters();
+    }
+
+    private void loadRegisters() {
+        for (int index = RegisterFile.B; index <= RegisterFile.A; index++) {
+            if (index != RegisterFile.HL_INDIRECT) {
+                mv.visitVarInsn(ALOAD, REGISTER_FILE);
+                push(index);
+                mv.visitMethodInsn(INVOKEVIRTUAL, REGISTER_FILE_TYPE, "get8", "(I)I", false);
+                mv.visitVarInsn(ISTORE, REGISTERS + index);
+            }
+        }
+        mv.visitVarInsn(ALOAD, REGISTER_FILE);
+        mv.visitMethodInsn(INVOKEVIRTUAL, REGISTER_FILE_TYPE, "getSP", "()I", false);
+        mv.visitVarInsn(ISTORE, SP);
+    }
+
+    private void storeRegisters(int mask) {
+        for (int index = RegisterFile.B; index <= RegisterFile.A; index++) {
+            if ((mask & 1 << index) != 0) {
+                mv.visitVarInsn(ALOAD, REGISTER_FILE);
+                push(index);
+                mv.visitVarInsn(ILOAD, REGISTERS + index);
+                mv.visitMethodInsn(INVOKEVIRTUAL, REGISTER_FILE_TYPE, "set8", "(II)V", false);
+            }
+        }
+        if ((mask & SP_DIRTY) != 0) {
+            mv.visitVarInsn(ALOAD, REGISTER_FILE);
+            mv.visitVarInsn(ILOAD, SP);
+            mv.visitMethodInsn(INVOKEVIRTUAL, REGISTER_FILE_TYPE, "setSP", "(I)V", false);
+        }
+    }
+
+    private void loadRegister(int index) {
+        mv.visitVarInsn(ILOAD, REGISTERS + index);
+    }
+
+    /**
+     * Stores the value on the stack into the register, cut to 8 bits.
+     */
+    private void storeRegister(int index) {
+        push(0xFF);
+        mv.visitInsn(IAND);
+        mv.visitVarInsn(ISTORE, REGISTERS + index);
+        dirty |= 1 << index;
+    }
+
+    /**
+     * Pushes an 8-bit operand, reading memory for (HL).
+     */
+    private void load(int index) {
+        if (index == RegisterFile.HL_INDIRECT) {
+            read(() -> loadPair(RegisterFile.HL));
+        } else {
+            loadRegister(index);
+        }
+    }
+
+    /**
+     * Stores an 8-bit operand, writing memory for (HL).
+     */
+    private void store(int index, Runnable value) {
+        if (index == RegisterFile.HL_INDIRECT) {
+            write(() -> loadPair(RegisterFile.HL), value);
+        } else {
+            value.run();
+            storeRegister(index);
+        }
+    }
+
+    private void loadPair(int pair) {
+        if (pair == RegisterFile.SP) {
+            mv.visitVarInsn(ILOAD, SP);
+            return;
+        }
+        loadRegister(pair << 1);
+        push(8);
+        mv.visitInsn(ISHL);
+        loadRegister((pair << 1) + 1);
+        mv.visitInsn(IOR);
+    }
+
+    /**
+     * Stores the value on the stack into the pair, cut to 16 bits.
+     */
+    private void storePair(int pair) {
+        if (pair == RegisterFile.SP) {
+            push(0xFFFF);
+            mv.visitInsn(IAND);
+            mv.visitVarInsn(ISTORE, SP);
+            dirty |= SP_DIRTY;
+            return;
+        }
+        mv.visitVarInsn(ISTORE, PAIR_TEMP);
+        mv.visitVarInsn(ILOAD, PAIR_TEMP);
+        push(8);
+        mv.visitInsn(IUSHR);
+        storeRegister(pair << 1);
+        mv.visitVarInsn(ILOAD, PAIR_TEMP);
+        storeRegister((pair << 1) + 1);
+    }
+
+    private void stepHL(int step) {
+        loadPair(RegisterFile.HL);
+        push(step);
+        mv.visitInsn(IADD);
+        storePair(RegisterFile.HL);
+    }
+
+    private void highPageAtC() {
+        push(0xFF00);
+        loadRegister(RegisterFile.C);
+        mv.visitInsn(IOR);
+    }
+
+    private void read(Runnable address) {
+        mv.visitVarInsn(ALOAD, EXECUTOR);
+        address.run();
+        push(elapsed);
+        mv.visitMethodInsn(INVOKEVIRTUAL, EXECUTOR_TYPE, "read", "(II)I", false);
+    }
+
+    private void write(Runnable address, Runnable value) {
+        mv.visitVarInsn(ALOAD, EXECUTOR);
+        address.run();
+        value.run();
+        push(elapsed);
+        mv.visitMethodInsn(INVOKEVIRTUAL, EXECUTOR_TYPE, "write", "(III)Z", false);
+        mv.visitVarInsn(ILOAD, LEAVE);
+        mv.visitInsn(IOR);
+        mv.visitVarInsn(ISTORE, LEAVE);
+        wroteMemory = true;
+    }
+
+    /**
+     * Pushes the value on the stack, high byte first like the hardware.
+     */
+    private void pushToStack() {
+        mv.visitVarInsn(ISTORE, TEMP);
+        mv.visitVarInsn(ILOAD, SP);
+        push(2);
+        mv.visitInsn(ISUB);
+        storePair(RegisterFile.SP);
+        write(() -> {
+            mv.visitVarInsn(ILOAD, SP);
+            push(1);
+            mv.visitInsn(IADD);
+            push(0xFFFF);
+            mv.visitInsn(IAND);
+        }, () -> {
+            mv.visitVarInsn(ILOAD, TEMP);
+            push(8);
+            mv.visitInsn(IUSHR);
+        });
+        write(() -> mv.visitVarInsn(ILOAD, SP), () -> mv.visitVarInsn(ILOAD, TEMP));
+    }
+
+    /**
+     * Pops a word into TEMP, low byte first.
+     */
+    private void pop() {
+        read(() -> mv.visitVarInsn(ILOAD, SP));
+        mv.visitVarInsn(ISTORE, TEMP);
+        read(() -> {
+            mv.visitVarInsn(ILOAD, SP);
+            push(1);
+            mv.visitInsn(IADD);
+            push(0xFFFF);
+            mv.visitInsn(IAND);
+        });
+        push(8);
+        mv.visitInsn(ISHL);
+        mv.visitVarInsn(ILOAD, TEMP);
+        mv.visitInsn(IOR);
+        mv.visitVarInsn(ISTORE, TEMP);
+        mv.visitVarInsn(ILOAD, SP);
+        push(2);
+        mv.visitInsn(IADD);
+        storePair(RegisterFile.SP);
+    }
+
+    private void flags() {
+        mv.visitVarInsn(ALOAD, FLAGS);
+    }
+
+    private void getC() {
+        flags();
+        mv.visitMethodInsn(INVOKEVIRTUAL, FLAGS_TYPE, "getC", "()Z", false);
+    }
+
+    private void setFlag(String setter, boolean value) {
+        flags();
+        push(value ? 1 : 0);
+        mv.visitMethodInsn(INVOKEVIRTUAL, FLAGS_TYPE, setter, "(Z)V", false);
+    }
+
+    /**
+     * Replaces all four flags with the int the given code pushes.
+     */
+    private void setFlags(Runnable value) {
+        flags();
+        value.run();
+        mv.visitInsn(I2B);
+        mv.visitMethodInsn(INVOKEVIRTUAL, FLAGS_TYPE, "setValue", "(B)V", false);
+    }
+
+    private void push(int value) {
+        if (value >= -1 && value <= 5) {
+            mv.visitInsn(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(BIPUSH, value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            mv.visitIntInsn(SIPUSH, value);
+        } else {
+            mv.visitLdcInsn(value);
+        }
+    }
+}
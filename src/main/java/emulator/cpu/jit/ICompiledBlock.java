@@ -0,0 +1,24 @@
+package emulator.cpu.jit;
+
+import emulator.cpu.register.RegisterFile;
+
+/**
+ * A translated basic block. Implementations are generated at runtime by {@link BlockCompiler}.
+ */
+public interface ICompiledBlock {
+    /**
+     * Runs the block's instructions in order and retires them in one go through {@link TieredExecutor#exitBlock(int, int)}.
+     * Leaves early right after a write that may have side effects, like a bank switch or an I/O register write.
+     */
+    void run(TieredExecutor executor, RegisterFile registerFile);
+
+    /**
+     * @return number of Game Boy instructions in the block
+     */
+    int getInstructionCount();
+
+    /**
+     * @return most machine cycles the block can take
+     */
+    int getMaxCycles();
+}
@@ -0,0 +1,275 @@
+package emulator.cpu.jit;
+
+import emulator.bus.IBus;
+import emulator.bus.device.cartridge.Cartridge;
+import emulator.bus.device.cartridge.IBankSwitchListener;
+import emulator.cpu.CPU;
+import emulator.cpu.IdleLoopDetector;
+import emulator.cpu.register.RegisterFile;
+import emulator.interrupts.InterruptController;
+import emulator.scheduler.Scheduler;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Two tier execution engine, a drop in for the interpreter loop in {@link emulator.Gameboy#runCpuFor(int)}.
+ *
+ * Every instruction start in cartridge ROM gets an execution counter. Once a counter reaches the hot threshold
+ *   the basic block starting there is handed to the {@link BlockCompiler}, and from then on that address runs
+ *   the translated block instead of the interpreter. Code outside ROM, and the CPU while halted, always stay
+ *   in the interpreter. Idle HALT time and idle loops are skipped in bulk, see {@link CPU#skippableHaltSteps(int, Scheduler)}
+ *   and {@link IdleLoopDetector}.
+ *
+ * Translations are keyed by (ROM bank, address). Each 16KiB region has one table per bank it can map, and a bank
+ *   switch swaps which table the dispatcher looks at, so a block compiled for one bank can never run against
+ *   another. At most maxCachedBlocks translations are kept, the least recently run one is evicted first.
+ *
+ * A block retires all its instructions at once, with a single interrupt check and clock advance on exit. Like a
+ *   {@link emulator.cpu.instruction.Superinstruction} it only runs when that is indistinguishable from stepping:
+ *   it has to fit the instruction budget and finish before the next scheduled event, and it leaves right after any
+ *   write that could flag an interrupt, schedule an event or switch banks. Accesses to memory that depends on the
+ *   clock catch the clock up first. So cycle counts, event timing and interrupt timing are identical whether code
+ *   is translated or not.
+ */
+public class TieredExecutor implements IBankSwitchListener {
+    public static final int DEFAULT_HOT_THRESHOLD = 32;
+    public static final int DEFAULT_MAX_CACHED_BLOCKS = 4096;
+
+    private final CPU cpu;
+    private final RegisterFile registerFile;
+    private final IBus bus;
+    private final InterruptController interruptController;
+    private final Scheduler scheduler;
+    private final BlockCompiler compiler;
+    private final IdleLoopDetector idleLoopDetector;
+    private final int hotThreshold;
+    private final int maxCachedBlocks;
+
+    private final Map<Integer, BankTranslations> fixedBanks = new HashMap<>();
+    private final Map<Integer, BankTranslations> switchableBanks = new HashMap<>();
+    private BankTranslations fixedBank;
+    private BankTranslations activeBank;
+    // in access order, the least recently run block first
+    private final LinkedHashMap<TranslatedBlock, TranslatedBlock> cachedBlocks = new LinkedHashMap<>(16, 0.75f, true);
+
+    // instructions left in the current run
+    private int remaining;
+    // cycles and interrupts of the current step, a single instruction or a whole block
+    private int stepCycles;
+    private boolean stepTookInterrupt;
+    // cycles of the running block already added to the clock
+    private int committedCycles;
+    private boolean stopRequested;
+    private long evictions;
+
+    /**
+     * The executor starts out on the cartridge's current banks, and has to be added as its bank switch listener
+     *   to follow them.
+     */
+    public TieredExecutor(CPU cpu, RegisterFile registerFile, IBus bus, InterruptController interruptController,
+                          Scheduler scheduler, Cartridge cartridge, BlockCompiler compiler, IdleLoopDetector idleLoopDetector,
+                          int hotThreshold, int maxCachedBlocks) {
+        if (hotThreshold < 1 || maxCachedBlocks < 1) {
+            throw new IllegalArgumentException("Hot threshold and block cache size must be positive");
+        }
+        this.cpu = cpu;
+        this.registerFile = registerFile;
+        this.bus = bus;
+        this.interruptController = interruptController;
+        this.scheduler = scheduler;
+        this.compiler = compiler;
+        this.idleLoopDetector = idleLoopDetector;
+        this.hotThreshold = hotThreshold;
+        this.maxCachedBlocks = maxCachedBlocks;
+        this.fixedBank = fixedBanks.computeIfAbsent(cartridge.getFixedRomBank(), b -> new BankTranslations());
+        this.activeBank = switchableBanks.computeIfAbsent(cartridge.getActiveRomBank(), b -> new BankTranslations());
+    }
+
+    /**
+     * Executes the given number of instructions, counting each one the same way the interpreter loop does.
+     */
+    public void run(int maxInstructions) {
+        remaining = maxInstructions;
+        stopRequested = false;
+        while (remaining > 0 && !stopRequested) {
+            int haltSteps = cpu.skippableHaltSteps(remaining, scheduler);
+            if (haltSteps > 0) {
+                scheduler.advance(haltSteps * 4);
+                remaining -= haltSteps;
+                continue;
+            }
+            if (idleLoopDetector != null) {
+                int idleSteps = idleLoopDetector.fastForward(remaining);
+                if (idleSteps > 0) {
+                    remaining -= idleSteps;
+                    continue;
+                }
+            }
+
+            int pc = registerFile.getPC();
+            int remainingBefore = remaining;
+            TranslatedBlock block = pc < 0x8000 && !interruptController.isHalted() ? lookup(pc) : null;
+            if (block != null && block.code.getInstructionCount() <= remaining
+                    && block.code.getMaxCycles() * 4L <= scheduler.cyclesUntilNextEvent()) {
+                cachedBlocks.get(block);
+                committedCycles = 0;
+                block.code.run(this, registerFile);
+            } else {
+                int cycles = cpu.executeNext(remaining);
+                int interruptCycles = cpu.checkInterrupts();
+                scheduler.advance((cycles + interruptCycles) * 4);
+                remaining -= cpu.getRetiredInstructionCount();
+                stepCycles = cycles;
+                stepTookInterrupt = interruptCycles != 0;
+            }
+            if (idleLoopDetector != null) {
+                idleLoopDetector.afterStep(pc, remainingBefore - remaining, stepCycles, stepTookInterrupt);
+            }
+        }
+    }
+
+    /**
+     * Retires a translated block: services interrupts, advances the clock and counts the instructions.
+     * Called by translated blocks on every exit, with PC and the registers already stored back.
+     *
+     * @param cycles machine cycles the block took
+     * @param instructions number of instructions it ran
+     */
+    public void exitBlock(int cycles, int instructions) {
+        int interruptCycles = cpu.checkInterrupts();
+        scheduler.advance((cycles - committedCycles + interruptCycles) * 4);
+        remaining -= instructions;
+        stepCycles = cycles;
+        stepTookInterrupt = interruptCycles != 0;
+    }
+
+    /**
+     * Reads memory for a translated block.
+     *
+     * @param elapsedCycles machine cycles the block ran before the reading instruction
+     * @return the unsigned byte at address
+     */
+    public int read(int address, int elapsedCycles) {
+        if (dependsOnClock(address)) {
+            catchUp(elapsedCycles);
+        }
+        return bus.readByteAt(address) & 0xFF;
+    }
+
+    /**
+     * Writes memory for a translated block.
+     *
+     * @param elapsedCycles machine cycles the block ran before the writing instruction
+     * @return true if the write may have had side effects, so the block has to leave after this instruction
+     */
+    public boolean write(int address, int value, int elapsedCycles) {
+        // writes to ROM are MBC register writes
+        boolean sideEffects = address < 0x8000 || dependsOnClock(address);
+        if (sideEffects) {
+            catchUp(elapsedCycles);
+        }
+        bus.writeByteAt(address, (byte) value);
+        return sideEffects;
+    }
+
+    /**
+     * Brings the clock up to the start of the running block's current instruction. No event falls inside a running
+     *   block, so this never runs one.
+     */
+    public void catchUp(int elapsedCycles) {
+        // nothing to do for a second access by the same instruction, which may follow a write that scheduled an event
+        if (elapsedCycles > committedCycles) {
+            scheduler.advance((elapsedCycles - committedCycles) * 4);
+            committedCycles = elapsedCycles;
+        }
+    }
+
+    /**
+     * Everything but VRAM, WRAM and HRAM: I/O registers, cartridge RAM (which can be an RTC) and unmapped memory.
+     */
+    private static boolean dependsOnClock(int address) {
+        return address >= 0xA000 && address < 0xC000 || address >= 0xE000 && (address < 0xFF80 || address == 0xFFFF);
+    }
+
+    /**
+     * Makes the current run return after the current step. Meant for scheduler event handlers.
+     */
+    public void requestStop() {
+        stopRequested = true;
+    }
+
+    @Override
+    public void onRomBankSwitched(int bank) {
+        activeBank = switchableBanks.computeIfAbsent(bank, b -> new BankTranslations());
+    }
+
+    @Override
+    public void onFixedRomBankSwitched(int bank) {
+        fixedBank = fixedBanks.computeIfAbsent(bank, b -> new BankTranslations());
+    }
+
+    private TranslatedBlock lookup(int pc) {
+        BankTranslations bank = pc < 0x4000 ? fixedBank : activeBank;
+        int offset = pc & 0x3FFF;
+        TranslatedBlock block = bank.blocks[offset];
+        if (block == null && ++bank.executionCounts[offset] == hotThreshold) {
+            block = translate(bank, offset, pc);
+        }
+        return block;
+    }
+
+    private TranslatedBlock translate(BankTranslations bank, int offset, int pc) {
+        ICompiledBlock code = compiler.compile(pc);
+        if (code == null) {
+            return null;
+        }
+        if (cachedBlocks.size() >= maxCachedBlocks) {
+            Iterator<TranslatedBlock> leastRecentlyUsed = cachedBlocks.keySet().iterator();
+            evict(leastRecentlyUsed.next());
+            leastRecentlyUsed.remove();
+        }
+        TranslatedBlock block = new TranslatedBlock(bank, offset, code);
+        bank.blocks[offset] = block;
+        cachedBlocks.put(block, block);
+        return block;
+    }
+
+    private void evict(TranslatedBlock block) {
+        block.bank.blocks[block.offset] = null;
+        // start warming up again from scratch
+        block.bank.executionCounts[block.offset] = 0;
+        evictions++;
+    }
+
+    /**
+     * @return number of translated blocks currently cached
+     */
+    public int getCachedBlockCount() {
+        return cachedBlocks.size();
+    }
+
+    public long getEvictionCount() {
+        return evictions;
+    }
+
+    private static class BankTranslations {
+        // both indexed by address within the 16KiB region
+        private final TranslatedBlock[] blocks = new TranslatedBlock[0x4000];
+        private final int[] executionCounts = new int[0x4000];
+    }
+
+    private static class TranslatedBlock {
+        private final BankTranslations bank;
+        private final int offset;
+        private final ICompiledBlock code;
+
+        private TranslatedBlock(BankTranslations bank, int offset, ICompiledBlock code) {
+            this.bank = bank;
+            this.offset = offset;
+            this.code = code;
+        }
+    }
+}
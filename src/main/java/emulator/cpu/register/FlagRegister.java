@@ -1,20 +1,92 @@
 package emulator.cpu.register;
 
+import emulator.cpu.Alu;
 import emulator.cpu.Operator;
 
+/**
+ * The F register.
+ * In lazy mode an ALU instruction only records which {@link Alu} table entry its flags come from,
+ *   and the flags are looked up once something actually reads them (a conditional jump, PUSH AF, ...).
+ *   Most flag results are overwritten by the next ALU instruction before that happens.
+ *   Z/N/H and C are tracked separately since INC and DEC replace Z/N/H but keep the previous carry.
+ * Every getter resolves pending flags first, so callers never see a difference between the two modes.
+ */
 public class FlagRegister extends Register {
+    public static final int Z_FLAG = 0b10000000;
+    public static final int N_FLAG = 0b01000000;
+    public static final int H_FLAG = 0b00100000;
+    public static final int C_FLAG = 0b00010000;
+    private static final int ZNH_FLAGS = Z_FLAG | N_FLAG | H_FLAG;
+
+    private boolean lazy;
+    // table entries the pending flags come from, null when the bits in value are current
+    private char[] znhSource;
+    private int znhIndex;
+    private char[] carrySource;
+    private int carryIndex;
 
     public FlagRegister(byte value) {
         super(value);
         setValue(value);
     }
 
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    public void setLazy(boolean lazy) {
+        resolve();
+        this.lazy = lazy;
+    }
+
+    /**
+     * Sets all four flags from the given {@link Alu} table entry.
+     * The lookup itself is deferred in lazy mode.
+     */
+    public void deferFlags(char[] table, int index) {
+        if (!lazy) {
+            value = (byte) Alu.flags(table[index]);
+            return;
+        }
+        znhSource = table;
+        znhIndex = index;
+        carrySource = table;
+        carryIndex = index;
+    }
+
+    /**
+     * Sets Z, N and H from the given {@link Alu} table entry while keeping the current carry, as INC and DEC do.
+     * The lookup itself is deferred in lazy mode.
+     */
+    public void deferZNH(char[] table, int index) {
+        if (!lazy) {
+            setZNH(Alu.flags(table[index]));
+            return;
+        }
+        znhSource = table;
+        znhIndex = index;
+    }
+
+    private void resolve() {
+        if (znhSource != null) {
+            value = (byte) ((Alu.flags(znhSource[znhIndex]) & ZNH_FLAGS) | (value & C_FLAG));
+            znhSource = null;
+        }
+        if (carrySource != null) {
+            value = (byte) ((value & ZNH_FLAGS) | (Alu.flags(carrySource[carryIndex]) & C_FLAG));
+            carrySource = null;
+        }
+    }
+
     @Override
     public byte getValue() {
+        resolve();
         return value;
     }
     @Override
     public void setValue(byte value) {
+        znhSource = null;
+        carrySource = null;
         this.value = (byte) (value & 0xF0);
     }
 
@@ -36,25 +108,7 @@ public class FlagRegister extends Register {
     }
 
     public void setH(byte orig, byte target, int carry, Operator operator) {
-        int value;
-        if (operator.equals(Operator.ADD)) {
-            value = (((orig & 0xF) + (target & 0xF)) & 0x10);
-        } else if (operator.equals(Operator.ADC)) {
-            value = (((orig & 0xF) + (target & 0xF) + carry) & 0x10);
-        } else if (operator.equals(Operator.SUB) || operator.equals(Operator.CP)) {
-            value = (((orig & 0xF) - (target & 0xF)) & 0x10);
-        } else if (operator.equals(Operator.SBC)) {
-            value = (((orig & 0xF) - (target & 0xF) - carry) & 0x10);
-        } else if (operator.equals(Operator.AND)) {
-            value = 1;
-        } else if (operator.equals(Operator.OR)) {
-            value = 0;
-        } else if (operator.equals(Operator.XOR)) {
-            value = 0;
-        } else {
-            throw new UnsupportedOperationException("Cannot calculate FlagRegister setH() automatically with operator " + operator);
-        }
-        setH(value);
+        setH(Alu.flags(Alu.apply(operator, orig & 0xFF, target & 0xFF, carry)) & H_FLAG);
     }
 
     public void setC(byte orig, byte target, Operator operator) {
@@ -62,28 +116,19 @@ public class FlagRegister extends Register {
     }
 
     public void setC(byte orig, byte target, int carry, Operator operator) {
-        boolean flag;
-        if (operator.equals(Operator.SUB) || operator.equals(Operator.CP)) {
-            flag = (target & 0xFF) > (orig & 0xFF);
-        } else if (operator.equals(Operator.SBC)) {
-            flag = ((target & 0xFF) + carry) > (orig & 0xFF);
-        } else if (operator.equals(Operator.ADD)) {
-            flag = ((orig & 0xFF) + (target & 0xFF)) > 0xFF;
-        } else if (operator.equals(Operator.ADC)) {
-            flag = ((orig & 0xFF) + (target & 0xFF) + carry) > 0xFF;
-        } else if (operator.equals(Operator.AND)) {
-            flag = false;
-        } else if (operator.equals(Operator.OR)) {
-            flag = false;
-        } else if (operator.equals(Operator.XOR)) {
-            flag = false;
-        } else {
-            throw new UnsupportedOperationException("Cannot calculate FlagRegister setH() automatically with operator " + operator);
-        }
-        setC(flag);
+        setC(Alu.flags(Alu.apply(operator, orig & 0xFF, target & 0xFF, carry)) & C_FLAG);
+    }
+
+    /**
+     * Sets Z, N and H from the given flags while keeping the current carry, as INC and DEC do.
+     */
+    public void setZNH(int flags) {
+        znhSource = null;
+        value = (byte) ((flags & (Z_FLAG | N_FLAG | H_FLAG)) | (value & C_FLAG));
     }
 
     public void setZ(boolean flag) {
+        resolve();
         if (flag) {
             value = (byte) (value | 0b10000000);
         } else {
@@ -91,6 +136,7 @@ public class FlagRegister extends Register {
         }
     }
     public void setN(boolean flag) {
+        resolve();
         if (flag) {
             value = (byte) (value | 0b01000000);
         } else {
@@ -98,6 +144,7 @@ public class FlagRegister extends Register {
         }
     }
     public void setH(boolean flag) {
+        resolve();
         if (flag) {
             value = (byte) (value | 0b00100000);
         } else {
@@ -105,6 +152,7 @@ public class FlagRegister extends Register {
         }
     }
     public void setC(boolean flag) {
+        resolve();
         if (flag) {
             value = (byte) (value | 0b00010000);
         } else {
@@ -113,37 +161,32 @@ public class FlagRegister extends Register {
     }
 
     public boolean getZ() {
-        return (value & 0b10000000) != 0;
+        return (znhFlags() & 0b10000000) != 0;
     }
     public boolean getN() {
-        return (value & 0b01000000) != 0;
+        return (znhFlags() & 0b01000000) != 0;
     }
     public boolean getH() {
-        return (value & 0b00100000) != 0;
+        return (znhFlags() & 0b00100000) != 0;
     }
     public boolean getC() {
+        if (carrySource != null) {
+            return (Alu.flags(carrySource[carryIndex]) & 0b00010000) != 0;
+        }
         return (value & 0b00010000) != 0;
     }
 
+    private int znhFlags() {
+        return znhSource != null ? Alu.flags(znhSource[znhIndex]) : value;
+    }
+
     @Override
     public int getAccessCost() {
         return 0;
     }
 
     public void setN(Operator operator) {
-        if (operator.equals(Operator.ADD) || operator.equals(Operator.ADC)) {
-            setN(false);
-        } else if (operator.equals(Operator.SUB) || operator.equals(Operator.SBC) || operator.equals(Operator.CP)) {
-            setN(true);
-        } else if (operator.equals(Operator.AND)) {
-            setN(false);
-        } else if (operator.equals(Operator.OR)) {
-            setN(false);
-        } else if (operator.equals(Operator.XOR)) {
-            setN(false);
-        } else {
-            throw new UnsupportedOperationException("Cannot calculate FlagRegister setN() automatically with operator " + operator);
-        }
+        setN(Alu.flags(Alu.apply(operator, 0, 0, 0)) & N_FLAG);
     }
 
     public void setZ(Register reg) {
@@ -0,0 +1,243 @@
+package emulator.cpu.register;
+
+/**
+ * Primitive backing store for the CPU registers.
+ * 8-bit registers live in a small int[] indexed the same way opcodes encode them (B,C,D,E,H,L,(HL),A),
+ *   so an instruction can address its operand without resolving a Register object first.
+ *   Slot 6 is never used, (HL) refers to memory and is handled by the caller.
+ * 16-bit pairs are indexed the way opcodes encode them too (BC,DE,HL,SP).
+ * The flags stay in a {@link FlagRegister} since that is where the flag arithmetic lives.
+ */
+public class RegisterFile {
+    public static final int B = 0;
+    public static final int C = 1;
+    public static final int D = 2;
+    public static final int E = 3;
+    public static final int H = 4;
+    public static final int L = 5;
+    public static final int HL_INDIRECT = 6;
+    public static final int A = 7;
+
+    public static final int BC = 0;
+    public static final int DE = 1;
+    public static final int HL = 2;
+    public static final int SP = 3;
+
+    private final int[] registers = new int[8];
+    private final FlagRegister F;
+    private int sp;
+    private int pc;
+
+    public RegisterFile(FlagRegister F) {
+        this.F = F;
+    }
+
+    public int get8(int index) {
+        return registers[index];
+    }
+
+    public void set8(int index, int value) {
+        registers[index] = value & 0xFF;
+    }
+
+    public int get16(int pair) {
+        if (pair == SP) {
+            return sp;
+        }
+        return registers[pair << 1] << 8 | registers[(pair << 1) + 1];
+    }
+
+    public void set16(int pair, int value) {
+        if (pair == SP) {
+            sp = value & 0xFFFF;
+            return;
+        }
+        registers[pair << 1] = (value >>> 8) & 0xFF;
+        registers[(pair << 1) + 1] = value & 0xFF;
+    }
+
+    public int getA() {
+        return registers[A];
+    }
+
+    public void setA(int value) {
+        registers[A] = value & 0xFF;
+    }
+
+    public FlagRegister getF() {
+        return F;
+    }
+
+    public int getAF() {
+        return registers[A] << 8 | (F.getValue() & 0xFF);
+    }
+
+    public void setAF(int value) {
+        registers[A] = (value >>> 8) & 0xFF;
+        F.setValue((byte) value);
+    }
+
+    public int getHL() {
+        return registers[H] << 8 | registers[L];
+    }
+
+    public void setHL(int value) {
+        registers[H] = (value >>> 8) & 0xFF;
+        registers[L] = value & 0xFF;
+    }
+
+    /**
+     * @return HL before incrementing it, as used by LD (HL+), A and LD A, (HL+)
+     */
+    public int getAndIncrementHL() {
+        int hl = getHL();
+        setHL(hl + 1);
+        return hl;
+    }
+
+    /**
+     * @return HL before decrementing it, as used by LD (HL-), A and LD A, (HL-)
+     */
+    public int getAndDecrementHL() {
+        int hl = getHL();
+        setHL(hl - 1);
+        return hl;
+    }
+
+    public int getSP() {
+        return sp;
+    }
+
+    public void setSP(int value) {
+        sp = value & 0xFFFF;
+    }
+
+    /**
+     * @return SP after decrementing it, i.e. the address the next pushed byte goes to
+     */
+    public int decrementAndGetSP() {
+        sp = (sp - 1) & 0xFFFF;
+        return sp;
+    }
+
+    /**
+     * @return SP before incrementing it, i.e. the address of the next popped byte
+     */
+    public int getAndIncrementSP() {
+        int value = sp;
+        sp = (sp + 1) & 0xFFFF;
+        return value;
+    }
+
+    public int getPC() {
+        return pc;
+    }
+
+    public void setPC(int value) {
+        pc = value & 0xFFFF;
+    }
+
+    /**
+     * @return PC before incrementing it, i.e. the address of the next byte to fetch
+     */
+    public int getAndIncrementPC() {
+        int value = pc;
+        pc = (pc + 1) & 0xFFFF;
+        return value;
+    }
+
+    /**
+     * @return a {@link Register} backed by the 8-bit register at the given index
+     */
+    public Register registerView(int index) {
+        return new Register((byte) 0) {
+            @Override
+            public byte getValue() {
+                return (byte) registers[index];
+            }
+
+            @Override
+            public void setValue(byte value) {
+                registers[index] = value & 0xFF;
+            }
+        };
+    }
+
+    /**
+     * @return a {@link DoubleRegister} backed by the SP field
+     */
+    public DoubleRegister stackPointerView() {
+        return new DoubleRegister(
+                new Register((byte) 0) {
+                    @Override
+                    public byte getValue() {
+                        return (byte) (sp >>> 8);
+                    }
+
+                    @Override
+                    public void setValue(byte value) {
+                        sp = (value & 0xFF) << 8 | (sp & 0xFF);
+                    }
+                },
+                new Register((byte) 0) {
+                    @Override
+                    public byte getValue() {
+                        return (byte) sp;
+                    }
+
+                    @Override
+                    public void setValue(byte value) {
+                        sp = (sp & 0xFF00) | (value & 0xFF);
+                    }
+                }) {
+            @Override
+            public int getValue() {
+                return sp;
+            }
+
+            @Override
+            public void setValue(int value) {
+                sp = value & 0xFFFF;
+            }
+        };
+    }
+
+    /**
+     * @return a {@link DoubleRegister} backed by the PC field
+     */
+    public DoubleRegister programCounterView() {
+        return new DoubleRegister(
+                new Register((byte) 0) {
+                    @Override
+                    public byte getValue() {
+                        return (byte) (pc >>> 8);
+                    }
+
+                    @Override
+                    public void setValue(byte value) {
+                        pc = (value & 0xFF) << 8 | (pc & 0xFF);
+                    }
+                },
+                new Register((byte) 0) {
+                    @Override
+                    public byte getValue() {
+                        return (byte) pc;
+                    }
+
+                    @Override
+                    public void setValue(byte value) {
+                        pc = (pc & 0xFF00) | (value & 0xFF);
+                    }
+                }) {
+            @Override
+            public int getValue() {
+                return pc;
+            }
+
+            @Override
+            public void setValue(int value) {
+                pc = value & 0xFFFF;
+            }
+        };
+    }
+}
@@ -1,15 +1,26 @@
 package emulator.interrupts;
 
+import emulator.bus.IoRegisters;
+
 public class InterruptController {
 
     byte interruptFlag;
     byte interruptEnable;
     private boolean masterEnable;
     private boolean isHalted;
+    // IF & IE, recomputed whenever one of them changes instead of on every check
+    private int pendingInterrupts;
+    private boolean interruptReady;
+
+    public void registerIoRegisters(IoRegisters ioRegisters) {
+        ioRegisters.register(0xFF0F, this::getInterruptFlag, this::setInterruptFlag);
+        ioRegisters.register(0xFFFF, this::getInterruptEnable, this::setInterruptEnable);
+    }
 
     public void setInterruptFlag(byte value) {
         interruptFlag = (byte) (value & 0b11111);
         // TODO: possibly throw an exception if the value is too large
+        updatePending();
     }
     public byte getInterruptFlag() {
         return interruptFlag;
@@ -22,22 +33,36 @@ public class InterruptController {
     public void setInterruptEnable(byte value) {
         interruptEnable = (byte) (value & 0b11111);
         // TODO: possibly throw an exception if the value is too large
+        updatePending();
     }
 
     public boolean interruptReady() {
-        if (masterEnable) {
-            if ((interruptFlag & interruptEnable) > 0) {
-                return true;
-            }
-        }
-        return false;
+        return interruptReady;
+    }
+
+    /**
+     * @return interrupts that are both requested and enabled (IF & IE), regardless of IME
+     */
+    public int getPendingInterrupts() {
+        return pendingInterrupts;
+    }
+
+    private void updatePending() {
+        pendingInterrupts = interruptFlag & interruptEnable;
+        interruptReady = masterEnable && pendingInterrupts != 0;
     }
 
     public int getHighestPriorityInterruptAddress() {
         if (!masterEnable) {
             throw new UnsupportedOperationException("Cannot send interrupt when IME is disabled");
         }
-        int enabledFlags = (interruptFlag & interruptEnable);
+        int address = acknowledgeHighestPriorityInterrupt();
+        updatePending();
+        return address;
+    }
+
+    private int acknowledgeHighestPriorityInterrupt() {
+        int enabledFlags = pendingInterrupts;
         if ((enabledFlags & 0b1) == 0b1) {
             // VBlank
             interruptFlag = (byte) (interruptFlag & ~(0b00001));
@@ -65,11 +90,13 @@ public class InterruptController {
 
     public void setInterruptMasterEnable(boolean masterEnable) {
         this.masterEnable = masterEnable;
+        updatePending();
     }
 
 
     public void setTimerInterruptFlag() {
         interruptFlag |= 0b00100;
+        updatePending();
     }
 
     public boolean getTimerInterruptFlag() {
@@ -1,5 +1,18 @@
 package emulator.interrupts;
 
+import emulator.bus.IoRegisters;
+import emulator.scheduler.EventType;
+import emulator.scheduler.IEventHandler;
+import emulator.scheduler.Scheduler;
+
+/**
+ * DIV and TIMA both come from a 16-bit divider counting clock cycles: DIV is its upper byte, and TIMA increments
+ *   whenever the divider bit selected by TAC falls while the timer is enabled. Writing DIV or TAC can make that bit
+ *   fall too, which increments TIMA early just like on hardware.
+ * With a {@link Scheduler} the timer is lazy: it works out how many edges passed since it last caught up with the
+ *   master clock whenever DIV, TIMA or the time left until the next tick is looked at, and keeps a TIMER_OVERFLOW
+ *   event scheduled so the interrupt is flagged on time. Without one it only moves through {@link #addCycles(int)}.
+ */
 public class Timer {
     // TIMA Timer counter
     // TMA  Timer modulo register
@@ -7,31 +20,128 @@ public class Timer {
     private byte TIMA;
     private byte TMA;
     private byte TAC;
-    private int CPU_clocks_per_tick;
-    private int currentCycles;
+    // divider bit whose falling edge increments TIMA
+    private int tickBit = 9;
+    // 16-bit internal divider
+    private int divider;
 
 
     private InterruptController interruptController;
+    private final Scheduler scheduler;
+    private final IEventHandler overflowHandler = this::onOverflowDue;
+    // master clock the timer was last brought up to
+    private long lastSync;
 
     public Timer(InterruptController interruptController) {
+        this(interruptController, null);
+    }
+
+    public Timer(InterruptController interruptController, Scheduler scheduler) {
         this.interruptController = interruptController;
+        this.scheduler = scheduler;
+    }
+
+    public void registerIoRegisters(IoRegisters ioRegisters) {
+        ioRegisters.register(0xFF04, this::getDIV, this::setDIV);
+        ioRegisters.register(0xFF05, this::getTIMA, this::setTIMA);
+        ioRegisters.register(0xFF06, this::getTMA, this::setTMA);
+        ioRegisters.register(0xFF07, this::getTAC, this::setTAC);
     }
 
+    /**
+     * Moves a timer without a scheduler on by the given clock cycles. A timer on a scheduler follows its clock
+     *   instead, so it can't be moved by hand.
+     */
     public void addCycles(int cycles) {
+        if (scheduler != null) {
+            throw new IllegalStateException("Timer follows the scheduler, advance the scheduler instead");
+        }
+        advance(cycles);
+    }
+
+    private void advance(long cycles) {
         if (timerEnabled()) {
-            currentCycles += cycles;
-            while (currentCycles > CPU_clocks_per_tick) {
-                currentCycles -= CPU_clocks_per_tick;
-                incrementTimer();
-            }
+            // falling edges of the tick bit are the points where the bits below it wrap around to 0
+            int period = tickPeriod();
+            incrementTimer((divider + cycles) / period - divider / period);
+        }
+        divider = (int) ((divider + cycles) & 0xFFFF);
+    }
+
+    /**
+     * @return number of clock cycles addCycles can take before TIMA overflows and raises the timer interrupt,
+     *   Integer.MAX_VALUE while the timer is stopped
+     */
+    public int cyclesUntilOverflow() {
+        sync();
+        if (!timerEnabled()) {
+            return Integer.MAX_VALUE;
+        }
+        return cyclesUntilTick() + (0xFF - (TIMA & 0xFF)) * tickPeriod();
+    }
+
+    /**
+     * @return number of clock cycles addCycles can take before TIMA next increments,
+     *   Integer.MAX_VALUE while the timer is stopped
+     */
+    public int cyclesUntilTick() {
+        sync();
+        if (!timerEnabled()) {
+            return Integer.MAX_VALUE;
+        }
+        return tickPeriod() - (divider & (tickPeriod() - 1));
+    }
+
+    /**
+     * @return number of clock cycles addCycles can take before DIV next changes
+     */
+    public int cyclesUntilDivChange() {
+        sync();
+        return 0x100 - (divider & 0xFF);
+    }
+
+    /**
+     * Catches up with the master clock.
+     */
+    private void sync() {
+        if (scheduler == null) {
+            return;
+        }
+        long now = scheduler.getNow();
+        long elapsed = now - lastSync;
+        lastSync = now;
+        if (elapsed > 0) {
+            advance(elapsed);
+        }
+    }
+
+    private void onOverflowDue() {
+        sync();
+        scheduleOverflow();
+    }
+
+    private void scheduleOverflow() {
+        if (scheduler == null) {
+            return;
+        }
+        if (timerEnabled()) {
+            // set along with the event rather than in the constructor, which must not hand out this
+            scheduler.setHandler(EventType.TIMER_OVERFLOW, overflowHandler);
+            scheduler.schedule(EventType.TIMER_OVERFLOW, lastSync + cyclesUntilOverflow());
+        } else {
+            scheduler.cancel(EventType.TIMER_OVERFLOW);
         }
     }
 
-    private void incrementTimer() {
-        int newTimerValue = (TIMA & 0xFF) + 1;
-        TIMA = (byte) newTimerValue;
-        if (newTimerValue > 0xFF) {
+    private void incrementTimer(long ticks) {
+        while (ticks > 0) {
+            int untilOverflow = 0x100 - (TIMA & 0xFF);
+            if (ticks < untilOverflow) {
+                TIMA = (byte) ((TIMA & 0xFF) + ticks);
+                return;
+            }
             // Overflow!
+            ticks -= untilOverflow;
             TIMA = TMA;
             interruptController.setTimerInterruptFlag();
         }
@@ -41,28 +151,67 @@ public class Timer {
         return (TAC & 0b100) == 0b100;
     }
 
+    private int tickPeriod() {
+        return 1 << (tickBit + 1);
+    }
+
+    /**
+     * @return the signal whose falling edge increments TIMA
+     */
+    private boolean tickSignal() {
+        return timerEnabled() && (divider >> tickBit & 1) == 1;
+    }
+
     public void setTMA(byte value) {
+        sync();
         this.TMA = value;
     }
 
     public void setTAC(byte value) {
+        sync();
+        boolean signalBefore = tickSignal();
         this.TAC = value;
         if ((TAC & 0b11) == 0) {
-            CPU_clocks_per_tick = 1024;
+            tickBit = 9; // 1024 clock cycles per tick
         } else if ((TAC & 0b11) == 0b01) {
-            CPU_clocks_per_tick = 16;
+            tickBit = 3; // 16
         } else if ((TAC & 0b11) == 0b10) {
-            CPU_clocks_per_tick = 64;
+            tickBit = 5; // 64
         } else {
-            CPU_clocks_per_tick = 256;
+            tickBit = 7; // 256
+        }
+        if (signalBefore && !tickSignal()) {
+            // disabling the timer or moving to a bit that is low is a falling edge as well
+            incrementTimer(1);
         }
+        scheduleOverflow();
     }
 
     public void setTIMA(byte value) {
+        sync();
         this.TIMA = value;
+        scheduleOverflow();
+    }
+
+    /**
+     * Any write resets the divider, which is a falling edge if the tick bit was high.
+     */
+    public void setDIV(byte value) {
+        sync();
+        if (tickSignal()) {
+            incrementTimer(1);
+        }
+        divider = 0;
+        scheduleOverflow();
+    }
+
+    public byte getDIV() {
+        sync();
+        return (byte) (divider >> 8);
     }
 
     public byte getTIMA() {
+        sync();
         return TIMA;
     }
 
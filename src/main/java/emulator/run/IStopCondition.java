@@ -0,0 +1,20 @@
+package emulator.run;
+
+import emulator.Gameboy;
+
+/**
+ * Ends a run started with {@link Gameboy#runClockCycles(long, IStopCondition...)} early.
+ * Conditions are only looked at on check points every {@link Gameboy#CHECK_INTERVAL} clock cycles and when the run
+ *   budget runs out, so checking them costs the emulation loop nothing.
+ */
+public interface IStopCondition {
+    boolean isMet(Gameboy gameboy);
+
+    /**
+     * @return true if the condition has to be looked at after every instruction instead, which makes the run step
+     *   one instruction at a time
+     */
+    default boolean needsEveryInstruction() {
+        return false;
+    }
+}
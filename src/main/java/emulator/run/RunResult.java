@@ -0,0 +1,43 @@
+package emulator.run;
+
+public class RunResult {
+    private final StopReason reason;
+    private final IStopCondition metCondition;
+    private final long clockCycles;
+
+    public RunResult(StopReason reason, IStopCondition metCondition, long clockCycles) {
+        this.reason = reason;
+        this.metCondition = metCondition;
+        this.clockCycles = clockCycles;
+    }
+
+    public StopReason getReason() {
+        return reason;
+    }
+
+    /**
+     * @return the condition that stopped the run, null if it ran out of budget
+     */
+    public IStopCondition getMetCondition() {
+        return metCondition;
+    }
+
+    /**
+     * @return clock cycles (T-cycles) the run took
+     */
+    public long getClockCycles() {
+        return clockCycles;
+    }
+
+    /**
+     * @return machine cycles (M-cycles) the run took
+     */
+    public long getMachineCycles() {
+        return clockCycles / 4;
+    }
+
+    @Override
+    public String toString() {
+        return reason + (metCondition != null ? " (" + metCondition + ")" : "") + " after " + clockCycles + " clock cycles";
+    }
+}
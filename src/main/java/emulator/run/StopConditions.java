@@ -0,0 +1,88 @@
+package emulator.run;
+
+import emulator.Gameboy;
+
+/**
+ * Ready made {@link IStopCondition}s.
+ */
+public class StopConditions {
+    private StopConditions() {
+    }
+
+    /**
+     * Met once the given text has been sent over serial, as test ROMs do with their results.
+     */
+    public static IStopCondition serialOutputContains(String text) {
+        return new IStopCondition() {
+            private long checkedByteCount = -1;
+
+            @Override
+            public boolean isMet(Gameboy gameboy) {
+                long byteCount = gameboy.getBus().getSerialByteCount();
+                if (byteCount == checkedByteCount) {
+                    return false;
+                }
+                checkedByteCount = byteCount;
+                return gameboy.getBus().getSerialOutput().contains(text);
+            }
+
+            @Override
+            public String toString() {
+                return "serial output contains \"" + text.replace("\n", "\\n") + "\"";
+            }
+        };
+    }
+
+    /**
+     * Met right after an instruction leaves PC at the given address. Makes the run step one instruction at a time.
+     */
+    public static IStopCondition pcReached(int address) {
+        return new IStopCondition() {
+            @Override
+            public boolean isMet(Gameboy gameboy) {
+                return gameboy.getRegisters().getPC().getValue() == address;
+            }
+
+            @Override
+            public boolean needsEveryInstruction() {
+                return true;
+            }
+
+            @Override
+            public String toString() {
+                return String.format("PC reached 0x%04X", address);
+            }
+        };
+    }
+
+    public static IStopCondition memoryEquals(int address, byte value) {
+        return new IStopCondition() {
+            @Override
+            public boolean isMet(Gameboy gameboy) {
+                return gameboy.getBus().readByteAt(address) == value;
+            }
+
+            @Override
+            public String toString() {
+                return String.format("memory at 0x%04X equals 0x%02X", address, value);
+            }
+        };
+    }
+
+    /**
+     * Met once the machine has been running for the given number of frames since power on.
+     */
+    public static IStopCondition frameReached(long frame) {
+        return new IStopCondition() {
+            @Override
+            public boolean isMet(Gameboy gameboy) {
+                return gameboy.getFrameCount() >= frame;
+            }
+
+            @Override
+            public String toString() {
+                return "frame " + frame + " reached";
+            }
+        };
+    }
+}
@@ -0,0 +1,8 @@
+package emulator.run;
+
+public enum StopReason {
+    // the clock cycle budget was used up
+    BUDGET_EXHAUSTED,
+    // one of the stop conditions was met
+    CONDITION_MET,
+}
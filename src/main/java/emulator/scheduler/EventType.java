@@ -0,0 +1,17 @@
+package emulator.scheduler;
+
+/**
+ * Everything that can be waiting in the {@link Scheduler}. Each type has a single slot, scheduling it again moves
+ *   its deadline.
+ */
+public enum EventType {
+    TIMER_OVERFLOW,
+    // end of the clock cycle budget of a Gameboy run
+    RUN_LIMIT,
+    // periodic check of a Gameboy run's stop conditions
+    RUN_CHECK,
+    // next sample of the guest call stack
+    PROFILER_SAMPLE,
+    // next entry of a state hash log
+    STATE_HASH,
+}
@@ -0,0 +1,8 @@
+package emulator.scheduler;
+
+public interface IEventHandler {
+    /**
+     * Called once the master clock has reached the event's deadline. The clock may already be past it.
+     */
+    void handleEvent();
+}
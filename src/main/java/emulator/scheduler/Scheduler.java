@@ -0,0 +1,163 @@
+package emulator.scheduler;
+
+import java.util.Arrays;
+
+/**
+ * Master clock of the whole machine, in clock cycles (4 per machine cycle) since power on, plus the deadlines of
+ *   everything that is going to happen at a known time.
+ *
+ * Components are not ticked after every instruction. They remember when they were last brought up to date, catch up
+ *   from the clock whenever they are accessed, and schedule an event for the next moment they have to act on their own,
+ *   like the timer overflowing. Between deadlines the CPU loop only adds to the clock and compares it against the
+ *   earliest deadline, which sits at the top of a binary min-heap kept in primitive arrays.
+ */
+public class Scheduler {
+    private static final int NOT_SCHEDULED = -1;
+
+    // heap ordered by deadline, events[i] is the EventType ordinal due at deadlines[i]
+    private final long[] deadlines;
+    private final int[] events;
+    // position of every EventType ordinal in the heap
+    private final int[] heapIndex;
+    private final IEventHandler[] handlers;
+    private int size;
+
+    private long now;
+    private long nextDeadline = Long.MAX_VALUE;
+
+    public Scheduler() {
+        int eventTypes = EventType.values().length;
+        this.deadlines = new long[eventTypes];
+        this.events = new int[eventTypes];
+        this.heapIndex = new int[eventTypes];
+        this.handlers = new IEventHandler[eventTypes];
+        Arrays.fill(heapIndex, NOT_SCHEDULED);
+    }
+
+    public void setHandler(EventType type, IEventHandler handler) {
+        handlers[type.ordinal()] = handler;
+    }
+
+    /**
+     * @return clock cycles since power on
+     */
+    public long getNow() {
+        return now;
+    }
+
+    /**
+     * Moves the clock forward, running every event that becomes due, earliest first.
+     */
+    public void advance(int cycles) {
+        now += cycles;
+        if (now >= nextDeadline) {
+            dispatchDueEvents();
+        }
+    }
+
+    /**
+     * @return number of clock cycles advance can take before an event runs, Long.MAX_VALUE if nothing is scheduled
+     */
+    public long cyclesUntilNextEvent() {
+        return nextDeadline == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(nextDeadline - now, 0);
+    }
+
+    /**
+     * Schedules the event at the given clock cycle, replacing its previous deadline if it had one.
+     */
+    public void schedule(EventType type, long deadline) {
+        int event = type.ordinal();
+        int index = heapIndex[event];
+        if (index == NOT_SCHEDULED) {
+            index = size++;
+            events[index] = event;
+            heapIndex[event] = index;
+        }
+        long previous = deadlines[index];
+        deadlines[index] = deadline;
+        if (index == size - 1 || deadline < previous) {
+            siftUp(index);
+        } else {
+            siftDown(index);
+        }
+        nextDeadline = deadlines[0];
+    }
+
+    public void cancel(EventType type) {
+        int index = heapIndex[type.ordinal()];
+        if (index != NOT_SCHEDULED) {
+            removeAt(index);
+        }
+    }
+
+    public boolean isScheduled(EventType type) {
+        return heapIndex[type.ordinal()] != NOT_SCHEDULED;
+    }
+
+    private void dispatchDueEvents() {
+        while (size > 0 && deadlines[0] <= now) {
+            int event = events[0];
+            removeAt(0);
+            IEventHandler handler = handlers[event];
+            if (handler != null) {
+                handler.handleEvent();
+            }
+        }
+    }
+
+    private void removeAt(int index) {
+        heapIndex[events[index]] = NOT_SCHEDULED;
+        size--;
+        if (index != size) {
+            move(size, index);
+            siftDown(index);
+            siftUp(index);
+        }
+        nextDeadline = size > 0 ? deadlines[0] : Long.MAX_VALUE;
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (deadlines[parent] <= deadlines[index]) {
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int smallest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && deadlines[left] < deadlines[smallest]) {
+                smallest = left;
+            }
+            if (right < size && deadlines[right] < deadlines[smallest]) {
+                smallest = right;
+            }
+            if (smallest == index) {
+                return;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        long deadline = deadlines[a];
+        int event = events[a];
+        move(b, a);
+        deadlines[b] = deadline;
+        events[b] = event;
+        heapIndex[event] = b;
+    }
+
+    private void move(int from, int to) {
+        deadlines[to] = deadlines[from];
+        events[to] = events[from];
+        heapIndex[events[to]] = to;
+    }
+}
@@ -0,0 +1,222 @@
+package emulator;
+
+import emulator.cpu.GameboyRegisters;
+import emulator.cpu.IdleLoop;
+import emulator.run.IStopCondition;
+import emulator.run.RunResult;
+import emulator.run.StopConditions;
+import emulator.run.StopReason;
+import emulator.utils.TestRom;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GameboyTest {
+    // first instruction after the setup in buildRom
+    private static final int LOOP_ADDRESS = 0x0100 + 22;
+
+    /**
+     * Timer at 16 cycles per tick wakes the CPU from HALT over and over, the fast forwarded run has to end up
+     *   in exactly the same state as stepping one instruction at a time.
+     */
+    @Test
+    public void testHaltFastForwardMatchesStepping() {
+        // IME off: HALT ends as soon as the timer flags, the loop acknowledges by clearing IF
+        byte[] haltLoop = {
+                0x04,                         // loop: INC B
+                (byte) 0xAF,                  // XOR A
+                (byte) 0xE0, 0x0F,            // LDH (IF), A
+                0x76,                         // HALT
+                0x18, (byte) 0xF9,            // JR loop
+        };
+        assertFastForwardMatchesStepping(buildRom((byte) 0xF3, haltLoop));
+    }
+
+    @Test
+    public void testHaltFastForwardMatchesSteppingWithInterrupts() {
+        // IME on: the timer interrupt is serviced at 0x50 and increments C
+        byte[] haltLoop = {
+                0x04,                         // loop: INC B
+                0x76,                         // HALT
+                0x18, (byte) 0xFC,            // JR loop
+        };
+        byte[] romBytes = buildRom((byte) 0xFB, haltLoop);
+        romBytes[0x50] = 0x0C; // INC C
+        romBytes[0x51] = (byte) 0xD9; // RETI
+        assertFastForwardMatchesStepping(romBytes);
+    }
+
+    @Test
+    public void testIdleLoopOnInterruptFlag() {
+        Gameboy gameboy = assertIdleLoopsMatchStepping(buildFlagPollingRom());
+        List<IdleLoop> loops = gameboy.getIdleLoopDetector().getIdleLoops();
+        assertEquals(1, loops.size());
+        assertEquals(LOOP_ADDRESS, loops.get(0).getAddress());
+        assertEquals(3, loops.get(0).getInstructionsPerIteration());
+        assertTrue(loops.get(0).getSkippedInstructions() > 0);
+    }
+
+    @Test
+    public void testIdleLoopOnTimer() {
+        // count timer ticks by waiting for TIMA to change
+        byte[] pollLoop = {
+                0x3E, 0x04,                   // LD A, 0b100 (enabled, 1024 cycles per tick)
+                (byte) 0xE0, 0x07,            // LDH (TAC), A
+                (byte) 0xF0, 0x05,            // outer: LDH A, (TIMA)
+                0x4F,                         // LD C, A
+                (byte) 0xF0, 0x05,            // loop: LDH A, (TIMA)
+                (byte) 0xB9,                  // CP C
+                0x28, (byte) 0xFB,            // JR Z, loop
+                0x04,                         // INC B
+                0x18, (byte) 0xF5,            // JR outer
+        };
+        Gameboy gameboy = assertIdleLoopsMatchStepping(buildRom((byte) 0xF3, pollLoop));
+        assertTrue(gameboy.getIdleLoopDetector().getIdleLoops().get(0).getSkippedInstructions() > 0);
+    }
+
+    @Test
+    public void testSelfLoopSkipsWholeBudget() {
+        byte[] romBytes = TestRom.romOnly().at(0x0100, (byte) 0x18, (byte) 0xFE).build(); // JR -2
+
+        Gameboy gameboy = new Gameboy.BusBuilder().cartridge(romBytes).buildBus().buildCpu().build();
+        gameboy.runCpuFor(Integer.MAX_VALUE);
+
+        IdleLoop loop = gameboy.getIdleLoopDetector().getIdleLoops().get(0);
+        assertEquals(0x0100, loop.getAddress());
+        assertEquals(Integer.MAX_VALUE - 2, loop.getSkippedInstructions());
+        assertEquals(0x0100, gameboy.getRegisters().getPC().getValue());
+    }
+
+    @Test
+    public void testRunClockCyclesStopsOnTheSameBoundaryAsStepping() {
+        byte[] romBytes = buildFlagPollingRom();
+        Gameboy run = new Gameboy.BusBuilder().cartridge(romBytes).buildBus().buildCpu().build();
+        Gameboy stepped = new Gameboy.BusBuilder().cartridge(romBytes).buildBus().idleLoopDetection(false).superinstructions(false).buildCpu().build();
+
+        for (long budget : new long[]{1, 4, 5, 1000, 12345, 100003, 1 << 20}) {
+            RunResult result = run.runClockCycles(budget);
+
+            long start = stepped.getScheduler().getNow();
+            while (stepped.getScheduler().getNow() < start + budget) {
+                stepped.runCpuFor(1);
+            }
+            assertEquals(StopReason.BUDGET_EXHAUSTED, result.getReason());
+            assertEquals(stepped.getScheduler().getNow() - start, result.getClockCycles());
+            assertRegistersEqual(stepped.getRegisters(), run.getRegisters());
+        }
+    }
+
+    @Test
+    public void testRunStopsOnConditions() {
+        Gameboy gameboy = new Gameboy.BusBuilder().cartridge(buildFlagPollingRom()).buildBus().buildCpu().build();
+
+        // the first timer interrupt pushes its return address 0x01xx just below SP
+        IStopCondition returnAddressPushed = StopConditions.memoryEquals(0xCFEF, (byte) 0x01);
+        RunResult result = gameboy.runMachineCycles(1_000_000, StopConditions.frameReached(100), returnAddressPushed);
+        assertEquals(StopReason.CONDITION_MET, result.getReason());
+        assertSame(returnAddressPushed, result.getMetCondition());
+
+        // the next one jumps to its handler
+        result = gameboy.runMachineCycles(1_000_000, StopConditions.pcReached(0x0050));
+        assertEquals(StopReason.CONDITION_MET, result.getReason());
+        assertEquals(0x0050, gameboy.getRegisters().getPC().getValue());
+
+        result = gameboy.runMachineCycles(1_000_000, StopConditions.frameReached(3));
+        assertEquals(StopReason.CONDITION_MET, result.getReason());
+        assertEquals(3, gameboy.getFrameCount());
+        assertTrue(gameboy.getScheduler().getNow() - 3L * Gameboy.CLOCK_CYCLES_PER_FRAME < Gameboy.CHECK_INTERVAL + 24);
+
+        result = gameboy.runMachineCycles(100, StopConditions.frameReached(10));
+        assertEquals(StopReason.BUDGET_EXHAUSTED, result.getReason());
+        assertEquals(100, result.getMachineCycles(), 6);
+    }
+
+    private static Gameboy assertIdleLoopsMatchStepping(byte[] romBytes) {
+        Gameboy stepped = new Gameboy.BusBuilder().cartridge(romBytes).buildBus().idleLoopDetection(false).buildCpu().build();
+        Gameboy fastForwarded = new Gameboy.BusBuilder().cartridge(romBytes).buildBus().idleLoopDetection(true).buildCpu().build();
+
+        for (int chunk = 0; chunk < 20; chunk++) {
+            stepped.runCpuFor(997);
+            fastForwarded.runCpuFor(997);
+            assertRegistersEqual(stepped.getRegisters(), fastForwarded.getRegisters());
+        }
+        // the loop exited more than once
+        assertTrue((fastForwarded.getRegisters().getB().getValue() & 0xFF) > 2);
+        return fastForwarded;
+    }
+
+    private static void assertRegistersEqual(GameboyRegisters expected, GameboyRegisters actual) {
+        assertEquals(expected.getAF().getValue(), actual.getAF().getValue());
+        assertEquals(expected.getBC().getValue(), actual.getBC().getValue());
+        assertEquals(expected.getSP().getValue(), actual.getSP().getValue());
+        assertEquals(expected.getPC().getValue(), actual.getPC().getValue());
+    }
+
+    private static void assertFastForwardMatchesStepping(byte[] romBytes) {
+        Gameboy stepped = new Gameboy.BusBuilder().cartridge(romBytes).buildBus().buildCpu().build();
+        Gameboy fastForwarded = new Gameboy.BusBuilder().cartridge(romBytes).buildBus().buildCpu().build();
+
+        for (int chunk = 0; chunk < 20; chunk++) {
+            for (int i = 0; i < 997; i++) {
+                stepped.runCpuFor(1);
+            }
+            fastForwarded.runCpuFor(997);
+
+            assertRegistersEqual(stepped.getRegisters(), fastForwarded.getRegisters());
+        }
+        // the loop woke up more than once
+        assertTrue(fastForwarded.getRegisters().getB().getValue() > 2);
+    }
+
+    private static byte[] buildFlagPollingRom() {
+        // spin on an HRAM flag that only the timer interrupt handler sets
+        byte[] pollLoop = {
+                (byte) 0xF0, (byte) 0x80,     // loop: LDH A, (0x80)
+                (byte) 0xA7,                  // AND A
+                0x28, (byte) 0xFB,            // JR Z, loop
+                0x04,                         // INC B
+                (byte) 0xAF,                  // XOR A
+                (byte) 0xE0, (byte) 0x80,     // LDH (0x80), A
+                0x18, (byte) 0xF5,            // JR loop
+        };
+        byte[] handler = {
+                (byte) 0xF5,                  // PUSH AF
+                0x3E, 0x01,                   // LD A, 1
+                (byte) 0xE0, (byte) 0x80,     // LDH (0x80), A
+                (byte) 0xF1,                  // POP AF
+                (byte) 0xD9,                  // RETI
+        };
+        return timerRom((byte) 0xFB, pollLoop).at(0x50, handler).build();
+    }
+
+    /**
+     * @param interruptEnable DI or EI
+     */
+    private static byte[] buildRom(byte interruptEnable, byte[] haltLoop) {
+        return timerRom(interruptEnable, haltLoop).build();
+    }
+
+    /**
+     * Timer interrupt setup followed by the loop, at LOOP_ADDRESS
+     */
+    private static TestRom timerRom(byte interruptEnable, byte[] loop) {
+        byte[] setup = {
+                interruptEnable,
+                0x31, (byte) 0xF0, (byte) 0xCF, // LD SP, 0xCFF0
+                0x01, 0x00, 0x00,             // LD BC, 0
+                0x3E, (byte) 0xF0,            // LD A, 0xF0
+                (byte) 0xE0, 0x05,            // LDH (TIMA), A
+                0x3E, 0x05,                   // LD A, 0b101 (enabled, 16 cycles per tick)
+                (byte) 0xE0, 0x07,            // LDH (TAC), A
+                0x3E, 0x04,                   // LD A, timer
+                (byte) 0xE0, (byte) 0xFF,     // LDH (IE), A
+                (byte) 0xAF,                  // XOR A
+                (byte) 0xE0, 0x0F,            // LDH (IF), A
+        };
+        return TestRom.romOnly().at(TestRom.ENTRY_POINT, setup).at(TestRom.ENTRY_POINT + setup.length, loop);
+    }
+}
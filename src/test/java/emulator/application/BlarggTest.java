@@ -1,6 +1,10 @@
 package emulator.application;
 
 import emulator.Gameboy;
+import emulator.cpu.DecoderType;
+import emulator.cpu.GameboyRegisters;
+import emulator.run.RunResult;
+import emulator.run.StopReason;
 import emulator.utils.SavingSerialHandler;
 import org.junit.jupiter.api.Test;
 
@@ -8,7 +12,10 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 
+import static emulator.run.StopConditions.serialOutputContains;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
 
 public class BlarggTest {
     @Test
@@ -16,26 +23,112 @@ public class BlarggTest {
         File romFile = new File("src/test/java/emulator/application/tests/cpu_instrs.gb");
         byte[] romBytes = Files.readAllBytes(romFile.toPath());
 
-        int maxCycles = 24654872; // exact number of cycles before we get correct output
+        long maxClockCycles = 400_000_000; // well past the point where the result is printed
         SavingSerialHandler savingSerialHandler = new SavingSerialHandler();
         Gameboy gameboy = new Gameboy.BusBuilder().cartridge(romBytes).serialHandler(savingSerialHandler).buildBus().buildCpu().build();
 
-        gameboy.runCpuFor(maxCycles);
+        RunResult result = gameboy.runClockCycles(maxClockCycles, serialOutputContains("Passed all tests\n"), serialOutputContains("Failed"));
 
+        assertEquals(StopReason.CONDITION_MET, result.getReason());
         assertEquals("cpu_instrs\n\n01:ok  02:ok  03:ok  04:ok  05:ok  06:ok  07:ok  08:ok  09:ok  10:ok  11:ok  \n\nPassed all tests\n", savingSerialHandler.getSavedData());
     }
 
+    @Test
+    public void decoderTypesAgree() throws IOException {
+        File romFile = new File("src/test/java/emulator/application/tests/cpu_instrs.gb");
+        byte[] romBytes = Files.readAllBytes(romFile.toPath());
+
+        int maxCycles = 24654872; // exact number of cycles before we get correct output
+        SavingSerialHandler ifChainSerialHandler = new SavingSerialHandler();
+        SavingSerialHandler tableSerialHandler = new SavingSerialHandler();
+        Gameboy ifChainGameboy = new Gameboy.BusBuilder().cartridge(romBytes).serialHandler(ifChainSerialHandler).buildBus().decoderType(DecoderType.IF_CHAIN).lazyFlags(false).buildCpu().build();
+        Gameboy tableGameboy = new Gameboy.BusBuilder().cartridge(romBytes).serialHandler(tableSerialHandler).buildBus().decoderType(DecoderType.TABLE).lazyFlags(true).buildCpu().build();
+
+        // step both engines in lockstep, the register file must match after every instruction
+        for (int i = 0; i < maxCycles; i++) {
+            ifChainGameboy.runCpuFor(1);
+            tableGameboy.runCpuFor(1);
+            assertRegistersEqual(i, ifChainGameboy.getRegisters(), tableGameboy.getRegisters());
+        }
+
+        assertEquals(ifChainSerialHandler.getSavedData(), tableSerialHandler.getSavedData());
+    }
+
+    @Test
+    public void dynamicRecompilerAgrees() throws IOException {
+        File romFile = new File("src/test/java/emulator/application/tests/cpu_instrs.gb");
+        byte[] romBytes = Files.readAllBytes(romFile.toPath());
+
+        int maxCycles = 24654872; // exact number of cycles before we get correct output
+        int chunk = 10007; // odd sized so chunk edges land in the middle of translated blocks
+        SavingSerialHandler interpretedSerialHandler = new SavingSerialHandler();
+        SavingSerialHandler recompiledSerialHandler = new SavingSerialHandler();
+        Gameboy interpretedGameboy = new Gameboy.BusBuilder().cartridge(romBytes).serialHandler(interpretedSerialHandler).buildBus().buildCpu().build();
+        Gameboy recompiledGameboy = new Gameboy.BusBuilder().cartridge(romBytes).serialHandler(recompiledSerialHandler).buildBus().dynamicRecompiler().buildCpu().build();
+
+        for (int i = 0; i < maxCycles; i += chunk) {
+            int steps = Math.min(chunk, maxCycles - i);
+            interpretedGameboy.runCpuFor(steps);
+            recompiledGameboy.runCpuFor(steps);
+            assertRegistersEqual(i + steps, interpretedGameboy.getRegisters(), recompiledGameboy.getRegisters());
+        }
+
+        assertTrue(recompiledGameboy.getTieredExecutor().getCachedBlockCount() > 0);
+        assertEquals(interpretedSerialHandler.getSavedData(), recompiledSerialHandler.getSavedData());
+    }
+
+    @Test
+    public void superinstructionsAgree() throws IOException {
+        File romFile = new File("src/test/java/emulator/application/tests/cpu_instrs.gb");
+        byte[] romBytes = Files.readAllBytes(romFile.toPath());
+
+        int maxCycles = 24654872; // exact number of cycles before we get correct output
+        int chunk = 10007; // odd sized so chunk edges land in the middle of fused sequences
+        SavingSerialHandler steppedSerialHandler = new SavingSerialHandler();
+        SavingSerialHandler fusedSerialHandler = new SavingSerialHandler();
+        Gameboy steppedGameboy = new Gameboy.BusBuilder().cartridge(romBytes).serialHandler(steppedSerialHandler).buildBus().superinstructions(false).buildCpu().build();
+        Gameboy fusedGameboy = new Gameboy.BusBuilder().cartridge(romBytes).serialHandler(fusedSerialHandler).buildBus().superinstructions(true).buildCpu().build();
+
+        for (int i = 0; i < maxCycles; i += chunk) {
+            int steps = Math.min(chunk, maxCycles - i);
+            steppedGameboy.runCpuFor(steps);
+            fusedGameboy.runCpuFor(steps);
+            assertRegistersEqual(i + steps, steppedGameboy.getRegisters(), fusedGameboy.getRegisters());
+        }
+
+        long fired = fusedGameboy.getCpu().getSuperinstructionDecoder().getStatistics().values().stream().mapToLong(Long::longValue).sum();
+        assertTrue(fired > 0);
+        assertEquals(steppedSerialHandler.getSavedData(), fusedSerialHandler.getSavedData());
+    }
+
+    private static void assertRegistersEqual(int step, GameboyRegisters expected, GameboyRegisters actual) {
+        if (expected.getAF().getValue() != actual.getAF().getValue()
+                || expected.getBC().getValue() != actual.getBC().getValue()
+                || expected.getDE().getValue() != actual.getDE().getValue()
+                || expected.getHL().getValue() != actual.getHL().getValue()
+                || expected.getSP().getValue() != actual.getSP().getValue()
+                || expected.getPC().getValue() != actual.getPC().getValue()) {
+            fail(String.format("Engines diverged after instruction %d: expected AF=%04X BC=%04X DE=%04X HL=%04X SP=%04X PC=%04X but was AF=%04X BC=%04X DE=%04X HL=%04X SP=%04X PC=%04X",
+                    step,
+                    expected.getAF().getValue(), expected.getBC().getValue(), expected.getDE().getValue(),
+                    expected.getHL().getValue(), expected.getSP().getValue(), expected.getPC().getValue(),
+                    actual.getAF().getValue(), actual.getBC().getValue(), actual.getDE().getValue(),
+                    actual.getHL().getValue(), actual.getSP().getValue(), actual.getPC().getValue()));
+        }
+    }
+
     @Test
     public void test01() throws IOException {
         File romFile = new File("src/test/java/emulator/application/tests/individual/01-special.gb");
         byte[] romBytes = Files.readAllBytes(romFile.toPath());
 
-        int maxCycles = 2000000; // exact number of cycles before we get correct output
+        long maxClockCycles = 100_000_000; // well past the point where the result is printed
         SavingSerialHandler savingSerialHandler = new SavingSerialHandler();
         Gameboy gameboy = new Gameboy.BusBuilder().cartridge(romBytes).serialHandler(savingSerialHandler).buildBus().buildCpu().build();
 
-        gameboy.runCpuFor(maxCycles);
+        RunResult result = gameboy.runClockCycles(maxClockCycles, serialOutputContains("Passed\n"), serialOutputContains("Failed"));
 
+        assertEquals(StopReason.CONDITION_MET, result.getReason());
         assertEquals("01-special\n\n\nPassed\n", savingSerialHandler.getSavedData());
     }
 
@@ -44,12 +137,13 @@ public class BlarggTest {
         File romFile = new File("src/test/java/emulator/application/tests/individual/02-interrupts.gb");
         byte[] romBytes = Files.readAllBytes(romFile.toPath());
 
-        int maxCycles = 1000000; // exact number of cycles before we get correct output
+        long maxClockCycles = 100_000_000; // well past the point where the result is printed
         SavingSerialHandler savingSerialHandler = new SavingSerialHandler();
         Gameboy gameboy = new Gameboy.BusBuilder().cartridge(romBytes).serialHandler(savingSerialHandler).buildBus().buildCpu().build();
 
-        gameboy.runCpuFor(maxCycles);
+        RunResult result = gameboy.runClockCycles(maxClockCycles, serialOutputContains("Passed\n"), serialOutputContains("Failed"));
 
+        assertEquals(StopReason.CONDITION_MET, result.getReason());
         assertEquals("02-interrupts\n\n\nPassed\n", savingSerialHandler.getSavedData());
     }
 
@@ -58,12 +152,13 @@ public class BlarggTest {
         File romFile = new File("src/test/java/emulator/application/tests/individual/03-op sp,hl.gb");
         byte[] romBytes = Files.readAllBytes(romFile.toPath());
 
-        int maxCycles = 1067113; // exact number of cycles before we get correct output
+        long maxClockCycles = 100_000_000; // well past the point where the result is printed
         SavingSerialHandler savingSerialHandler = new SavingSerialHandler();
         Gameboy gameboy = new Gameboy.BusBuilder().cartridge(romBytes).serialHandler(savingSerialHandler).buildBus().buildCpu().build();
 
-        gameboy.runCpuFor(maxCycles);
+        RunResult result = gameboy.runClockCycles(maxClockCycles, serialOutputContains("Passed\n"), serialOutputContains("Failed"));
 
+        assertEquals(StopReason.CONDITION_MET, result.getReason());
         assertEquals("03-op sp,hl\n\n\nPassed\n", savingSerialHandler.getSavedData());
     }
 
@@ -72,12 +167,13 @@ public class BlarggTest {
         File romFile = new File("src/test/java/emulator/application/tests/individual/04-op r,imm.gb");
         byte[] romBytes = Files.readAllBytes(romFile.toPath());
 
-        int maxCycles = 2000000; // exact number of cycles before we get correct output
+        long maxClockCycles = 100_000_000; // well past the point where the result is printed
         SavingSerialHandler savingSerialHandler = new SavingSerialHandler();
         Gameboy gameboy = new Gameboy.BusBuilder().cartridge(romBytes).serialHandler(savingSerialHandler).buildBus().buildCpu().build();
 
-        gameboy.runCpuFor(maxCycles);
+        RunResult result = gameboy.runClockCycles(maxClockCycles, serialOutputContains("Passed\n"), serialOutputContains("Failed"));
 
+        assertEquals(StopReason.CONDITION_MET, result.getReason());
         assertEquals("04-op r,imm\n\n\nPassed\n", savingSerialHandler.getSavedData());
     }
 
@@ -86,12 +182,13 @@ public class BlarggTest {
         File romFile = new File("src/test/java/emulator/application/tests/individual/05-op rp.gb");
         byte[] romBytes = Files.readAllBytes(romFile.toPath());
 
-        int maxCycles = 2000000; // exact number of cycles before we get correct output
+        long maxClockCycles = 100_000_000; // well past the point where the result is printed
         SavingSerialHandler savingSerialHandler = new SavingSerialHandler();
         Gameboy gameboy = new Gameboy.BusBuilder().cartridge(romBytes).serialHandler(savingSerialHandler).buildBus().buildCpu().build();
 
-        gameboy.runCpuFor(maxCycles);
+        RunResult result = gameboy.runClockCycles(maxClockCycles, serialOutputContains("Passed\n"), serialOutputContains("Failed"));
 
+        assertEquals(StopReason.CONDITION_MET, result.getReason());
         assertEquals("05-op rp\n\n\nPassed\n", savingSerialHandler.getSavedData());
     }
 
@@ -100,12 +197,13 @@ public class BlarggTest {
         File romFile = new File("src/test/java/emulator/application/tests/individual/06-ld r,r.gb");
         byte[] romBytes = Files.readAllBytes(romFile.toPath());
 
-        int maxCycles = 2000000; // exact number of cycles before we get correct output
+        long maxClockCycles = 100_000_000; // well past the point where the result is printed
         SavingSerialHandler savingSerialHandler = new SavingSerialHandler();
         Gameboy gameboy = new Gameboy.BusBuilder().cartridge(romBytes).serialHandler(savingSerialHandler).buildBus().buildCpu().build();
 
-        gameboy.runCpuFor(maxCycles);
+        RunResult result = gameboy.runClockCycles(maxClockCycles, serialOutputContains("Passed\n"), serialOutputContains("Failed"));
 
+        assertEquals(StopReason.CONDITION_MET, result.getReason());
         assertEquals("06-ld r,r\n\n\nPassed\n", savingSerialHandler.getSavedData());
     }
 
@@ -114,12 +212,13 @@ public class BlarggTest {
         File romFile = new File("src/test/java/emulator/application/tests/individual/07-jr,jp,call,ret,rst.gb");
         byte[] romBytes = Files.readAllBytes(romFile.toPath());
 
-        int maxCycles = 2000000; // exact number of cycles before we get correct output
+        long maxClockCycles = 100_000_000; // well past the point where the result is printed
         SavingSerialHandler savingSerialHandler = new SavingSerialHandler();
         Gameboy gameboy = new Gameboy.BusBuilder().cartridge(romBytes).serialHandler(savingSerialHandler).buildBus().buildCpu().build();
 
-        gameboy.runCpuFor(maxCycles);
+        RunResult result = gameboy.runClockCycles(maxClockCycles, serialOutputContains("Passed\n"), serialOutputContains("Failed"));
 
+        assertEquals(StopReason.CONDITION_MET, result.getReason());
         assertEquals("07-jr,jp,call,ret,rst\n\n\nPassed\n", savingSerialHandler.getSavedData());
     }
 
@@ -128,12 +227,13 @@ public class BlarggTest {
         File romFile = new File("src/test/java/emulator/application/tests/individual/08-misc instrs.gb");
         byte[] romBytes = Files.readAllBytes(romFile.toPath());
 
-        int maxCycles = 2000000; // exact number of cycles before we get correct output
+        long maxClockCycles = 100_000_000; // well past the point where the result is printed
         SavingSerialHandler savingSerialHandler = new SavingSerialHandler();
         Gameboy gameboy = new Gameboy.BusBuilder().cartridge(romBytes).serialHandler(savingSerialHandler).buildBus().buildCpu().build();
 
-        gameboy.runCpuFor(maxCycles);
+        RunResult result = gameboy.runClockCycles(maxClockCycles, serialOutputContains("Passed\n"), serialOutputContains("Failed"));
 
+        assertEquals(StopReason.CONDITION_MET, result.getReason());
         assertEquals("08-misc instrs\n\n\nPassed\n", savingSerialHandler.getSavedData());
     }
 
@@ -146,12 +246,13 @@ public class BlarggTest {
         File romFile = new File("src/test/java/emulator/application/tests/individual/09-op r,r.gb");
         byte[] romBytes = Files.readAllBytes(romFile.toPath());
 
-        int maxCycles = 5000000; // exact number of cycles before we get correct output
+        long maxClockCycles = 100_000_000; // well past the point where the result is printed
         SavingSerialHandler savingSerialHandler = new SavingSerialHandler();
         Gameboy gameboy = new Gameboy.BusBuilder().cartridge(romBytes).serialHandler(savingSerialHandler).buildBus().buildCpu().build();
 
-        gameboy.runCpuFor(maxCycles);
+        RunResult result = gameboy.runClockCycles(maxClockCycles, serialOutputContains("Passed\n"), serialOutputContains("Failed"));
 
+        assertEquals(StopReason.CONDITION_MET, result.getReason());
         assertEquals("09-op r,r\n\n\nPassed\n", savingSerialHandler.getSavedData());
     }
 
@@ -160,12 +261,13 @@ public class BlarggTest {
         File romFile = new File("src/test/java/emulator/application/tests/individual/10-bit ops.gb");
         byte[] romBytes = Files.readAllBytes(romFile.toPath());
 
-        int maxCycles = 7000000; // exact number of cycles before we get correct output
+        long maxClockCycles = 100_000_000; // well past the point where the result is printed
         SavingSerialHandler savingSerialHandler = new SavingSerialHandler();
         Gameboy gameboy = new Gameboy.BusBuilder().cartridge(romBytes).serialHandler(savingSerialHandler).buildBus().buildCpu().build();
 
-        gameboy.runCpuFor(maxCycles);
+        RunResult result = gameboy.runClockCycles(maxClockCycles, serialOutputContains("Passed\n"), serialOutputContains("Failed"));
 
+        assertEquals(StopReason.CONDITION_MET, result.getReason());
         assertEquals("10-bit ops\n\n\nPassed\n", savingSerialHandler.getSavedData());
     }
 
@@ -174,12 +276,13 @@ public class BlarggTest {
         File romFile = new File("src/test/java/emulator/application/tests/individual/11-op a,(hl).gb");
         byte[] romBytes = Files.readAllBytes(romFile.toPath());
 
-        int maxCycles = 8000000; // exact number of cycles before we get correct output
+        long maxClockCycles = 100_000_000; // well past the point where the result is printed
         SavingSerialHandler savingSerialHandler = new SavingSerialHandler();
         Gameboy gameboy = new Gameboy.BusBuilder().cartridge(romBytes).serialHandler(savingSerialHandler).buildBus().buildCpu().build();
 
-        gameboy.runCpuFor(maxCycles);
+        RunResult result = gameboy.runClockCycles(maxClockCycles, serialOutputContains("Passed\n"), serialOutputContains("Failed"));
 
+        assertEquals(StopReason.CONDITION_MET, result.getReason());
         assertEquals("11-op a,(hl)\n\n\nPassed\n", savingSerialHandler.getSavedData());
     }
 
@@ -0,0 +1,218 @@
+package emulator.bus;
+
+import emulator.bus.device.cartridge.Cartridge;
+import emulator.interrupts.InterruptController;
+import emulator.interrupts.Timer;
+import emulator.utils.TestRom;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GameboyBusTest {
+    private static GameboyBus createBus(Cartridge cartridge) {
+        InterruptController interruptController = new InterruptController();
+        return new GameboyBus(cartridge, interruptController, new Timer(interruptController), data -> {});
+    }
+
+    /**
+     * 64KiB MBC1 ROM where every byte holds the number of its bank
+     */
+    private static Cartridge createBankNumberedCartridge() {
+        // MBC1, 4 banks
+        return Cartridge.createCartridge(TestRom.ofType(0x01, 0x01).bankNumbered().build());
+    }
+
+    @Test
+    public void testBankSwitchRemapsSwitchablePages() {
+        GameboyBus bus = createBus(createBankNumberedCartridge());
+        assertEquals(0, bus.readByteAt(0x0150));
+        assertEquals(1, bus.readByteAt(0x4000));
+        assertEquals(1, bus.readByteAt(0x7FFF));
+
+        // MBC register write, has to reach the cartridge rather than ROM memory
+        bus.writeByteAt(0x2000, (byte) 3);
+        assertEquals(0, bus.readByteAt(0x0150));
+        assertEquals(3, bus.readByteAt(0x4000));
+        assertEquals(3, bus.readByteAt(0x7FFF));
+
+        bus.writeByteAt(0x2000, (byte) 2);
+        assertEquals(2, bus.readByteAt(0x5A5A));
+    }
+
+    @Test
+    public void testAdvancedBankingModeRemapsFirstPages() {
+        // MBC1, 64 banks
+        GameboyBus bus = createBus(Cartridge.createCartridge(TestRom.ofType(0x01, 0x05).bankNumbered().build()));
+
+        bus.writeByteAt(0x4000, (byte) 1);
+        assertEquals(0, bus.readByteAt(0x0000));
+        bus.writeByteAt(0x6000, (byte) 1);
+        assertEquals(0x20, bus.readByteAt(0x0000));
+        assertEquals(0x20, bus.readByteAt(0x3FFF));
+        assertEquals(0x21, bus.readByteAt(0x4000));
+    }
+
+    @Test
+    public void testMemoryPagesReadBackWrites() {
+        GameboyBus bus = createBus(createBankNumberedCartridge());
+        bus.writeByteAt(0xC000, (byte) 0x11);
+        bus.writeByteAt(0xCFFF, (byte) 0x22);
+        bus.writeByteAt(0xD000, (byte) 0x33);
+        bus.writeByteAt(0xDFFF, (byte) 0x44);
+        bus.writeByteAt(0xFF80, (byte) 0x55);
+        bus.writeByteAt(0xFFEF, (byte) 0x66);
+
+        assertEquals((byte) 0x11, bus.readByteAt(0xC000));
+        assertEquals((byte) 0x22, bus.readByteAt(0xCFFF));
+        assertEquals((byte) 0x33, bus.readByteAt(0xD000));
+        assertEquals((byte) 0x44, bus.readByteAt(0xDFFF));
+        assertEquals((byte) 0x55, bus.readByteAt(0xFF80));
+        assertEquals((byte) 0x66, bus.readByteAt(0xFFEF));
+        assertEquals(6, bus.getWriteCount());
+        assertEquals(0, bus.getIoReadCount());
+
+        bus.readByteAt(0xFF0F);
+        assertEquals(1, bus.getIoReadCount());
+    }
+
+    @Test
+    public void testUnmappedAddressesThrow() {
+        GameboyBus bus = createBus(createBankNumberedCartridge());
+        assertThrows(IndexOutOfBoundsException.class, () -> bus.readByteAt(0xE000));
+        assertThrows(IndexOutOfBoundsException.class, () -> bus.writeByteAt(0xFE00, (byte) 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> bus.readByteAt(0x10000));
+    }
+
+    @Test
+    public void testIoRegistersDispatchToDevices() {
+        GameboyBus bus = createBus(createBankNumberedCartridge());
+        bus.writeByteAt(0xFF06, (byte) 0x42);
+        assertEquals((byte) 0x42, bus.readByteAt(0xFF06));
+        bus.writeByteAt(0xFFFF, (byte) 0b101);
+        assertEquals((byte) 0b101, bus.readByteAt(0xFFFF));
+        assertEquals((byte) 0x90, bus.readByteAt(0xFF44));
+
+        // nothing is registered at 0xFF7F
+        bus.writeByteAt(0xFF7F, (byte) 0x12);
+        assertEquals(IoRegisters.OPEN_BUS, bus.readByteAt(0xFF7F));
+    }
+
+    @Test
+    public void testCustomIoRegister() {
+        GameboyBus bus = createBus(createBankNumberedCartridge());
+        byte[] joypad = {(byte) 0xCF};
+        bus.getIoRegisters().register(0xFF00, () -> joypad[0], value -> joypad[0] = (byte) (value | 0xCF));
+
+        assertEquals((byte) 0xCF, bus.readByteAt(0xFF00));
+        bus.writeByteAt(0xFF00, (byte) 0x10);
+        assertEquals((byte) 0xDF, bus.readByteAt(0xFF00));
+        assertThrows(IllegalArgumentException.class, () -> bus.getIoRegisters().register(0xFE00, () -> 0, value -> {}));
+    }
+
+    @Test
+    public void testWordAccessesAreLittleEndianAcrossPages() {
+        GameboyBus bus = createBus(createBankNumberedCartridge());
+        bus.writeWord(0xC010, 0xBEEF);
+        assertEquals((byte) 0xEF, bus.readByteAt(0xC010));
+        assertEquals((byte) 0xBE, bus.readByteAt(0xC011));
+        assertEquals(0xBEEF, bus.readWord(0xC010));
+
+        // straddles the WRAM banks
+        bus.writeWord(0xCFFF, 0x1234);
+        assertEquals((byte) 0x34, bus.readByteAt(0xCFFF));
+        assertEquals((byte) 0x12, bus.readByteAt(0xD000));
+        assertEquals(0x1234, bus.readWord(0xCFFF));
+        assertEquals(4, bus.getWriteCount());
+
+        // handler page
+        bus.writeWord(0xFF80, 0x5678);
+        assertEquals(0x5678, bus.readWord(0xFF80));
+    }
+
+    @Test
+    public void testPushWritesHighByteFirst() {
+        List<Integer> writtenAddresses = new ArrayList<>();
+        IBus recordingBus = new IBus() {
+            @Override
+            public byte readByteAt(int addr) {
+                return 0;
+            }
+
+            @Override
+            public void writeByteAt(int addr, byte value) {
+                writtenAddresses.add(addr);
+            }
+        };
+        recordingBus.pushWord(0xFFFE, 0x1234);
+        assertEquals(List.of(0xFFFF, 0xFFFE), writtenAddresses);
+
+        GameboyBus bus = createBus(createBankNumberedCartridge());
+        // through the I/O page handler
+        bus.pushWord(0xFFEE, 0x1F34);
+        assertEquals(0x1F34, bus.readWord(0xFFEE));
+        bus.pushWord(0xCFFF, 0xABCD);
+        assertEquals(0xABCD, bus.readWord(0xCFFF));
+        bus.pushWord(0xC100, 0x5678);
+        assertEquals(0x5678, bus.readWord(0xC100));
+    }
+
+    @Test
+    public void testBlockCopiesMatchSingleByteAccesses() {
+        GameboyBus bus = createBus(createBankNumberedCartridge());
+        byte[] data = new byte[0x1100];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 7);
+        }
+        bus.writeBlock(0xC080, data, 0, data.length);
+        for (int i = 0; i < data.length; i++) {
+            assertEquals(data[i], bus.readByteAt(0xC080 + i));
+        }
+        assertEquals(data.length, bus.getWriteCount());
+
+        byte[] copy = new byte[data.length + 2];
+        bus.readBlock(0xC080, copy, 2, data.length);
+        for (int i = 0; i < data.length; i++) {
+            assertEquals(data[i], copy[i + 2]);
+        }
+
+        // through the I/O page handler
+        byte[] hram = new byte[0x90];
+        bus.readBlock(0xFF60, hram, 0, hram.length);
+        assertEquals(0, bus.readByteAt(0xFF80));
+        assertEquals(IoRegisters.OPEN_BUS, hram[0]);
+    }
+
+    @Test
+    public void testBlockCopiesWrapAroundAtTopOfMemory() {
+        GameboyBus bus = createBus(createBankNumberedCartridge());
+        bus.writeByteAt(0xFFFF, (byte) 0b10101);
+        byte[] block = new byte[4];
+        bus.readBlock(0xFFFE, block, 0, block.length);
+        assertEquals((byte) 0b10101, block[1]);
+        // bank 0 of the ROM
+        assertEquals(0, block[2]);
+        assertEquals(0, block[3]);
+
+        bus.writeBlock(0xFFFF, new byte[]{0b00011, 0x00}, 0, 2);
+        assertEquals((byte) 0b00011, bus.readByteAt(0xFFFF));
+    }
+
+    @Test
+    public void testCartridgeRamIsMappedWhileEnabled() {
+        // MBC1+RAM, 8KB RAM
+        Cartridge cartridge = Cartridge.createCartridge(TestRom.ofType(0x02, 0x00).ramSizeCode(0x02).build());
+        GameboyBus bus = createBus(cartridge);
+        assertEquals((byte) 0xFF, bus.readByteAt(0xA000));
+
+        bus.writeByteAt(0x0000, (byte) 0x0A);
+        bus.writeByteAt(0xA123, (byte) 0x5A);
+        assertEquals((byte) 0x5A, bus.readByteAt(0xA123));
+        assertEquals((byte) 0x5A, cartridge.getRamMemory()[0x0123]);
+
+        bus.writeByteAt(0x0000, (byte) 0x00);
+        assertEquals((byte) 0xFF, bus.readByteAt(0xA123));
+    }
+}
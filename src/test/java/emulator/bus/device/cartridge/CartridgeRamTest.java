@@ -0,0 +1,58 @@
+package emulator.bus.device.cartridge;
+
+import emulator.utils.TestRom;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CartridgeRamTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testSaveFileKeepsRamAcrossSessions() throws IOException {
+        Path saveFile = tempDir.resolve("game.sav");
+        try (CartridgeRam ram = new CartridgeRam(0x2000)) {
+            ram.attachSaveFile(saveFile);
+            ram.write(0x0000, (byte) 0x11);
+            ram.write(0x1FFF, (byte) 0x22);
+        }
+        byte[] saved = Files.readAllBytes(saveFile);
+        assertEquals(0x2000, saved.length);
+        assertEquals((byte) 0x11, saved[0x0000]);
+        assertEquals((byte) 0x22, saved[0x1FFF]);
+
+        try (CartridgeRam ram = new CartridgeRam(0x2000)) {
+            ram.attachSaveFile(saveFile);
+            assertEquals((byte) 0x11, ram.read(0x0000));
+            assertEquals((byte) 0x22, ram.read(0x1FFF));
+        }
+    }
+
+    @Test
+    void testWritesReachTheFileOnlyOnFlush() throws IOException {
+        Path saveFile = tempDir.resolve("game.sav");
+        try (CartridgeRam ram = new CartridgeRam(0x2000)) {
+            ram.attachSaveFile(saveFile);
+            ram.write(0x0100, (byte) 0x33);
+            // the periodic flush is a second away
+            assertEquals((byte) 0x00, Files.readAllBytes(saveFile)[0x0100]);
+
+            ram.flush();
+            assertEquals((byte) 0x33, Files.readAllBytes(saveFile)[0x0100]);
+        }
+    }
+
+    @Test
+    void testCartridgeWithoutBatteryHasNoSaveFile() {
+        // MBC1+RAM, 8KB RAM
+        Cartridge cartridge = Cartridge.createCartridge(TestRom.ofType(0x02, 0x00).ramSizeCode(0x02).build());
+        assertNotNull(cartridge.getRamMemory());
+        assertThrows(IllegalStateException.class, () -> cartridge.attachSaveFile(tempDir.resolve("game.sav")));
+    }
+}
@@ -16,7 +16,7 @@ class CartridgeTest {
         // Create a Cartridge instance and expect an exception
         for (int i = Byte.MIN_VALUE; i <= Byte.MAX_VALUE; i++) {
             romBytes[0x0147] = (byte) i;
-            if (i >= 0x00 && i <= 0x03) {
+            if (i >= 0x00 && i <= 0x03 || i == 0x05 || i == 0x06 || i >= 0x0F && i <= 0x13 || i >= 0x19 && i <= 0x1E) {
                 // these are valid values, skip them
                 continue;
             }
@@ -25,4 +25,25 @@ class CartridgeTest {
             assertEquals("Cartridge type " + i + " not supported.", exception.getMessage());
         }
     }
+
+    /**
+     * Test that ensures bankAt follows both the switchable bank and the MBC1 advanced banking mode remap.
+     */
+    @Test
+    void test_General_BankAt() {
+        byte[] romBytes = new byte[0x100000]; // 1MB ROM
+        romBytes[0x0147] = 0x01; // MBC1
+        romBytes[0x0148] = 0x05; // 64 ROM banks
+        Cartridge cartridge = Cartridge.createCartridge(romBytes);
+        assertEquals(0, cartridge.bankAt(0x0100));
+        assertEquals(1, cartridge.bankAt(0x4000));
+        assertEquals(0, cartridge.bankAt(0xC000));
+
+        cartridge.writeByteAt(0x2000, (byte) 0x05);
+        cartridge.writeByteAt(0x4000, (byte) 0x01);
+        cartridge.writeByteAt(0x6000, (byte) 0x01);
+        assertEquals(0x20, cartridge.bankAt(0x3FFF));
+        assertEquals(0x25, cartridge.bankAt(0x7FFF));
+        assertEquals(0, cartridge.bankAt(0x8000));
+    }
 }
@@ -5,12 +5,9 @@ import org.junit.jupiter.api.Test;
 import java.util.Arrays;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
-/**
- * TODO: MBC1 implementation currently does not handle cartridge sizes above 512KB, which requires extra logic.
- *   Also does not support RAM yet.
- */
 public class MBC1CartridgeTest {
     /**
      * Test that ensures readByteAt returns correct values from the first ROM bank
@@ -23,8 +20,8 @@ public class MBC1CartridgeTest {
                 0x02, // 8 ROM banks (128KB)
                 0x03, // 16 ROM banks (256KB)
                 0x04, // 32 ROM banks (512KB)
-                // 0x05, TODO: more rom bank modes, special cases because of how internal wiring works
-                // 0x06,
+                0x05, // 64 ROM banks (1MB)
+                0x06, // 128 ROM banks (2MB)
                 // none exist above 2MB
         };
         for (byte romBankSize : romBankSizes) {
@@ -47,8 +44,8 @@ public class MBC1CartridgeTest {
     }
 
     /**
-     * Test that ensures readByteAt returns correct values from the indexable rom banks,
-     *   specifically using the lower bank index bits.
+     * Test that ensures readByteAt returns correct values from the indexable rom banks, using the lower bank index
+     *   bits and, on 1MB+ ROMs, the upper ones.
      */
     @Test
     void test_ReadByteAt_LowerIndexableROMBanks() {
@@ -58,8 +55,8 @@ public class MBC1CartridgeTest {
                 0x02, // 8 ROM banks (128KB)
                 0x03, // 16 ROM banks (256KB)
                 0x04, // 32 ROM banks (512KB)
-                // 0x05, TODO: more rom bank modes, special cases because of how internal wiring works
-                // 0x06,
+                0x05, // 64 ROM banks (1MB)
+                0x06, // 128 ROM banks (2MB)
                 // none exist above 2MB
         };
         for (byte romBankSize : romBankSizes) {
@@ -80,11 +77,14 @@ public class MBC1CartridgeTest {
             // Index into every ROM Bank and try to read a value from bank 0 and bank i
             for (int bankIdx = 1; bankIdx < numRomBanks; bankIdx++) {
                 cartridge.writeByteAt(0x2000, (byte) bankIdx);
+                cartridge.writeByteAt(0x4000, (byte) (bankIdx >> 5));
+                // 0 in the lower bits still selects 1, so banks 0x20, 0x40 and 0x60 read as the bank after them
+                int expectedBank = (bankIdx & 0b11111) == 0 ? bankIdx + 1 : bankIdx;
 
                 // check every byte
                 for (int i = 0x0000; i < 0x3FFF; i++) {
                     // read from bank i
-                    assertEquals((byte) bankIdx, cartridge.readByteAt(0x4000 + i));
+                    assertEquals((byte) expectedBank, cartridge.readByteAt(0x4000 + i));
 
                     // read from bank 0
                     if (i == 0x0147 || i == 0x0148) {
@@ -95,6 +95,7 @@ public class MBC1CartridgeTest {
             }
 
             // Special case: write a 0 to bank index defaults instead to 1
+            cartridge.writeByteAt(0x4000, (byte) 0);
             cartridge.writeByteAt(0x2000, (byte) 0b00000);
             for (int i = 0x0000; i < 0x3FFF; i++) {
                 // should read from bank 1
@@ -151,25 +152,62 @@ public class MBC1CartridgeTest {
     }
 
     /**
-     * Test that ensures advanced banking mode in MBC1 throw an exception.
+     * Test that ensures advanced banking mode on 1MB+ MBC1 cartridges maps the upper bank bits into 0x0000-0x3FFF.
      */
     @Test
-    void test_UnsupportedBankingMode() {
-        // Set up a ROM with CartridgeType.MBC1
-        byte[] romBytes = new byte[0x8000]; // 32KB ROM size
+    void test_AdvancedBankingModeRemapsFirstBank() {
+        byte[] romBytes = new byte[0x100000]; // 1MB ROM size
+        for (int i = 0; i < romBytes.length; i++) {
+            romBytes[i] = (byte) (i / Cartridge.ROM_BANK_SIZE);
+        }
         romBytes[0x0147] = 0x01; // CartridgeType.MBC1
-        romBytes[0x0148] = 0x00; // Two ROM banks (32KB total)
-
-        // Create a Cartridge instance
+        romBytes[0x0148] = 0x05; // 64 ROM banks (1MB total)
         Cartridge cartridge = new MBC1Cartridge(romBytes);
+        int[] fixedBankSwitches = {-1};
+        cartridge.addBankSwitchListener(new IBankSwitchListener() {
+            @Override
+            public void onRomBankSwitched(int bank) {
+            }
 
-        // Attempt to enable unsupported banking mode
-        UnsupportedOperationException exception = assertThrows(UnsupportedOperationException.class, () ->
-                cartridge.writeByteAt(0x6000, (byte) 0x01) // Advanced banking mode unsupported
-        );
+            @Override
+            public void onFixedRomBankSwitched(int bank) {
+                fixedBankSwitches[0] = bank;
+            }
+        });
 
-        // Verify the exception message content
-        assertEquals("Cartridge does not yet support advanced banking mode.", exception.getMessage());
+        cartridge.writeByteAt(0x2000, (byte) 0x03);
+        cartridge.writeByteAt(0x4000, (byte) 0x01);
+        // normal mode, upper bits only reach 0x4000-0x7FFF
+        assertEquals(0, cartridge.readByteAt(0x1000));
+        assertEquals(0x23, cartridge.readByteAt(0x4000));
+        assertEquals(-1, fixedBankSwitches[0]);
+
+        cartridge.writeByteAt(0x6000, (byte) 0x01);
+        assertEquals(0x20, cartridge.readByteAt(0x1000));
+        assertEquals(0x20, cartridge.getFixedRomBank());
+        assertEquals(0x20, fixedBankSwitches[0]);
+        assertEquals(0x23, cartridge.readByteAt(0x4000));
+
+        cartridge.writeByteAt(0x6000, (byte) 0x00);
+        assertEquals(0, cartridge.readByteAt(0x1000));
+        assertEquals(0, fixedBankSwitches[0]);
+    }
+
+    /**
+     * Test that ensures advanced banking mode leaves bank 0 at 0x0000-0x3FFF on ROMs up to 512KB.
+     */
+    @Test
+    void test_AdvancedBankingModeKeepsFirstBankOnSmallRoms() {
+        byte[] romBytes = new byte[0x80000]; // 512KB ROM size
+        romBytes[0x0147] = 0x01; // CartridgeType.MBC1
+        romBytes[0x0148] = 0x04; // 32 ROM banks
+        romBytes[0x1000] = 0x42;
+        Cartridge cartridge = new MBC1Cartridge(romBytes);
+
+        cartridge.writeByteAt(0x4000, (byte) 0x03);
+        cartridge.writeByteAt(0x6000, (byte) 0x01);
+        assertEquals(0, cartridge.getFixedRomBank());
+        assertEquals(0x42, cartridge.readByteAt(0x1000));
     }
 
     /**
@@ -190,4 +228,58 @@ public class MBC1CartridgeTest {
         // Verify the exception message content
         assertEquals("Mismatch between MBC1Cartridge constructor and underlying cartridge type in ROM", exception.getMessage());
     }
+
+    /**
+     * Test that ensures the ROM is used in place and bank switching only moves the offset into it.
+     */
+    @Test
+    void test_RomIsNotCopied() {
+        byte[] romBytes = new byte[0x10000]; // 64KB ROM
+        romBytes[0x0147] = 0x01; // CartridgeType.MBC1
+        romBytes[0x0148] = 0x01; // 4 ROM banks (64KB)
+        romBytes[0xC123] = 0x77;
+
+        Cartridge cartridge = Cartridge.createCartridge(romBytes);
+        assertSame(romBytes, cartridge.getRomMemory());
+        assertEquals(0x4000, cartridge.getActiveRomBankOffset());
+
+        cartridge.writeByteAt(0x2000, (byte) 3);
+        assertEquals(0xC000, cartridge.getActiveRomBankOffset());
+        assertEquals((byte) 0x77, cartridge.readByteAt(0x4123));
+    }
+
+    /**
+     * Test that ensures MBC1 RAM is only accessible while enabled, and banked in advanced banking mode.
+     */
+    @Test
+    void test_BankedRam() {
+        byte[] romBytes = new byte[0x10000]; // 64KB ROM
+        romBytes[0x0147] = 0x03; // MBC1+RAM+BATTERY
+        romBytes[0x0148] = 0x01; // 4 ROM banks (64KB)
+        romBytes[0x0149] = 0x03; // 4 RAM banks (32KB)
+
+        Cartridge cartridge = new MBC1Cartridge(romBytes);
+        cartridge.writeByteAt(0xA000, (byte) 0x12);
+        assertEquals((byte) 0xFF, cartridge.readByteAt(0xA000));
+
+        cartridge.writeByteAt(0x0000, (byte) 0x0A);
+        cartridge.writeByteAt(0xA000, (byte) 0x12);
+        assertEquals((byte) 0x12, cartridge.readByteAt(0xA000));
+
+        // advanced banking mode, RAM bank 2
+        cartridge.writeByteAt(0x6000, (byte) 0x01);
+        cartridge.writeByteAt(0x4000, (byte) 0x02);
+        assertEquals(0x4000, cartridge.getActiveRamBankOffset());
+        assertEquals((byte) 0x00, cartridge.readByteAt(0xA000));
+        cartridge.writeByteAt(0xBFFF, (byte) 0x34);
+        assertEquals((byte) 0x34, cartridge.getRamMemory()[0x5FFF]);
+
+        // back to RAM bank 0, and the upper bits don't change the ROM bank of a 64KB ROM
+        cartridge.writeByteAt(0x6000, (byte) 0x00);
+        assertEquals((byte) 0x12, cartridge.readByteAt(0xA000));
+        assertEquals(1, cartridge.getActiveRomBank());
+
+        cartridge.writeByteAt(0x0000, (byte) 0x00);
+        assertEquals((byte) 0xFF, cartridge.readByteAt(0xA000));
+    }
 }
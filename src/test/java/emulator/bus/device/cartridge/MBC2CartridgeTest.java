@@ -0,0 +1,46 @@
+package emulator.bus.device.cartridge;
+
+import emulator.utils.TestRom;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MBC2CartridgeTest {
+    private static byte[] createRom() {
+        // MBC2+BATTERY, 16 ROM banks (256KB)
+        return TestRom.ofType(0x06, 0x03).bankNumbered().build();
+    }
+
+    /**
+     * Test that ensures address bit 8 picks between the RAM enable and ROM bank registers.
+     */
+    @Test
+    void test_RegisterSelectedByAddressBit8() {
+        Cartridge cartridge = new MBC2Cartridge(createRom());
+        cartridge.writeByteAt(0x2100, (byte) 0x0F);
+        assertEquals((byte) 15, cartridge.readByteAt(0x4000));
+        cartridge.writeByteAt(0x0100, (byte) 0x00);
+        assertEquals((byte) 1, cartridge.readByteAt(0x4000));
+
+        // bit 8 clear: RAM enable, the ROM bank stays
+        cartridge.writeByteAt(0x2000, (byte) 0x0A);
+        assertEquals((byte) 1, cartridge.readByteAt(0x4000));
+        assertTrue(cartridge.isRamEnabled());
+    }
+
+    /**
+     * Test that ensures the half byte RAM keeps only the low nibble and repeats every 512 bytes.
+     */
+    @Test
+    void test_HalfByteRam() {
+        Cartridge cartridge = new MBC2Cartridge(createRom());
+        cartridge.writeByteAt(0x0000, (byte) 0x0A);
+        assertEquals((byte) 0xF0, cartridge.readByteAt(0xA000));
+
+        cartridge.writeByteAt(0xA001, (byte) 0x5C);
+        assertEquals((byte) 0xFC, cartridge.readByteAt(0xA001));
+        assertEquals((byte) 0xFC, cartridge.readByteAt(0xA201));
+        assertEquals((byte) 0xFC, cartridge.readByteAt(0xBE01));
+    }
+}
@@ -0,0 +1,111 @@
+package emulator.bus.device.cartridge;
+
+import emulator.utils.TestRom;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MBC3CartridgeTest {
+    @TempDir
+    Path tempDir;
+
+    private static byte[] createRom() {
+        // MBC3+TIMER+RAM+BATTERY, 128 ROM banks (2MB), 4 RAM banks (32KB)
+        return TestRom.ofType(0x10, 0x06).ramSizeCode(0x03).bankNumbered().build();
+    }
+
+    /**
+     * Test that ensures all 7 bits of the ROM bank number are used, with 0 still selecting bank 1.
+     */
+    @Test
+    void test_RomBanks() {
+        Cartridge cartridge = new MBC3Cartridge(createRom());
+        cartridge.writeByteAt(0x2000, (byte) 0x7F);
+        assertEquals((byte) 127, cartridge.readByteAt(0x4000));
+        cartridge.writeByteAt(0x2000, (byte) 0x21);
+        assertEquals((byte) 33, cartridge.readByteAt(0x7FFF));
+        cartridge.writeByteAt(0x2000, (byte) 0x00);
+        assertEquals((byte) 1, cartridge.readByteAt(0x4000));
+    }
+
+    /**
+     * Test that ensures RAM banks are selected directly, and selecting an RTC register unmaps the RAM.
+     */
+    @Test
+    void test_RamBanksAndRtcSelect() {
+        Cartridge cartridge = new MBC3Cartridge(createRom());
+        cartridge.writeByteAt(0x0000, (byte) 0x0A);
+        cartridge.writeByteAt(0x4000, (byte) 0x03);
+        cartridge.writeByteAt(0xA010, (byte) 0x42);
+        assertEquals((byte) 0x42, cartridge.getRamMemory()[0x6010]);
+
+        cartridge.writeByteAt(0x4000, (byte) 0x08);
+        assertFalse(cartridge.isRamEnabled());
+        cartridge.writeByteAt(0xA010, (byte) 0x11);
+        assertEquals((byte) 0x42, cartridge.getRamMemory()[0x6010]);
+
+        cartridge.writeByteAt(0x4000, (byte) 0x03);
+        assertTrue(cartridge.isRamEnabled());
+        assertEquals((byte) 0x42, cartridge.readByteAt(0xA010));
+    }
+
+    /**
+     * Test that ensures the clock runs on the master clock and is read through the latch.
+     */
+    @Test
+    void test_RtcOnMasterClock() {
+        long[] clockCycles = {0};
+        MBC3Cartridge cartridge = new MBC3Cartridge(createRom());
+        cartridge.setMasterClock(() -> clockCycles[0]);
+        cartridge.writeByteAt(0x0000, (byte) 0x0A);
+        cartridge.writeByteAt(0x4000, (byte) 0x09); // minutes
+
+        clockCycles[0] = 125 * RealTimeClock.CLOCK_CYCLES_PER_SECOND;
+        assertEquals((byte) 0x00, cartridge.readByteAt(0xA000));
+        cartridge.writeByteAt(0x6000, (byte) 0x00);
+        cartridge.writeByteAt(0x6000, (byte) 0x01);
+        assertEquals((byte) 2, cartridge.readByteAt(0xA000));
+
+        cartridge.writeByteAt(0x4000, (byte) 0x08); // seconds
+        assertEquals((byte) 5, cartridge.readByteAt(0xA000));
+    }
+
+    /**
+     * Test that ensures a cartridge with a clock but no RAM creates its save file and keeps the clock in it.
+     */
+    @Test
+    void test_RtcStateSurvivesInNewSaveFile() throws IOException {
+        // MBC3+TIMER+BATTERY, no RAM
+        byte[] romBytes = TestRom.ofType(0x0F, 0x06).build();
+        Path saveFile = tempDir.resolve("game.sav");
+
+        long[] clockCycles = {0};
+        MBC3Cartridge cartridge = new MBC3Cartridge(romBytes);
+        cartridge.setMasterClock(() -> clockCycles[0]);
+        cartridge.attachSaveFile(saveFile);
+        clockCycles[0] = 3723 * RealTimeClock.CLOCK_CYCLES_PER_SECOND; // 1:02:03
+        cartridge.close();
+        assertEquals(RealTimeClock.STATE_SIZE, Files.size(saveFile));
+
+        MBC3Cartridge restored = new MBC3Cartridge(romBytes);
+        restored.setMasterClock(() -> 0);
+        restored.attachSaveFile(saveFile);
+        restored.writeByteAt(0x0000, (byte) 0x0A);
+        restored.writeByteAt(0x6000, (byte) 0x00);
+        restored.writeByteAt(0x6000, (byte) 0x01);
+        restored.writeByteAt(0x4000, (byte) 0x0A); // hours
+        assertEquals((byte) 1, restored.readByteAt(0xA000));
+        restored.writeByteAt(0x4000, (byte) 0x09); // minutes
+        assertEquals((byte) 2, restored.readByteAt(0xA000));
+        restored.writeByteAt(0x4000, (byte) 0x08); // seconds
+        assertEquals((byte) 3, restored.readByteAt(0xA000));
+        restored.close();
+    }
+}
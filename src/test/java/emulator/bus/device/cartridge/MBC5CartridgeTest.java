@@ -0,0 +1,55 @@
+package emulator.bus.device.cartridge;
+
+import emulator.utils.TestRom;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class MBC5CartridgeTest {
+    private static byte[] createRom() {
+        // MBC5+RAM+BATTERY, 512 ROM banks (8MB), 16 RAM banks (128KB)
+        TestRom rom = TestRom.ofType(0x1B, 0x08).ramSizeCode(0x04);
+        for (int bank = 0; bank < 512; bank++) {
+            // bank number, low byte first
+            rom.at(bank * 0x4000 + 0x100, (byte) bank, (byte) (bank >> 8));
+        }
+        return rom.build();
+    }
+
+    private static int mappedBank(Cartridge cartridge) {
+        return (cartridge.readByteAt(0x4100) & 0xFF) | (cartridge.readByteAt(0x4101) & 0xFF) << 8;
+    }
+
+    /**
+     * Test that ensures the 9 bit ROM bank number reaches all 512 banks, including bank 0.
+     */
+    @Test
+    void test_RomBanks() {
+        Cartridge cartridge = new MBC5Cartridge(createRom());
+        assertEquals(1, mappedBank(cartridge));
+        cartridge.writeByteAt(0x2000, (byte) 0xFF);
+        cartridge.writeByteAt(0x3000, (byte) 0x01);
+        assertEquals(511, mappedBank(cartridge));
+        assertEquals(511 * 0x4000, cartridge.getActiveRomBankOffset());
+        cartridge.writeByteAt(0x3000, (byte) 0x00);
+        assertEquals(255, mappedBank(cartridge));
+        cartridge.writeByteAt(0x2000, (byte) 0x00);
+        assertEquals(0, mappedBank(cartridge));
+    }
+
+    /**
+     * Test that ensures all 16 RAM banks can be selected.
+     */
+    @Test
+    void test_RamBanks() {
+        Cartridge cartridge = new MBC5Cartridge(createRom());
+        cartridge.writeByteAt(0x0000, (byte) 0x0A);
+        for (int bank = 0; bank < 16; bank++) {
+            cartridge.writeByteAt(0x4000, (byte) bank);
+            cartridge.writeByteAt(0xA000, (byte) (bank + 1));
+        }
+        for (int bank = 0; bank < 16; bank++) {
+            assertEquals((byte) (bank + 1), cartridge.getRamMemory()[bank * 0x2000]);
+        }
+    }
+}
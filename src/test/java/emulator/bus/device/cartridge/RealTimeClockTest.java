@@ -0,0 +1,88 @@
+package emulator.bus.device.cartridge;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static emulator.bus.device.cartridge.RealTimeClock.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RealTimeClockTest {
+    private final long[] now = {0};
+
+    private RealTimeClock createClock() {
+        RealTimeClock rtc = new RealTimeClock();
+        rtc.setTimeSource(() -> now[0]);
+        return rtc;
+    }
+
+    private void advanceSeconds(long seconds) {
+        now[0] += seconds * CLOCK_CYCLES_PER_SECOND;
+    }
+
+    @Test
+    void testRegistersFollowTheTimeSourceOnLatch() {
+        RealTimeClock rtc = createClock();
+        advanceSeconds(3 * 86_400 + 5 * 3600 + 7 * 60 + 9);
+        assertEquals(0, rtc.readRegister(SECONDS));
+
+        rtc.latch();
+        assertEquals(9, rtc.readRegister(SECONDS));
+        assertEquals(7, rtc.readRegister(MINUTES));
+        assertEquals(5, rtc.readRegister(HOURS));
+        assertEquals(3, rtc.readRegister(DAYS_LOW));
+        assertEquals(0, rtc.readRegister(DAYS_HIGH));
+
+        // latched values hold until the next latch
+        advanceSeconds(1);
+        assertEquals(9, rtc.readRegister(SECONDS));
+    }
+
+    @Test
+    void testHaltStopsTheClock() {
+        RealTimeClock rtc = createClock();
+        advanceSeconds(10);
+        rtc.writeRegister(DAYS_HIGH, (byte) 0x40);
+        advanceSeconds(100);
+        rtc.latch();
+        assertEquals(10, rtc.readRegister(SECONDS));
+        assertEquals(0x40, rtc.readRegister(DAYS_HIGH));
+
+        rtc.writeRegister(DAYS_HIGH, (byte) 0x00);
+        advanceSeconds(5);
+        rtc.latch();
+        assertEquals(15, rtc.readRegister(SECONDS));
+    }
+
+    @Test
+    void testDayCounterCarry() {
+        RealTimeClock rtc = createClock();
+        rtc.writeRegister(DAYS_LOW, (byte) 0xFF);
+        rtc.writeRegister(DAYS_HIGH, (byte) 0x01);
+        rtc.writeRegister(HOURS, (byte) 23);
+        rtc.writeRegister(MINUTES, (byte) 59);
+        rtc.writeRegister(SECONDS, (byte) 59);
+        advanceSeconds(2);
+        rtc.latch();
+        assertEquals(1, rtc.readRegister(SECONDS));
+        assertEquals(0, rtc.readRegister(DAYS_LOW));
+        assertEquals((byte) 0x80, rtc.readRegister(DAYS_HIGH));
+    }
+
+    @Test
+    void testStateRoundTrip() {
+        RealTimeClock rtc = createClock();
+        advanceSeconds(90_061);
+        rtc.latch();
+        ByteBuffer state = ByteBuffer.allocate(STATE_SIZE);
+        rtc.writeState(state);
+
+        RealTimeClock restored = createClock();
+        restored.readState(state.flip(), false);
+        assertEquals(1, restored.readRegister(SECONDS));
+        assertEquals(1, restored.readRegister(DAYS_LOW));
+        restored.latch();
+        assertEquals(1, restored.readRegister(MINUTES));
+        assertEquals(1, restored.readRegister(HOURS));
+    }
+}
@@ -0,0 +1,86 @@
+package emulator.bus.device.cartridge;
+
+import emulator.utils.TestRom;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RomRepositoryTest {
+    private static byte[] createRom(byte fill) {
+        // MBC1, 4 ROM banks (64KB)
+        return TestRom.ofType(0x01, 0x01).fill(fill).build();
+    }
+
+    @Test
+    void testSameContentSharesOneImage() {
+        RomRepository repository = new RomRepository();
+        byte[] first = createRom((byte) 0x11);
+        byte[] second = createRom((byte) 0x11);
+
+        RomImage firstImage = repository.acquire(first);
+        RomImage secondImage = repository.acquire(second);
+        assertSame(firstImage, secondImage);
+        assertEquals(1, repository.getImageCount());
+        assertEquals(2, repository.getReferenceCount(firstImage));
+
+        Cartridge firstCartridge = Cartridge.createCartridge(firstImage);
+        Cartridge secondCartridge = Cartridge.createCartridge(secondImage);
+        assertSame(first, firstCartridge.getRomMemory());
+        assertSame(first, secondCartridge.getRomMemory());
+
+        // bank state stays per cartridge
+        secondCartridge.writeByteAt(0x2000, (byte) 3);
+        assertEquals(1, firstCartridge.getActiveRomBank());
+        assertEquals(3, secondCartridge.getActiveRomBank());
+
+        firstCartridge.close();
+        assertEquals(1, repository.getImageCount());
+        secondCartridge.close();
+        assertEquals(0, repository.getImageCount());
+        assertEquals(0, repository.getReferenceCount(firstImage));
+    }
+
+    @Test
+    void testShortRomIsPaddedOnceForAllCartridges() {
+        RomRepository repository = new RomRepository();
+        // the header says 64KB, the file stops after 32KB
+        byte[] romBytes = Arrays.copyOf(createRom((byte) 0x11), 0x8000);
+        Cartridge firstCartridge = Cartridge.createCartridge(repository.acquire(romBytes));
+        Cartridge secondCartridge = Cartridge.createCartridge(repository.acquire(romBytes));
+
+        assertEquals(0x10000, firstCartridge.getRomMemory().length);
+        assertSame(firstCartridge.getRomMemory(), secondCartridge.getRomMemory());
+        firstCartridge.writeByteAt(0x2000, (byte) 3);
+        assertEquals((byte) 0x00, firstCartridge.readByteAt(0x4000));
+
+        firstCartridge.close();
+        secondCartridge.close();
+        assertEquals(0, repository.getImageCount());
+    }
+
+    @Test
+    void testDifferentContentGetsItsOwnImage() {
+        RomRepository repository = new RomRepository();
+        RomImage firstImage = repository.acquire(createRom((byte) 0x11));
+        RomImage secondImage = repository.acquire(createRom((byte) 0x22));
+        assertNotSame(firstImage, secondImage);
+        assertNotEquals(firstImage.getKey(), secondImage.getKey());
+        assertEquals(2, repository.getImageCount());
+
+        firstImage.release();
+        assertThrows(IllegalStateException.class, firstImage::release);
+    }
+
+    @Test
+    void testUnsupportedRomGivesItsReferenceBack() {
+        RomRepository repository = new RomRepository();
+        byte[] romBytes = createRom((byte) 0);
+        romBytes[0x0147] = 0x20; // MBC6
+        RomImage image = repository.acquire(romBytes);
+
+        assertThrows(IllegalArgumentException.class, () -> Cartridge.createCartridge(image));
+        assertEquals(0, repository.getImageCount());
+    }
+}
@@ -0,0 +1,161 @@
+package emulator.cpu;
+
+import emulator.cpu.register.FlagRegister;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks every entry of the ALU tables against the plain arithmetic they replaced.
+ */
+public class AluTest {
+
+    @Test
+    void testOperatorsMatchArithmetic() {
+        for (Operator operator : Operator.values()) {
+            for (int carry = 0; carry <= 1; carry++) {
+                for (int a = 0; a < 256; a++) {
+                    for (int b = 0; b < 256; b++) {
+                        int packed = Alu.apply(operator, a, b, carry);
+                        int expectedResult = expectedResult(operator, a, b, carry);
+
+                        FlagRegister flags = new FlagRegister((byte) 0x00);
+                        flags.setZ(expectedResult == 0);
+                        flags.setN(operator == Operator.SUB || operator == Operator.SBC || operator == Operator.CP);
+                        flags.setH(expectedHalfCarry(operator, a, b, carry));
+                        flags.setC(expectedCarry(operator, a, b, carry));
+
+                        int left = a, right = b, carryIn = carry;
+                        Supplier<String> message = () -> operator + " " + left + ", " + right + " carry " + carryIn;
+                        assertEquals(expectedResult, Alu.result(packed), message);
+                        assertEquals(flags.getValue() & 0xFF, Alu.flags(packed), message);
+                        assertEquals((byte) expectedResult, operator.apply((byte) a, (byte) b, carry), message);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void testFlagRegisterSettersRouteThroughTables() {
+        FlagRegister flags = new FlagRegister((byte) 0x00);
+
+        flags.setH((byte) 0x0F, (byte) 0x01, Operator.ADD);
+        flags.setC((byte) 0xFF, (byte) 0x01, Operator.ADD);
+        flags.setN(Operator.ADD);
+        assertEquals((byte) 0b0011_0000, flags.getValue());
+
+        flags.setH((byte) 0x10, (byte) 0x01, Operator.SUB);
+        flags.setC((byte) 0x10, (byte) 0x01, Operator.SUB);
+        flags.setN(Operator.SUB);
+        assertEquals((byte) 0b0110_0000, flags.getValue());
+
+        flags.setH((byte) 0x0F, (byte) 0x00, 1, Operator.ADC);
+        flags.setC((byte) 0x00, (byte) 0xFF, 1, Operator.SBC);
+        flags.setN(Operator.AND);
+        assertEquals((byte) 0b0011_0000, flags.getValue());
+    }
+
+    @Test
+    void testIncrementDecrement() {
+        for (int value = 0; value < 256; value++) {
+            int incremented = (value + 1) & 0xFF;
+            int expectedIncFlags = (incremented == 0 ? FlagRegister.Z_FLAG : 0)
+                    | ((value & 0xF) == 0xF ? FlagRegister.H_FLAG : 0);
+            assertEquals(incremented, Alu.result(Alu.increment(value)));
+            assertEquals(expectedIncFlags, Alu.flags(Alu.increment(value)));
+
+            int decremented = (value - 1) & 0xFF;
+            int expectedDecFlags = (decremented == 0 ? FlagRegister.Z_FLAG : 0) | FlagRegister.N_FLAG
+                    | ((value & 0xF) == 0 ? FlagRegister.H_FLAG : 0);
+            assertEquals(decremented, Alu.result(Alu.decrement(value)));
+            assertEquals(expectedDecFlags, Alu.flags(Alu.decrement(value)));
+        }
+    }
+
+    @Test
+    void testDaa() {
+        for (int flagBits = 0; flagBits < 16; flagBits++) {
+            int f = flagBits << 4;
+            for (int a = 0; a < 256; a++) {
+                boolean n = (f & FlagRegister.N_FLAG) != 0;
+                boolean h = (f & FlagRegister.H_FLAG) != 0;
+                boolean c = (f & FlagRegister.C_FLAG) != 0;
+                int correction = 0;
+                if (h || (!n && (a & 0x0F) > 9)) {
+                    correction = 0x06;
+                }
+                if (c || (!n && a > 0x99)) {
+                    correction |= 0x60;
+                    c = true;
+                }
+                int expected = (a + (n ? -correction : correction)) & 0xFF;
+                int expectedFlags = (expected == 0 ? FlagRegister.Z_FLAG : 0)
+                        | (n ? FlagRegister.N_FLAG : 0)
+                        | (c ? FlagRegister.C_FLAG : 0);
+
+                int packed = Alu.daa(a, f);
+                assertEquals(expected, Alu.result(packed), "DAA " + a + " flags " + f);
+                assertEquals(expectedFlags, Alu.flags(packed), "DAA " + a + " flags " + f);
+            }
+        }
+    }
+
+    @Test
+    void testShifts() {
+        for (int carry = 0; carry <= 1; carry++) {
+            for (int value = 0; value < 256; value++) {
+                assertShift(Alu.RLC, value, carry, (value << 1 | value >>> 7) & 0xFF, value & 0x80);
+                assertShift(Alu.RRC, value, carry, (value >>> 1 | value << 7) & 0xFF, value & 0x01);
+                assertShift(Alu.RL, value, carry, (value << 1 | carry) & 0xFF, value & 0x80);
+                assertShift(Alu.RR, value, carry, value >>> 1 | carry << 7, value & 0x01);
+                assertShift(Alu.SLA, value, carry, (value << 1) & 0xFF, value & 0x80);
+                assertShift(Alu.SRA, value, carry, value >>> 1 | value & 0x80, value & 0x01);
+                assertShift(Alu.SWAP, value, carry, (value << 4 | value >>> 4) & 0xFF, 0);
+                assertShift(Alu.SRL, value, carry, value >>> 1, value & 0x01);
+            }
+        }
+    }
+
+    private static void assertShift(int op, int value, int carry, int expected, int carryOut) {
+        int expectedFlags = (expected == 0 ? FlagRegister.Z_FLAG : 0) | (carryOut != 0 ? FlagRegister.C_FLAG : 0);
+        int packed = Alu.shift(op, value, carry);
+        assertEquals(expected, Alu.result(packed), "shift " + op + " of " + value + " carry " + carry);
+        assertEquals(expectedFlags, Alu.flags(packed), "shift " + op + " of " + value + " carry " + carry);
+    }
+
+    private static int expectedResult(Operator operator, int a, int b, int carry) {
+        return switch (operator) {
+            case ADD -> (a + b) & 0xFF;
+            case ADC -> (a + b + carry) & 0xFF;
+            case SUB, CP -> (a - b) & 0xFF;
+            case SBC -> (a - b - carry) & 0xFF;
+            case AND -> a & b;
+            case OR -> a | b;
+            case XOR -> a ^ b;
+        };
+    }
+
+    private static boolean expectedHalfCarry(Operator operator, int a, int b, int carry) {
+        return switch (operator) {
+            case ADD -> (((a & 0xF) + (b & 0xF)) & 0x10) != 0;
+            case ADC -> (((a & 0xF) + (b & 0xF) + carry) & 0x10) != 0;
+            case SUB, CP -> (((a & 0xF) - (b & 0xF)) & 0x10) != 0;
+            case SBC -> (((a & 0xF) - (b & 0xF) - carry) & 0x10) != 0;
+            case AND -> true;
+            case OR, XOR -> false;
+        };
+    }
+
+    private static boolean expectedCarry(Operator operator, int a, int b, int carry) {
+        return switch (operator) {
+            case SUB, CP -> b > a;
+            case SBC -> b + carry > a;
+            case ADD -> a + b > 0xFF;
+            case ADC -> a + b + carry > 0xFF;
+            case AND, OR, XOR -> false;
+        };
+    }
+}
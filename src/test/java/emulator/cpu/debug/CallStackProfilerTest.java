@@ -0,0 +1,112 @@
+package emulator.cpu.debug;
+
+import emulator.Gameboy;
+import emulator.utils.TestRom;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CallStackProfilerTest {
+    private static final SymbolTable SYMBOLS = SymbolTable.parse(List.of(
+            "; File generated by rgblink",
+            "00:0100 Main",
+            "00:0200 FuncA",
+            "00:0300 FuncB",
+            "00:0302 FuncB.wait ; local label",
+            "01:4000 Banked"));
+
+    /**
+     * Main calls FuncA, which calls FuncB, which burns cycles in a countdown.
+     */
+    private static byte[] buildRom() {
+        byte[] main = {
+                (byte) 0xCD, 0x00, 0x02,      // loop: CALL FuncA
+                0x18, (byte) 0xFB,            // JR loop
+        };
+        byte[] funcA = {
+                (byte) 0xCD, 0x00, 0x03,      // CALL FuncB
+                (byte) 0xC9,                  // RET
+        };
+        byte[] funcB = {
+                0x3E, 0x40,                   // LD A, 0x40
+                0x3D,                         // wait: DEC A
+                0x20, (byte) 0xFD,            // JR NZ, wait
+                (byte) 0xC9,                  // RET
+        };
+        return TestRom.romOnly().program(main).at(0x0200, funcA).at(0x0300, funcB).build();
+    }
+
+    private static String collapsed(CallStackProfiler profiler) {
+        StringWriter writer = new StringWriter();
+        profiler.writeCollapsed(writer);
+        return writer.toString();
+    }
+
+    @Test
+    public void testSamplesNamedStacks() {
+        CallStackProfiler profiler = new CallStackProfiler(100, SYMBOLS);
+        Gameboy gameboy = new Gameboy.BusBuilder().cartridge(buildRom()).buildBus().profiler(profiler).buildCpu().build();
+        // samples come from the scheduler, so idle loops can still be skipped
+        assertNotNull(gameboy.getIdleLoopDetector());
+        gameboy.runClockCycles(100_000);
+
+        assertEquals(1000, profiler.getSampleCount());
+        long total = 0;
+        long inFuncB = 0;
+        for (String line : collapsed(profiler).split("\n")) {
+            long count = Long.parseLong(line.substring(line.lastIndexOf(' ') + 1));
+            total += count;
+            if (line.startsWith("FuncA;FuncB ")) {
+                inFuncB = count;
+            }
+        }
+        assertEquals(profiler.getSampleCount(), total);
+        // the countdown is most of every call
+        assertTrue(inFuncB > total * 9 / 10);
+        assertTrue(profiler.getDepth() <= 2);
+    }
+
+    @Test
+    public void testInterruptsAndReturns() {
+        CallStackProfiler profiler = new CallStackProfiler(100, SYMBOLS);
+        profiler.recordInstruction(0x0103, 0xCD, 6, 0x0200, 0xCFEE);
+        profiler.recordInstruction(0x0200, 0xCD, 6, 0x0300, 0xCFEC);
+        profiler.recordInterrupt(0x0050, 0xCFEA);
+        profiler.sample(1);
+        // RETI leaves the interrupt
+        profiler.recordInstruction(0x0050, 0xD9, 4, 0x0302, 0xCFEC);
+        profiler.sample(2);
+        // a not taken conditional call is no frame
+        profiler.recordInstruction(0x0302, 0xC4, 3, 0x0305, 0xCFEC);
+        profiler.sample(3);
+        // returning from FuncB
+        profiler.recordInstruction(0x0305, 0xC9, 4, 0x0203, 0xCFEE);
+        profiler.sample(4);
+        profiler.recordInstruction(0x0203, 0xC9, 4, 0x0106, 0xCFF0);
+        profiler.sample(5);
+        // an unnamed RST target
+        profiler.recordInstruction(0x0106, 0xEF, 4, 0x0028, 0xCFEE);
+        profiler.sample(6);
+
+        assertEquals("""
+                [top level] 5
+                FuncA 4
+                FuncA;FuncB 5
+                FuncA;FuncB;[Timer interrupt] 1
+                00:0028 6
+                """, collapsed(profiler));
+    }
+
+    @Test
+    public void testSymbolLookup() {
+        assertEquals(5, SYMBOLS.size());
+        assertEquals("FuncB", SYMBOLS.nameOf(0, 0x0300));
+        assertEquals("FuncB.wait+0x2", SYMBOLS.nameOf(0, 0x0304));
+        assertEquals("Banked", SYMBOLS.nameOf(1, 0x4000));
+        assertNull(SYMBOLS.nameOf(2, 0x4000));
+        assertNull(SYMBOLS.nameOf(0, 0x0000));
+    }
+}
@@ -0,0 +1,151 @@
+package emulator.cpu.debug;
+
+import emulator.Gameboy;
+import emulator.cpu.ProfilingCPU;
+import emulator.utils.TestRom;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExecutionProfilerTest {
+    private static final int ITERATIONS = 799;
+
+    /**
+     * Loop at 0x0105 calling a subroutine at 0x0200, 5 instructions per iteration.
+     */
+    private static byte[] buildRom() {
+        byte[] program = {
+                0x06, 0x00,                   // LD B, 0
+                (byte) 0xCD, 0x00, 0x02,      // loop: CALL 0x0200
+                0x04,                         // INC B
+                0x18, (byte) 0xFA,            // JR loop
+        };
+        byte[] subroutine = {
+                (byte) 0xCB, 0x37,            // SWAP A
+                (byte) 0xC9,                  // RET
+        };
+        return TestRom.romOnly().program(program).at(0x0200, subroutine).build();
+    }
+
+    private static Gameboy runProfiled(ExecutionProfiler profiler, byte[] romBytes) {
+        Gameboy gameboy = new Gameboy.BusBuilder().cartridge(romBytes).buildBus().profiler(profiler).buildCpu().build();
+        gameboy.runCpuFor(2 + ITERATIONS * 5);
+        return gameboy;
+    }
+
+    @Test
+    public void testCountsOpcodesAndAddresses() {
+        ExecutionProfiler profiler = new ExecutionProfiler();
+        Gameboy gameboy = runProfiled(profiler, buildRom());
+        assertInstanceOf(ProfilingCPU.class, gameboy.getCpu());
+        assertNull(gameboy.getIdleLoopDetector());
+
+        assertEquals(2 + ITERATIONS * 5, profiler.getInstructionCount());
+        assertEquals(ITERATIONS, profiler.getOpcodeCount(0xCD));
+        assertEquals(ITERATIONS, profiler.getPrefixedOpcodeCount(0x37));
+        assertEquals(0, profiler.getOpcodeCount(0xCB));
+        assertEquals(ITERATIONS, profiler.getExecutionCount(0, 0x0105));
+        assertEquals(ITERATIONS * 6L, profiler.getCycles(0, 0x0105));
+        assertEquals(1, profiler.getExecutionCount(0, 0x0100));
+        assertEquals(0, profiler.getExecutionCount(3, 0x4000));
+
+        List<HotSpot> opcodes = profiler.getHotOpcodes(1);
+        assertEquals(1, opcodes.size());
+        assertEquals(0xCD, opcodes.get(0).getStart());
+    }
+
+    @Test
+    public void testCountsHaltedCycles() {
+        byte[] program = {
+                0x3E, 0x05,                   // LD A, 0x05
+                (byte) 0xE0, 0x07,            // LDH (TAC), A: timer on, 16 cycles per tick
+                0x3E, 0x04,                   // LD A, 0x04
+                (byte) 0xE0, (byte) 0xFF,     // LDH (IE), A: timer interrupt
+                (byte) 0xFB,                  // EI
+                0x76,                         // loop: HALT
+                0x18, (byte) 0xFD,            // JR loop
+        };
+        // RETI at the timer vector
+        byte[] romBytes = TestRom.romOnly().program(program).at(0x0050, (byte) 0xD9).build();
+        ExecutionProfiler profiler = new ExecutionProfiler();
+        Gameboy gameboy = new Gameboy.BusBuilder().cartridge(romBytes).buildBus().profiler(profiler).buildCpu().build();
+
+        long machineCycles = gameboy.runClockCycles(100_000).getMachineCycles();
+
+        // an interrupt every 1024 machine cycles, all but a few of them spent halted
+        assertTrue(profiler.getOpcodeCount(0xD9) >= 20);
+        assertTrue(profiler.getHaltedCycles() > machineCycles * 9 / 10);
+        assertTrue(profiler.getHaltedCycles() + profiler.getCycles() <= machineCycles);
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        profiler.writeReport(new PrintStream(report), 5);
+        assertTrue(report.toString().contains(profiler.getHaltedCycles() + " more halted"));
+    }
+
+    @Test
+    public void testRanksLoopsAndSubroutines() {
+        ExecutionProfiler profiler = new ExecutionProfiler();
+        runProfiled(profiler, buildRom());
+
+        HotSpot loop = profiler.getHotLoops(10).get(0);
+        assertEquals(0x0105, loop.getStart());
+        assertEquals(0x0109, loop.getEnd());
+        assertEquals(ITERATIONS, loop.getCount());
+        // CALL + INC + JR, the subroutine is outside the loop body
+        assertEquals(ITERATIONS * 10L, loop.getCycles());
+
+        List<HotSpot> subroutines = profiler.getHotSubroutines(10);
+        assertEquals(1, subroutines.size());
+        assertEquals(0x0200, subroutines.get(0).getStart());
+        assertEquals(ITERATIONS, subroutines.get(0).getCount());
+        // SWAP A + RET
+        assertEquals(ITERATIONS * 6L, subroutines.get(0).getCycles());
+    }
+
+    @Test
+    public void testProfiledRunMatchesPlainRun() {
+        byte[] romBytes = buildRom();
+        Gameboy profiled = runProfiled(new ExecutionProfiler(), romBytes);
+        Gameboy plain = new Gameboy.BusBuilder().cartridge(romBytes).buildBus().buildCpu().build();
+        plain.runCpuFor(2 + ITERATIONS * 5);
+
+        assertEquals(plain.getRegisters().getBC().getValue(), profiled.getRegisters().getBC().getValue());
+        assertEquals(plain.getRegisters().getPC().getValue(), profiled.getRegisters().getPC().getValue());
+        assertEquals(plain.getScheduler().getNow(), profiled.getScheduler().getNow());
+    }
+
+    @Test
+    public void testReportAndExport(@TempDir Path directory) throws IOException {
+        ExecutionProfiler profiler = new ExecutionProfiler();
+        runProfiled(profiler, buildRom());
+
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        profiler.writeReport(new PrintStream(report), 5);
+        assertTrue(report.toString().contains("00:0105-0109"));
+        assertTrue(report.toString().contains("CB37"));
+
+        Path csv = directory.resolve("profile.csv");
+        profiler.exportCsv(csv);
+        List<String> lines = Files.readAllLines(csv);
+        assertEquals("kind,bank,start,end,count,cycles", lines.get(0));
+        assertTrue(lines.contains("subroutine,0,0200,0200," + ITERATIONS + "," + ITERATIONS * 6));
+
+        profiler.reset();
+        assertEquals(0, profiler.getInstructionCount());
+        assertTrue(profiler.getHotLoops(10).isEmpty());
+    }
+
+    @Test
+    public void testRecompilerCantBeProfiled() {
+        Gameboy.CpuBuilder builder = new Gameboy.BusBuilder().cartridge(buildRom()).buildBus()
+                .profiler(new ExecutionProfiler()).dynamicRecompiler();
+        assertThrows(IllegalStateException.class, builder::buildCpu);
+    }
+}
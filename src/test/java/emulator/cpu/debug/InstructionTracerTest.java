@@ -0,0 +1,123 @@
+package emulator.cpu.debug;
+
+import emulator.Gameboy;
+import emulator.utils.TestRom;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InstructionTracerTest {
+    private static final int INSTRUCTIONS = 5000;
+
+    /**
+     * INC B in a loop, with a CB prefixed instruction to have something in every PCMEM byte.
+     */
+    private static byte[] buildRom() {
+        byte[] program = {
+                0x04,                         // loop: INC B
+                (byte) 0xCB, 0x37,            // SWAP A
+                0x18, (byte) 0xFB,            // JR loop
+        };
+        return TestRom.romOnly().program(program).build();
+    }
+
+    private static void runTraced(Path file, int capacity) throws IOException {
+        try (InstructionTracer tracer = new InstructionTracer(file, capacity)) {
+            Gameboy gameboy = new Gameboy.BusBuilder().cartridge(buildRom()).buildBus().tracer(tracer).buildCpu().build();
+            assertNull(gameboy.getIdleLoopDetector());
+            gameboy.runCpuFor(INSTRUCTIONS);
+            assertEquals(INSTRUCTIONS, tracer.getRecordCount());
+        }
+    }
+
+    @Test
+    public void testRecordsEveryInstructionThroughASmallRing(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("trace.bin");
+        // far smaller than the trace, the emulator has to wait for the drain over and over
+        runTraced(file, 16);
+        assertEquals(InstructionTracer.HEADER_SIZE + (long) INSTRUCTIONS * TraceRecord.SIZE, Files.size(file));
+
+        TraceRecord record = new TraceRecord();
+        try (TraceReader reader = new TraceReader(file)) {
+            assertEquals(INSTRUCTIONS, reader.getRecordCount());
+            assertTrue(reader.next(record));
+            assertEquals(0x0100, record.getPC());
+            assertEquals(0, record.getCycle());
+
+            long previousCycle = 0;
+            for (int i = 1; i < INSTRUCTIONS; i++) {
+                assertTrue(reader.next(record));
+                int expectedPc = new int[]{0x0103, 0x0104, 0x0106}[(i - 1) % 3];
+                assertEquals(expectedPc, record.getPC());
+                assertTrue(record.getCycle() > previousCycle);
+                previousCycle = record.getCycle();
+                if (expectedPc == 0x0103) {
+                    // INC B has run once per earlier iteration
+                    assertEquals((i - 1) / 3 & 0xFF, record.getBC() >> 8);
+                }
+            }
+            assertFalse(reader.next(record));
+        }
+    }
+
+    @Test
+    public void testRendersTextFormats(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("trace.bin");
+        runTraced(file, InstructionTracer.DEFAULT_CAPACITY);
+
+        StringWriter doctor = new StringWriter();
+        TraceRenderer.render(file, doctor, TraceFormat.GAMEBOY_DOCTOR);
+        String[] lines = doctor.toString().split("\n");
+        assertEquals(INSTRUCTIONS, lines.length);
+        assertEquals("A:01 F:B0 B:00 C:13 D:00 E:D8 H:01 L:4D SP:FFFE PC:0100 PCMEM:31,F0,CF,04", lines[0]);
+        assertEquals("A:01 F:B0 B:00 C:13 D:00 E:D8 H:01 L:4D SP:CFF0 PC:0103 PCMEM:04,CB,37,18", lines[1]);
+
+        StringWriter logger = new StringWriter();
+        TraceRenderer.render(file, logger, TraceFormat.INSTRUCTION_LOGGER);
+        assertTrue(logger.toString().startsWith(
+                "A: 01 F: B0 B: 00 C: 13 D: 00 E: D8 H: 01 L: 4D SP: FFFE PC: 00:0100 (31 F0 CF 04)\n"));
+    }
+
+    @Test
+    public void testReadsTraceThatWasNeverClosed(@TempDir Path directory) throws IOException, InterruptedException {
+        Path file = directory.resolve("trace.bin");
+        try (InstructionTracer tracer = new InstructionTracer(file, 16)) {
+            Gameboy gameboy = new Gameboy.BusBuilder().cartridge(buildRom()).buildBus().tracer(tracer).buildCpu().build();
+            gameboy.runCpuFor(INSTRUCTIONS);
+
+            // the mapped chunk makes the file far longer than the records, only the header knows how many there are
+            long deadline = System.nanoTime() + 10_000_000_000L;
+            long recordCount;
+            do {
+                Thread.sleep(1);
+                try (TraceReader reader = new TraceReader(file)) {
+                    recordCount = reader.getRecordCount();
+                }
+            } while (recordCount < INSTRUCTIONS && System.nanoTime() < deadline);
+            assertEquals(INSTRUCTIONS, recordCount);
+            assertTrue(Files.size(file) > InstructionTracer.HEADER_SIZE + (long) INSTRUCTIONS * TraceRecord.SIZE);
+
+            TraceRecord record = new TraceRecord();
+            try (TraceReader reader = new TraceReader(file)) {
+                for (int i = 0; i < INSTRUCTIONS; i++) {
+                    assertTrue(reader.next(record));
+                    assertNotEquals(0, record.getPC());
+                }
+                assertFalse(reader.next(record));
+            }
+        }
+    }
+
+    @Test
+    public void testRejectsOtherFiles(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("not-a-trace.bin");
+        Files.write(file, new byte[64]);
+        assertThrows(IOException.class, () -> new TraceReader(file));
+    }
+}
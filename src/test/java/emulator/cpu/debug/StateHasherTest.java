@@ -0,0 +1,141 @@
+package emulator.cpu.debug;
+
+import emulator.Gameboy;
+import emulator.utils.TestRom;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StateHasherTest {
+    private static final int INTERVAL = 10_000;
+    private static final long RUN_CYCLES = 200L * INTERVAL;
+
+    /**
+     * Spins on an HRAM flag set by the timer interrupt, then writes a counter to the next WRAM address.
+     */
+    private static byte[] buildRom() {
+        byte[] program = {
+                0x21, 0x00, (byte) 0xC0,      // LD HL, 0xC000
+                0x3E, (byte) 0xF0,            // LD A, 0xF0
+                (byte) 0xE0, 0x05,            // LDH (TIMA), A
+                0x3E, 0x05,                   // LD A, 0b101 (enabled, 16 cycles per tick)
+                (byte) 0xE0, 0x07,            // LDH (TAC), A
+                0x3E, 0x04,                   // LD A, timer
+                (byte) 0xE0, (byte) 0xFF,     // LDH (IE), A
+                (byte) 0xAF,                  // XOR A
+                (byte) 0xE0, 0x0F,            // LDH (IF), A
+                (byte) 0xFB,                  // EI
+                (byte) 0xF0, (byte) 0x80,     // loop: LDH A, (0x80)
+                (byte) 0xA7,                  // AND A
+                0x28, (byte) 0xFB,            // JR Z, loop
+                (byte) 0xAF,                  // XOR A
+                (byte) 0xE0, (byte) 0x80,     // LDH (0x80), A
+                0x04,                         // INC B
+                0x70,                         // LD (HL), B
+                0x23,                         // INC HL
+                0x7C,                         // LD A, H
+                (byte) 0xE6, (byte) 0xDF,     // AND 0xDF, wrapping 0xE0 back to 0xC0
+                0x67,                         // LD H, A
+                0x18, (byte) 0xEE,            // JR loop
+        };
+        byte[] handler = {
+                (byte) 0xF5,                  // PUSH AF
+                0x3E, 0x01,                   // LD A, 1
+                (byte) 0xE0, (byte) 0x80,     // LDH (0x80), A
+                (byte) 0xF1,                  // POP AF
+                (byte) 0xD9,                  // RETI
+        };
+        return TestRom.romOnly().program(program).at(0x50, handler).build();
+    }
+
+    private static StateHashLog writeLog(Path file, boolean optimised, long pokeAt) throws IOException {
+        try (StateHasher hasher = new StateHasher(file, INTERVAL)) {
+            Gameboy gameboy = new Gameboy.BusBuilder().cartridge(buildRom()).buildBus()
+                    .superinstructions(optimised).idleLoopDetection(optimised).buildCpu().build();
+            hasher.attach(gameboy);
+            if (pokeAt > 0) {
+                gameboy.runClockCycles(pokeAt);
+                gameboy.getBus().writeByteAt(0xD123, (byte) 0x55);
+            }
+            gameboy.runClockCycles(RUN_CYCLES - gameboy.getScheduler().getNow());
+            assertEquals(RUN_CYCLES / INTERVAL, hasher.getEntryCount());
+        }
+        return StateHashLog.read(file);
+    }
+
+    @Test
+    public void testFastPathsDontChangeTheHashes(@TempDir Path directory) throws IOException {
+        StateHashLog optimised = writeLog(directory.resolve("optimised.hashes"), true, 0);
+        StateHashLog stepped = writeLog(directory.resolve("stepped.hashes"), false, 0);
+
+        assertEquals(RUN_CYCLES / INTERVAL, optimised.size());
+        assertEquals(INTERVAL, optimised.getInterval());
+        assertEquals(-1, optimised.firstDivergence(stepped));
+        // the state does change from entry to entry
+        assertNotEquals(optimised.getHash(10), optimised.getHash(11));
+    }
+
+    @Test
+    public void testIncrementalHashMatchesHashingFromScratch(@TempDir Path directory) throws IOException {
+        try (StateHasher hasher = new StateHasher(directory.resolve("a.hashes"), INTERVAL)) {
+            Gameboy gameboy = new Gameboy.BusBuilder().cartridge(buildRom()).buildBus().buildCpu().build();
+            hasher.attach(gameboy);
+            gameboy.runClockCycles(RUN_CYCLES / 2);
+            long incremental = hasher.hash();
+
+            // hashes every page, it has not seen any write
+            try (StateHasher fresh = new StateHasher(directory.resolve("b.hashes"), INTERVAL)) {
+                fresh.attach(gameboy);
+                assertEquals(incremental, fresh.hash());
+            }
+        }
+    }
+
+    @Test
+    public void testHashCoversMbcRegisters(@TempDir Path directory) throws IOException {
+        // MBC3+TIMER+RAM+BATTERY, 128 ROM banks, 4 RAM banks
+        byte[] romBytes = TestRom.ofType(0x10, 0x06).ramSizeCode(0x03).build();
+        try (StateHasher hasher = new StateHasher(directory.resolve("mbc.hashes"), INTERVAL)) {
+            Gameboy gameboy = new Gameboy.BusBuilder().cartridge(romBytes).buildBus().buildCpu().build();
+            hasher.attach(gameboy);
+            long before = hasher.hash();
+
+            // maps an RTC register instead of RAM, which leaves the banks as they are
+            gameboy.getBus().writeByteAt(0x4000, (byte) 0x08);
+            long rtcSelected = hasher.hash();
+            assertNotEquals(before, rtcSelected);
+
+            // latching copies the clock, still 0:00:00, so only the latch register write changes
+            gameboy.getBus().writeByteAt(0x6000, (byte) 0x00);
+            assertNotEquals(rtcSelected, hasher.hash());
+        }
+    }
+
+    @Test
+    public void testBisectTracesTheDivergingWindow(@TempDir Path directory) throws IOException {
+        long pokeAt = 123_456;
+        StateHashLog good = writeLog(directory.resolve("good.hashes"), true, 0);
+        StateHashLog bad = writeLog(directory.resolve("bad.hashes"), true, pokeAt);
+
+        int divergence = good.firstDivergence(bad);
+        assertEquals(pokeAt / INTERVAL, divergence);
+        long from = StateHashBisect.windowStart(good, divergence);
+        long to = good.getCycle(divergence);
+        assertTrue(from <= pokeAt && pokeAt < to);
+
+        Path trace = directory.resolve("window.trace");
+        long records = StateHashBisect.traceWindow(buildRom(), from, to, trace);
+        assertTrue(records > 0);
+        TraceRecord record = new TraceRecord();
+        try (TraceReader reader = new TraceReader(trace)) {
+            assertEquals(records, reader.getRecordCount());
+            while (reader.next(record)) {
+                assertTrue(record.getCycle() >= from && record.getCycle() < to);
+            }
+        }
+    }
+}
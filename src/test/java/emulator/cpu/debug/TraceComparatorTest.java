@@ -0,0 +1,105 @@
+package emulator.cpu.debug;
+
+import emulator.Gameboy;
+import emulator.utils.TestRom;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TraceComparatorTest {
+    private static final int INSTRUCTIONS = 3000;
+
+    /**
+     * Counts in B and pushes it, so memory and SP change too.
+     */
+    private static byte[] buildRom() {
+        byte[] program = {
+                0x04,                         // loop: INC B
+                (byte) 0xC5,                  // PUSH BC
+                (byte) 0xC1,                  // POP BC
+                0x18, (byte) 0xFB,            // JR loop
+        };
+        return TestRom.romOnly().program(program).build();
+    }
+
+    private static Path writeReference(Path directory, TraceFormat format) throws IOException {
+        Path trace = directory.resolve("trace.bin");
+        try (InstructionTracer tracer = new InstructionTracer(trace)) {
+            Gameboy gameboy = new Gameboy.BusBuilder().cartridge(buildRom()).buildBus().tracer(tracer).buildCpu().build();
+            gameboy.runCpuFor(INSTRUCTIONS);
+        }
+        Path reference = directory.resolve(format + ".log");
+        try (Writer out = Files.newBufferedWriter(reference)) {
+            TraceRenderer.render(trace, out, format);
+        }
+        return reference;
+    }
+
+    private static TraceComparison compare(Path reference) throws IOException {
+        try (TraceComparator comparator = new TraceComparator(reference)) {
+            Gameboy gameboy = new Gameboy.BusBuilder().cartridge(buildRom()).buildBus().buildCpu().build();
+            return comparator.run(gameboy);
+        }
+    }
+
+    @Test
+    public void testMatchingReferences(@TempDir Path directory) throws IOException {
+        for (TraceFormat format : TraceFormat.values()) {
+            TraceComparison comparison = compare(writeReference(directory, format));
+            assertTrue(comparison.matches(), comparison.getReport());
+            assertEquals(INSTRUCTIONS, comparison.getComparedInstructions());
+        }
+    }
+
+    @Test
+    public void testStopsAtFirstMismatch(@TempDir Path directory) throws IOException {
+        Path reference = writeReference(directory, TraceFormat.GAMEBOY_DOCTOR);
+        List<String> lines = Files.readAllLines(reference);
+        // a reference where B is off from line 1001 on
+        for (int i = 1000; i < lines.size(); i++) {
+            lines.set(i, lines.get(i).replaceFirst("B:..", "B:FF"));
+        }
+        // and with Windows line endings
+        Files.writeString(reference, String.join("\r\n", lines));
+
+        try (TraceComparator comparator = new TraceComparator(reference)) {
+            Gameboy gameboy = new Gameboy.BusBuilder().cartridge(buildRom()).buildBus().buildCpu().build();
+            TraceComparison comparison = comparator.run(gameboy);
+
+            assertFalse(comparison.matches());
+            assertEquals(1000, comparison.getComparedInstructions());
+            assertEquals(List.of("B"), comparison.getMismatchedFields());
+            // stopped right before the instruction on line 1001
+            assertEquals(Integer.parseInt(lines.get(1000).substring(lines.get(1000).indexOf("PC:") + 3, lines.get(1000).indexOf("PC:") + 7), 16),
+                    gameboy.getRegisters().getPC().getValue());
+
+            String report = comparison.getReport();
+            assertTrue(report.contains("line 1001"), report);
+            assertTrue(report.contains("Reference: " + lines.get(1000)), report);
+            assertTrue(report.contains("  " + lines.get(999) + "\n"), report);
+            assertTrue(report.contains("Memory at SP (CFF0):"), report);
+
+            // the comparator is only a stop condition, the Gameboy runs on normally without it
+            gameboy.runCpuFor(100);
+            assertEquals(1000, comparator.run(gameboy).getComparedInstructions());
+        }
+    }
+
+    @Test
+    public void testRejectsMalformedLines(@TempDir Path directory) throws IOException {
+        Path reference = directory.resolve("bad.log");
+        Files.writeString(reference, "A:01 F:B0 B:00\n");
+        try (TraceComparator comparator = new TraceComparator(reference)) {
+            Gameboy gameboy = new Gameboy.BusBuilder().cartridge(buildRom()).buildBus().buildCpu().build();
+            assertThrows(UncheckedIOException.class, () -> comparator.run(gameboy));
+        }
+    }
+}
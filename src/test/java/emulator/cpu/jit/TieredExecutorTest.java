@@ -0,0 +1,113 @@
+package emulator.cpu.jit;
+
+import emulator.Gameboy;
+import emulator.cpu.GameboyRegisters;
+import emulator.utils.TestRom;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TieredExecutorTest {
+
+    @Test
+    public void testEvictsLeastRecentlyUsedBlocks() {
+        TestRom rom = TestRom.romOnly();
+        int pc = TestRom.ENTRY_POINT;
+        // 16 blocks of INC B; JR +0, then jump back to the start
+        for (int i = 0; i < 16; i++, pc += 3) {
+            rom.at(pc, (byte) 0x04, (byte) 0x18, (byte) 0x00);
+        }
+        byte[] romBytes = rom.at(pc, (byte) 0xC3, (byte) 0x00, (byte) 0x01).build();
+
+        Gameboy interpreted = new Gameboy.BusBuilder().cartridge(romBytes).buildBus().buildCpu().build();
+        Gameboy recompiled = new Gameboy.BusBuilder().cartridge(romBytes).buildBus().dynamicRecompiler(2, 4).buildCpu().build();
+
+        for (int i = 0; i < 50; i++) {
+            interpreted.runCpuFor(101);
+            recompiled.runCpuFor(101);
+            assertRegistersEqual(interpreted.getRegisters(), recompiled.getRegisters());
+        }
+
+        TieredExecutor executor = recompiled.getTieredExecutor();
+        assertEquals(4, executor.getCachedBlockCount());
+        assertTrue(executor.getEvictionCount() > 0);
+    }
+
+    @Test
+    public void testTranslationsAreKeyedByBank() {
+        byte[] bank0 = {
+                0x01, 0x00, 0x00,             // LD BC, 0
+                0x3E, 0x01,                   // LD A, 1
+                (byte) 0xEA, 0x00, 0x20,      // LD (0x2000), A
+                (byte) 0xCD, 0x00, 0x40,      // CALL 0x4000
+                0x3E, 0x02,                   // LD A, 2
+                (byte) 0xEA, 0x00, 0x20,      // LD (0x2000), A
+                (byte) 0xCD, 0x00, 0x40,      // CALL 0x4000
+                (byte) 0xC3, 0x06, 0x01,      // JP 0x0106
+        };
+        byte[] romBytes = TestRom.ofType(0x01, 0x01) // MBC1, 4 banks
+                .program(bank0)
+                .at(0x4000, (byte) 0x04, (byte) 0xC9) // bank 1: INC B; RET
+                .at(0x8000, (byte) 0x0C, (byte) 0xC9) // bank 2: INC C; RET
+                .build();
+
+        Gameboy interpreted = new Gameboy.BusBuilder().cartridge(romBytes).buildBus().buildCpu().build();
+        Gameboy recompiled = new Gameboy.BusBuilder().cartridge(romBytes).buildBus().dynamicRecompiler(2, 64).buildCpu().build();
+
+        for (int i = 0; i < 20; i++) {
+            interpreted.runCpuFor(37);
+            recompiled.runCpuFor(37);
+            assertRegistersEqual(interpreted.getRegisters(), recompiled.getRegisters());
+        }
+
+        GameboyRegisters registers = recompiled.getRegisters();
+        assertTrue(registers.getB().getValue() > 10);
+        assertTrue(Math.abs(registers.getB().getValue() - registers.getC().getValue()) <= 1);
+    }
+
+    @Test
+    public void testFixedRegionTranslationsAreKeyedByBank() {
+        // the loop runs from 0x4000 in bank 1 and in bank 33, which MBC1 maps there along with bank 32 at 0x0000
+        byte[] loop = {
+                0x3E, 0x01,                   // LD A, 1
+                (byte) 0xEA, 0x00, 0x60,      // LD (0x6000), A: advanced banking mode
+                0x3E, 0x01,                   // loop: LD A, 1
+                (byte) 0xEA, 0x00, 0x40,      // LD (0x4000), A: banks 32 and 33
+                (byte) 0xCD, 0x00, 0x20,      // CALL 0x2000
+                0x3E, 0x00,                   // LD A, 0
+                (byte) 0xEA, 0x00, 0x40,      // LD (0x4000), A: banks 0 and 1
+                (byte) 0xCD, 0x00, 0x20,      // CALL 0x2000
+                (byte) 0xC3, 0x05, 0x40,      // JP loop
+        };
+        byte[] romBytes = TestRom.ofType(0x01, 0x05) // MBC1, 64 banks
+                .program((byte) 0x01, (byte) 0x00, (byte) 0x00, (byte) 0xC3, (byte) 0x00, (byte) 0x40) // LD BC, 0; JP 0x4000
+                .at(0x2000, (byte) 0x04, (byte) 0xC9) // bank 0: INC B; RET
+                .at(32 * 0x4000 + 0x2000, (byte) 0x0C, (byte) 0xC9) // bank 32: INC C; RET
+                .at(0x4000, loop)
+                .at(33 * 0x4000, loop)
+                .build();
+
+        Gameboy interpreted = new Gameboy.BusBuilder().cartridge(romBytes).buildBus().buildCpu().build();
+        Gameboy recompiled = new Gameboy.BusBuilder().cartridge(romBytes).buildBus().dynamicRecompiler(2, 64).buildCpu().build();
+
+        for (int i = 0; i < 20; i++) {
+            interpreted.runCpuFor(37);
+            recompiled.runCpuFor(37);
+            assertRegistersEqual(interpreted.getRegisters(), recompiled.getRegisters());
+        }
+
+        GameboyRegisters registers = recompiled.getRegisters();
+        assertTrue(registers.getB().getValue() > 10);
+        assertTrue(Math.abs(registers.getB().getValue() - registers.getC().getValue()) <= 1);
+    }
+
+    private static void assertRegistersEqual(GameboyRegisters expected, GameboyRegisters actual) {
+        assertEquals(expected.getAF().getValue(), actual.getAF().getValue());
+        assertEquals(expected.getBC().getValue(), actual.getBC().getValue());
+        assertEquals(expected.getDE().getValue(), actual.getDE().getValue());
+        assertEquals(expected.getHL().getValue(), actual.getHL().getValue());
+        assertEquals(expected.getSP().getValue(), actual.getSP().getValue());
+        assertEquals(expected.getPC().getValue(), actual.getPC().getValue());
+    }
+}
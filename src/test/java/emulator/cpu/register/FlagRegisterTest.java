@@ -0,0 +1,55 @@
+package emulator.cpu.register;
+
+import emulator.cpu.Alu;
+import emulator.cpu.Operator;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FlagRegisterTest {
+    @Test
+    public void testLazyMatchesEager() {
+        FlagRegister eager = new FlagRegister((byte) 0x00);
+        FlagRegister lazy = new FlagRegister((byte) 0x00);
+        lazy.setLazy(true);
+
+        // 0xFF + 0x01 sets Z, H and C
+        int index = Alu.index(0xFF, 0x01, 0, Alu.carryMask(Operator.ADD));
+        eager.deferFlags(Alu.table(Operator.ADD), index);
+        lazy.deferFlags(Alu.table(Operator.ADD), index);
+
+        assertTrue(lazy.getZ());
+        assertTrue(lazy.getC());
+        assertEquals((byte) 0b1011_0000, eager.getValue());
+        assertEquals(eager.getValue(), lazy.getValue());
+    }
+
+    @Test
+    public void testIncrementKeepsPendingCarry() {
+        FlagRegister flags = new FlagRegister((byte) 0x00);
+        flags.setLazy(true);
+
+        // SUB 0x00 - 0x01 borrows, then INC 0x01 clears Z/N/H but must keep that carry
+        flags.deferFlags(Alu.table(Operator.SUB), Alu.index(0x00, 0x01, 0, 0));
+        flags.deferZNH(Alu.incrementTable(), 0x01);
+
+        assertFalse(flags.getZ());
+        assertFalse(flags.getN());
+        assertTrue(flags.getC());
+        assertEquals((byte) 0b0001_0000, flags.getValue());
+    }
+
+    @Test
+    public void testSettersOverridePendingFlags() {
+        FlagRegister flags = new FlagRegister((byte) 0x00);
+        flags.setLazy(true);
+
+        flags.deferFlags(Alu.table(Operator.SUB), Alu.index(0x00, 0x01, 0, 0));
+        flags.setZ(true);
+        assertEquals((byte) 0b1111_0000, flags.getValue());
+
+        flags.deferFlags(Alu.table(Operator.XOR), Alu.index(0x12, 0x12, 0, 0));
+        flags.setValue((byte) 0x40);
+        assertEquals((byte) 0x40, flags.getValue());
+    }
+}
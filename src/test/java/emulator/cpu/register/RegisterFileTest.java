@@ -0,0 +1,84 @@
+package emulator.cpu.register;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RegisterFileTest {
+    @Test
+    public void testPairsSpanTwoRegisters() {
+        RegisterFile registerFile = new RegisterFile(new FlagRegister((byte) 0x00));
+
+        registerFile.set16(RegisterFile.BC, 0xABCD);
+        registerFile.set16(RegisterFile.DE, 0x1234);
+        registerFile.set16(RegisterFile.HL, 0x5678);
+
+        assertEquals(0xAB, registerFile.get8(RegisterFile.B));
+        assertEquals(0xCD, registerFile.get8(RegisterFile.C));
+        assertEquals(0x12, registerFile.get8(RegisterFile.D));
+        assertEquals(0x34, registerFile.get8(RegisterFile.E));
+        assertEquals(0x56, registerFile.get8(RegisterFile.H));
+        assertEquals(0x78, registerFile.get8(RegisterFile.L));
+        assertEquals(0x5678, registerFile.getHL());
+    }
+
+    @Test
+    public void testSetValuesAreMasked() {
+        RegisterFile registerFile = new RegisterFile(new FlagRegister((byte) 0x00));
+
+        registerFile.set8(RegisterFile.A, -1);
+        registerFile.set16(RegisterFile.SP, 0x12345);
+        registerFile.setPC(-1);
+
+        assertEquals(0xFF, registerFile.getA());
+        assertEquals(0x2345, registerFile.getSP());
+        assertEquals(0xFFFF, registerFile.getPC());
+    }
+
+    @Test
+    public void testAFMasksLowerFlagBits() {
+        RegisterFile registerFile = new RegisterFile(new FlagRegister((byte) 0x00));
+
+        registerFile.setAF(0x12FF);
+
+        assertEquals(0x12, registerFile.getA());
+        assertEquals((byte) 0xF0, registerFile.getF().getValue());
+        assertEquals(0x12F0, registerFile.getAF());
+    }
+
+    @Test
+    public void testIncrementsWrapAround() {
+        RegisterFile registerFile = new RegisterFile(new FlagRegister((byte) 0x00));
+
+        registerFile.setPC(0xFFFF);
+        assertEquals(0xFFFF, registerFile.getAndIncrementPC());
+        assertEquals(0x0000, registerFile.getPC());
+
+        registerFile.setSP(0x0000);
+        assertEquals(0xFFFF, registerFile.decrementAndGetSP());
+        assertEquals(0xFFFF, registerFile.getAndIncrementSP());
+        assertEquals(0x0000, registerFile.getSP());
+
+        registerFile.setHL(0xFFFF);
+        assertEquals(0xFFFF, registerFile.getAndIncrementHL());
+        assertEquals(0x0000, registerFile.getAndDecrementHL());
+        assertEquals(0xFFFF, registerFile.getHL());
+    }
+
+    @Test
+    public void testViewsShareStorage() {
+        RegisterFile registerFile = new RegisterFile(new FlagRegister((byte) 0x00));
+        Register B = registerFile.registerView(RegisterFile.B);
+        DoubleRegister SP = registerFile.stackPointerView();
+        DoubleRegister PC = registerFile.programCounterView();
+
+        B.setValue((byte) 0x9A);
+        SP.setValue(0xC0DE);
+        PC.getLowerRegister().setValue((byte) 0x50);
+        PC.getHigherRegister().setValue((byte) 0x01);
+
+        assertEquals(0x9A, registerFile.get8(RegisterFile.B));
+        assertEquals(0xC0DE, registerFile.getSP());
+        assertEquals((byte) 0xC0, SP.getHigherRegister().getValue());
+        assertEquals(0x0150, registerFile.getPC());
+        assertEquals(0x0150, PC.getValue());
+    }
+}
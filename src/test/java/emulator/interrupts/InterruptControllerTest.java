@@ -223,6 +223,30 @@ public class InterruptControllerTest {
         assertEquals((byte) 0b00100, interruptController.getInterruptFlag());
     }
 
+    ////////////////////////////////////////////////////////////////////
+    ////////////////////////// pending interrupts //////////////////////
+    ////////////////////////////////////////////////////////////////////
+
+    @Test
+    void testPendingInterruptsFollowFlagEnableAndMasterEnable() {
+        interruptController.setInterruptEnable((byte) 0b00101);
+        interruptController.setInterruptFlag((byte) 0b00110);
+        assertEquals(0b00100, interruptController.getPendingInterrupts());
+        assertFalse(interruptController.interruptReady());
+
+        interruptController.setInterruptMasterEnable(true);
+        assertTrue(interruptController.interruptReady());
+
+        // servicing the timer interrupt leaves only LCD STAT requested, which is not enabled
+        assertEquals(0x50, interruptController.getHighestPriorityInterruptAddress());
+        assertEquals(0, interruptController.getPendingInterrupts());
+        assertFalse(interruptController.interruptReady());
+
+        interruptController.setTimerInterruptFlag();
+        assertEquals(0b00100, interruptController.getPendingInterrupts());
+        assertTrue(interruptController.interruptReady());
+    }
+
     ////////////////////////////////////////////////////////////////////
     ////////////////////////////// halted //////////////////////////////
     ////////////////////////////////////////////////////////////////////
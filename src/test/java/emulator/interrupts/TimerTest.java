@@ -1,5 +1,7 @@
 package emulator.interrupts;
 
+import emulator.scheduler.EventType;
+import emulator.scheduler.Scheduler;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -79,4 +81,161 @@ class TimerTest {
         timer.addCycles(300); // Should increment TIMA by 1
         assertEquals(9, timer.getTIMA());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testCyclesUntilOverflow() {
+        InterruptController interruptController = new InterruptController();
+        Timer timer = new Timer(interruptController);
+
+        assertEquals(Integer.MAX_VALUE, timer.cyclesUntilOverflow());
+
+        timer.setTAC((byte) 0b101); // 16 cycles per tick
+        timer.setTIMA((byte) 0xFE);
+        timer.addCycles(8);
+        int untilOverflow = timer.cyclesUntilOverflow();
+        assertEquals(8 + 16, untilOverflow);
+
+        timer.addCycles(untilOverflow - 1);
+        assertFalse(interruptController.getTimerInterruptFlag());
+        timer.addCycles(1);
+        assertTrue(interruptController.getTimerInterruptFlag());
+    }
+
+    @Test
+    void testSchedulerDrivenTimerMatchesAddCycles() {
+        InterruptController interruptController = new InterruptController();
+        Scheduler scheduler = new Scheduler();
+        Timer timer = new Timer(interruptController, scheduler);
+        InterruptController referenceInterrupts = new InterruptController();
+        Timer reference = new Timer(referenceInterrupts);
+
+        for (Timer t : new Timer[]{timer, reference}) {
+            t.setTAC((byte) 0b101); // 16 cycles per tick
+            t.setTMA((byte) 0xF0);
+            t.setTIMA((byte) 0xFD);
+        }
+        assertTrue(scheduler.isScheduled(EventType.TIMER_OVERFLOW));
+
+        for (int step = 0; step < 200; step++) {
+            int cycles = 4 + (step % 6) * 4;
+            scheduler.advance(cycles);
+            reference.addCycles(cycles);
+            // the interrupt flag has to be up as soon as the overflow happens, without anyone reading TIMA
+            assertEquals(referenceInterrupts.getInterruptFlag(), interruptController.getInterruptFlag());
+            interruptController.setInterruptFlag((byte) 0);
+            referenceInterrupts.setInterruptFlag((byte) 0);
+            assertEquals(reference.getTIMA(), timer.getTIMA());
+        }
+
+        timer.setTAC((byte) 0b001); // stopped
+        assertFalse(scheduler.isScheduled(EventType.TIMER_OVERFLOW));
+    }
+
+    @Test
+    void testDivIsUpperByteOfDivider() {
+        InterruptController interruptController = new InterruptController();
+        Timer timer = new Timer(interruptController);
+
+        timer.addCycles(255);
+        assertEquals(0, timer.getDIV());
+        assertEquals(1, timer.cyclesUntilDivChange());
+        timer.addCycles(1);
+        assertEquals(1, timer.getDIV());
+        timer.addCycles(0xFF00);
+        assertEquals(0, timer.getDIV()); // wrapped around
+
+        timer.addCycles(0x1280);
+        timer.setDIV((byte) 0x77); // any write resets it
+        assertEquals(0, timer.getDIV());
+        assertEquals(256, timer.cyclesUntilDivChange());
+    }
+
+    @Test
+    void testTicksFollowDividerRatherThanEnableTime() {
+        InterruptController interruptController = new InterruptController();
+        Timer timer = new Timer(interruptController);
+
+        timer.addCycles(10);
+        timer.setTAC((byte) 0b101); // 16 cycles per tick
+        // divider is 10 so the next falling edge of bit 3 is at 16
+        assertEquals(6, timer.cyclesUntilTick());
+        timer.addCycles(6);
+        assertEquals(1, timer.getTIMA());
+    }
+
+    @Test
+    void testDivWriteGlitchIncrementsTima() {
+        InterruptController interruptController = new InterruptController();
+        Timer timer = new Timer(interruptController);
+
+        timer.setTAC((byte) 0b101); // 16 cycles per tick, watches bit 3
+        timer.addCycles(8); // bit 3 high
+        timer.setDIV((byte) 0);
+        assertEquals(1, timer.getTIMA());
+
+        timer.addCycles(4); // bit 3 low
+        timer.setDIV((byte) 0);
+        assertEquals(1, timer.getTIMA());
+    }
+
+    @Test
+    void testTacWriteGlitchIncrementsTima() {
+        InterruptController interruptController = new InterruptController();
+        Timer timer = new Timer(interruptController);
+
+        timer.setTAC((byte) 0b101); // 16 cycles per tick, watches bit 3
+        timer.addCycles(8); // bit 3 high
+        timer.setTAC((byte) 0b001); // disabling drops the signal
+        assertEquals(1, timer.getTIMA());
+
+        timer.setTAC((byte) 0b101);
+        timer.setTAC((byte) 0b100); // bit 9 is low
+        assertEquals(2, timer.getTIMA());
+
+        timer.setTAC((byte) 0b101); // off to on never ticks
+        assertEquals(2, timer.getTIMA());
+    }
+
+    @Test
+    void testSchedulerDrivenDivAndGlitchesMatchAddCycles() {
+        InterruptController interruptController = new InterruptController();
+        Scheduler scheduler = new Scheduler();
+        Timer timer = new Timer(interruptController, scheduler);
+        InterruptController referenceInterrupts = new InterruptController();
+        Timer reference = new Timer(referenceInterrupts);
+
+        for (Timer t : new Timer[]{timer, reference}) {
+            t.setTAC((byte) 0b110); // 64 cycles per tick
+            t.setTIMA((byte) 0xF8);
+        }
+        for (int step = 0; step < 500; step++) {
+            int cycles = 4 + (step % 7) * 4;
+            scheduler.advance(cycles);
+            reference.addCycles(cycles);
+            if (step % 37 == 0) {
+                timer.setDIV((byte) 0);
+                reference.setDIV((byte) 0);
+            }
+            if (step % 53 == 0) {
+                byte tac = (byte) (0b100 | step % 4);
+                timer.setTAC(tac);
+                reference.setTAC(tac);
+            }
+            assertEquals(referenceInterrupts.getInterruptFlag(), interruptController.getInterruptFlag());
+            interruptController.setInterruptFlag((byte) 0);
+            referenceInterrupts.setInterruptFlag((byte) 0);
+            assertEquals(reference.getDIV(), timer.getDIV());
+            assertEquals(reference.getTIMA(), timer.getTIMA());
+        }
+    }
+
+    @Test
+    void testSchedulerDrivenTimerRejectsAddCycles() {
+        Scheduler scheduler = new Scheduler();
+        Timer timer = new Timer(new InterruptController(), scheduler);
+        scheduler.advance(0x100);
+
+        assertThrows(IllegalStateException.class, () -> timer.addCycles(0x100));
+        assertEquals(1, timer.getDIV());
+    }
+}
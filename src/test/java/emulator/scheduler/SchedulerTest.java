@@ -0,0 +1,72 @@
+package emulator.scheduler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchedulerTest {
+
+    @Test
+    void testNothingScheduled() {
+        Scheduler scheduler = new Scheduler();
+        assertEquals(Long.MAX_VALUE, scheduler.cyclesUntilNextEvent());
+        scheduler.advance(1000);
+        assertEquals(1000, scheduler.getNow());
+        assertFalse(scheduler.isScheduled(EventType.TIMER_OVERFLOW));
+    }
+
+    @Test
+    void testEventRunsOnceItsDeadlineIsReached() {
+        Scheduler scheduler = new Scheduler();
+        List<Long> firedAt = new ArrayList<>();
+        scheduler.setHandler(EventType.TIMER_OVERFLOW, () -> firedAt.add(scheduler.getNow()));
+
+        scheduler.schedule(EventType.TIMER_OVERFLOW, 100);
+        assertEquals(100, scheduler.cyclesUntilNextEvent());
+        scheduler.advance(99);
+        assertTrue(firedAt.isEmpty());
+        assertEquals(1, scheduler.cyclesUntilNextEvent());
+
+        scheduler.advance(4);
+        assertEquals(List.of(103L), firedAt);
+        assertFalse(scheduler.isScheduled(EventType.TIMER_OVERFLOW));
+        assertEquals(Long.MAX_VALUE, scheduler.cyclesUntilNextEvent());
+    }
+
+    @Test
+    void testRescheduleAndCancel() {
+        Scheduler scheduler = new Scheduler();
+        List<Long> firedAt = new ArrayList<>();
+        scheduler.setHandler(EventType.TIMER_OVERFLOW, () -> firedAt.add(scheduler.getNow()));
+
+        scheduler.schedule(EventType.TIMER_OVERFLOW, 100);
+        scheduler.schedule(EventType.TIMER_OVERFLOW, 50);
+        assertEquals(50, scheduler.cyclesUntilNextEvent());
+        scheduler.schedule(EventType.TIMER_OVERFLOW, 200);
+        scheduler.advance(150);
+        assertTrue(firedAt.isEmpty());
+
+        scheduler.cancel(EventType.TIMER_OVERFLOW);
+        scheduler.advance(100);
+        assertTrue(firedAt.isEmpty());
+    }
+
+    @Test
+    void testHandlerCanScheduleItselfAgain() {
+        Scheduler scheduler = new Scheduler();
+        List<Long> firedAt = new ArrayList<>();
+        scheduler.setHandler(EventType.TIMER_OVERFLOW, () -> {
+            firedAt.add(scheduler.getNow());
+            scheduler.schedule(EventType.TIMER_OVERFLOW, firedAt.size() * 10L);
+        });
+        scheduler.schedule(EventType.TIMER_OVERFLOW, 0);
+
+        // one big step runs every deadline it passes
+        scheduler.advance(35);
+        assertEquals(List.of(35L, 35L, 35L, 35L), firedAt);
+        assertEquals(5, scheduler.cyclesUntilNextEvent());
+    }
+}
@@ -0,0 +1,81 @@
+package emulator.utils;
+
+import java.util.Arrays;
+
+/**
+ * Builds ROM images for tests: a cartridge header plus whatever code and data is placed in it.
+ * The header is written last, so filling the ROM never overwrites it.
+ */
+public class TestRom {
+    public static final int ENTRY_POINT = 0x0100;
+    public static final int STACK_TOP = 0xCFF0;
+
+    private final byte[] romBytes;
+    private final byte cartridgeType;
+    private final byte romSizeCode;
+    private byte ramSizeCode;
+
+    private TestRom(int cartridgeType, int romSizeCode) {
+        this.romBytes = new byte[0x8000 << romSizeCode];
+        this.cartridgeType = (byte) cartridgeType;
+        this.romSizeCode = (byte) romSizeCode;
+    }
+
+    /**
+     * 32KB ROM without an MBC
+     */
+    public static TestRom romOnly() {
+        return new TestRom(0x00, 0x00);
+    }
+
+    /**
+     * @param cartridgeType header byte at 0x0147
+     * @param romSizeCode header byte at 0x0148, the ROM is 32KB << romSizeCode
+     */
+    public static TestRom ofType(int cartridgeType, int romSizeCode) {
+        return new TestRom(cartridgeType, romSizeCode);
+    }
+
+    /**
+     * @param ramSizeCode header byte at 0x0149
+     */
+    public TestRom ramSizeCode(int ramSizeCode) {
+        this.ramSizeCode = (byte) ramSizeCode;
+        return this;
+    }
+
+    /**
+     * Makes every byte hold the number of its bank
+     */
+    public TestRom bankNumbered() {
+        for (int i = 0; i < romBytes.length; i++) {
+            romBytes[i] = (byte) (i / 0x4000);
+        }
+        return this;
+    }
+
+    public TestRom fill(byte value) {
+        Arrays.fill(romBytes, value);
+        return this;
+    }
+
+    public TestRom at(int address, byte... bytes) {
+        System.arraycopy(bytes, 0, romBytes, address, bytes.length);
+        return this;
+    }
+
+    /**
+     * Places code at the entry point behind LD SP, STACK_TOP, so the code starts at 0x0103.
+     */
+    public TestRom program(byte... code) {
+        at(ENTRY_POINT, (byte) 0x31, (byte) STACK_TOP, (byte) (STACK_TOP >>> 8));
+        return at(ENTRY_POINT + 3, code);
+    }
+
+    public byte[] build() {
+        romBytes[0x0147] = cartridgeType;
+        romBytes[0x0148] = romSizeCode;
+        romBytes[0x0149] = ramSizeCode;
+        return romBytes;
+    }
+}